@@ -0,0 +1,93 @@
+package com.nerverless.task.dao;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Migrated SQLite database of a benchmark trial, seeded with the accounts
+ * {@code User0} to {@code User<accounts - 1>}, each with a balance and a reserve
+ * large enough to never run out. The {@code memory} storage is a shared cache in
+ * memory database, the {@code file} storage a file under {@code build/tmp} with
+ * the default profile of the application.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+
+    public static final String MEMORY = "memory";
+    public static final String FILE = "file";
+
+    // an in memory database is dropped with its last connection, this one keeps it for the trial
+    private final Connection keepAlive;
+    private final DataSource dataSource;
+
+    private BenchmarkDatabase(Connection keepAlive, DataSource dataSource) {
+        this.keepAlive = keepAlive;
+        this.dataSource = dataSource;
+    }
+
+    public static BenchmarkDatabase open(String storage, String name, int accounts) throws SQLException {
+        String url;
+        Connection keepAlive = null;
+        if (MEMORY.equals(storage)) {
+            url = "jdbc:sqlite:file:" + name + "?mode=memory&cache=shared";
+            keepAlive = DriverManager.getConnection(url);
+        } else if (FILE.equals(storage)) {
+            File db = new File("build/tmp/jmh-" + name + ".db");
+            db.getParentFile().mkdirs();
+            db.delete();
+            url = "jdbc:sqlite:" + db.getPath();
+        } else {
+            throw new IllegalArgumentException("Unknown storage: " + storage);
+        }
+        // one connection, in memory the shared cache locks tables between connections
+        DataSource dataSource = DatabaseConfig.createWriterDataSource(url, SqliteProfile.DEFAULT);
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        BenchmarkDatabase database = new BenchmarkDatabase(keepAlive, dataSource);
+        database.insert("REPLACE INTO user_account (name, balance, reserve) VALUES (?, 1000000000, 1000000000)", accounts,
+                (statement, row) -> statement.setString(1, account(row)));
+        return database;
+    }
+
+    public interface Binder {
+        void bind(PreparedStatement statement, int row) throws SQLException;
+    }
+
+    // Rows inserted in one transaction, seeding through the repositories would commit each one
+    public void insert(String sql, int rows, Binder binder) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(sql)) {
+            connection.setAutoCommit(false);
+            for (int row = 0; row < rows; row++) {
+                binder.bind(statement, row);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    public static String account(int index) {
+        return "User" + index;
+    }
+
+    public DataSource dataSource() {
+        return dataSource;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        ((HikariDataSource) dataSource).close();
+        if (keepAlive != null) {
+            keepAlive.close();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.nerverless.task.dao;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of every {@link IdempotencyKeyRepository} method, in memory and on file,
+ * on a table seeded with ten keys per account: a new key, a replayed one, and the
+ * release and purge of keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class IdempotencyKeyRepositoryBenchmark {
+
+    private static final int KEYS_PER_ACCOUNT = 10;
+
+    @Param({BenchmarkDatabase.MEMORY, BenchmarkDatabase.FILE})
+    String storage;
+
+    @Param({"100", "10000"})
+    int accounts;
+
+    private BenchmarkDatabase database;
+    private IdempotencyKeyRepository repository;
+    private long createdAt;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.open(storage, "idempotency-key-" + accounts, accounts);
+        repository = new IdempotencyKeyRepository(database.dataSource());
+        createdAt = System.currentTimeMillis();
+        database.insert("INSERT INTO idempotency_key (user_id, idempotency_key, transaction_id, created_at) VALUES (?, ?, ?, ?)",
+                accounts * KEYS_PER_ACCOUNT, (statement, row) -> {
+                    statement.setString(1, BenchmarkDatabase.account(row % accounts));
+                    statement.setString(2, "key-" + row);
+                    statement.setString(3, UUID.randomUUID().toString());
+                    statement.setLong(4, createdAt);
+                });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public Optional<UUID> claimNew() {
+        return repository.claim(BenchmarkDatabase.account(ThreadLocalRandom.current().nextInt(accounts)), UUID.randomUUID().toString(), UUID.randomUUID(), createdAt, 0);
+    }
+
+    @Benchmark
+    public Optional<UUID> claimReplayed() {
+        int key = ThreadLocalRandom.current().nextInt(accounts * KEYS_PER_ACCOUNT);
+        return repository.claim(BenchmarkDatabase.account(key % accounts), "key-" + key, UUID.randomUUID(), createdAt, 0);
+    }
+
+    @Benchmark
+    public void release() {
+        // never bound to this transaction, the key stays for the next calls
+        int key = ThreadLocalRandom.current().nextInt(accounts * KEYS_PER_ACCOUNT);
+        repository.release(BenchmarkDatabase.account(key % accounts), "key-" + key, UUID.randomUUID());
+    }
+
+    @Benchmark
+    public int deleteCreatedBefore() {
+        // nothing is that old, the cost of the lookup on the created_at index
+        return repository.deleteCreatedBefore(createdAt - TimeUnit.DAYS.toMillis(1));
+    }
+}
@@ -0,0 +1,133 @@
+package com.nerverless.task.dao;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.ReportPage;
+import com.nerverless.task.model.TransactionId;
+import com.nerverless.task.model.TransactionStatus;
+
+/**
+ * Latency of every {@link ReportTransactionRepository} method, in memory and on
+ * file, on a table seeded with a processing and a completed report for ten
+ * transactions of every account.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class ReportTransactionRepositoryBenchmark {
+
+    private static final int TRANSACTIONS_PER_ACCOUNT = 10;
+    private static final int BATCH = 64;
+    private static final int PAGE = 20;
+
+    @Param({BenchmarkDatabase.MEMORY, BenchmarkDatabase.FILE})
+    String storage;
+
+    @Param({"100", "10000"})
+    int accounts;
+
+    private BenchmarkDatabase database;
+    private ReportTransactionRepository repository;
+    private UUID[] transactionIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.open(storage, "report-transaction-" + accounts, accounts);
+        repository = new ReportTransactionRepository(database.dataSource());
+        transactionIds = new UUID[accounts * TRANSACTIONS_PER_ACCOUNT];
+        List<Report> reports = new ArrayList<>(transactionIds.length * 2);
+        for (int i = 0; i < transactionIds.length; i++) {
+            transactionIds[i] = UUID.randomUUID();
+            TransactionId transactionId = new TransactionId(transactionIds[i], BenchmarkDatabase.account(i % accounts));
+            reports.add(new Report(transactionId, Money.parse("1.00"), TransactionStatus.PROCESSING, "Transfer in progress"));
+            reports.add(new Report(transactionId, Money.parse("1.00"), TransactionStatus.COMPLETED, "Transfer completed"));
+        }
+        try (Connection connection = database.dataSource().getConnection()) {
+            connection.setAutoCommit(false);
+            repository.insertAll(connection, reports);
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    private UUID anyTransaction() {
+        return transactionIds[ThreadLocalRandom.current().nextInt(transactionIds.length)];
+    }
+
+    private String anyAccount() {
+        return BenchmarkDatabase.account(ThreadLocalRandom.current().nextInt(accounts));
+    }
+
+    private Report newReport() {
+        return new Report(new TransactionId(UUID.randomUUID(), anyAccount()), Money.parse("1.00"), TransactionStatus.COMPLETED, "Transfer completed");
+    }
+
+    @Benchmark
+    public List<Report> findByTransactionId() {
+        return repository.findByTransactionId(anyTransaction());
+    }
+
+    @Benchmark
+    public Optional<Report> findLatestByTransactionId() {
+        return repository.findLatestByTransactionId(anyTransaction());
+    }
+
+    @Benchmark
+    public List<Report> findByUserId() {
+        return repository.findByUserId(anyAccount());
+    }
+
+    @Benchmark
+    public ReportPage findByUserIdPage() {
+        return repository.findByUserId(anyAccount(), Long.MAX_VALUE, PAGE);
+    }
+
+    @Benchmark
+    public void insert() {
+        repository.insert(newReport());
+    }
+
+    @Benchmark
+    public void insertAll() throws Exception {
+        List<Report> reports = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            reports.add(newReport());
+        }
+        try (Connection connection = database.dataSource().getConnection()) {
+            connection.setAutoCommit(false);
+            repository.insertAll(connection, reports);
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+    }
+}
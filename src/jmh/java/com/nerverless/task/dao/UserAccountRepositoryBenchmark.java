@@ -0,0 +1,127 @@
+package com.nerverless.task.dao;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.UserAccount;
+
+/**
+ * Latency of every {@link UserAccountRepository} method on a random account, in
+ * memory and on file, for a small and a large number of accounts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class UserAccountRepositoryBenchmark {
+
+    private static final int BATCH = 64;
+    private static final Money AMOUNT = Money.parse("0.01");
+
+    @Param({BenchmarkDatabase.MEMORY, BenchmarkDatabase.FILE})
+    String storage;
+
+    @Param({"100", "10000"})
+    int accounts;
+
+    private BenchmarkDatabase database;
+    private UserAccountRepository repository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.open(storage, "user-account-" + accounts, accounts);
+        repository = new UserAccountRepository(database.dataSource());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    private String anyAccount() {
+        return BenchmarkDatabase.account(ThreadLocalRandom.current().nextInt(accounts));
+    }
+
+    @Benchmark
+    public List<UserAccount> findAll() {
+        return repository.findAll();
+    }
+
+    @Benchmark
+    public Optional<UserAccount> findByName() {
+        return repository.findByName(anyAccount());
+    }
+
+    @Benchmark
+    public void save() {
+        repository.save(new UserAccount(anyAccount(), Money.parse("1000000000.00"), Money.parse("1000000000.00")));
+    }
+
+    @Benchmark
+    public void saveAll() throws Exception {
+        List<UserAccount> users = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            users.add(new UserAccount(anyAccount(), Money.parse("1000000000.00"), Money.parse("1000000000.00")));
+        }
+        try (Connection connection = database.dataSource().getConnection()) {
+            connection.setAutoCommit(false);
+            repository.saveAll(connection, users);
+            connection.commit();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @Benchmark
+    public BalanceUpdate transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(accounts);
+        int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+        return repository.transfer(null, BenchmarkDatabase.account(from), BenchmarkDatabase.account(to), AMOUNT);
+    }
+
+    @Benchmark
+    public BalanceUpdate debit() {
+        return repository.debit(null, anyAccount(), AMOUNT);
+    }
+
+    @Benchmark
+    public BalanceUpdate credit() {
+        return repository.credit(null, anyAccount(), AMOUNT);
+    }
+
+    @Benchmark
+    public BalanceUpdate reserve() {
+        return repository.reserve(null, anyAccount(), AMOUNT);
+    }
+
+    @Benchmark
+    public BalanceUpdate settle() {
+        return repository.settle(anyAccount(), AMOUNT);
+    }
+
+    @Benchmark
+    public BalanceUpdate release() {
+        return repository.release(anyAccount(), AMOUNT);
+    }
+}
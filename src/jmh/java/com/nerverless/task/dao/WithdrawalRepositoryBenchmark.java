@@ -0,0 +1,98 @@
+package com.nerverless.task.dao;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.TransactionId;
+import com.nerverless.task.model.TransactionStatus;
+import com.nerverless.task.model.Withdrawal;
+import com.nerverless.task.service.WithdrawalService.WithdrawalId;
+
+/**
+ * Latency of every {@link WithdrawalRepository} method, in memory and on file, on
+ * a table seeded with a withdrawal per account, one in ten still processing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class WithdrawalRepositoryBenchmark {
+
+    @Param({BenchmarkDatabase.MEMORY, BenchmarkDatabase.FILE})
+    String storage;
+
+    @Param({"100", "10000"})
+    int accounts;
+
+    private BenchmarkDatabase database;
+    private WithdrawalRepository repository;
+    private Withdrawal[] withdrawals;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.open(storage, "withdrawal-" + accounts, accounts);
+        repository = new WithdrawalRepository(database.dataSource());
+        withdrawals = new Withdrawal[accounts];
+        for (int i = 0; i < accounts; i++) {
+            String account = BenchmarkDatabase.account(i);
+            UUID id = UUID.randomUUID();
+            withdrawals[i] = new Withdrawal(new WithdrawalId(id), new TransactionId(id, account), account, "Address" + i, Money.parse("1.00"),
+                    i % 10 == 0 ? TransactionStatus.PROCESSING : TransactionStatus.COMPLETED);
+        }
+        database.insert("INSERT INTO withdrawal (withdrawal_id, transaction_id, user_id, account_name, to_address, amount, status) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                accounts, (statement, row) -> {
+                    Withdrawal withdrawal = withdrawals[row];
+                    statement.setString(1, withdrawal.withdrawalId().value().toString());
+                    statement.setString(2, withdrawal.transactionId().id().toString());
+                    statement.setString(3, withdrawal.transactionId().userId());
+                    statement.setString(4, withdrawal.accountName());
+                    statement.setString(5, withdrawal.toAddress());
+                    statement.setBigDecimal(6, withdrawal.amount().toBigDecimal());
+                    statement.setString(7, withdrawal.status().name());
+                });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        database.close();
+    }
+
+    private Withdrawal anyWithdrawal() {
+        return withdrawals[ThreadLocalRandom.current().nextInt(accounts)];
+    }
+
+    @Benchmark
+    public void save() {
+        repository.save(anyWithdrawal());
+    }
+
+    @Benchmark
+    public List<Withdrawal> findWithStatus() {
+        return repository.findWithStatus(TransactionStatus.PROCESSING);
+    }
+
+    @Benchmark
+    public Optional<Withdrawal> findByTransactionId() {
+        return repository.findByTransactionId(anyWithdrawal().transactionId());
+    }
+}
@@ -0,0 +1,69 @@
+package com.nerverless.task.ingest;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Rows/sec of the bulk transfer parser, validation and transaction id generation
+ * included, for both body formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class TransferBatchParserBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    @Param({"NDJSON", "CSV"})
+    TransferBatchParser.Format format;
+
+    private String body;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder(ROWS * 64);
+        if (format == TransferBatchParser.Format.CSV) {
+            builder.append("fromUser,toUser,amount\n");
+        }
+        for (int i = 0; i < ROWS; i++) {
+            String from = "account-" + (i % 100);
+            String to = "account-" + ((i + 1) % 100);
+            String amount = (i % 1000 + 1) + ".25";
+            if (format == TransferBatchParser.Format.CSV) {
+                builder.append(from).append(',').append(to).append(',').append(amount).append('\n');
+            } else {
+                builder.append("{\"fromUser\":\"").append(from).append("\",\"toUser\":\"").append(to)
+                        .append("\",\"amount\":\"").append(amount).append("\"}\n");
+            }
+        }
+        body = builder.toString();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void parse(Blackhole blackhole) throws IOException {
+        TransferBatchParser parser = new TransferBatchParser(new StringReader(body), format);
+        TransferBatchParser.Row row;
+        while ((row = parser.next()) != null) {
+            blackhole.consume(row);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.nerverless.task.model;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nerverless.task.service.WithdrawalService.WithdrawalId;
+
+/**
+ * Cost of building the model records on the request path, with the validation
+ * of their compact constructors, and of rejecting an invalid one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ModelBenchmark {
+
+    private final UUID id = UUID.randomUUID();
+    private final TransactionId transactionId = new TransactionId(id, "User1");
+    private final Money amount = Money.parse("10.25");
+    private final BigDecimal decimal = new BigDecimal("10.25");
+
+    @Benchmark
+    public Money moneyParse() {
+        return Money.parse("10.25");
+    }
+
+    @Benchmark
+    public Money moneyOf() {
+        return Money.of(decimal);
+    }
+
+    @Benchmark
+    public BigDecimal moneyToBigDecimal() {
+        return amount.toBigDecimal();
+    }
+
+    @Benchmark
+    public TransactionId transactionId() {
+        return new TransactionId(UUID.randomUUID(), "User1");
+    }
+
+    @Benchmark
+    public Transaction transfer() {
+        return new Transaction.Transfer(transactionId, "User1", "User2", amount);
+    }
+
+    @Benchmark
+    public Object transferRejected() {
+        try {
+            return new Transaction.Transfer(transactionId, "User1", "User1", amount);
+        } catch (IllegalArgumentException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Transaction withdrawalRequest() {
+        return new Transaction.WithdrawalRequest(transactionId, "User1", "Address1", amount);
+    }
+
+    @Benchmark
+    public Withdrawal withdrawal() {
+        return new Withdrawal(new WithdrawalId(id), transactionId, "User1", "Address1", amount, TransactionStatus.PROCESSING);
+    }
+
+    @Benchmark
+    public Report report() {
+        return new Report(transactionId, amount, TransactionStatus.COMPLETED, "Transfer completed");
+    }
+
+    @Benchmark
+    public UserAccount userAccount() {
+        return new UserAccount("User1", amount, Money.ZERO);
+    }
+}
@@ -0,0 +1,96 @@
+package com.nerverless.task.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Control;
+
+/**
+ * Messages/sec through a pipeline queue with three producers, like the HTTP
+ * threads, and one consumer draining in batches, like a transaction worker.
+ * The single group has one producer, the same hand-off without contention
+ * between producers. The messages counter is the throughput of the queue.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class QueueTransportBenchmark {
+
+    private static final int CAPACITY = 4096;
+    private static final int DRAIN_BATCH = 64;
+    private static final Object MESSAGE = new Object();
+
+    @Param({"linked", "ring-busy-spin", "ring-yield", "ring-park"})
+    String transport;
+
+    BlockingQueue<Object> queue;
+
+    @Setup
+    public void setUp() {
+        QueueFactory factory = transport.equals("linked")
+                ? QueueFactory.linked()
+                : QueueFactory.ring(WaitStrategy.named(transport.substring("ring-".length())));
+        queue = factory.create(CAPACITY);
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Drain {
+        final List<Object> batch = new ArrayList<>(DRAIN_BATCH);
+        public long messages;
+    }
+
+    @Benchmark
+    @Group("pipeline")
+    @GroupThreads(3)
+    public void produce(Control control) {
+        // offer instead of put, a blocked producer would hang the end of the iteration
+        while (!queue.offer(MESSAGE)) {
+            if (control.stopMeasurement) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    @Benchmark
+    @Group("pipeline")
+    @GroupThreads(1)
+    public void consume(Drain drain) {
+        drain.batch.clear();
+        drain.messages += queue.drainTo(drain.batch, DRAIN_BATCH);
+    }
+
+    @Benchmark
+    @Group("single")
+    @GroupThreads(1)
+    public void produceAlone(Control control) {
+        produce(control);
+    }
+
+    @Benchmark
+    @Group("single")
+    @GroupThreads(1)
+    public void consumeAlone(Drain drain) {
+        consume(drain);
+    }
+}
@@ -0,0 +1,114 @@
+package com.nerverless.task.workers;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nerverless.task.dao.DatabaseConfig;
+import com.nerverless.task.dao.ReportTransactionRepository;
+import com.nerverless.task.dao.UserAccountRepository;
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.Transaction;
+import com.nerverless.task.model.TransactionId;
+import com.nerverless.task.model.Withdrawal;
+import com.nerverless.task.queue.SelectableQueue;
+
+/**
+ * Transfers/sec of a single TransactionWorker against a file backed SQLite
+ * database, for increasing group commit batch sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class TransactionWorkerBatchBenchmark {
+
+    private static final int TRANSFERS = 1_000;
+    private static final int ACCOUNTS = 100;
+
+    @Param({"1", "8", "64", "256"})
+    int batchSize;
+
+    @Param({"200"})
+    long lingerMicros;
+
+    private DataSource dataSource;
+    private BlockingQueue<Transaction> transactionQueue;
+    private BlockingQueue<Report> reportQueue;
+    private TransactionWorker transactionWorker;
+    private Thread workerThread;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        File db = new File("build/tmp/jmh-batch-" + batchSize + ".db");
+        db.getParentFile().mkdirs();
+        db.delete();
+        dataSource = DatabaseConfig.createDataSource("jdbc:sqlite:" + db.getPath(), 2);
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement("REPLACE INTO user_account (name, balance, reserve) VALUES (?, 1000000000, 0)")) {
+            for (int i = 0; i < ACCOUNTS; i++) {
+                statement.setString(1, "User" + i);
+                statement.executeUpdate();
+            }
+        }
+
+        transactionQueue = new SelectableQueue<>();
+        reportQueue = new LinkedBlockingQueue<>();
+        BlockingQueue<Transaction> withdrawalQueue = new LinkedBlockingQueue<>();
+        BlockingQueue<Withdrawal> withdrawalReportQueue = new SelectableQueue<>();
+        var config = TransactionWorkerConfig.defaults().withBatch(batchSize, lingerMicros);
+        transactionWorker = new TransactionWorker(dataSource, new UserAccountRepository(dataSource), new ReportTransactionRepository(dataSource),
+                transactionQueue, reportQueue, withdrawalQueue, withdrawalReportQueue, null, 0, config, null);
+        workerThread = new Thread(transactionWorker, "transaction-worker");
+        workerThread.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        transactionWorker.stop();
+        workerThread.interrupt();
+        workerThread.join();
+        ((AutoCloseable) dataSource).close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSFERS)
+    public void transfers() throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < TRANSFERS; i++) {
+            int from = random.nextInt(ACCOUNTS);
+            int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+            transactionQueue.put(new Transaction.Transfer(new TransactionId(UUID.randomUUID(), "User" + from), "User" + from, "User" + to, Money.parse("1.00")));
+        }
+        for (int i = 0; i < TRANSFERS; i++) {
+            reportQueue.take();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.nerverless.task.workers;
+
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nerverless.task.dao.BenchmarkDatabase;
+import com.nerverless.task.dao.ReportTransactionRepository;
+import com.nerverless.task.dao.UserAccountRepository;
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.Transaction;
+import com.nerverless.task.model.TransactionId;
+import com.nerverless.task.model.Withdrawal;
+import com.nerverless.task.queue.SelectableQueue;
+
+/**
+ * Transfers/sec of a TransactionWorker with its default configuration, in memory
+ * and on file, for a small and a large number of accounts. The contention is the
+ * share of the transfers paid from one hot account, the others pick both accounts
+ * at random.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class TransactionWorkerBenchmark {
+
+    private static final int TRANSFERS = 1_000;
+
+    @Param({BenchmarkDatabase.MEMORY, BenchmarkDatabase.FILE})
+    String storage;
+
+    @Param({"100", "10000"})
+    int accounts;
+
+    @Param({"0", "90"})
+    int hotPercent;
+
+    private BenchmarkDatabase database;
+    private BlockingQueue<Transaction> transactionQueue;
+    private BlockingQueue<Report> reportQueue;
+    private TransactionWorker transactionWorker;
+    private Thread workerThread;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.open(storage, "transaction-worker-" + accounts + "-" + hotPercent, accounts);
+        transactionQueue = new SelectableQueue<>();
+        reportQueue = new LinkedBlockingQueue<>();
+        BlockingQueue<Transaction> withdrawalQueue = new LinkedBlockingQueue<>();
+        BlockingQueue<Withdrawal> withdrawalReportQueue = new SelectableQueue<>();
+        transactionWorker = new TransactionWorker(database.dataSource(), new UserAccountRepository(database.dataSource()), new ReportTransactionRepository(database.dataSource()),
+                transactionQueue, reportQueue, withdrawalQueue, withdrawalReportQueue, null, 0, TransactionWorkerConfig.defaults(), null);
+        workerThread = new Thread(transactionWorker, "transaction-worker");
+        workerThread.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        transactionWorker.stop();
+        workerThread.interrupt();
+        workerThread.join();
+        database.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSFERS)
+    public void transfers() throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < TRANSFERS; i++) {
+            int from = random.nextInt(100) < hotPercent ? 0 : random.nextInt(accounts);
+            int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+            String fromAccount = BenchmarkDatabase.account(from);
+            transactionQueue.put(new Transaction.Transfer(new TransactionId(UUID.randomUUID(), fromAccount), fromAccount, BenchmarkDatabase.account(to), Money.parse("1.00")));
+        }
+        for (int i = 0; i < TRANSFERS; i++) {
+            reportQueue.take();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.nerverless.task.workers;
+
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.nerverless.task.dao.BenchmarkDatabase;
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.Transaction;
+import com.nerverless.task.model.TransactionId;
+import com.nerverless.task.model.Withdrawal;
+import com.nerverless.task.queue.SelectableQueue;
+
+/**
+ * Transfers/sec of a TransactionWorkerPool for an increasing number of shards,
+ * with and without the in-memory ledger. Every shard writes through the single
+ * writer connection of the application, so without the ledger this measures how
+ * much the shards still gain when their database work is serialised; the
+ * transfers between accounts of different shards pay the extra credit leg.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class TransactionWorkerPoolBenchmark {
+
+    private static final int TRANSFERS = 1_000;
+    private static final int ACCOUNTS = 10_000;
+
+    @Param({BenchmarkDatabase.MEMORY, BenchmarkDatabase.FILE})
+    String storage;
+
+    @Param({"1", "2", "4"})
+    int shards;
+
+    @Param({"false", "true"})
+    boolean ledger;
+
+    private BenchmarkDatabase database;
+    private BlockingQueue<Report> reportQueue;
+    private TransactionWorkerPool pool;
+    private ExecutorService executorService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        database = BenchmarkDatabase.open(storage, "transaction-worker-pool-" + shards + "-" + ledger, ACCOUNTS);
+        reportQueue = new LinkedBlockingQueue<>();
+        BlockingQueue<Transaction> withdrawalQueue = new LinkedBlockingQueue<>();
+        BlockingQueue<Withdrawal> withdrawalReportQueue = new SelectableQueue<>();
+        pool = new TransactionWorkerPool(database.dataSource(), shards, TransactionWorkerConfig.defaults().withLedger(ledger),
+                reportQueue, withdrawalQueue, withdrawalReportQueue);
+        executorService = Executors.newCachedThreadPool();
+        pool.start(executorService);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pool.stop();
+        executorService.shutdownNow();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+        database.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TRANSFERS)
+    public void transfers() throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < TRANSFERS; i++) {
+            int from = random.nextInt(ACCOUNTS);
+            int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+            String fromAccount = BenchmarkDatabase.account(from);
+            pool.submit(new Transaction.Transfer(new TransactionId(UUID.randomUUID(), fromAccount), fromAccount, BenchmarkDatabase.account(to), Money.parse("1.00")));
+        }
+        for (int i = 0; i < TRANSFERS; i++) {
+            reportQueue.take();
+        }
+    }
+}
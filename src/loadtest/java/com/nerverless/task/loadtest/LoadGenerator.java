@@ -0,0 +1,351 @@
+package com.nerverless.task.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.flywaydb.core.Flyway;
+
+import com.nerverless.task.Application;
+import com.nerverless.task.dao.DatabaseConfig;
+import com.nerverless.task.dao.SqliteProfile;
+
+/**
+ * End-to-end load test: starts the application in its own JVM on a temporary
+ * SQLite database seeded with the configured accounts, with the withdrawal stub,
+ * and drives {@code /transfer}, {@code /withdraw} and {@code /report} at a fixed
+ * rate with a Zipf skew over the accounts.
+ * <p>
+ * The load is open loop: every request is sent at its scheduled time whatever
+ * the responses of the earlier ones, and its latency is measured from that time,
+ * not from when it was actually sent. A stall of the application, or of the
+ * generator, then shows in the percentiles instead of being hidden by the
+ * requests it kept from being sent (coordinated omission); the latency from the
+ * actual send is reported next to it. The time to the final status of a
+ * transaction is measured to the poll of the report row reaching it.
+ */
+public class LoadGenerator {
+
+    private static final Pattern TRANSACTION_ID = Pattern.compile("transation_id':'([0-9a-f-]{36})'");
+    // latencies are recorded in microseconds, up to 10 minutes with 3 significant digits
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(10);
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    private enum Operation {
+        TRANSFER("transfer"),
+        WITHDRAW("withdraw"),
+        REPORT("report");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+    }
+
+    // Latencies of one kind of request, from the scheduled time and from the actual send
+    private record Latencies(Histogram corrected, Histogram uncorrected) {
+        Latencies() {
+            this(new ConcurrentHistogram(HIGHEST_MICROS, 3), new ConcurrentHistogram(HIGHEST_MICROS, 3));
+        }
+    }
+
+    private final LoadTestConfig config;
+    private final HttpClient client;
+    private final ReportWatcher watcher;
+    private final ZipfDistribution accounts;
+    // filled before the run, only read while it records
+    private final Map<Operation, Latencies> submits = new EnumMap<>(Operation.class);
+    private final Map<String, Histogram> finals = new LinkedHashMap<>();
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong maxSendLagNanos = new AtomicLong();
+
+    LoadGenerator(LoadTestConfig config, HttpClient client, Path database) {
+        this.config = config;
+        this.client = client;
+        this.watcher = new ReportWatcher("jdbc:sqlite:" + database, config.pollMillis(), this::recordFinal);
+        this.accounts = new ZipfDistribution(config.accounts(), config.skew());
+        for (Operation operation : Operation.values()) {
+            submits.put(operation, new Latencies());
+        }
+        finals.put(Operation.TRANSFER.label, new ConcurrentHistogram(HIGHEST_MICROS, 3));
+        finals.put(Operation.WITHDRAW.label, new ConcurrentHistogram(HIGHEST_MICROS, 3));
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.fromSystemProperties();
+        Files.createDirectories(config.outputDirectory());
+        Path workDirectory = Files.createTempDirectory("nerverless-load");
+        // the application opens the database of its working directory
+        Path database = workDirectory.resolve("neverless-task.db");
+        seed(database, config.accounts());
+
+        Process application = start(config, workDirectory);
+        try {
+            HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+            awaitReady(client, config, application);
+            new LoadGenerator(config, client, database).run(System.out);
+        } finally {
+            application.destroy();
+            if (!application.waitFor(10, TimeUnit.SECONDS)) {
+                application.destroyForcibly().waitFor();
+            }
+            delete(workDirectory);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static String account(int index) {
+        return "LoadUser" + index;
+    }
+
+    // Migrated like the application does, with accounts that never run out of funds
+    private static void seed(Path database, int accounts) throws Exception {
+        DataSource dataSource = DatabaseConfig.createWriterDataSource("jdbc:sqlite:" + database, SqliteProfile.DEFAULT);
+        try {
+            Flyway.configure().dataSource(dataSource).load().migrate();
+            try (Connection connection = dataSource.getConnection();
+                    PreparedStatement statement = connection.prepareStatement("INSERT INTO user_account (name, balance, reserve) VALUES (?, 1000000000, 0)")) {
+                connection.setAutoCommit(false);
+                for (int i = 0; i < accounts; i++) {
+                    statement.setString(1, account(i));
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            }
+        } finally {
+            ((AutoCloseable) dataSource).close();
+        }
+    }
+
+    private static Process start(LoadTestConfig config, Path workDirectory) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(config.appOptions());
+        command.add("-Dserver.port=" + config.port());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Application.class.getName());
+        Path log = config.outputDirectory().toAbsolutePath().resolve("application.log");
+        System.out.printf("Starting the application on port %d in %s, log in %s%n", config.port(), workDirectory, log);
+        return new ProcessBuilder(command)
+                .directory(workDirectory.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+    }
+
+    private static void awaitReady(HttpClient client, LoadTestConfig config, Process application) throws Exception {
+        HttpRequest probe = HttpRequest.newBuilder(URI.create("http://localhost:" + config.port() + "/report?user=" + account(0) + "&limit=1")).build();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (System.nanoTime() < deadline) {
+            if (!application.isAlive()) {
+                throw new IllegalStateException("The application exited with " + application.exitValue() + ", see application.log");
+            }
+            try {
+                client.send(probe, HttpResponse.BodyHandlers.discarding());
+                return;
+            } catch (IOException e) {
+                TimeUnit.MILLISECONDS.sleep(200);
+            }
+        }
+        throw new IllegalStateException("The application did not start within 60 seconds");
+    }
+
+    void run(PrintStream out) throws InterruptedException {
+        Thread watcherThread = new Thread(watcher, "report-watcher");
+        watcherThread.start();
+
+        long start = System.nanoTime();
+        long measuredFrom = start + TimeUnit.SECONDS.toNanos(config.warmupSeconds());
+        long end = measuredFrom + TimeUnit.SECONDS.toNanos(config.durationSeconds());
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / config.rate();
+        out.printf("Warming up for %d s, then measuring for %d s at %.0f requests/s%n", config.warmupSeconds(), config.durationSeconds(), config.rate());
+        long sent = 0;
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * intervalNanos);
+            if (intended >= end) {
+                break;
+            }
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean measured = intended >= measuredFrom;
+            maxSendLagNanos.accumulateAndGet(System.nanoTime() - intended, Math::max);
+            send(operation(), intended, measured);
+            if (measured) {
+                sent++;
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.finalTimeoutSeconds());
+        while (watcher.pending() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        watcher.stop();
+        watcherThread.join();
+        print(out, sent);
+    }
+
+    private Operation operation() {
+        int draw = ThreadLocalRandom.current().nextInt(config.transferWeight() + config.withdrawWeight() + config.reportWeight());
+        if (draw < config.transferWeight()) {
+            return Operation.TRANSFER;
+        }
+        return draw < config.transferWeight() + config.withdrawWeight() ? Operation.WITHDRAW : Operation.REPORT;
+    }
+
+    private HttpRequest request(Operation operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String from = account(accounts.next(random));
+        String base = "http://localhost:" + config.port();
+        return switch (operation) {
+            case TRANSFER -> {
+                String to;
+                do {
+                    to = account(accounts.next(random));
+                } while (to.equals(from));
+                yield form(base + "/transfer", "fromUser=" + from + "&toUser=" + to + "&amount=1.00");
+            }
+            case WITHDRAW -> form(base + "/withdraw", "fromUser=" + from + "&toAddress=" + URLEncoder.encode("address-" + from, StandardCharsets.UTF_8) + "&amount=1.00");
+            case REPORT -> HttpRequest.newBuilder(URI.create(base + "/report?user=" + from + "&limit=20")).timeout(Duration.ofSeconds(30)).build();
+        };
+    }
+
+    private static HttpRequest form(String url, String body) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private void send(Operation operation, long intended, boolean measured) {
+        long sentAt = System.nanoTime();
+        client.sendAsync(request(operation), HttpResponse.BodyHandlers.ofString()).whenComplete((response, e) -> {
+            long now = System.nanoTime();
+            if (e != null) {
+                if (measured) {
+                    failures.increment();
+                }
+                return;
+            }
+            if (measured) {
+                Latencies latencies = submits.get(operation);
+                record(latencies.corrected(), now - intended);
+                record(latencies.uncorrected(), now - sentAt);
+                statuses.computeIfAbsent(response.statusCode(), status -> new LongAdder()).increment();
+            }
+            if (operation != Operation.REPORT && response.statusCode() == 200) {
+                Matcher matcher = TRANSACTION_ID.matcher(response.body());
+                if (matcher.find()) {
+                    watcher.watch(UUID.fromString(matcher.group(1)), new ReportWatcher.Pending(operation.label, intended, measured));
+                }
+            }
+        });
+    }
+
+    private void recordFinal(ReportWatcher.Pending pending, long seenNanos) {
+        if (pending.measured()) {
+            record(finals.get(pending.type()), seenNanos - pending.intendedNanos());
+        }
+    }
+
+    private static void record(Histogram histogram, long nanos) {
+        histogram.recordValue(Math.min(Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0), HIGHEST_MICROS));
+    }
+
+    private void print(PrintStream out, long sent) {
+        double seconds = config.durationSeconds();
+        out.println();
+        out.printf("Rate %.0f requests/s for %d s, %d accounts with skew %.2f, mix transfer=%d withdraw=%d report=%d%n",
+                config.rate(), config.durationSeconds(), config.accounts(), config.skew(),
+                config.transferWeight(), config.withdrawWeight(), config.reportWeight());
+        out.printf("Sent %d requests (%.1f/s), %d failed, responses %s, send lag at most %.1f ms%n",
+                sent, sent / seconds, failures.sum(), statuses, maxSendLagNanos.get() / 1e6);
+        out.println();
+        out.printf("%-28s %8s %10s%s%n", "latency (ms)", "count", "per sec", header());
+        for (Operation operation : Operation.values()) {
+            Latencies latencies = submits.get(operation);
+            String label = operation == Operation.REPORT ? operation.label : operation.label + " submit";
+            line(out, label, latencies.corrected(), seconds);
+            line(out, label + ", uncorrected", latencies.uncorrected(), seconds);
+        }
+        for (Map.Entry<String, Histogram> entry : finals.entrySet()) {
+            line(out, entry.getKey() + " to final status", entry.getValue(), seconds);
+        }
+        out.printf("%nTransactions without a final status after %d s: %d%n", config.finalTimeoutSeconds(), watcher.pending());
+        out.printf("Final statuses are seen to within %d ms, the report rows are polled at that interval%n", config.pollMillis());
+
+        for (Operation operation : Operation.values()) {
+            write(operation.label + "-submit.hgrm", submits.get(operation).corrected(), out);
+        }
+        finals.forEach((type, histogram) -> write(type + "-final.hgrm", histogram, out));
+        out.printf("Percentile distributions written to %s%n", config.outputDirectory().toAbsolutePath());
+    }
+
+    private static String header() {
+        StringBuilder header = new StringBuilder();
+        for (double percentile : PERCENTILES) {
+            header.append(String.format(" %9s", "p" + (percentile == Math.rint(percentile) ? String.valueOf((int) percentile) : String.valueOf(percentile))));
+        }
+        return header.append(String.format(" %9s", "max")).toString();
+    }
+
+    private static void line(PrintStream out, String label, Histogram histogram, double seconds) {
+        StringBuilder line = new StringBuilder(String.format("%-28s %8d %10.1f", label, histogram.getTotalCount(), histogram.getTotalCount() / seconds));
+        for (double percentile : PERCENTILES) {
+            line.append(String.format(" %9.2f", histogram.getValueAtPercentile(percentile) / 1000.0));
+        }
+        out.println(line.append(String.format(" %9.2f", histogram.getMaxValue() / 1000.0)));
+    }
+
+    // Percentile distribution in milliseconds, plotted with the HdrHistogram plotter to compare runs
+    private void write(String name, Histogram histogram, PrintStream out) {
+        try (PrintStream file = new PrintStream(Files.newOutputStream(config.outputDirectory().resolve(name)), false, StandardCharsets.UTF_8)) {
+            histogram.outputPercentileDistribution(file, 1000.0);
+        } catch (IOException e) {
+            out.printf("Failed to write %s: %s%n", name, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.nerverless.task.loadtest;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Settings of a load test run, read from {@code load.*} system properties
+ * (e.g. {@code ./gradlew loadTest -Pload.rate=500 -Pload.skew=1.2}).
+ *
+ * @param rate                requests sent per second, on schedule whatever the response times
+ * @param warmupSeconds       time at the rate before the measurement starts
+ * @param durationSeconds     time at the rate that is measured
+ * @param accounts            accounts seeded before the application starts
+ * @param skew                exponent of the Zipf distribution of the accounts, 0 is uniform
+ * @param transferWeight      share of {@code POST /transfer} in the requests
+ * @param withdrawWeight      share of {@code POST /withdraw} in the requests
+ * @param reportWeight        share of {@code GET /report} in the requests
+ * @param finalTimeoutSeconds time given to the last transactions to reach a final status
+ * @param pollMillis          interval between two reads of the new report rows
+ * @param port                HTTP port of the application under test
+ * @param appOptions          JVM options of the application, e.g. {@code -Dworker.shards=4}
+ * @param outputDirectory     directory of the percentile distributions and of the application log
+ */
+public record LoadTestConfig(double rate, int warmupSeconds, int durationSeconds, int accounts, double skew,
+                             int transferWeight, int withdrawWeight, int reportWeight,
+                             int finalTimeoutSeconds, long pollMillis, int port, List<String> appOptions, Path outputDirectory) {
+    public LoadTestConfig {
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be greater than zero");
+        }
+        if (warmupSeconds < 0 || durationSeconds < 1) {
+            throw new IllegalArgumentException("warmupSeconds cannot be negative and durationSeconds must be greater than zero");
+        }
+        if (accounts < 2) {
+            throw new IllegalArgumentException("accounts must be at least 2");
+        }
+        if (skew < 0) {
+            throw new IllegalArgumentException("skew cannot be negative");
+        }
+        if (transferWeight < 0 || withdrawWeight < 0 || reportWeight < 0 || transferWeight + withdrawWeight + reportWeight == 0) {
+            throw new IllegalArgumentException("the weights cannot be negative nor all zero");
+        }
+        if (pollMillis < 1) {
+            throw new IllegalArgumentException("pollMillis must be greater than zero");
+        }
+    }
+
+    public static LoadTestConfig fromSystemProperties() {
+        String options = System.getProperty("load.app.options", "").trim();
+        return new LoadTestConfig(
+                Double.parseDouble(System.getProperty("load.rate", "200")),
+                Integer.getInteger("load.warmup.seconds", 10),
+                Integer.getInteger("load.duration.seconds", 30),
+                Integer.getInteger("load.accounts", 1000),
+                Double.parseDouble(System.getProperty("load.skew", "1.0")),
+                Integer.getInteger("load.mix.transfer", 80),
+                Integer.getInteger("load.mix.withdraw", 10),
+                Integer.getInteger("load.mix.report", 10),
+                Integer.getInteger("load.final.timeout.seconds", 30),
+                Long.getLong("load.poll.millis", 5L),
+                Integer.getInteger("load.port", 7100),
+                options.isEmpty() ? List.of() : Arrays.asList(options.split("\\s+")),
+                Path.of(System.getProperty("load.output", "build/loadtest")));
+    }
+}
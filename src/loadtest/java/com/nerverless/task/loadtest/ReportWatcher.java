@@ -0,0 +1,97 @@
+package com.nerverless.task.loadtest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Reads the report rows appended by the application under test and hands the
+ * transactions reaching a final status to a consumer, with the time they were
+ * seen, so the latency is known to within the poll interval.
+ * <p>
+ * The final row may be written before the response of the request is received;
+ * the time a row was seen is then kept until the transaction is watched.
+ */
+class ReportWatcher implements Runnable {
+
+    // A submitted transaction, the start of its latency
+    record Pending(String type, long intendedNanos, boolean measured) {}
+
+    private static final String SQL = "SELECT id, transaction_id FROM report_transaction WHERE id > ? AND status IN ('COMPLETED', 'FAILED') ORDER BY id";
+
+    private final String url;
+    private final long pollMillis;
+    private final BiConsumer<Pending, Long> onFinal;
+    // Pending transactions, or the time a final row was seen for a transaction not watched yet
+    private final Map<UUID, Object> transactions = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    ReportWatcher(String url, long pollMillis, BiConsumer<Pending, Long> onFinal) {
+        this.url = url;
+        this.pollMillis = pollMillis;
+        this.onFinal = onFinal;
+    }
+
+    void watch(UUID transactionId, Pending pending) {
+        transactions.compute(transactionId, (id, seen) -> {
+            if (seen instanceof Long seenNanos) {
+                onFinal.accept(pending, seenNanos);
+                return null;
+            }
+            return pending;
+        });
+    }
+
+    // Transactions watched that have no final row yet
+    long pending() {
+        return transactions.values().stream().filter(Pending.class::isInstance).count();
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        Properties properties = new Properties();
+        properties.setProperty("busy_timeout", "5000");
+        long lastId = 0;
+        try (Connection connection = DriverManager.getConnection(url, properties);
+                PreparedStatement statement = connection.prepareStatement(SQL)) {
+            while (running) {
+                statement.setLong(1, lastId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    long seenNanos = System.nanoTime();
+                    while (resultSet.next()) {
+                        lastId = resultSet.getLong(1);
+                        seen(UUID.fromString(resultSet.getString(2)), seenNanos);
+                    }
+                }
+                TimeUnit.MILLISECONDS.sleep(pollMillis);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read the report rows", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void seen(UUID transactionId, long seenNanos) {
+        transactions.compute(transactionId, (id, pending) -> {
+            if (pending instanceof Pending watched) {
+                onFinal.accept(watched, seenNanos);
+                return null;
+            }
+            // a second final row of the same transaction keeps the first time
+            return pending == null ? seenNanos : pending;
+        });
+    }
+}
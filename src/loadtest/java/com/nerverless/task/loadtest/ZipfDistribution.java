@@ -0,0 +1,32 @@
+package com.nerverless.task.loadtest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Indexes in {@code [0, size)} drawn with a probability proportional to
+ * {@code 1 / (index + 1)^skew}. A skew of 0 is uniform; around 1 the first
+ * accounts take most of the traffic, like the hot accounts of a real ledger.
+ */
+class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    ZipfDistribution(int size, double skew) {
+        cumulative = new double[size];
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < size; i++) {
+            cumulative[i] /= total;
+        }
+    }
+
+    int next(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        // not found, the insertion point is the first cumulative probability above the draw
+        return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+    }
+}
@@ -1,109 +1,233 @@
 package com.nerverless.task;
 
-import java.math.BigDecimal;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import javax.sql.DataSource;
 
 import org.flywaydb.core.Flyway;
 
+import com.nerverless.task.admission.AdmissionController;
 import com.nerverless.task.dao.DatabaseConfig;
+import com.nerverless.task.dao.IdempotencyKeyRepository;
+import com.nerverless.task.dao.ReportTransactionRepository;
+import com.nerverless.task.dao.SqliteProfile;
+import com.nerverless.task.dao.UserAccountRepository;
+import com.nerverless.task.dao.WithdrawalRepository;
+import com.nerverless.task.ingest.BatchReceipt;
+import com.nerverless.task.ingest.TransferBatchParser;
+import com.nerverless.task.journal.JournalReplay;
+import com.nerverless.task.journal.TransactionJournal;
+import com.nerverless.task.metrics.Counter;
+import com.nerverless.task.metrics.MetricRegistry;
+import com.nerverless.task.model.Money;
 import com.nerverless.task.model.Report;
 import com.nerverless.task.model.Transaction;
 import com.nerverless.task.model.Transaction.Transfer;
 import com.nerverless.task.model.Transaction.WithdrawalRequest;
 import com.nerverless.task.model.TransactionId;
+import com.nerverless.task.model.TransactionStatus;
 import com.nerverless.task.model.Withdrawal;
+import com.nerverless.task.queue.QueueFactory;
+import com.nerverless.task.service.IdempotencyKeys;
+import com.nerverless.task.service.ReportBroadcaster;
+import com.nerverless.task.service.ReportBus;
+import com.nerverless.task.service.ReportCache;
 import com.nerverless.task.service.ReportService;
+import com.nerverless.task.service.ReportWaiters;
 import com.nerverless.task.service.WithdrawalService;
 import com.nerverless.task.service.WithdrawalServiceStub;
-import com.nerverless.task.workers.TransactionWorker;
+import com.nerverless.task.timer.TimerWheel;
+import com.nerverless.task.trace.Stage;
+import com.nerverless.task.trace.StageTracer;
+import com.nerverless.task.workers.TransactionWorkerConfig;
+import com.nerverless.task.workers.TransactionWorkerPool;
 import com.nerverless.task.workers.WithdrawalWorker;
 
 import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.sse.SseClient;
+import io.javalin.json.JsonMapper;
 
 public class Application {
 
     private static final String DB_URL = "jdbc:sqlite:neverless-task.db";
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(Application.class);
 
-    public static void main(String[] args) {
+    private static final int DEFAULT_REPORT_PAGE_SIZE = 100;
+    private static final int MAX_REPORT_PAGE_SIZE = 1000;
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int DEFAULT_REPORT_WAIT_SECONDS = 30;
+    private static final int MAX_REPORT_WAIT_SECONDS = 300;
 
-        // Initialize connection pool
-        DataSource dataSource = DatabaseConfig.createDataSource(DB_URL, 3);
+    private static final int LEG_RETENTION_DAYS = 7;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        // Initialize connection pools
+        // the workers share the single writer connection, the report queries read from their own pool
+        SqliteProfile sqliteProfile = ApplicationConfig.sqliteProfile();
+        DataSource dataSource = DatabaseConfig.createWriterDataSource(DB_URL, sqliteProfile);
 
         // Initialize the database schema using Flyway
         Flyway flyway = Flyway.configure().dataSource(dataSource).load();
         flyway.migrate();
 
-        BlockingQueue<Transaction> transactionQueue = new LinkedBlockingQueue<>();
-        BlockingQueue<Report> transactionReportQueue = new LinkedBlockingQueue<>();
-        BlockingQueue<Transaction> withdrawalQueue = new LinkedBlockingQueue<>();
-        BlockingQueue<Withdrawal> withdrawalReportQueue = new LinkedBlockingQueue<>();
+        QueueFactory queues = ApplicationConfig.queueFactory();
+        BlockingQueue<Report> transactionReportQueue = queues.create(ApplicationConfig.transactionReportQueueCapacity());
+        BlockingQueue<Transaction> withdrawalQueue = queues.create(ApplicationConfig.withdrawalQueueCapacity());
+        // consumed by the transaction workers, wakes them up as soon as a completion arrives
+        BlockingQueue<Withdrawal> withdrawalReportQueue = queues.create(ApplicationConfig.withdrawalReportQueueCapacity());
+
+        TransactionWorkerConfig transactionWorkerConfig = ApplicationConfig.transactionWorkerConfig();
+        TransactionWorkerPool transactionWorkers = buildTransactionWorkerPool(dataSource, ApplicationConfig.workerShards(), transactionWorkerConfig, transactionReportQueue, withdrawalQueue, withdrawalReportQueue);
+        // a shard queue never holds more than the transactions in flight, so the limit stays within its capacity
+        AdmissionController admission = new AdmissionController(ApplicationConfig.admissionMinLimit(),
+                Math.min(ApplicationConfig.admissionMaxLimit(), transactionWorkerConfig.queueCapacity()),
+                List.of(withdrawalQueue, transactionReportQueue));
+
+        // opened once the schema exists, read-only connections cannot create it
+        DataSource readerDataSource = DatabaseConfig.createReaderDataSource(DB_URL, ApplicationConfig.readerPoolSize(), sqliteProfile);
 
-        TransactionWorker transactionWorker = buildTransactionWorker(dataSource, transactionQueue, transactionReportQueue, withdrawalQueue, withdrawalReportQueue);
+        // the keys are looked up on the readers and written behind on the writer
+        IdempotencyKeys idempotencyKeys = new IdempotencyKeys(new IdempotencyKeyRepository(dataSource), new IdempotencyKeyRepository(readerDataSource),
+                ApplicationConfig.idempotencyCacheSize(), ApplicationConfig.idempotencyTtlHours(), TimeUnit.HOURS);
+        logger.info("Purged {} expired idempotency keys", idempotencyKeys.purgeExpired());
+
+        // timeouts of the long polls and the withdrawal status checks
+        TimerWheel timer = new TimerWheel(ApplicationConfig.timerTickMillis(), TimeUnit.MILLISECONDS, ApplicationConfig.timerTicksPerWheel());
 
         WithdrawalService withdrawalService = new WithdrawalServiceStub();
-        WithdrawalWorker withdrawalWorker = buildWithdrawalWorker(dataSource, withdrawalService, withdrawalQueue, withdrawalReportQueue);
+        WithdrawalWorker withdrawalWorker = buildWithdrawalWorker(dataSource, withdrawalService, withdrawalQueue, withdrawalReportQueue, timer);
+
+        TransactionJournal journal = buildTransactionJournal(transactionWorkers);
+
+        ReportCache reportCache = new ReportCache(ApplicationConfig.reportCacheSize(), ApplicationConfig.reportCacheTtlSeconds(), TimeUnit.SECONDS);
+        ReportService reportService = new ReportService(readerDataSource, reportCache);
+        // the subscribers are written to by their own threads, never by the report bus
+        ExecutorService eventExecutor = Executors.newFixedThreadPool(ApplicationConfig.eventThreads());
+        ReportBroadcaster reportBroadcaster = new ReportBroadcaster(eventExecutor, ApplicationConfig.eventBufferSize());
+        reportBroadcaster.startWatchdog(timer, ApplicationConfig.eventWriteTimeoutMillis(), TimeUnit.MILLISECONDS);
+        ReportWaiters reportWaiters = new ReportWaiters(timer);
+        // answers the long polls once completed, off the timer wheel and report bus threads that complete them
+        ExecutorService reportWaitExecutor = Executors.newFixedThreadPool(ApplicationConfig.readerPoolSize());
 
-        ExecutorService executorService = Executors.newFixedThreadPool(3);
-        executorService.execute(transactionWorker);
+        MetricRegistry metrics = MetricRegistry.defaultRegistry();
+        registerMetrics(metrics, dataSource, readerDataSource, transactionWorkers, transactionReportQueue, withdrawalQueue, withdrawalReportQueue);
+        metrics.gauge("queue_depth", "Messages waiting in a queue", idempotencyKeys::pending, "queue", "idempotency-keys");
+        Counter[] reportsByStatus = reportCounters(metrics);
+        StageTracer tracer = buildStageTracer(metrics);
+        tracer.startExpiry(timer, ApplicationConfig.traceMaxAgeSeconds(), TimeUnit.SECONDS);
+        transactionWorkers.setTracer(tracer);
+        withdrawalWorker.setTracer(tracer);
+
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        transactionWorkers.start(executorService);
+        executorService.execute(timer);
         executorService.execute(withdrawalWorker);
-        // drain the queue to avoid blocking the transaction worker
-        executorService.execute(() -> {
-            while (true) {
-                try {
-                    Report report = transactionReportQueue.take();
-                    logger.info("Transaction report: {}", report);
-                } catch (InterruptedException e) {
-                    logger.error("Error draining transaction report queue", e);
-                    Thread.currentThread().interrupt();
+        executorService.execute(idempotencyKeys);
+        // fan the reports out to the pipeline, the /events stream and the report log, each on its own thread
+        ReportBus reportBus = new ReportBus(transactionReportQueue);
+        int busBufferSize = ApplicationConfig.reportBusBufferSize();
+        int busBatchSize = ApplicationConfig.reportBusBatchSize();
+        // every report is needed to complete its transaction, the pipeline holds the bus rather than lose one
+        reportBus.subscribe("pipeline", busBufferSize, busBatchSize, ReportBus.Overflow.BLOCK, reports -> {
+            for (Report report : reports) {
+                reportsByStatus[report.status().ordinal()].increment();
+                if (report.status() != TransactionStatus.PROCESSING) {
+                    tracer.complete(report.transactionId().id(), report.status());
+                }
+                reportService.onReport(report);
+                reportWaiters.onReport(report);
+                admission.complete(report.transactionId().id());
+                // in ledger mode the journal is committed once the report is written behind
+                if (journal != null && !transactionWorkers.writesBehind()) {
+                    journal.commit(report.transactionId().id());
                 }
             }
         });
+        // publishing never blocks, the reports the bus drops anyway are announced to the /events subscribers
+        reportBus.subscribe("events", busBufferSize, busBatchSize, ReportBus.Overflow.DROP, reports -> reports.forEach(reportBroadcaster::publish),
+                reportBroadcaster::publishMissed);
+        if (ApplicationConfig.reportLogEvery() > 0) {
+            reportBus.subscribe("log", busBufferSize, busBatchSize, ReportBus.Overflow.DROP, sampledReportLog(ApplicationConfig.reportLogEvery()));
+        }
+        reportBus.registerMetrics(metrics);
+        reportBus.start(executorService);
+
+        if (journal != null) {
+            // replayed entries are in flight again before the flusher moves the checkpoint
+            UserAccountRepository userAccountRepository = new UserAccountRepository(dataSource);
+            JournalReplay replay = new JournalReplay(userAccountRepository, new ReportTransactionRepository(dataSource), new WithdrawalRepository(dataSource));
+            replayTransactionJournal(journal, replay, admission, transactionWorkers, withdrawalQueue);
+            // the legs only matter to the entries still in the journal, which are never that old
+            int purged = userAccountRepository.deleteLegsCreatedBefore(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(LEG_RETENTION_DAYS));
+            logger.info("Purged {} transaction legs", purged);
+            executorService.execute(journal);
+        }
 
-        ReportService reportService = new ReportService(dataSource);
-        
         // Setup Javalin
         Javalin app = Javalin.create(config -> {
             config.staticFiles.add(staticFiles -> {
                 staticFiles.directory = "/public";
             });
-        }).start(7000);
+        }).start(ApplicationConfig.serverPort());
 
         // Endpoint to transfer money
         app.post("/transfer", ctx -> {
             try {
                 String fromUser = ctx.formParam("fromUser");
                 String toUser = ctx.formParam("toUser");
-                BigDecimal amount = new BigDecimal(ctx.formParam("amount"));
+                Money amount = Money.parse(ctx.formParam("amount"));
 
                 Transfer transfer = new Transfer(new TransactionId(UUID.randomUUID(), fromUser), fromUser, toUser, amount);
                 logger.info("Transaction initiated: {}", transfer);
-                transactionQueue.put(transfer);
-
-                ctx.json(String.format("{ 'transation_id':'%s', 'message':'Transfer initiated'}", transfer.transactionId().id()));
+                accept(ctx, transfer, "Transfer initiated", idempotencyKeys, admission, journal, transactionWorkers, tracer, reportService);
             } catch (IllegalArgumentException e) {
                 ctx.status(422).result(String.format("Invalid request: %s", e.getMessage()));
             }
         });
 
+        // Endpoint to transfer money in bulk, one transfer per line of an NDJSON or CSV body
+        app.post("/transfers/batch", ctx -> {
+            String contentType = ctx.contentType() == null ? "" : ctx.contentType();
+            if (contentType.startsWith("application/x-ndjson")) {
+                ingestTransfers(ctx, TransferBatchParser.Format.NDJSON, admission, journal, transactionWorkers, tracer, reportService);
+            } else if (contentType.startsWith("text/csv")) {
+                ingestTransfers(ctx, TransferBatchParser.Format.CSV, admission, journal, transactionWorkers, tracer, reportService);
+            } else {
+                ctx.status(415).result("Content-Type must be application/x-ndjson or text/csv");
+            }
+        });
+
         // Endpoint to withdraw money to an external account
         app.post("/withdraw", ctx -> {
             try {
                 String fromUser = ctx.formParam("fromUser");
                 String toAddress = ctx.formParam("toAddress");
-                BigDecimal amount = new BigDecimal(ctx.formParam("amount"));
+                Money amount = Money.parse(ctx.formParam("amount"));
 
                 WithdrawalRequest withdrawal = new WithdrawalRequest(new TransactionId(UUID.randomUUID(), fromUser), fromUser, toAddress, amount);
                 logger.info("Withdrawal initiated: {}", withdrawal);
-                transactionQueue.put(withdrawal);
-
-                ctx.json(String.format("{ 'transation_id':'%s', 'message':'Withdrawal initiated'}", withdrawal.transactionId().id()));
+                accept(ctx, withdrawal, "Withdrawal initiated", idempotencyKeys, admission, journal, transactionWorkers, tracer, reportService);
             } catch (IllegalArgumentException e) {
                 ctx.status(422).result(String.format("Invalid request: %s", e.getMessage()));
             }
@@ -114,7 +238,20 @@ public class Application {
             try {
                 String user = ctx.queryParam("user");
                 if (user != null && !user.isBlank()) {
-                    ctx.json(reportService.getReportsByUser(user));
+                    String stream = ctx.queryParam("stream");
+                    String cursor = ctx.queryParam("cursor");
+                    if (stream != null) {
+                        streamReports(ctx, reportService, user, stream);
+                    } else if (ctx.queryParam("limit") == null && cursor == null) {
+                        // the unpaged request keeps its JSON array of every report
+                        streamReports(ctx, reportService, user, "json");
+                    } else {
+                        int limit = ctx.queryParamAsClass("limit", Integer.class).getOrDefault(DEFAULT_REPORT_PAGE_SIZE);
+                        if (limit < 1 || limit > MAX_REPORT_PAGE_SIZE) {
+                            throw new IllegalArgumentException("limit must be between 1 and " + MAX_REPORT_PAGE_SIZE);
+                        }
+                        ctx.json(reportService.getReportsByUser(user, cursor == null ? null : Long.valueOf(cursor), limit));
+                    }
                 } else {
                     String transactionId = ctx.queryParam("transactionId");
                     if (transactionId != null && !transactionId.isBlank()) {
@@ -128,25 +265,461 @@ public class Application {
             }
         });
 
+        // Long poll of the final status of a transaction, the request is parked without holding a thread
+        app.get("/report/wait", ctx -> {
+            try {
+                UUID transactionId = UUID.fromString(ctx.queryParamAsClass("transactionId", String.class).get());
+                int timeout = ctx.queryParamAsClass("timeout", Integer.class).getOrDefault(DEFAULT_REPORT_WAIT_SECONDS);
+                if (timeout < 0 || timeout > MAX_REPORT_WAIT_SECONDS) {
+                    throw new IllegalArgumentException("timeout must be between 0 and " + MAX_REPORT_WAIT_SECONDS + " seconds");
+                }
+                awaitReport(ctx, reportService, reportWaiters, reportWaitExecutor, transactionId, timeout);
+            } catch (IllegalArgumentException e) {
+                ctx.status(422).result(String.format("Invalid request: %s", e.getMessage()));
+            }
+        });
+
+        // Hit, miss and eviction counters of the transaction status cache
+        app.get("/report/cache", ctx -> ctx.json(reportService.cacheStats()));
+
+        // Server-sent events of the reports as they are emitted, optionally of a single user or transaction
+        app.sse("/events", client -> subscribeReports(client, reportBroadcaster));
+
+        // Subscribers, published reports and evicted slow subscribers of /events
+        app.get("/events/stats", ctx -> ctx.json(reportBroadcaster.stats()));
+
+        // Buffered, delivered and dropped reports of each subscriber of the report bus
+        app.get("/reports/bus", ctx -> ctx.json(reportBus.stats()));
+
+        // Queue depths, processing times, repository timers, connection pools and report counters in the Prometheus text format
+        app.get("/metrics", ctx -> ctx.contentType("text/plain; version=0.0.4; charset=utf-8").result(metrics.scrape()));
+
+        // Latest transactions slower than trace.slow.millis with the time spent before each stage, newest first
+        app.get("/admin/traces", ctx -> ctx.json(tracer.slowTraces()));
+
         // Serve the HTML page
         app.get("/", ctx -> ctx.redirect("/index.html"));
 
         // Graceful shutdown
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            transactionWorker.stop();
+            transactionWorkers.stop();
+            // the reports already sent reach the database before the process exits
+            try {
+                if (!transactionWorkers.flushReports(5, TimeUnit.SECONDS)) {
+                    logger.warn("Timed out flushing the reports on shutdown");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            withdrawalWorker.stop();
+            idempotencyKeys.stop();
+            reportBus.stop();
+            if (journal != null) {
+                journal.stop();
+            }
+            timer.stop();
             executorService.shutdown();
+            eventExecutor.shutdown();
+            reportWaitExecutor.shutdown();
             app.stop();
         }));
     }
 
-    private static TransactionWorker buildTransactionWorker(DataSource dataSource,
-        BlockingQueue<Transaction> transactionQueue, BlockingQueue<Report> transactionReportQueue,
+    private static TransactionWorkerPool buildTransactionWorkerPool(DataSource dataSource, int shards, TransactionWorkerConfig config,
+        BlockingQueue<Report> transactionReportQueue,
         BlockingQueue<Transaction> withdrawalQueue, BlockingQueue<Withdrawal> withdrawalReportQueue) {
-        return new TransactionWorker(dataSource, transactionQueue, transactionReportQueue, withdrawalQueue, withdrawalReportQueue);
+        return new TransactionWorkerPool(dataSource, shards, config, transactionReportQueue, withdrawalQueue, withdrawalReportQueue);
+    }
+
+    private static void registerMetrics(MetricRegistry metrics, DataSource dataSource, DataSource readerDataSource, TransactionWorkerPool transactionWorkers,
+        BlockingQueue<Report> transactionReportQueue, BlockingQueue<Transaction> withdrawalQueue, BlockingQueue<Withdrawal> withdrawalReportQueue) {
+        metrics.gauge("queue_depth", "Messages waiting in a queue", transactionReportQueue::size, "queue", "transaction-report");
+        metrics.gauge("queue_depth", "Messages waiting in a queue", withdrawalQueue::size, "queue", "withdrawal");
+        metrics.gauge("queue_depth", "Messages waiting in a queue", withdrawalReportQueue::size, "queue", "withdrawal-report");
+        transactionWorkers.registerMetrics(metrics);
+        DatabaseConfig.registerPoolMetrics(dataSource, metrics);
+        DatabaseConfig.registerPoolMetrics(readerDataSource, metrics);
+    }
+
+    private static StageTracer buildStageTracer(MetricRegistry metrics) {
+        if (!ApplicationConfig.traceEnabled()) {
+            return StageTracer.DISABLED;
+        }
+        return new StageTracer(metrics, ApplicationConfig.traceSlowMillis(), ApplicationConfig.traceBufferSize(), ApplicationConfig.traceFlightRecorder());
+    }
+
+    // Log one report out of every, called from the thread of the subscriber only
+    private static ReportBus.Subscriber sampledReportLog(int every) {
+        long[] seen = new long[1];
+        return reports -> {
+            for (Report report : reports) {
+                if (seen[0]++ % every == 0) {
+                    logger.info("Transaction report: {}", report);
+                }
+            }
+        };
+    }
+
+    // Reports drained by status, indexed by the ordinal of the status
+    private static Counter[] reportCounters(MetricRegistry metrics) {
+        TransactionStatus[] statuses = TransactionStatus.values();
+        Counter[] counters = new Counter[statuses.length];
+        for (TransactionStatus status : statuses) {
+            counters[status.ordinal()] = metrics.counter("transaction_reports_total", "Transaction reports emitted by status", "status", status.name());
+        }
+        return counters;
+    }
+
+    private static TransactionJournal buildTransactionJournal(TransactionWorkerPool transactionWorkers) throws IOException {
+        String directory = ApplicationConfig.journalDirectory();
+        if (directory == null || directory.isBlank()) {
+            return null;
+        }
+        TransactionJournal journal = TransactionJournal.open(Path.of(directory), ApplicationConfig.journalSegmentBytes(), ApplicationConfig.journalFlushMicros());
+        if (transactionWorkers.writesBehind()) {
+            transactionWorkers.onDurable(report -> journal.commit(report.transactionId().id()));
+        }
+        return journal;
+    }
+
+    // Resume the journaled transactions not processed before the last stop from the legs they already applied
+    private static void replayTransactionJournal(TransactionJournal journal, JournalReplay replay, AdmissionController admission,
+        TransactionWorkerPool transactionWorkers, BlockingQueue<Transaction> withdrawalQueue) throws InterruptedException {
+        int replayed = 0;
+        for (Transaction transaction : journal.replay()) {
+            JournalReplay.Resumed resumed = replay.resume(transaction);
+            switch (resumed.action()) {
+                case SKIP -> journal.commit(transaction.transactionId().id());
+                case SUBMIT -> {
+                    // replayed transactions go through admission too, the pipeline is already running
+                    admitWaiting(admission, transaction.transactionId().id());
+                    transactionWorkers.submit(resumed.transaction());
+                    replayed++;
+                }
+                case REQUEST_WITHDRAWAL -> {
+                    withdrawalQueue.put(resumed.transaction());
+                    journal.commit(transaction.transactionId().id());
+                    replayed++;
+                }
+            }
+        }
+        logger.info("Replayed {} transactions from the journal", replayed);
+    }
+
+    // Writes the receipts of the rows of a batch once their transfers are submitted
+    @FunctionalInterface
+    private interface ReceiptWriter {
+        void write(List<TransferBatchParser.Row> rows) throws IOException;
+    }
+
+    /*
+     * Parse the body as it is received and submit the valid rows in chunks, each chunk is
+     * admitted, journaled and handed to the workers before the receipts of its rows are
+     * written. The response is NDJSON: the batch id, one receipt per row, then the summary.
+     */
+    private static void ingestTransfers(Context ctx, TransferBatchParser.Format format, AdmissionController admission,
+        TransactionJournal journal, TransactionWorkerPool transactionWorkers, StageTracer tracer, ReportService reportService) throws IOException, InterruptedException {
+        UUID batchId = UUID.randomUUID();
+        long start = System.nanoTime();
+        int chunkSize = ApplicationConfig.batchChunkSize();
+        List<TransferBatchParser.Row> chunk = new ArrayList<>(chunkSize);
+        TransferBatchParser parser = new TransferBatchParser(new InputStreamReader(ctx.req().getInputStream(), StandardCharsets.UTF_8), format);
+
+        ctx.contentType("application/x-ndjson");
+        JsonMapper jsonMapper = ctx.jsonMapper();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(ctx.outputStream(), StandardCharsets.UTF_8))) {
+            writer.write(jsonMapper.toJsonString(Map.of("batchId", batchId), Map.class));
+            writer.write('\n');
+            long[] counts = new long[2];
+            ReceiptWriter receipts = rows -> {
+                for (TransferBatchParser.Row submitted : rows) {
+                    counts[submitted.transfer() != null ? 0 : 1]++;
+                    UUID transactionId = submitted.transfer() == null ? null : submitted.transfer().transactionId().id();
+                    writer.write(jsonMapper.toJsonString(new BatchReceipt.Row(submitted.line(), transactionId, submitted.error()), BatchReceipt.Row.class));
+                    writer.write('\n');
+                }
+                writer.flush();
+            };
+            TransferBatchParser.Row row;
+            do {
+                row = parser.next();
+                if (row != null) {
+                    chunk.add(row);
+                }
+                if (chunk.size() == chunkSize || (row == null && !chunk.isEmpty())) {
+                    submitChunk(chunk, admission, journal, transactionWorkers, tracer, reportService, receipts);
+                    chunk.clear();
+                }
+            } while (row != null);
+            long accepted = counts[0];
+            long rejected = counts[1];
+
+            long elapsedNanos = Math.max(1, System.nanoTime() - start);
+            long rowsPerSecond = (accepted + rejected) * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+            logger.info("Batch {}: {} transfers accepted, {} rows rejected, {} rows/s", batchId, accepted, rejected, rowsPerSecond);
+            writer.write(jsonMapper.toJsonString(new BatchReceipt(batchId, accepted, rejected, rowsPerSecond), BatchReceipt.class));
+            writer.write('\n');
+        }
+    }
+
+    /*
+     * Admit, journal then submit the valid transfers of a chunk. Bulk transfers wait for
+     * admission instead of being rejected; the transfers admitted without waiting are
+     * submitted together, the wait only happens once they are in the pipeline.
+     */
+    private static void submitChunk(List<TransferBatchParser.Row> chunk, AdmissionController admission, TransactionJournal journal,
+        TransactionWorkerPool transactionWorkers, StageTracer tracer, ReportService reportService, ReceiptWriter receipts)
+        throws IOException, InterruptedException {
+        List<Transaction> admitted = new ArrayList<>(chunk.size());
+        // row of each admitted transfer, the receipts are written up to the first one not submitted
+        List<Integer> admittedRows = new ArrayList<>(chunk.size());
+        int next = 0;
+        while (next < chunk.size()) {
+            admitted.clear();
+            admittedRows.clear();
+            int submitted = 0;
+            long acceptedAt = System.nanoTime();
+            try {
+                for (; next < chunk.size(); next++) {
+                    Transaction transfer = chunk.get(next).transfer();
+                    if (transfer == null) {
+                        continue;
+                    }
+                    if (admitted.isEmpty()) {
+                        admitWaiting(admission, transfer.transactionId().id());
+                    } else if (admission.tryAdmit(transfer.transactionId().id()) != AdmissionController.Decision.ADMITTED) {
+                        break;
+                    }
+                    admitted.add(transfer);
+                    admittedRows.add(next);
+                    tracer.start(transfer.transactionId().id(), transfer.getClass().getSimpleName(), acceptedAt);
+                    reportService.onAdmitted(transfer.transactionId().id());
+                }
+                if (!journal(journal, admitted)) {
+                    throw new IllegalStateException("Transaction journal flush timed out");
+                }
+                for (Transaction transfer : admitted) {
+                    tracer.stamp(transfer.transactionId().id(), Stage.SUBMITTED);
+                    transactionWorkers.submit(transfer);
+                    submitted++;
+                }
+            } catch (RuntimeException | InterruptedException e) {
+                // the transfers already submitted go on, only the others are taken back
+                for (Transaction transfer : admitted.subList(submitted, admitted.size())) {
+                    admission.cancel(transfer.transactionId().id());
+                    tracer.discard(transfer.transactionId().id());
+                    abort(journal, transfer.transactionId().id());
+                }
+                receipts.write(chunk.subList(0, submitted < admittedRows.size() ? admittedRows.get(submitted) : next));
+                throw e;
+            }
+        }
+        receipts.write(chunk);
+    }
+
+    private static void admitWaiting(AdmissionController admission, UUID transactionId) throws InterruptedException {
+        while (admission.admit(transactionId, 1, TimeUnit.SECONDS) != AdmissionController.Decision.ADMITTED) {
+            logger.debug("Waiting for admission of {}", transactionId);
+        }
+    }
+
+    // Write the reports of a user as they are read from the database, as NDJSON or as a JSON array
+    private static void streamReports(Context ctx, ReportService reportService, String user, String format) throws IOException {
+        boolean ndjson = switch (format) {
+            case "ndjson" -> true;
+            case "json" -> false;
+            default -> throw new IllegalArgumentException("stream must be ndjson or json");
+        };
+        ctx.contentType(ndjson ? "application/x-ndjson" : "application/json");
+        JsonMapper jsonMapper = ctx.jsonMapper();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(ctx.outputStream(), StandardCharsets.UTF_8))) {
+            if (!ndjson) {
+                writer.write('[');
+            }
+            boolean[] first = {true};
+            reportService.streamReportsByUser(user, report -> {
+                try {
+                    if (!ndjson && !first[0]) {
+                        writer.write(',');
+                    }
+                    first[0] = false;
+                    writer.write(jsonMapper.toJsonString(report, Report.class));
+                    if (ndjson) {
+                        writer.write('\n');
+                    }
+                } catch (IOException e) {
+                    // the client went away, stops reading the rows
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (!ndjson) {
+                writer.write(']');
+            }
+        }
+    }
+
+    // Answer with the final report once emitted, or with the latest known one when the timeout expires
+    private static void awaitReport(Context ctx, ReportService reportService, ReportWaiters reportWaiters, Executor executor, UUID transactionId,
+        int timeoutSeconds) {
+        CompletableFuture<Optional<Report>> waiter = reportWaiters.await(transactionId, timeoutSeconds, TimeUnit.SECONDS);
+        // registered first, a final report emitted before the registration is found here
+        reportService.getLatestReportByTransaction(transactionId).ifPresent(reportWaiters::onReport);
+        // the lookup and the serialisation run on the executor, the waiter completes on the timer wheel or the report bus
+        ctx.future(() -> waiter.thenAcceptAsync(report -> report.or(() -> reportService.getLatestReportByTransaction(transactionId))
+                .ifPresentOrElse(ctx::json, () -> ctx.status(422).result("Transaction not found")), executor));
+    }
+
+    // Keep the event stream open until the client leaves or is evicted for not keeping up
+    private static void subscribeReports(SseClient client, ReportBroadcaster reportBroadcaster) {
+        Predicate<Report> filter;
+        try {
+            filter = reportFilter(client.ctx().queryParam("user"), client.ctx().queryParam("transactionId"));
+        } catch (IllegalArgumentException e) {
+            // the event stream is already answered, the error is sent as an event
+            client.sendEvent("error", String.format("Invalid request: %s", e.getMessage()));
+            client.close();
+            return;
+        }
+        client.keepAlive();
+        ReportBroadcaster.Subscription subscription = reportBroadcaster.subscribe(filter, report -> {
+            client.sendEvent("report", report);
+            if (client.terminated()) {
+                throw new IllegalStateException("Event stream client disconnected");
+            }
+        }, missed -> {
+            client.sendEvent("missed", String.format("%d reports were not delivered, resync with GET /report", missed));
+            if (client.terminated()) {
+                throw new IllegalStateException("Event stream client disconnected");
+            }
+        }, () -> {
+            client.sendEvent("evicted", "Too many undelivered reports, reconnect");
+            client.close();
+        });
+        client.onClose(subscription::close);
+    }
+
+    private static Predicate<Report> reportFilter(String user, String transactionId) {
+        Predicate<Report> filter = report -> true;
+        if (user != null && !user.isBlank()) {
+            filter = filter.and(report -> user.equals(report.transactionId().userId()));
+        }
+        if (transactionId != null && !transactionId.isBlank()) {
+            UUID id = UUID.fromString(transactionId);
+            filter = filter.and(report -> id.equals(report.transactionId().id()));
+        }
+        return filter;
+    }
+
+    /*
+     * Admit, journal and submit a new transaction and answer with its id. A request with an
+     * Idempotency-Key already bound to a transaction of the user is answered with the id of
+     * that transaction instead. The key stays pending until the transaction is submitted, a
+     * retry meanwhile gets a 409; it is released if the transaction is not accepted.
+     */
+    private static void accept(Context ctx, Transaction transaction, String message, IdempotencyKeys idempotencyKeys,
+        AdmissionController admission, TransactionJournal journal, TransactionWorkerPool transactionWorkers, StageTracer tracer,
+        ReportService reportService) throws InterruptedException {
+        long acceptedAt = System.nanoTime();
+        UUID transactionId = transaction.transactionId().id();
+        String userId = transaction.transactionId().userId();
+        String idempotencyKey = ctx.header(IDEMPOTENCY_KEY_HEADER);
+        if (idempotencyKey != null) {
+            Optional<IdempotencyKeys.Binding> original = idempotencyKeys.claim(userId, idempotencyKey, transactionId);
+            if (original.isPresent() && original.get().pending()) {
+                // the first request is still being accepted, its transaction may never exist
+                ctx.header("Retry-After", "1");
+                ctx.status(409).result("A request with this Idempotency-Key is in progress, retry later");
+                return;
+            }
+            if (original.isPresent()) {
+                logger.info("Idempotent retry of {} with key {}", original.get().transactionId(), idempotencyKey);
+                ctx.header("Idempotent-Replayed", "true");
+                ctx.json(String.format("{ 'transation_id':'%s', 'message':'%s'}", original.get().transactionId(), message));
+                return;
+            }
+        }
+        if (!admit(admission, transactionId, ctx)) {
+            if (idempotencyKey != null) {
+                idempotencyKeys.release(userId, idempotencyKey, transactionId);
+            }
+            return;
+        }
+        tracer.start(transactionId, transaction.getClass().getSimpleName(), acceptedAt);
+        reportService.onAdmitted(transactionId);
+        boolean submitted = false;
+        try {
+            if (journal(journal, transaction)) {
+                tracer.stamp(transactionId, Stage.SUBMITTED);
+                transactionWorkers.submit(transaction);
+                submitted = true;
+            }
+        } finally {
+            if (!submitted) {
+                admission.cancel(transactionId);
+                tracer.discard(transactionId);
+                abort(journal, transactionId);
+                if (idempotencyKey != null) {
+                    idempotencyKeys.release(userId, idempotencyKey, transactionId);
+                }
+            }
+        }
+        if (!submitted) {
+            // the transaction may not survive a crash of the machine, the client retries it
+            ctx.header("Retry-After", "1");
+            ctx.status(503).result("Transaction journal flush timed out, retry later");
+            return;
+        }
+        if (idempotencyKey != null) {
+            idempotencyKeys.confirm(userId, idempotencyKey, transactionId);
+        }
+        ctx.json(String.format("{ 'transation_id':'%s', 'message':'%s'}", transactionId, message));
+    }
+
+    // Reject with 429 or 503 and a Retry-After hint when the pipeline cannot take the transaction
+    private static boolean admit(AdmissionController admission, UUID transactionId, Context ctx) {
+        AdmissionController.Decision decision = admission.tryAdmit(transactionId);
+        if (decision == AdmissionController.Decision.ADMITTED) {
+            return true;
+        }
+        ctx.header("Retry-After", String.valueOf(admission.retryAfterSeconds()));
+        if (decision == AdmissionController.Decision.THROTTLED) {
+            ctx.status(429).result("Too many transactions in flight, retry later");
+        } else {
+            ctx.status(503).result("Transaction pipeline saturated, retry later");
+        }
+        return false;
+    }
+
+    // Journal an accepted transaction before it is answered, a null journal is disabled; false if the sync flush timed out
+    private static boolean journal(TransactionJournal journal, Transaction transaction) throws InterruptedException {
+        return journal(journal, List.of(transaction));
+    }
+
+    // The transactions share a single wait for the group flush
+    private static boolean journal(TransactionJournal journal, List<Transaction> transactions) throws InterruptedException {
+        if (journal == null || transactions.isEmpty()) {
+            return true;
+        }
+        long sequence = 0;
+        for (Transaction transaction : transactions) {
+            sequence = journal.append(transaction);
+        }
+        if (ApplicationConfig.journalSync() && !journal.awaitFlushed(sequence, 1, TimeUnit.SECONDS)) {
+            logger.warn("Journal flush of {} transactions timed out", transactions.size());
+            return false;
+        }
+        return true;
+    }
+
+    // A transaction journaled but not submitted must not be replayed, its client was answered with an error
+    private static void abort(TransactionJournal journal, UUID transactionId) {
+        if (journal != null) {
+            journal.abort(transactionId);
+        }
     }
 
     private static WithdrawalWorker buildWithdrawalWorker(DataSource dataSource, WithdrawalService withdrawalService, 
-        BlockingQueue<Transaction> withdrawalQueue, BlockingQueue<Withdrawal> withdrawalReportQueue) {
-        return new WithdrawalWorker(dataSource, withdrawalService, withdrawalQueue, withdrawalReportQueue);   
+        BlockingQueue<Transaction> withdrawalQueue, BlockingQueue<Withdrawal> withdrawalReportQueue, TimerWheel timer) {
+        return new WithdrawalWorker(dataSource, withdrawalService, withdrawalQueue, withdrawalReportQueue, timer, ApplicationConfig.withdrawalWorkerConfig());
     }
 }
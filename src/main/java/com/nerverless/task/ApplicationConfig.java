@@ -0,0 +1,191 @@
+package com.nerverless.task;
+
+import com.nerverless.task.dao.SqliteProfile;
+import com.nerverless.task.queue.QueueFactory;
+import com.nerverless.task.queue.WaitStrategy;
+import com.nerverless.task.workers.TransactionWorkerConfig;
+import com.nerverless.task.workers.WithdrawalWorkerConfig;
+
+/**
+ * Runtime settings of the application, read from system properties
+ * (e.g. {@code ./gradlew run -Dworker.shards=4}) with defaults matching
+ * the original single worker setup.
+ */
+public class ApplicationConfig {
+
+    private ApplicationConfig() {
+    }
+
+    // HTTP port of the API and of the web page
+    public static int serverPort() {
+        return Integer.getInteger("server.port", 7000);
+    }
+
+    // SQLite tuning of the connections: default, durable or fast
+    public static SqliteProfile sqliteProfile() {
+        return SqliteProfile.valueOf(System.getProperty("db.profile", "durable").toUpperCase());
+    }
+
+    // Read-only connections of the report queries, the writes all share a single connection
+    public static int readerPoolSize() {
+        return Integer.getInteger("db.readers", 4);
+    }
+
+    // Number of transaction worker shards, accounts are hash partitioned over them
+    public static int workerShards() {
+        return Integer.getInteger("worker.shards", 1);
+    }
+
+    // Group commit and fairness of the transaction workers, a batch size of 1 commits every message on its own
+    public static TransactionWorkerConfig transactionWorkerConfig() {
+        return TransactionWorkerConfig.defaults()
+                .withBatch(Integer.getInteger("worker.batch.size", 1), Long.getLong("worker.batch.linger.micros", 200L))
+                .withWeights(Integer.getInteger("worker.weight.transactions", 1), Integer.getInteger("worker.weight.completions", 1))
+                .withLedger(Boolean.getBoolean("worker.ledger"))
+                .withQueueCapacity(Integer.getInteger("queue.transactions.capacity", 10_000))
+                .withQueueFactory(queueFactory())
+                .withReportWriter(Integer.getInteger("worker.reports.batch.size", 256), Long.getLong("worker.reports.linger.micros", 1000L))
+                // the replay of the journal resumes the transactions from the legs already applied
+                .withLegs(journalDirectory() != null && !journalDirectory().isBlank());
+    }
+
+    // Directory of the write-ahead journal of the accepted transactions, null disables the journal
+    public static String journalDirectory() {
+        return System.getProperty("journal.dir");
+    }
+
+    public static int journalSegmentBytes() {
+        return Integer.getInteger("journal.segment.bytes", 64 * 1024 * 1024);
+    }
+
+    // Interval of the group flush of the journal to the device
+    public static long journalFlushMicros() {
+        return Long.getLong("journal.flush.micros", 1000L);
+    }
+
+    // Wait for the group flush before answering a request instead of relying on the page cache
+    public static boolean journalSync() {
+        return Boolean.getBoolean("journal.sync");
+    }
+
+    // Transport of the pipeline queues: linked blocking queues or ring buffers with the given wait strategy
+    public static QueueFactory queueFactory() {
+        String type = System.getProperty("queue.type", "linked");
+        return switch (type) {
+            case "linked" -> QueueFactory.linked();
+            case "ring" -> QueueFactory.ring(WaitStrategy.named(System.getProperty("queue.wait.strategy", "park")));
+            default -> throw new IllegalArgumentException("Unknown queue type: " + type);
+        };
+    }
+
+    public static int withdrawalQueueCapacity() {
+        return Integer.getInteger("queue.withdrawals.capacity", 10_000);
+    }
+
+    public static int transactionReportQueueCapacity() {
+        return Integer.getInteger("queue.reports.capacity", 10_000);
+    }
+
+    public static int withdrawalReportQueueCapacity() {
+        return Integer.getInteger("queue.withdrawal.reports.capacity", 10_000);
+    }
+
+    // Latest reports of the recent transactions kept in memory for the status lookups
+    public static int reportCacheSize() {
+        return Integer.getInteger("report.cache.size", 10_000);
+    }
+
+    public static long reportCacheTtlSeconds() {
+        return Long.getLong("report.cache.ttl.seconds", 60L);
+    }
+
+    // Bounds of the adaptive concurrency limit of the transactions in flight
+    public static int admissionMinLimit() {
+        return Integer.getInteger("admission.limit.min", 16);
+    }
+
+    public static int admissionMaxLimit() {
+        return Integer.getInteger("admission.limit.max", 1000);
+    }
+
+    // Reports buffered for each /events subscriber, a subscriber falling further behind is evicted
+    public static int eventBufferSize() {
+        return Integer.getInteger("events.buffer.size", 256);
+    }
+
+    public static int eventThreads() {
+        return Integer.getInteger("events.threads", 2);
+    }
+
+    // Time a write to an /events subscriber may block before the subscriber is evicted
+    public static long eventWriteTimeoutMillis() {
+        return Long.getLong("events.write.timeout.millis", 5000);
+    }
+
+    // Reports buffered for each subscriber of the report bus, and handed to it at once at most
+    public static int reportBusBufferSize() {
+        return Integer.getInteger("reports.bus.buffer.size", 8192);
+    }
+
+    public static int reportBusBatchSize() {
+        return Integer.getInteger("reports.bus.batch.size", 256);
+    }
+
+    // Log one report out of this many, 0 disables the report log
+    public static int reportLogEvery() {
+        return Integer.getInteger("reports.log.every", 100);
+    }
+
+    // Resolution of the timer wheel of the long polls and withdrawal checks, timeouts fire up to one tick late
+    public static long timerTickMillis() {
+        return Long.getLong("timer.tick.millis", 10L);
+    }
+
+    public static int timerTicksPerWheel() {
+        return Integer.getInteger("timer.ticks", 512);
+    }
+
+    // Rows of a bulk transfer request admitted, journaled and submitted together
+    public static int batchChunkSize() {
+        return Integer.getInteger("batch.chunk.size", 500);
+    }
+
+    // Idempotency keys kept in memory, older ones are still found in the database until they expire
+    public static int idempotencyCacheSize() {
+        return Integer.getInteger("idempotency.cache.size", 100_000);
+    }
+
+    public static long idempotencyTtlHours() {
+        return Long.getLong("idempotency.ttl.hours", 24L);
+    }
+
+    // Backoff of the withdrawal status checks, concurrency and timeout of the calls to the withdrawal provider
+    public static WithdrawalWorkerConfig withdrawalWorkerConfig() {
+        return WithdrawalWorkerConfig.defaults()
+                .withCheckDelays(Long.getLong("withdrawal.check.initial.millis", 500L), Long.getLong("withdrawal.check.max.millis", 30_000L))
+                .withProviderCalls(Integer.getInteger("withdrawal.provider.concurrency", 16), Long.getLong("withdrawal.provider.timeout.millis", 5_000L));
+    }
+
+    // Stage timestamps of the transactions, aggregated in the metrics; the slower ones are kept for /admin/traces
+    public static boolean traceEnabled() {
+        return Boolean.parseBoolean(System.getProperty("trace.enabled", "true"));
+    }
+
+    public static long traceSlowMillis() {
+        return Long.getLong("trace.slow.millis", 1000L);
+    }
+
+    public static int traceBufferSize() {
+        return Integer.getInteger("trace.buffer.size", 256);
+    }
+
+    // Traces of the transactions not reported after this long are dropped, their transaction was lost on its way
+    public static long traceMaxAgeSeconds() {
+        return Long.getLong("trace.max.age.seconds", 600L);
+    }
+
+    // Commit a flight recorder event for every completed transaction, recorded only while a recording enables it
+    public static boolean traceFlightRecorder() {
+        return Boolean.getBoolean("trace.jfr");
+    }
+}
@@ -0,0 +1,145 @@
+package com.nerverless.task.admission;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Admission control of the transactions entering the pipeline. A transaction is
+ * in flight from its admission until its first report, the number of transactions
+ * in flight is capped by a concurrency limit adapted to the observed latency:
+ * increased by one per limit of fast completions, decreased by a tenth when a
+ * completion takes more than twice the fastest one seen in the current window.
+ * <p>
+ * A transaction is only admitted while every downstream queue has room for all
+ * the transactions in flight, so the workers never block handing them over and
+ * the queues stay bounded.
+ */
+public class AdmissionController {
+
+    public enum Decision {
+        ADMITTED,
+        // concurrency limit reached, the client should slow down
+        THROTTLED,
+        // a downstream queue is full, the pipeline cannot take more work
+        SATURATED
+    }
+
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double BACKOFF_RATIO = 0.9;
+    // samples after which the fastest latency is forgotten, it follows a slower database
+    private static final int LATENCY_WINDOW = 1000;
+    private static final long SATURATED_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final List<BlockingQueue<?>> downstream;
+    private final LongSupplier nanoClock;
+
+    private final Map<UUID, Long> inFlight = new HashMap<>();
+    private double limit;
+    private long minLatencyNanos = Long.MAX_VALUE;
+    private long windowMinLatencyNanos = Long.MAX_VALUE;
+    private int windowSamples;
+    private double averageLatencyNanos;
+
+    public AdmissionController(int minLimit, int maxLimit, List<BlockingQueue<?>> downstream) {
+        this(minLimit, maxLimit, downstream, System::nanoTime);
+    }
+
+    /*
+     * For testing purposes this constructor with the clock is added
+     */
+    AdmissionController(int minLimit, int maxLimit, List<BlockingQueue<?>> downstream, LongSupplier nanoClock) {
+        if (minLimit < 1) {
+            throw new IllegalArgumentException("minLimit must be greater than zero");
+        }
+        if (maxLimit < minLimit) {
+            throw new IllegalArgumentException("maxLimit cannot be lower than minLimit");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.downstream = List.copyOf(downstream);
+        this.nanoClock = nanoClock;
+        this.limit = minLimit;
+    }
+
+    public synchronized Decision tryAdmit(UUID transactionId) {
+        if (inFlight.size() >= (int) limit) {
+            return Decision.THROTTLED;
+        }
+        for (BlockingQueue<?> queue : downstream) {
+            if (queue.remainingCapacity() <= inFlight.size()) {
+                return Decision.SATURATED;
+            }
+        }
+        inFlight.put(transactionId, nanoClock.getAsLong());
+        return Decision.ADMITTED;
+    }
+
+    // Wait for admission instead of rejecting, for bulk and replayed transactions; returns the last decision on timeout
+    public synchronized Decision admit(UUID transactionId, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Decision decision;
+        while ((decision = tryAdmit(transactionId)) != Decision.ADMITTED) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            // completions notify, the downstream queues draining do not
+            TimeUnit.NANOSECONDS.timedWait(this, Math.min(remaining, SATURATED_RECHECK_NANOS));
+        }
+        return decision;
+    }
+
+    // Release an admitted transaction, the time since its admission adapts the limit; unknown ids are ignored
+    public synchronized void complete(UUID transactionId) {
+        Long admitted = inFlight.remove(transactionId);
+        if (admitted == null) {
+            return;
+        }
+        notifyAll();
+        long latency = nanoClock.getAsLong() - admitted;
+        averageLatencyNanos = averageLatencyNanos == 0 ? latency : averageLatencyNanos * 0.9 + latency * 0.1;
+
+        windowMinLatencyNanos = Math.min(windowMinLatencyNanos, latency);
+        minLatencyNanos = Math.min(minLatencyNanos, latency);
+        if (++windowSamples == LATENCY_WINDOW) {
+            minLatencyNanos = windowMinLatencyNanos;
+            windowMinLatencyNanos = Long.MAX_VALUE;
+            windowSamples = 0;
+        }
+
+        if (latency > minLatencyNanos * LATENCY_TOLERANCE) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        } else if (inFlight.size() + 1 >= limit / 2) {
+            // only grow when the limit is actually in use
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    // Release without a latency sample, for transactions that failed before reaching the workers
+    public synchronized void cancel(UUID transactionId) {
+        if (inFlight.remove(transactionId) != null) {
+            notifyAll();
+        }
+    }
+
+    public synchronized int limit() {
+        return (int) limit;
+    }
+
+    public synchronized int inFlight() {
+        return inFlight.size();
+    }
+
+    // Hint for the Retry-After header: time for the transactions in flight to drain at the current limit
+    public synchronized long retryAfterSeconds() {
+        double drainNanos = inFlight.size() / limit * averageLatencyNanos;
+        return Math.max(1, (long) Math.ceil(drainNanos / TimeUnit.SECONDS.toNanos(1)));
+    }
+}
@@ -0,0 +1,35 @@
+package com.nerverless.task.dao;
+
+import java.util.UUID;
+
+import com.nerverless.task.model.Money;
+
+/**
+ * Balance mutations of user accounts. Each operation is applied atomically and only
+ * when its guard holds (enough balance to debit, enough reserve to settle or release),
+ * otherwise nothing is changed and the reason is returned.
+ * <p>
+ * The operations taking a transaction id record their {@link TransactionLeg} with
+ * the change, atomically too; a null transaction id records nothing.
+ */
+public interface AccountBalances {
+
+    // Move amount from one account balance to another
+    BalanceUpdate transfer(UUID transactionId, String fromAccountName, String toAccountName, Money amount);
+
+    BalanceUpdate debit(UUID transactionId, String accountName, Money amount);
+
+    BalanceUpdate credit(UUID transactionId, String accountName, Money amount);
+
+    // Credit the source account back when the credit leg of a transfer failed
+    BalanceUpdate refund(UUID transactionId, String accountName, Money amount);
+
+    // Move amount from the balance to the reserve, when a withdrawal is requested
+    BalanceUpdate reserve(UUID transactionId, String accountName, Money amount);
+
+    // Remove amount from the reserve, when a withdrawal is completed
+    BalanceUpdate settle(String accountName, Money amount);
+
+    // Move amount from the reserve back to the balance, when a withdrawal failed
+    BalanceUpdate release(String accountName, Money amount);
+}
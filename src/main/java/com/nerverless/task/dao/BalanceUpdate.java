@@ -0,0 +1,15 @@
+package com.nerverless.task.dao;
+
+/**
+ * Outcome of a conditional balance update, see {@link AccountBalances}.
+ */
+public enum BalanceUpdate {
+    UPDATED,
+    INSUFFICIENT_FUNDS,
+    // the debited (or only) account of the operation does not exist
+    ACCOUNT_NOT_FOUND,
+    // the credited account of a transfer does not exist
+    TO_ACCOUNT_NOT_FOUND,
+    // the update could not be executed, nothing was changed
+    FAILED
+}
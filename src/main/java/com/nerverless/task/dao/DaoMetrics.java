@@ -0,0 +1,43 @@
+package com.nerverless.task.dao;
+
+import com.nerverless.task.metrics.Histogram;
+import com.nerverless.task.metrics.MetricRegistry;
+
+final class DaoMetrics {
+
+    private DaoMetrics() {
+    }
+
+    interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    interface Run<E extends Exception> {
+        void run() throws E;
+    }
+
+    // Duration of the calls of a repository method, including the wait for a pooled connection
+    static Histogram timer(String repository, String method) {
+        return MetricRegistry.defaultRegistry().histogram("dao_call_duration_seconds", "Duration of the repository calls",
+                "repository", repository, "method", method);
+    }
+
+    // Run a repository call and record its duration, whether it returns or throws
+    static <T, E extends Exception> T timed(Histogram timer, Call<T, E> call) throws E {
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } finally {
+            timer.recordSince(start);
+        }
+    }
+
+    static <E extends Exception> void timed(Histogram timer, Run<E> run) throws E {
+        long start = System.nanoTime();
+        try {
+            run.run();
+        } finally {
+            timer.recordSince(start);
+        }
+    }
+}
@@ -2,18 +2,49 @@ package com.nerverless.task.dao;
 
 import javax.sql.DataSource;
 
+import com.nerverless.task.metrics.MetricRegistry;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 
 public class DatabaseConfig {
     public static DataSource createDataSource(String dbUrl, int maximumPoolSize) {
+        return createDataSource(dbUrl, maximumPoolSize, SqliteProfile.DEFAULT, false, "HikariCP");
+    }
+
+    // Single connection pool for every write, SQLite has one writer at a time anyway and never returns SQLITE_BUSY to it
+    public static DataSource createWriterDataSource(String dbUrl, SqliteProfile profile) {
+        return createDataSource(dbUrl, 1, profile, false, "writer");
+    }
+
+    // Read-only connections, they do not block on the writer when the profile uses WAL
+    public static DataSource createReaderDataSource(String dbUrl, int maximumPoolSize, SqliteProfile profile) {
+        return createDataSource(dbUrl, maximumPoolSize, profile, true, "reader");
+    }
+
+    private static DataSource createDataSource(String dbUrl, int maximumPoolSize, SqliteProfile profile, boolean readOnly, String poolName) {
         HikariConfig config = new HikariConfig();
         config.setJdbcUrl(dbUrl);
         config.setDriverClassName("org.sqlite.JDBC");
         config.setMaximumPoolSize(maximumPoolSize);
         config.setConnectionTestQuery("SELECT 1");
-        config.setPoolName("HikariCP");
+        config.setPoolName(poolName);
+        // must match the open mode of the driver, it cannot be changed on an open connection
+        config.setReadOnly(readOnly);
+        config.setDataSourceProperties(profile.properties(readOnly));
 
         return new HikariDataSource(config);
     }
-}
\ No newline at end of file
+
+    // Connections of a pool read when the metrics are scraped, labelled with the pool name
+    public static void registerPoolMetrics(DataSource dataSource, MetricRegistry registry) {
+        HikariDataSource hikari = (HikariDataSource) dataSource;
+        HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+        String name = hikari.getPoolName();
+        registry.gauge("hikari_connections_active", "Connections in use", pool::getActiveConnections, "pool", name);
+        registry.gauge("hikari_connections_idle", "Connections idle in the pool", pool::getIdleConnections, "pool", name);
+        registry.gauge("hikari_connections", "Connections open in the pool", pool::getTotalConnections, "pool", name);
+        registry.gauge("hikari_connections_pending", "Threads waiting for a connection", pool::getThreadsAwaitingConnection, "pool", name);
+        registry.gauge("hikari_connections_max", "Maximum size of the pool", hikari::getMaximumPoolSize, "pool", name);
+    }
+}
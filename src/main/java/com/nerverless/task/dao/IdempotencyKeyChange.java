@@ -0,0 +1,19 @@
+package com.nerverless.task.dao;
+
+import java.util.UUID;
+
+/**
+ * A key bound to an accepted transaction, waiting to be written to the
+ * {@code idempotency_key} table. The keys are written in the order they were bound.
+ */
+public record IdempotencyKeyChange(String userId, String idempotencyKey, UUID transactionId, long createdAt) {
+
+    public IdempotencyKeyChange {
+        if (userId == null || idempotencyKey == null) {
+            throw new IllegalArgumentException("userId and idempotencyKey cannot be null");
+        }
+        if (transactionId == null) {
+            throw new IllegalArgumentException("transactionId cannot be null");
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.nerverless.task.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nerverless.task.metrics.Histogram;
+
+public class IdempotencyKeyRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdempotencyKeyRepository.class);
+
+    private static final Histogram CLAIM_TIMER = DaoMetrics.timer("IdempotencyKeyRepository", "claim");
+    private static final Histogram RELEASE_TIMER = DaoMetrics.timer("IdempotencyKeyRepository", "release");
+    private static final Histogram SAVE_ALL_TIMER = DaoMetrics.timer("IdempotencyKeyRepository", "saveAll");
+    private static final Histogram FIND_TIMER = DaoMetrics.timer("IdempotencyKeyRepository", "find");
+
+    private static final String CLAIM_SQL = "INSERT INTO idempotency_key (user_id, idempotency_key, transaction_id, created_at) VALUES (?, ?, ?, ?) "
+            + "ON CONFLICT (user_id, idempotency_key) DO UPDATE SET transaction_id = excluded.transaction_id, created_at = excluded.created_at "
+            + "WHERE idempotency_key.created_at < ?";
+    private static final Histogram DELETE_CREATED_BEFORE_TIMER = DaoMetrics.timer("IdempotencyKeyRepository", "deleteCreatedBefore");
+
+    private final DataSource dataSource;
+
+    public IdempotencyKeyRepository(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    // Bind the key to the transaction unless it is bound to another one since expiredBefore, returns that other one
+    public Optional<UUID> claim(String userId, String idempotencyKey, UUID transactionId, long createdAt, long expiredBefore) {
+        return DaoMetrics.timed(CLAIM_TIMER, () -> doClaim(userId, idempotencyKey, transactionId, createdAt, expiredBefore));
+    }
+
+    private Optional<UUID> doClaim(String userId, String idempotencyKey, UUID transactionId, long createdAt, long expiredBefore) {
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(CLAIM_SQL)) {
+            statement.setString(1, userId);
+            statement.setString(2, idempotencyKey);
+            statement.setString(3, transactionId.toString());
+            statement.setLong(4, createdAt);
+            statement.setLong(5, expiredBefore);
+            if (statement.executeUpdate() == 0) {
+                return findTransactionId(connection, userId, idempotencyKey);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to claim idempotency key {} of {}", idempotencyKey, userId, e);
+        }
+        return Optional.empty();
+    }
+
+    // Unbind the key from a transaction that was not accepted, so a retry is processed
+    public void release(String userId, String idempotencyKey, UUID transactionId) {
+        DaoMetrics.timed(RELEASE_TIMER, () -> doRelease(userId, idempotencyKey, transactionId));
+    }
+
+    private void doRelease(String userId, String idempotencyKey, UUID transactionId) {
+        String sql = "DELETE FROM idempotency_key WHERE user_id = ? AND idempotency_key = ? AND transaction_id = ?";
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, userId);
+            statement.setString(2, idempotencyKey);
+            statement.setString(3, transactionId.toString());
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Failed to release idempotency key {} of {}", idempotencyKey, userId, e);
+        }
+    }
+
+    /*
+     * Bind the keys in order in one transaction. A key bound to another transaction since
+     * the time to live is not taken over, the key was looked up in the database first.
+     */
+    public void saveAll(List<IdempotencyKeyChange> changes, long timeToLiveMillis) {
+        DaoMetrics.timed(SAVE_ALL_TIMER, () -> doSaveAll(changes, timeToLiveMillis));
+    }
+
+    private void doSaveAll(List<IdempotencyKeyChange> changes, long timeToLiveMillis) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(CLAIM_SQL)) {
+                for (IdempotencyKeyChange change : changes) {
+                    statement.setString(1, change.userId());
+                    statement.setString(2, change.idempotencyKey());
+                    statement.setString(3, change.transactionId().toString());
+                    statement.setLong(4, change.createdAt());
+                    statement.setLong(5, change.createdAt() - timeToLiveMillis);
+                    statement.executeUpdate();
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to save {} idempotency keys", changes.size(), e);
+        }
+    }
+
+    // Transaction the key is bound to since expiredBefore, if any
+    public Optional<UUID> find(String userId, String idempotencyKey, long expiredBefore) {
+        return DaoMetrics.timed(FIND_TIMER, () -> doFind(userId, idempotencyKey, expiredBefore));
+    }
+
+    private Optional<UUID> doFind(String userId, String idempotencyKey, long expiredBefore) {
+        String sql = "SELECT transaction_id FROM idempotency_key WHERE user_id = ? AND idempotency_key = ? AND created_at >= ?";
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, userId);
+            statement.setString(2, idempotencyKey);
+            statement.setLong(3, expiredBefore);
+            ResultSet resultSet = statement.executeQuery();
+            if (resultSet.next()) {
+                return Optional.of(UUID.fromString(resultSet.getString("transaction_id")));
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to find idempotency key {} of {}", idempotencyKey, userId, e);
+        }
+        return Optional.empty();
+    }
+
+    public int deleteCreatedBefore(long createdBefore) {
+        return DaoMetrics.timed(DELETE_CREATED_BEFORE_TIMER, () -> doDeleteCreatedBefore(createdBefore));
+    }
+
+    private int doDeleteCreatedBefore(long createdBefore) {
+        String sql = "DELETE FROM idempotency_key WHERE created_at < ?";
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, createdBefore);
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Failed to delete expired idempotency keys", e);
+        }
+        return 0;
+    }
+
+    private Optional<UUID> findTransactionId(Connection connection, String userId, String idempotencyKey) throws SQLException {
+        String sql = "SELECT transaction_id FROM idempotency_key WHERE user_id = ? AND idempotency_key = ?";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, userId);
+            statement.setString(2, idempotencyKey);
+            ResultSet resultSet = statement.executeQuery();
+            if (resultSet.next()) {
+                return Optional.of(UUID.fromString(resultSet.getString("transaction_id")));
+            }
+        }
+        return Optional.empty();
+    }
+}
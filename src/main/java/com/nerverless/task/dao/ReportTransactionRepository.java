@@ -14,7 +14,10 @@ import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.nerverless.task.metrics.Histogram;
+import com.nerverless.task.model.Money;
 import com.nerverless.task.model.Report;
+import com.nerverless.task.model.ReportPage;
 import com.nerverless.task.model.TransactionId;
 import com.nerverless.task.model.TransactionStatus;
 
@@ -22,6 +25,13 @@ public class ReportTransactionRepository {
 
     private static final Logger logger = LoggerFactory.getLogger(ReportTransactionRepository.class);
 
+    private static final Histogram FIND_BY_TRANSACTION_ID_TIMER = DaoMetrics.timer("ReportTransactionRepository", "findByTransactionId");
+    private static final Histogram FIND_BY_USER_ID_TIMER = DaoMetrics.timer("ReportTransactionRepository", "findByUserId");
+    private static final Histogram FIND_PAGE_BY_USER_ID_TIMER = DaoMetrics.timer("ReportTransactionRepository", "findPageByUserId");
+    private static final Histogram FIND_LATEST_BY_TRANSACTION_ID_TIMER = DaoMetrics.timer("ReportTransactionRepository", "findLatestByTransactionId");
+    private static final Histogram INSERT_TIMER = DaoMetrics.timer("ReportTransactionRepository", "insert");
+    private static final Histogram INSERT_ALL_TIMER = DaoMetrics.timer("ReportTransactionRepository", "insertAll");
+
     private final DataSource dataSource;
 
     public ReportTransactionRepository(DataSource dataSource) {
@@ -30,6 +40,10 @@ public class ReportTransactionRepository {
 
     // Find all report report by transactionId ordered by id and created_at desc
     public List<Report> findByTransactionId(UUID transactionId) {
+        return DaoMetrics.timed(FIND_BY_TRANSACTION_ID_TIMER, () -> doFindByTransactionId(transactionId));
+    }
+
+    private List<Report> doFindByTransactionId(UUID transactionId) {
         List<Report> reports = new ArrayList<>();
         String sql = "SELECT transaction_id, user_id, status, amount, message FROM report_transaction WHERE transaction_id = ? ORDER BY id DESC";
         try (Connection connection = dataSource.getConnection();
@@ -39,7 +53,7 @@ public class ReportTransactionRepository {
             while (resultSet.next()) {
                 var report = new Report(
                     new TransactionId(UUID.fromString(resultSet.getString("transaction_id")), resultSet.getString("user_id")), 
-                    resultSet.getBigDecimal("amount"), 
+                    Money.round(resultSet.getBigDecimal("amount")), 
                     TransactionStatus.valueOf(resultSet.getString("status")),
                     resultSet.getString("message"));
                 reports.add(report);
@@ -52,6 +66,10 @@ public class ReportTransactionRepository {
 
     // Find all report by userId ordered by id and created_at desc
     public List<Report> findByUserId(String userId) {
+        return DaoMetrics.timed(FIND_BY_USER_ID_TIMER, () -> doFindByUserId(userId));
+    }
+
+    private List<Report> doFindByUserId(String userId) {
         List<Report> reports = new ArrayList<>();
         String sql = "SELECT transaction_id, user_id, status, amount, message FROM report_transaction WHERE user_id = ? ORDER BY id DESC";
         try (Connection connection = dataSource.getConnection();
@@ -61,7 +79,7 @@ public class ReportTransactionRepository {
             while (resultSet.next()) {
                 var report = new Report(
                     new TransactionId(UUID.fromString(resultSet.getString("transaction_id")), resultSet.getString("user_id")), 
-                    resultSet.getBigDecimal("amount"), 
+                    Money.round(resultSet.getBigDecimal("amount")), 
                     TransactionStatus.valueOf(resultSet.getString("status")),
                     resultSet.getString("message"));
                 reports.add(report);
@@ -72,8 +90,46 @@ public class ReportTransactionRepository {
         return reports;
     }
 
+    /*
+     * Keyset pagination over the reports of a user, newest first: the rows with an id below the cursor,
+     * walked on the user_id index, which holds the id as rowid. One more row than the limit is read
+     * to know whether a next page exists.
+     */
+    public ReportPage findByUserId(String userId, long before, int limit) {
+        return DaoMetrics.timed(FIND_PAGE_BY_USER_ID_TIMER, () -> doFindByUserId(userId, before, limit));
+    }
+
+    private ReportPage doFindByUserId(String userId, long before, int limit) {
+        List<Report> reports = new ArrayList<>(limit);
+        Long next = null;
+        String sql = "SELECT id, transaction_id, user_id, status, amount, message FROM report_transaction WHERE user_id = ? AND id < ? ORDER BY id DESC LIMIT ?";
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, userId);
+            statement.setLong(2, before);
+            statement.setInt(3, limit + 1);
+            ResultSet resultSet = statement.executeQuery();
+            long lastId = 0;
+            while (resultSet.next()) {
+                if (reports.size() == limit) {
+                    next = lastId;
+                    break;
+                }
+                lastId = resultSet.getLong("id");
+                reports.add(report(resultSet));
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to get a page of reports by userId", e);
+        }
+        return new ReportPage(reports, next);
+    }
+
     // Find last report by transactionId if exists
     public Optional<Report> findLatestByTransactionId(UUID transactionId) {
+        return DaoMetrics.timed(FIND_LATEST_BY_TRANSACTION_ID_TIMER, () -> doFindLatestByTransactionId(transactionId));
+    }
+
+    private Optional<Report> doFindLatestByTransactionId(UUID transactionId) {
         String sql = "SELECT transaction_id, user_id, status, amount, message FROM report_transaction WHERE transaction_id = ? ORDER BY id DESC LIMIT 1";
         try (Connection connection = dataSource.getConnection();
                 PreparedStatement statement = connection.prepareStatement(sql)) {
@@ -82,7 +138,7 @@ public class ReportTransactionRepository {
             if (resultSet.next()) {
                 var report = new Report(
                     new TransactionId(UUID.fromString(resultSet.getString("transaction_id")), resultSet.getString("user_id")), 
-                    resultSet.getBigDecimal("amount"), 
+                    Money.round(resultSet.getBigDecimal("amount")), 
                     TransactionStatus.valueOf(resultSet.getString("status")),
                     resultSet.getString("message"));
                 return Optional.of(report);
@@ -93,15 +149,27 @@ public class ReportTransactionRepository {
         return Optional.empty();
     }
 
+    private Report report(ResultSet resultSet) throws SQLException {
+        return new Report(
+            new TransactionId(UUID.fromString(resultSet.getString("transaction_id")), resultSet.getString("user_id")),
+            Money.round(resultSet.getBigDecimal("amount")),
+            TransactionStatus.valueOf(resultSet.getString("status")),
+            resultSet.getString("message"));
+    }
+
     // Insert report transaction
     public void insert(Report report) {
+        DaoMetrics.timed(INSERT_TIMER, () -> doInsert(report));
+    }
+
+    private void doInsert(Report report) {
         String sql = "INSERT INTO report_transaction (transaction_id, user_id, status, amount, message) VALUES (?, ?, ?, ?, ?)";
         try (Connection connection = dataSource.getConnection();
                 PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setString(1, report.transactionId().id().toString());
             statement.setString(2, report.transactionId().userId());
             statement.setString(3, report.status().name());
-            statement.setBigDecimal(4, report.amount());
+            statement.setBigDecimal(4, report.amount().toBigDecimal());
             statement.setString(5, report.message());
             statement.executeUpdate();
         } catch (SQLException e) {
@@ -109,4 +177,24 @@ public class ReportTransactionRepository {
         }
     }
 
+    // Insert report transactions as one JDBC batch on a connection whose transaction is managed by the caller
+    public void insertAll(Connection connection, List<Report> reports) throws SQLException {
+        DaoMetrics.timed(INSERT_ALL_TIMER, () -> doInsertAll(connection, reports));
+    }
+
+    private void doInsertAll(Connection connection, List<Report> reports) throws SQLException {
+        String sql = "INSERT INTO report_transaction (transaction_id, user_id, status, amount, message) VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (Report report : reports) {
+                statement.setString(1, report.transactionId().id().toString());
+                statement.setString(2, report.transactionId().userId());
+                statement.setString(3, report.status().name());
+                statement.setBigDecimal(4, report.amount().toBigDecimal());
+                statement.setString(5, report.message());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+package com.nerverless.task.dao;
+
+import java.util.Properties;
+
+/**
+ * Per connection tuning of SQLite, applied by the driver when a pooled connection
+ * is opened. With WAL readers work on a snapshot and never wait for the writer,
+ * nor the writer for them.
+ */
+public enum SqliteProfile {
+
+    // SQLite defaults: rollback journal, synchronous FULL, 2MB page cache, readers wait for writers
+    DEFAULT(null, null, 0, 0, null),
+    // WAL with a sync on every commit
+    DURABLE("WAL", "FULL", 256L * 1024 * 1024, -16 * 1024, "MEMORY"),
+    // WAL synced at checkpoints only, a power loss may drop the last commits but never corrupts the database
+    FAST("WAL", "NORMAL", 256L * 1024 * 1024, -64 * 1024, "MEMORY");
+
+    // How long a connection retries on a locked database before failing
+    private static final int BUSY_TIMEOUT_MILLIS = 5000;
+    // SQLITE_OPEN_READONLY
+    private static final int OPEN_READONLY = 0x1;
+
+    private final String journalMode;
+    private final String synchronous;
+    private final long mmapSize;
+    // negative values are in KiB, positive ones in pages
+    private final int cacheSize;
+    private final String tempStore;
+
+    SqliteProfile(String journalMode, String synchronous, long mmapSize, int cacheSize, String tempStore) {
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.mmapSize = mmapSize;
+        this.cacheSize = cacheSize;
+        this.tempStore = tempStore;
+    }
+
+    public boolean wal() {
+        return "WAL".equals(journalMode);
+    }
+
+    // Driver properties of the connections, the journal mode is only switched by the writer
+    Properties properties(boolean readOnly) {
+        Properties properties = new Properties();
+        properties.setProperty("busy_timeout", String.valueOf(BUSY_TIMEOUT_MILLIS));
+        if (readOnly) {
+            properties.setProperty("open_mode", String.valueOf(OPEN_READONLY));
+        } else if (journalMode != null) {
+            properties.setProperty("journal_mode", journalMode);
+        }
+        if (synchronous != null) {
+            properties.setProperty("synchronous", synchronous);
+        }
+        if (mmapSize > 0) {
+            properties.setProperty("mmap_size", String.valueOf(mmapSize));
+        }
+        if (cacheSize != 0) {
+            properties.setProperty("cache_size", String.valueOf(cacheSize));
+        }
+        if (tempStore != null) {
+            properties.setProperty("temp_store", tempStore);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,32 @@
+package com.nerverless.task.dao;
+
+import java.util.UUID;
+
+/**
+ * Balance change of a transaction, recorded in the same database transaction as
+ * the change itself. A journaled transaction replayed after a crash is resumed
+ * from the legs already applied instead of being applied a second time.
+ */
+public record TransactionLeg(UUID transactionId, Leg leg) {
+
+    public enum Leg {
+        // both accounts of a transfer owned by the same shard
+        TRANSFER,
+        // source and destination accounts of a transfer across shards
+        DEBIT,
+        CREDIT,
+        // source account credited back when the credit failed
+        REFUND,
+        // withdrawn amount moved from the balance to the reserve
+        RESERVE
+    }
+
+    public TransactionLeg {
+        if (transactionId == null) {
+            throw new IllegalArgumentException("transactionId cannot be null");
+        }
+        if (leg == null) {
+            throw new IllegalArgumentException("leg cannot be null");
+        }
+    }
+}
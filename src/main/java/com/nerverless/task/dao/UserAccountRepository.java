@@ -5,20 +5,50 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 
 import javax.sql.DataSource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.nerverless.task.metrics.Histogram;
+import com.nerverless.task.model.Money;
 import com.nerverless.task.model.UserAccount;
 
-public class UserAccountRepository {
+public class UserAccountRepository implements AccountBalances {
 
     private static final Logger logger = LoggerFactory.getLogger(UserAccountRepository.class);
 
+    private static final Histogram FIND_ALL_TIMER = DaoMetrics.timer("UserAccountRepository", "findAll");
+    private static final Histogram FIND_BY_NAME_TIMER = DaoMetrics.timer("UserAccountRepository", "findByName");
+    private static final Histogram SAVE_TIMER = DaoMetrics.timer("UserAccountRepository", "save");
+    private static final Histogram SAVE_ALL_TIMER = DaoMetrics.timer("UserAccountRepository", "saveAll");
+    private static final Histogram TRANSFER_TIMER = DaoMetrics.timer("UserAccountRepository", "transfer");
+    private static final Histogram DEBIT_TIMER = DaoMetrics.timer("UserAccountRepository", "debit");
+    private static final Histogram CREDIT_TIMER = DaoMetrics.timer("UserAccountRepository", "credit");
+    private static final Histogram RESERVE_TIMER = DaoMetrics.timer("UserAccountRepository", "reserve");
+    private static final Histogram SETTLE_TIMER = DaoMetrics.timer("UserAccountRepository", "settle");
+    private static final Histogram RELEASE_TIMER = DaoMetrics.timer("UserAccountRepository", "release");
+    private static final Histogram REFUND_TIMER = DaoMetrics.timer("UserAccountRepository", "refund");
+    private static final Histogram INSERT_LEGS_TIMER = DaoMetrics.timer("UserAccountRepository", "insertLegs");
+    private static final Histogram FIND_LEGS_TIMER = DaoMetrics.timer("UserAccountRepository", "findLegs");
+    private static final Histogram DELETE_LEGS_TIMER = DaoMetrics.timer("UserAccountRepository", "deleteLegsCreatedBefore");
+
+    // Guarded updates, the amount columns are rounded to the decimal(19, 2) scale after arithmetic
+    private static final String DEBIT_SQL = "UPDATE user_account SET balance = ROUND(balance - ?, 2) WHERE name = ? AND balance >= ?";
+    private static final String CREDIT_SQL = "UPDATE user_account SET balance = ROUND(balance + ?, 2) WHERE name = ?";
+    private static final String RESERVE_SQL = "UPDATE user_account SET balance = ROUND(balance - ?, 2), reserve = ROUND(reserve + ?, 2) WHERE name = ? AND balance >= ?";
+    private static final String SETTLE_SQL = "UPDATE user_account SET reserve = ROUND(reserve - ?, 2) WHERE name = ? AND reserve >= ?";
+    private static final String RELEASE_SQL = "UPDATE user_account SET balance = ROUND(balance + ?, 2), reserve = ROUND(reserve - ?, 2) WHERE name = ? AND reserve >= ?";
+    // a leg already recorded is left as is, the replay never applies it twice
+    private static final String INSERT_LEG_SQL = "INSERT OR IGNORE INTO transaction_leg (transaction_id, leg, created_at) VALUES (?, ?, ?)";
+
     private final DataSource dataSource;
 
     public UserAccountRepository(DataSource dataSource) {
@@ -27,13 +57,17 @@ public class UserAccountRepository {
 
     // CRUD operations for UserAccount
     public List<UserAccount> findAll() {
+        return DaoMetrics.timed(FIND_ALL_TIMER, () -> doFindAll());
+    }
+
+    private List<UserAccount> doFindAll() {
         List<UserAccount> users = new ArrayList<>();
         String sql = "SELECT name, balance, reserve FROM user_account";
         try (Connection connection = dataSource.getConnection();
                 PreparedStatement statement = connection.prepareStatement(sql)) {
             ResultSet resultSet = statement.executeQuery();
             while (resultSet.next()) {
-                var user = new UserAccount(resultSet.getString("name"), resultSet.getBigDecimal("balance"), resultSet.getBigDecimal("reserve"));                
+                var user = account(resultSet);                
                 users.add(user);
             }
         } catch (SQLException e) {
@@ -44,13 +78,17 @@ public class UserAccountRepository {
 
     // Find user account by Name
     public Optional<UserAccount> findByName(String name) {
+        return DaoMetrics.timed(FIND_BY_NAME_TIMER, () -> doFindByName(name));
+    }
+
+    private Optional<UserAccount> doFindByName(String name) {
         String sql = "SELECT name, balance, reserve FROM user_account WHERE name = ?";
         try (Connection connection = dataSource.getConnection();
                 PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setString(1, name);
             ResultSet resultSet = statement.executeQuery();
             if (resultSet.next()) {
-                return Optional.of(new UserAccount(resultSet.getString("name"), resultSet.getBigDecimal("balance"), resultSet.getBigDecimal("reserve")));
+                return Optional.of(account(resultSet));
             }
         } catch (SQLException e) {
             logger.error("Failed to get user by name", e);
@@ -60,16 +98,216 @@ public class UserAccountRepository {
 
     // Save user account
     public void save(UserAccount user) {
+        DaoMetrics.timed(SAVE_TIMER, () -> doSave(user));
+    }
+
+    private void doSave(UserAccount user) {
         String sql = "REPLACE INTO user_account (name, balance, reserve) VALUES (?, ?, ?)";
         try (Connection connection = dataSource.getConnection();
                 PreparedStatement statement = connection.prepareStatement(sql)) {
             statement.setString(1, user.name());
-            statement.setBigDecimal(2, user.balance());
-            statement.setBigDecimal(3, user.reserve());
+            statement.setBigDecimal(2, user.balance().toBigDecimal());
+            statement.setBigDecimal(3, user.reserve().toBigDecimal());
             statement.executeUpdate();
         } catch (SQLException e) {
             logger.error("Failed to save user account", e);
         }
     }
-}
 
+    // Save user accounts as one JDBC batch on a connection whose transaction is managed by the caller
+    public void saveAll(Connection connection, Collection<UserAccount> users) throws SQLException {
+        DaoMetrics.timed(SAVE_ALL_TIMER, () -> doSaveAll(connection, users));
+    }
+
+    private void doSaveAll(Connection connection, Collection<UserAccount> users) throws SQLException {
+        String sql = "REPLACE INTO user_account (name, balance, reserve) VALUES (?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (UserAccount user : users) {
+                statement.setString(1, user.name());
+                statement.setBigDecimal(2, user.balance().toBigDecimal());
+                statement.setBigDecimal(3, user.reserve().toBigDecimal());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    // Debit and credit in one transaction, rolled back unless both accounts are updated
+    @Override
+    public BalanceUpdate transfer(UUID transactionId, String fromAccountName, String toAccountName, Money amount) {
+        return inTransaction("transfer between user accounts", TRANSFER_TIMER, leg(transactionId, TransactionLeg.Leg.TRANSFER), connection -> {
+            if (update(connection, DEBIT_SQL, amount, fromAccountName, amount) == 0) {
+                if (!exists(connection, fromAccountName)) {
+                    return BalanceUpdate.ACCOUNT_NOT_FOUND;
+                }
+                return exists(connection, toAccountName) ? BalanceUpdate.INSUFFICIENT_FUNDS : BalanceUpdate.TO_ACCOUNT_NOT_FOUND;
+            }
+            if (update(connection, CREDIT_SQL, amount, toAccountName) == 0) {
+                return BalanceUpdate.TO_ACCOUNT_NOT_FOUND;
+            }
+            return BalanceUpdate.UPDATED;
+        });
+    }
+
+    @Override
+    public BalanceUpdate debit(UUID transactionId, String accountName, Money amount) {
+        return inTransaction("debit user account", DEBIT_TIMER, leg(transactionId, TransactionLeg.Leg.DEBIT),
+                connection -> guarded(connection, accountName, update(connection, DEBIT_SQL, amount, accountName, amount)));
+    }
+
+    @Override
+    public BalanceUpdate credit(UUID transactionId, String accountName, Money amount) {
+        return inTransaction("credit user account", CREDIT_TIMER, leg(transactionId, TransactionLeg.Leg.CREDIT),
+                connection -> update(connection, CREDIT_SQL, amount, accountName) == 0 ? BalanceUpdate.ACCOUNT_NOT_FOUND : BalanceUpdate.UPDATED);
+    }
+
+    @Override
+    public BalanceUpdate refund(UUID transactionId, String accountName, Money amount) {
+        return inTransaction("refund user account", REFUND_TIMER, leg(transactionId, TransactionLeg.Leg.REFUND),
+                connection -> update(connection, CREDIT_SQL, amount, accountName) == 0 ? BalanceUpdate.ACCOUNT_NOT_FOUND : BalanceUpdate.UPDATED);
+    }
+
+    @Override
+    public BalanceUpdate reserve(UUID transactionId, String accountName, Money amount) {
+        return inTransaction("reserve user account balance", RESERVE_TIMER, leg(transactionId, TransactionLeg.Leg.RESERVE),
+                connection -> guarded(connection, accountName, update(connection, RESERVE_SQL, amount, amount, accountName, amount)));
+    }
+
+    @Override
+    public BalanceUpdate settle(String accountName, Money amount) {
+        return inTransaction("settle user account reserve", SETTLE_TIMER, null, connection -> guarded(connection, accountName, update(connection, SETTLE_SQL, amount, accountName, amount)));
+    }
+
+    @Override
+    public BalanceUpdate release(String accountName, Money amount) {
+        return inTransaction("release user account reserve", RELEASE_TIMER, null, connection -> guarded(connection, accountName, update(connection, RELEASE_SQL, amount, amount, accountName, amount)));
+    }
+
+    // Record legs as one JDBC batch on a connection whose transaction is managed by the caller
+    public void insertLegs(Connection connection, Collection<TransactionLeg> legs) throws SQLException {
+        DaoMetrics.timed(INSERT_LEGS_TIMER, () -> doInsertLegs(connection, legs));
+    }
+
+    private void doInsertLegs(Connection connection, Collection<TransactionLeg> legs) throws SQLException {
+        if (legs.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_LEG_SQL)) {
+            for (TransactionLeg leg : legs) {
+                statement.setString(1, leg.transactionId().toString());
+                statement.setString(2, leg.leg().name());
+                statement.setLong(3, now);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    // Legs of a transaction already applied, read when its journal entry is replayed
+    public Set<TransactionLeg.Leg> findLegs(UUID transactionId) {
+        return DaoMetrics.timed(FIND_LEGS_TIMER, () -> doFindLegs(transactionId));
+    }
+
+    private Set<TransactionLeg.Leg> doFindLegs(UUID transactionId) {
+        Set<TransactionLeg.Leg> legs = EnumSet.noneOf(TransactionLeg.Leg.class);
+        String sql = "SELECT leg FROM transaction_leg WHERE transaction_id = ?";
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, transactionId.toString());
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                legs.add(TransactionLeg.Leg.valueOf(resultSet.getString("leg")));
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to get the legs of transaction {}", transactionId, e);
+        }
+        return legs;
+    }
+
+    public int deleteLegsCreatedBefore(long createdBefore) {
+        return DaoMetrics.timed(DELETE_LEGS_TIMER, () -> doDeleteLegsCreatedBefore(createdBefore));
+    }
+
+    private int doDeleteLegsCreatedBefore(long createdBefore) {
+        String sql = "DELETE FROM transaction_leg WHERE created_at < ?";
+        try (Connection connection = dataSource.getConnection();
+                PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, createdBefore);
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            logger.error("Failed to delete transaction legs", e);
+        }
+        return 0;
+    }
+
+    private static TransactionLeg leg(UUID transactionId, TransactionLeg.Leg leg) {
+        return transactionId == null ? null : new TransactionLeg(transactionId, leg);
+    }
+
+    private interface Update {
+        BalanceUpdate apply(Connection connection) throws SQLException;
+    }
+
+    private BalanceUpdate inTransaction(String operation, Histogram timer, TransactionLeg leg, Update update) {
+        return DaoMetrics.timed(timer, () -> inTransaction(operation, leg, update));
+    }
+
+    // Commit when the update applied, with its leg when there is one, roll back otherwise
+    private BalanceUpdate inTransaction(String operation, TransactionLeg leg, Update update) {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                BalanceUpdate result = update.apply(connection);
+                if (result == BalanceUpdate.UPDATED) {
+                    if (leg != null) {
+                        insertLegs(connection, List.of(leg));
+                    }
+                    connection.commit();
+                } else {
+                    connection.rollback();
+                }
+                return result;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to {}", operation, e);
+            return BalanceUpdate.FAILED;
+        }
+    }
+
+    // No row matched a guarded update: either the account is missing or the guard did not hold
+    private BalanceUpdate guarded(Connection connection, String accountName, int updated) throws SQLException {
+        if (updated > 0) {
+            return BalanceUpdate.UPDATED;
+        }
+        return exists(connection, accountName) ? BalanceUpdate.INSUFFICIENT_FUNDS : BalanceUpdate.ACCOUNT_NOT_FOUND;
+    }
+
+    private int update(Connection connection, String sql, Object... parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                // amounts cross the JDBC edge as decimals
+                statement.setObject(i + 1, parameters[i] instanceof Money money ? money.toBigDecimal() : parameters[i]);
+            }
+            return statement.executeUpdate();
+        }
+    }
+
+    private UserAccount account(ResultSet resultSet) throws SQLException {
+        return new UserAccount(resultSet.getString("name"), Money.round(resultSet.getBigDecimal("balance")), Money.round(resultSet.getBigDecimal("reserve")));
+    }
+
+    private boolean exists(Connection connection, String accountName) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM user_account WHERE name = ?")) {
+            statement.setString(1, accountName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+}
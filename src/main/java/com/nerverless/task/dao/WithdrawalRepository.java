@@ -14,6 +14,8 @@ import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.nerverless.task.metrics.Histogram;
+import com.nerverless.task.model.Money;
 import com.nerverless.task.model.TransactionId;
 import com.nerverless.task.model.TransactionStatus;
 import com.nerverless.task.model.Withdrawal;
@@ -23,6 +25,10 @@ public class WithdrawalRepository {
     
     private static final Logger logger = LoggerFactory.getLogger(WithdrawalRepository.class);
 
+    private static final Histogram SAVE_TIMER = DaoMetrics.timer("WithdrawalRepository", "save");
+    private static final Histogram FIND_WITH_STATUS_TIMER = DaoMetrics.timer("WithdrawalRepository", "findWithStatus");
+    private static final Histogram FIND_BY_TRANSACTION_ID_TIMER = DaoMetrics.timer("WithdrawalRepository", "findByTransactionId");
+
     private final DataSource dataSource;
 
     public WithdrawalRepository(DataSource dataSource) {
@@ -31,6 +37,10 @@ public class WithdrawalRepository {
 
     // Save withdrawal request
     public void save(Withdrawal withdrawal) {
+        DaoMetrics.timed(SAVE_TIMER, () -> doSave(withdrawal));
+    }
+
+    private void doSave(Withdrawal withdrawal) {
         String sql = "REPLACE INTO withdrawal (withdrawal_id, transaction_id, user_id, account_name, to_address, amount, status) VALUES (?, ?, ?, ?, ?, ?, ?)";
         try (Connection connection = dataSource.getConnection();
                 PreparedStatement statement = connection.prepareStatement(sql)) {
@@ -40,7 +50,7 @@ public class WithdrawalRepository {
             statement.setString(3, withdrawal.transactionId().userId());
             statement.setString(4, withdrawal.accountName());
             statement.setString(5, withdrawal.toAddress());
-            statement.setBigDecimal(6,  withdrawal.amount());
+            statement.setBigDecimal(6,  withdrawal.amount().toBigDecimal());
             statement.setString(7,  withdrawal.status().name());
             statement.executeUpdate();
             connection.commit();
@@ -51,6 +61,10 @@ public class WithdrawalRepository {
 
     // Find all processing withdrawal requests
     public List<Withdrawal> findWithStatus(TransactionStatus status) {
+        return DaoMetrics.timed(FIND_WITH_STATUS_TIMER, () -> doFindWithStatus(status));
+    }
+
+    private List<Withdrawal> doFindWithStatus(TransactionStatus status) {
         List<Withdrawal> withdrawals = new ArrayList<>();
         String sql = "SELECT withdrawal_id, transaction_id, user_id, account_name, to_address, amount FROM withdrawal WHERE status = ?";
         try (Connection connection = dataSource.getConnection();
@@ -62,7 +76,7 @@ public class WithdrawalRepository {
                 var transactionId = new TransactionId(UUID.fromString(resultSet.getString("transaction_id")), resultSet.getString("user_id"));
                 var accountName = resultSet.getString("account_name");
                 var address = resultSet.getString("to_address");
-                var amount = resultSet.getBigDecimal("amount");
+                var amount = Money.round(resultSet.getBigDecimal("amount"));
                 var withdrawal = new Withdrawal(withdrawalId, transactionId, accountName, address, amount, status);
                 withdrawals.add(withdrawal);
             }
@@ -74,6 +88,10 @@ public class WithdrawalRepository {
 
     // Find withdrawal by transaction id
     public Optional<Withdrawal> findByTransactionId(TransactionId transactionId) {
+        return DaoMetrics.timed(FIND_BY_TRANSACTION_ID_TIMER, () -> doFindByTransactionId(transactionId));
+    }
+
+    private Optional<Withdrawal> doFindByTransactionId(TransactionId transactionId) {
         String sql = "SELECT withdrawal_id, user_id, account_name, to_address, amount, status FROM withdrawal WHERE transaction_id = ?";
         try (Connection connection = dataSource.getConnection();
                 PreparedStatement statement = connection.prepareStatement(sql)) {
@@ -83,7 +101,7 @@ public class WithdrawalRepository {
                 var withdrawalId = new WithdrawalId(UUID.fromString(resultSet.getString("withdrawal_id")));
                 var accountName = resultSet.getString("account_name");
                 var address = resultSet.getString("to_address");
-                var amount = resultSet.getBigDecimal("amount");
+                var amount = Money.round(resultSet.getBigDecimal("amount"));
                 var status = TransactionStatus.valueOf(resultSet.getString("status"));
                 return Optional.of(new Withdrawal(withdrawalId, transactionId, accountName, address, amount, status));
             }
@@ -0,0 +1,15 @@
+package com.nerverless.task.ingest;
+
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/*
+ * Summary of an ingested batch of transfers, written after the receipts of its rows
+ */
+public record BatchReceipt(UUID batchId, long accepted, long rejected, long rowsPerSecond) {
+
+    // Transaction id of an accepted row, or the reason the row was rejected
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Row(long line, UUID transactionId, String error) {}
+}
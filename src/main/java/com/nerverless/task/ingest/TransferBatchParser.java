@@ -0,0 +1,121 @@
+package com.nerverless.task.ingest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.UUID;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Transaction.Transfer;
+import com.nerverless.task.model.TransactionId;
+
+/**
+ * Streaming parser of a batch of transfers, one transfer per line, as NDJSON
+ * objects {@code {"fromUser": ..., "toUser": ..., "amount": ...}} or as CSV rows
+ * {@code fromUser,toUser,amount} with an optional header. Only the current line is
+ * held in memory; a row that does not validate is returned with its error and the
+ * parsing goes on with the next line.
+ */
+public class TransferBatchParser {
+
+    public enum Format {
+        NDJSON,
+        CSV
+    }
+
+    // A validated transfer, or the reason the line was rejected
+    public record Row(long line, Transfer transfer, String error) {}
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final BufferedReader reader;
+    private final Format format;
+    private long line;
+
+    public TransferBatchParser(Reader reader, Format format) {
+        this.reader = reader instanceof BufferedReader buffered ? buffered : new BufferedReader(reader);
+        this.format = format;
+    }
+
+    // Next non blank line, null at the end of the input
+    public Row next() throws IOException {
+        String text;
+        do {
+            text = reader.readLine();
+            if (text == null) {
+                return null;
+            }
+            line++;
+        } while (text.isBlank() || (format == Format.CSV && line == 1 && isCsvHeader(text)));
+        try {
+            return new Row(line, format == Format.CSV ? parseCsv(text) : parseJson(text), null);
+        } catch (IllegalArgumentException e) {
+            return new Row(line, null, e.getMessage());
+        }
+    }
+
+    private static boolean isCsvHeader(String text) {
+        return text.trim().startsWith("fromUser");
+    }
+
+    private static Transfer parseCsv(String text) {
+        int first = text.indexOf(',');
+        int second = first < 0 ? -1 : text.indexOf(',', first + 1);
+        if (second < 0 || text.indexOf(',', second + 1) >= 0) {
+            throw new IllegalArgumentException("expected fromUser,toUser,amount");
+        }
+        return transfer(text.substring(0, first).trim(), text.substring(first + 1, second).trim(), text.substring(second + 1).trim());
+    }
+
+    private static Transfer parseJson(String text) {
+        String fromUser = null;
+        String toUser = null;
+        String amount = null;
+        try (JsonParser parser = JSON.createParser(text)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "fromUser" -> fromUser = parser.getValueAsString();
+                    case "toUser" -> toUser = parser.getValueAsString();
+                    // numbers are taken as written, 10.10 keeps its decimals
+                    case "amount" -> amount = parser.getText();
+                    default -> {
+                        if (value.isStructStart()) {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_OBJECT) {
+                throw new IllegalArgumentException("expected a complete JSON object");
+            }
+            if (parser.nextToken() != null) {
+                throw new IllegalArgumentException("unexpected content after the JSON object");
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("malformed JSON: " + (e instanceof JsonProcessingException json ? json.getOriginalMessage() : e.getMessage()));
+        }
+        if (amount == null) {
+            throw new IllegalArgumentException("amount is required");
+        }
+        return transfer(fromUser, toUser, amount);
+    }
+
+    private static Transfer transfer(String fromUser, String toUser, String amount) {
+        Money money;
+        try {
+            money = Money.parse(amount);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("amount is not a number: " + amount);
+        }
+        return new Transfer(new TransactionId(UUID.randomUUID(), fromUser), fromUser, toUser, money);
+    }
+}
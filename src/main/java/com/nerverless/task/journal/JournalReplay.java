@@ -0,0 +1,99 @@
+package com.nerverless.task.journal;
+
+import java.util.Optional;
+import java.util.Set;
+
+import com.nerverless.task.dao.ReportTransactionRepository;
+import com.nerverless.task.dao.TransactionLeg.Leg;
+import com.nerverless.task.dao.UserAccountRepository;
+import com.nerverless.task.dao.WithdrawalRepository;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.Transaction;
+import com.nerverless.task.model.Transaction.Transfer;
+import com.nerverless.task.model.Transaction.TransferCredit;
+import com.nerverless.task.model.Transaction.WithdrawalRequest;
+import com.nerverless.task.model.TransactionStatus;
+
+/**
+ * Decides what is left to do for a journaled transaction not committed before the
+ * last stop. A report can be written after the balance change it reports, or never
+ * when the process crashed in between, and the credit leg of a transfer across
+ * shards only lives in memory until it is applied, so the legs recorded with the
+ * balance changes are what tells whether a transaction was applied. A transaction
+ * applied but not reported gets its report written here; one applied in part is
+ * resumed from its next leg.
+ */
+public class JournalReplay {
+
+    public enum Action {
+        // nothing left to apply, the journal entry can be committed
+        SKIP,
+        // hand the transaction to the transaction workers
+        SUBMIT,
+        // hand the transaction to the withdrawal worker, its amount is already reserved
+        REQUEST_WITHDRAWAL
+    }
+
+    public record Resumed(Action action, Transaction transaction) {}
+
+    private final UserAccountRepository userAccountRepository;
+    private final ReportTransactionRepository reportTransactionRepository;
+    private final WithdrawalRepository withdrawalRepository;
+
+    public JournalReplay(UserAccountRepository userAccountRepository, ReportTransactionRepository reportTransactionRepository,
+            WithdrawalRepository withdrawalRepository) {
+        this.userAccountRepository = userAccountRepository;
+        this.reportTransactionRepository = reportTransactionRepository;
+        this.withdrawalRepository = withdrawalRepository;
+    }
+
+    public Resumed resume(Transaction transaction) {
+        Optional<Report> latest = reportTransactionRepository.findLatestByTransactionId(transaction.transactionId().id());
+        if (latest.isPresent() && latest.get().status() != TransactionStatus.PROCESSING) {
+            return new Resumed(Action.SKIP, transaction);
+        }
+        Set<Leg> legs = userAccountRepository.findLegs(transaction.transactionId().id());
+        if (transaction instanceof Transfer transfer) {
+            return resume(transfer, legs);
+        }
+        if (transaction instanceof WithdrawalRequest withdrawal) {
+            return resume(withdrawal, legs, latest.isPresent());
+        }
+        return new Resumed(latest.isPresent() ? Action.SKIP : Action.SUBMIT, transaction);
+    }
+
+    private Resumed resume(Transfer transfer, Set<Leg> legs) {
+        if (legs.contains(Leg.TRANSFER) || legs.contains(Leg.CREDIT)) {
+            report(transfer, TransactionStatus.COMPLETED, "Transaction completed successfully");
+            return new Resumed(Action.SKIP, transfer);
+        }
+        if (legs.contains(Leg.REFUND)) {
+            report(transfer, TransactionStatus.FAILED, "Transfer refunded");
+            return new Resumed(Action.SKIP, transfer);
+        }
+        if (legs.contains(Leg.DEBIT)) {
+            // debited by the source shard, the credit leg was lost with the process
+            return new Resumed(Action.SUBMIT, new TransferCredit(transfer.transactionId(), transfer.fromAccountName(), transfer.toAccountName(), transfer.amount()));
+        }
+        return new Resumed(Action.SUBMIT, transfer);
+    }
+
+    private Resumed resume(WithdrawalRequest withdrawal, Set<Leg> legs, boolean reported) {
+        if (reported) {
+            // reserved and reported, the withdrawal worker follows it from the database
+            return new Resumed(Action.SKIP, withdrawal);
+        }
+        if (!legs.contains(Leg.RESERVE)) {
+            return new Resumed(Action.SUBMIT, withdrawal);
+        }
+        report(withdrawal, TransactionStatus.PROCESSING, "Withdrawal initiated");
+        if (withdrawalRepository.findByTransactionId(withdrawal.transactionId()).isPresent()) {
+            return new Resumed(Action.SKIP, withdrawal);
+        }
+        return new Resumed(Action.REQUEST_WITHDRAWAL, withdrawal);
+    }
+
+    private void report(Transaction transaction, TransactionStatus status, String message) {
+        reportTransactionRepository.insert(new Report(transaction.transactionId(), transaction.amount(), status, message));
+    }
+}
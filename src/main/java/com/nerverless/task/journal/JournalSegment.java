@@ -0,0 +1,132 @@
+package com.nerverless.task.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/**
+ * One memory-mapped, fixed size file of the journal. Records are laid out as
+ * {@code [int length][int crc][long sequence][payload]}, the CRC covering the
+ * sequence and the payload. The length is written last, a zero length marks the
+ * end of the written records and a CRC mismatch a torn write.
+ */
+final class JournalSegment {
+
+    static final int HEADER_BYTES = 16;
+
+    interface RecordConsumer {
+        void accept(long sequence, ByteBuffer payload);
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long firstSequence;
+    private long lastSequence;
+    private int position;
+
+    private JournalSegment(Path path, FileChannel channel, MappedByteBuffer buffer, long firstSequence) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.firstSequence = firstSequence;
+        this.lastSequence = firstSequence - 1;
+    }
+
+    static Path fileName(Path directory, long firstSequence) {
+        return directory.resolve(String.format("journal-%020d.log", firstSequence));
+    }
+
+    static long firstSequence(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring("journal-".length(), name.length() - ".log".length()));
+    }
+
+    static JournalSegment create(Path directory, long firstSequence, int size) throws IOException {
+        return map(fileName(directory, firstSequence), firstSequence, size);
+    }
+
+    // Map an existing segment and move past its valid records
+    static JournalSegment open(Path path) throws IOException {
+        JournalSegment segment = map(path, firstSequence(path), (int) Files.size(path));
+        segment.forEach((sequence, payload) -> { });
+        return segment;
+    }
+
+    private static JournalSegment map(Path path, long firstSequence, int size) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        return new JournalSegment(path, channel, buffer, firstSequence);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long firstSequence() {
+        return firstSequence;
+    }
+
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    // Returns false, writing nothing, when the record does not fit in the segment
+    boolean append(long sequence, byte[] payload) {
+        int end = position + HEADER_BYTES + payload.length;
+        // keep room for the zero length marking the end of the records
+        if (end + Integer.BYTES > buffer.capacity()) {
+            return false;
+        }
+        // end marker first, stale records left after a torn write are never read again
+        buffer.putInt(end, 0);
+        buffer.putLong(position + 8, sequence);
+        buffer.put(position + HEADER_BYTES, payload);
+        buffer.putInt(position + 4, crc(sequence, payload));
+        buffer.putInt(position, payload.length);
+        position = end;
+        lastSequence = sequence;
+        return true;
+    }
+
+    // Visit the valid records in order, stops at the end marker or at the first corrupted record
+    void forEach(RecordConsumer consumer) {
+        int offset = 0;
+        while (offset + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_BYTES + length > buffer.capacity()) {
+                break;
+            }
+            long sequence = buffer.getLong(offset + 8);
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER_BYTES, payload);
+            if (buffer.getInt(offset + 4) != crc(sequence, payload)) {
+                break;
+            }
+            consumer.accept(sequence, ByteBuffer.wrap(payload));
+            offset += HEADER_BYTES + length;
+            lastSequence = sequence;
+        }
+        position = Math.max(position, offset);
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    private static int crc(long sequence, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,88 @@
+package com.nerverless.task.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Transaction;
+import com.nerverless.task.model.Transaction.Transfer;
+import com.nerverless.task.model.Transaction.WithdrawalRequest;
+import com.nerverless.task.model.TransactionId;
+
+/**
+ * Binary encoding of the transactions accepted by the HTTP endpoints.
+ * Layout: type byte, transaction id (two longs), user id, the two account or
+ * address strings and the amount in minor units, strings are UTF-8 prefixed
+ * with their length as a short.
+ */
+final class TransactionCodec {
+
+    private static final byte TRANSFER = 1;
+    private static final byte WITHDRAWAL_REQUEST = 2;
+
+    private TransactionCodec() {
+    }
+
+    static byte[] encode(Transaction transaction) {
+        byte type;
+        String first;
+        String second;
+        if (transaction instanceof Transfer transfer) {
+            type = TRANSFER;
+            first = transfer.fromAccountName();
+            second = transfer.toAccountName();
+        } else if (transaction instanceof WithdrawalRequest withdrawal) {
+            type = WITHDRAWAL_REQUEST;
+            first = withdrawal.accountName();
+            second = withdrawal.toAddress();
+        } else {
+            throw new IllegalArgumentException("Unsupported transaction type: " + transaction);
+        }
+        byte[] userId = utf8(transaction.transactionId().userId());
+        byte[] firstBytes = utf8(first);
+        byte[] secondBytes = utf8(second);
+
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 16 + 6 + userId.length + firstBytes.length + secondBytes.length + 8);
+        buffer.put(type);
+        buffer.putLong(transaction.transactionId().id().getMostSignificantBits());
+        buffer.putLong(transaction.transactionId().id().getLeastSignificantBits());
+        putString(buffer, userId);
+        putString(buffer, firstBytes);
+        putString(buffer, secondBytes);
+        buffer.putLong(transaction.amount().minorUnits());
+        return buffer.array();
+    }
+
+    static Transaction decode(ByteBuffer buffer) {
+        byte type = buffer.get();
+        var transactionId = new TransactionId(new UUID(buffer.getLong(), buffer.getLong()), getString(buffer));
+        String first = getString(buffer);
+        String second = getString(buffer);
+        Money amount = new Money(buffer.getLong());
+        return switch (type) {
+            case TRANSFER -> new Transfer(transactionId, first, second, amount);
+            case WITHDRAWAL_REQUEST -> new WithdrawalRequest(transactionId, first, second, amount);
+            default -> throw new IllegalArgumentException("Unknown journal entry type: " + type);
+        };
+    }
+
+    private static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("value too long to be journaled");
+        }
+        return bytes;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,257 @@
+package com.nerverless.task.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nerverless.task.model.Transaction;
+
+/**
+ * Write-ahead journal of the accepted transactions, made of memory-mapped segment
+ * files. An append is a copy into the mapped segment, which survives a crash of
+ * the process; the segments are forced to the device in groups by {@link #run()}
+ * every flush interval, callers needing the device level guarantee wait with
+ * {@link #awaitFlushed(long, long, TimeUnit)}.
+ * <p>
+ * Transactions are committed once processed, the committed sequence is the one
+ * below the oldest transaction still in flight. It is saved in a checkpoint file,
+ * on restart the entries above it are replayed and the fully committed segments
+ * are deleted.
+ */
+public class TransactionJournal implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionJournal.class);
+
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long flushIntervalMicros;
+
+    private final Deque<JournalSegment> segments = new ConcurrentLinkedDeque<>();
+    private final NavigableMap<Long, UUID> inFlight = new TreeMap<>();
+    private final Map<UUID, Long> sequences = new ConcurrentHashMap<>();
+    private final MappedByteBuffer checkpoint;
+    private final FileChannel checkpointChannel;
+    private final Object flushed = new Object();
+    private long sequence;
+    private volatile long flushedSequence;
+
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    private TransactionJournal(Path directory, int segmentBytes, long flushIntervalMicros) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.flushIntervalMicros = flushIntervalMicros;
+        this.checkpointChannel = FileChannel.open(directory.resolve(CHECKPOINT_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.checkpoint = checkpointChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+    }
+
+    public static TransactionJournal open(Path directory, int segmentBytes, long flushIntervalMicros) throws IOException {
+        if (segmentBytes < 1024) {
+            throw new IllegalArgumentException("segmentBytes must be at least 1024");
+        }
+        if (flushIntervalMicros < 1) {
+            throw new IllegalArgumentException("flushIntervalMicros must be greater than zero");
+        }
+        Files.createDirectories(directory);
+        TransactionJournal journal = new TransactionJournal(directory, segmentBytes, flushIntervalMicros);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().startsWith("journal-"))
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : files) {
+            journal.segments.add(JournalSegment.open(file));
+        }
+        long committed = journal.checkpoint.getLong(0);
+        journal.sequence = journal.segments.isEmpty() ? committed : Math.max(committed, journal.segments.getLast().lastSequence());
+        journal.flushedSequence = journal.sequence;
+        return journal;
+    }
+
+    // Entries appended after the last checkpoint, in order; they are in flight again until committed
+    public List<Transaction> replay() {
+        long committed = checkpoint.getLong(0);
+        List<Transaction> transactions = new ArrayList<>();
+        synchronized (this) {
+            for (JournalSegment segment : segments) {
+                segment.forEach((entrySequence, payload) -> {
+                    if (entrySequence > committed) {
+                        Transaction transaction = TransactionCodec.decode(payload);
+                        track(entrySequence, transaction);
+                        transactions.add(transaction);
+                    }
+                });
+            }
+        }
+        return transactions;
+    }
+
+    // Journal an accepted transaction, returns its sequence to compare with the flush watermark
+    public synchronized long append(Transaction transaction) {
+        byte[] payload = TransactionCodec.encode(transaction);
+        if (JournalSegment.HEADER_BYTES + payload.length + Integer.BYTES > segmentBytes) {
+            throw new IllegalArgumentException("transaction too large to be journaled");
+        }
+        long entrySequence = sequence + 1;
+        JournalSegment segment = segments.peekLast();
+        if (segment == null || !segment.append(entrySequence, payload)) {
+            segment = roll(entrySequence);
+            segment.append(entrySequence, payload);
+        }
+        sequence = entrySequence;
+        track(entrySequence, transaction);
+        return entrySequence;
+    }
+
+    // Mark a transaction as processed, unknown ids are ignored
+    public void commit(UUID transactionId) {
+        Long entrySequence = sequences.remove(transactionId);
+        if (entrySequence != null) {
+            synchronized (this) {
+                inFlight.remove(entrySequence);
+            }
+        }
+    }
+
+    // Drop a transaction journaled but never handed to the workers, it is not replayed and no longer holds the checkpoint
+    public void abort(UUID transactionId) {
+        commit(transactionId);
+    }
+
+    public synchronized long committedSequence() {
+        return inFlight.isEmpty() ? sequence : inFlight.firstKey() - 1;
+    }
+
+    public long flushedSequence() {
+        return flushedSequence;
+    }
+
+    // Wait until the entry with the given sequence is forced to the device, returns false on timeout
+    public boolean awaitFlushed(long entrySequence, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (flushed) {
+            while (flushedSequence < entrySequence) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(flushed, remaining);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        while (running.get()) {
+            try {
+                TimeUnit.MICROSECONDS.sleep(flushIntervalMicros);
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                logger.error("Failed to flush the transaction journal", e);
+            }
+        }
+        flush();
+    }
+
+    public void stop() {
+        running.set(false);
+    }
+
+    // Force the appended entries and the checkpoint, then drop the segments fully committed
+    public void flush() {
+        long appended;
+        synchronized (this) {
+            appended = sequence;
+        }
+        if (appended > flushedSequence) {
+            // entries of older segments were forced before their successor was created
+            JournalSegment last = segments.peekLast();
+            if (last != null) {
+                last.force();
+            }
+            synchronized (flushed) {
+                flushedSequence = appended;
+                flushed.notifyAll();
+            }
+        }
+
+        long committed = Math.min(committedSequence(), flushedSequence);
+        if (committed != checkpoint.getLong(0)) {
+            checkpoint.putLong(0, committed);
+            checkpoint.force();
+        }
+        deleteCommittedSegments(committed);
+    }
+
+    public void close() throws IOException {
+        stop();
+        flush();
+        for (JournalSegment segment : segments) {
+            segment.close();
+        }
+        checkpointChannel.close();
+    }
+
+    private void track(long entrySequence, Transaction transaction) {
+        inFlight.put(entrySequence, transaction.transactionId().id());
+        sequences.put(transaction.transactionId().id(), entrySequence);
+    }
+
+    private JournalSegment roll(long firstSequence) {
+        try {
+            JournalSegment last = segments.peekLast();
+            if (last != null) {
+                last.force();
+            }
+            JournalSegment segment = JournalSegment.create(directory, firstSequence, segmentBytes);
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create journal segment", e);
+        }
+    }
+
+    private void deleteCommittedSegments(long committed) {
+        // the last segment is kept, it is the one being appended to
+        while (segments.size() > 1) {
+            JournalSegment oldest = segments.peekFirst();
+            if (oldest.lastSequence() > committed) {
+                return;
+            }
+            segments.pollFirst();
+            try {
+                oldest.close();
+                Files.deleteIfExists(oldest.path());
+            } catch (IOException e) {
+                logger.error("Failed to delete journal segment {}", oldest.path(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.nerverless.task.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic count, striped so that concurrent increments do not contend.
+ */
+public class Counter {
+
+    private final LongAdder count = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("amount cannot be negative");
+        }
+        count.add(amount);
+    }
+
+    public long value() {
+        return count.sum();
+    }
+}
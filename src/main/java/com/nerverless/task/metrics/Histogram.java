@@ -0,0 +1,74 @@
+package com.nerverless.task.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of durations over fixed buckets, exposed in seconds. A duration
+ * is counted in the first bucket whose upper bound it does not exceed, the
+ * cumulative counts are only summed when scraped.
+ */
+public class Histogram {
+
+    // 50 microseconds to 10 seconds, for anything from an in-memory step to a slow provider call
+    public static final double[] DURATION_BUCKETS = {
+            0.00005, 0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final double[] bounds;
+    private final long[] boundsNanos;
+    // one more than the bounds, the last one is +Inf
+    private final LongAdder[] buckets;
+    private final LongAdder sumNanos = new LongAdder();
+
+    Histogram(double[] bounds) {
+        if (bounds.length == 0) {
+            throw new IllegalArgumentException("bounds cannot be empty");
+        }
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("bounds must be increasing");
+            }
+        }
+        this.bounds = bounds.clone();
+        this.boundsNanos = Arrays.stream(bounds).mapToLong(seconds -> Math.round(seconds * TimeUnit.SECONDS.toNanos(1))).toArray();
+        this.buckets = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < boundsNanos.length && nanos > boundsNanos[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    // Duration since a System.nanoTime() reading
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    void write(StringBuilder out, String name, String labels) {
+        long cumulative = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulative += buckets[i].sum();
+            String le = i < bounds.length ? MetricRegistry.format(bounds[i]) : "+Inf";
+            out.append(name).append("_bucket").append(MetricRegistry.labels(labels, "le=\"" + le + "\"")).append(' ').append(cumulative).append('\n');
+        }
+        out.append(name).append("_sum").append(MetricRegistry.labels(labels, null)).append(' ')
+                .append(MetricRegistry.format(sumNanos.sum() / 1e9)).append('\n');
+        out.append(name).append("_count").append(MetricRegistry.labels(labels, null)).append(' ').append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,125 @@
+package com.nerverless.task.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Metrics of the application in the Prometheus text format, served by
+ * {@code GET /metrics}. A series is registered once by name and labels, the
+ * same series is returned to every caller, and kept in a field by its owner:
+ * recording on it only touches striped adders, it never locks nor allocates.
+ * Gauges are read when the metrics are scraped.
+ */
+public class MetricRegistry {
+
+    private static final MetricRegistry DEFAULT = new MetricRegistry();
+    private static final Pattern NAME = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+    private enum Type {
+        COUNTER,
+        GAUGE,
+        HISTOGRAM
+    }
+
+    // Series by rendered labels, in registration order
+    private record Family(String help, Type type, Map<String, Object> series) {}
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    // Registry of the metrics recorded by the static series of the classes
+    public static MetricRegistry defaultRegistry() {
+        return DEFAULT;
+    }
+
+    // Labels as name and value pairs
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) register(name, help, Type.COUNTER, labels, false, Counter::new);
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        return histogram(name, help, Histogram.DURATION_BUCKETS, labels);
+    }
+
+    public Histogram histogram(String name, String help, double[] bounds, String... labels) {
+        return (Histogram) register(name, help, Type.HISTOGRAM, labels, false, () -> new Histogram(bounds));
+    }
+
+    // A gauge registered again reads from the new supplier
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        register(name, help, Type.GAUGE, labels, true, () -> value);
+    }
+
+    private synchronized Object register(String name, String help, Type type, String[] labels, boolean replace, Supplier<Object> factory) {
+        if (!NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid metric name: " + name);
+        }
+        Family family = families.computeIfAbsent(name, key -> new Family(help, type, new LinkedHashMap<>()));
+        if (family.type() != type) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type().name().toLowerCase());
+        }
+        String key = render(labels);
+        return replace ? put(family, key, factory.get()) : family.series().computeIfAbsent(key, k -> factory.get());
+    }
+
+    private static Object put(Family family, String key, Object series) {
+        family.series().put(key, series);
+        return series;
+    }
+
+    public synchronized String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        families.forEach((name, family) -> {
+            out.append("# HELP ").append(name).append(' ').append(family.help().replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type().name().toLowerCase()).append('\n');
+            family.series().forEach((labels, series) -> {
+                if (series instanceof Histogram histogram) {
+                    histogram.write(out, name, labels);
+                } else if (series instanceof Counter counter) {
+                    out.append(name).append(labels(labels, null)).append(' ').append(counter.value()).append('\n');
+                } else {
+                    out.append(name).append(labels(labels, null)).append(' ').append(format(((DoubleSupplier) series).getAsDouble())).append('\n');
+                }
+            });
+        });
+        return out.toString();
+    }
+
+    // name="value" pairs separated by commas, without the braces
+    private static String render(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("labels must be name and value pairs");
+        }
+        StringBuilder rendered = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (!NAME.matcher(labels[i]).matches()) {
+                throw new IllegalArgumentException("Invalid label name: " + labels[i]);
+            }
+            if (i > 0) {
+                rendered.append(',');
+            }
+            String value = labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+            rendered.append(labels[i]).append("=\"").append(value).append('"');
+        }
+        return rendered.toString();
+    }
+
+    static String labels(String labels, String extra) {
+        if (extra == null) {
+            return labels.isEmpty() ? "" : "{" + labels + "}";
+        }
+        return "{" + (labels.isEmpty() ? extra : labels + "," + extra) + "}";
+    }
+
+    static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? String.valueOf((long) value) : String.valueOf(value);
+    }
+}
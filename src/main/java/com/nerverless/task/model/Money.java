@@ -0,0 +1,71 @@
+package com.nerverless.task.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/**
+ * Amount of money as a count of minor units, matching the {@code decimal(19, 2)}
+ * columns of the schema. Arithmetic and comparisons work on the long and never
+ * allocate intermediate numbers; they throw {@link ArithmeticException} on
+ * overflow. {@link BigDecimal} is only used at the HTTP and JDBC edges.
+ */
+public record Money(long minorUnits) implements Comparable<Money> {
+
+    public static final int SCALE = 2;
+    public static final Money ZERO = new Money(0);
+
+    // Exact conversion, amounts with more decimals than the scale are rejected
+    public static Money of(BigDecimal amount) {
+        try {
+            return new Money(amount.setScale(SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact());
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("amount must have at most " + SCALE + " decimals and fit in a long: " + amount);
+        }
+    }
+
+    public static Money parse(String amount) {
+        return of(new BigDecimal(amount));
+    }
+
+    // Rounded conversion of values read from the database, half up like SQLite ROUND
+    public static Money round(BigDecimal amount) {
+        return of(amount.setScale(SCALE, RoundingMode.HALF_UP));
+    }
+
+    public Money plus(Money other) {
+        return new Money(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    public Money minus(Money other) {
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public boolean isPositive() {
+        return minorUnits > 0;
+    }
+
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    public boolean isLessThan(Money other) {
+        return minorUnits < other.minorUnits;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @JsonValue
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
@@ -1,13 +1,11 @@
 package com.nerverless.task.model;
 
-import java.math.BigDecimal;
-
-public record Report(TransactionId transactionId, BigDecimal amount, TransactionStatus status, String message) {
+public record Report(TransactionId transactionId, Money amount, TransactionStatus status, String message) {
     public Report {
         if (transactionId == null) {
             throw new IllegalArgumentException("transaction cannot be null");
         }
-        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+        if (amount == null || !amount.isPositive()) {
             throw new IllegalArgumentException("amount must be greater than zero");
         }
         if (status == null) {
@@ -0,0 +1,15 @@
+package com.nerverless.task.model;
+
+import java.util.List;
+
+/*
+ * One page of reports, newest first. next is the cursor of the following page,
+ * null on the last page.
+ */
+public record ReportPage(List<Report> reports, Long next) {
+    public ReportPage {
+        if (reports == null) {
+            throw new IllegalArgumentException("reports cannot be null");
+        }
+    }
+}
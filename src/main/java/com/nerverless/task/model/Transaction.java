@@ -1,13 +1,11 @@
 package com.nerverless.task.model;
 
-import java.math.BigDecimal;
-
 public interface Transaction {
 
     public TransactionId transactionId();
-    public BigDecimal amount();
+    public Money amount();
 
-    record Transfer (TransactionId transactionId, String fromAccountName, String toAccountName, BigDecimal amount) implements Transaction {
+    record Transfer (TransactionId transactionId, String fromAccountName, String toAccountName, Money amount) implements Transaction {
         public Transfer {
             if (transactionId == null) {
                 throw new IllegalArgumentException("transactionId cannot be null");
@@ -21,13 +19,58 @@ public interface Transaction {
             if (fromAccountName.equals(toAccountName)) {
                 throw new IllegalArgumentException("fromAccountName and toAccountName cannot be the same");
             }
-            if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+            if (amount == null || !amount.isPositive()) {
+                throw new IllegalArgumentException("amount must be greater than zero");
+            }
+        }
+    }
+
+    /*
+     * Credit leg of a transfer whose accounts are owned by different worker shards:
+     * the source shard has already debited fromAccountName, the destination shard credits toAccountName.
+     */
+    record TransferCredit (TransactionId transactionId, String fromAccountName, String toAccountName, Money amount) implements Transaction {
+        public TransferCredit {
+            if (transactionId == null) {
+                throw new IllegalArgumentException("transactionId cannot be null");
+            }
+            if (fromAccountName == null || fromAccountName.isBlank()) {
+                throw new IllegalArgumentException("fromAccountName cannot be null or empty");
+            }
+            if (toAccountName == null || toAccountName.isBlank()) {
+                throw new IllegalArgumentException("toAccountName cannot be null or empty");
+            }
+            if (amount == null || !amount.isPositive()) {
                 throw new IllegalArgumentException("amount must be greater than zero");
             }
         }
     }
 
-    record WithdrawalRequest (TransactionId transactionId, String accountName, String toAddress,  BigDecimal amount) implements Transaction {
+    /*
+     * Compensation of a cross-shard transfer whose credit leg could not be applied:
+     * the source shard gives the debited amount back to fromAccountName.
+     */
+    record TransferRefund (TransactionId transactionId, String fromAccountName, String toAccountName, Money amount, String reason) implements Transaction {
+        public TransferRefund {
+            if (transactionId == null) {
+                throw new IllegalArgumentException("transactionId cannot be null");
+            }
+            if (fromAccountName == null || fromAccountName.isBlank()) {
+                throw new IllegalArgumentException("fromAccountName cannot be null or empty");
+            }
+            if (toAccountName == null || toAccountName.isBlank()) {
+                throw new IllegalArgumentException("toAccountName cannot be null or empty");
+            }
+            if (amount == null || !amount.isPositive()) {
+                throw new IllegalArgumentException("amount must be greater than zero");
+            }
+            if (reason == null || reason.isBlank()) {
+                throw new IllegalArgumentException("reason cannot be null or empty");
+            }
+        }
+    }
+
+    record WithdrawalRequest (TransactionId transactionId, String accountName, String toAddress,  Money amount) implements Transaction {
         public WithdrawalRequest {
             if (transactionId == null) {
                 throw new IllegalArgumentException("transactionId cannot be null");
@@ -38,7 +81,7 @@ public interface Transaction {
             if (toAddress == null || toAddress.isBlank()) {
                 throw new IllegalArgumentException("toAddress cannot be null or empty");
             }
-            if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+            if (amount == null || !amount.isPositive()) {
                 throw new IllegalArgumentException("amount must be greater than zero");
             }
         }
@@ -1,30 +1,28 @@
 package com.nerverless.task.model;
 
-import java.math.BigDecimal;
-
-public record UserAccount(String name, BigDecimal balance, BigDecimal reserve) {
+public record UserAccount(String name, Money balance, Money reserve) {
     public UserAccount {
-        if (balance.compareTo(BigDecimal.ZERO) < 0) {
+        if (balance.isNegative()) {
             throw new IllegalArgumentException("Balance cannot be negative");
         }
-        if (reserve.compareTo(BigDecimal.ZERO) < 0) {
+        if (reserve.isNegative()) {
             throw new IllegalArgumentException("Reserve cannot be negative");
         }
     }
 
-    public UserAccount(String name, BigDecimal balance) {
-        this(name, balance, BigDecimal.ZERO);
+    public UserAccount(String name, Money balance) {
+        this(name, balance, Money.ZERO);
     }
 
     public UserAccount(String name) {
-        this(name, BigDecimal.ZERO, BigDecimal.ZERO);
+        this(name, Money.ZERO, Money.ZERO);
     }
 
-    public UserAccount withBalance(BigDecimal balance) {
+    public UserAccount withBalance(Money balance) {
         return new UserAccount(name, balance, reserve);
     }
 
-    public UserAccount withReserve(BigDecimal reserve) {
+    public UserAccount withReserve(Money reserve) {
         return new UserAccount(name, balance, reserve);
     }
 }
\ No newline at end of file
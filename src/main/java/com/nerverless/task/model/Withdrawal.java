@@ -1,10 +1,8 @@
 package com.nerverless.task.model;
 
-import java.math.BigDecimal;
-
 import com.nerverless.task.service.WithdrawalService.WithdrawalId;
 
-public record Withdrawal (WithdrawalId withdrawalId, TransactionId transactionId, String accountName, String toAddress,  BigDecimal amount, TransactionStatus status) implements Transaction {
+public record Withdrawal (WithdrawalId withdrawalId, TransactionId transactionId, String accountName, String toAddress,  Money amount, TransactionStatus status) implements Transaction {
         public Withdrawal {
             if (withdrawalId == null) {
                 throw new IllegalArgumentException("withdrawalId cannot be null");
@@ -18,7 +16,7 @@ public record Withdrawal (WithdrawalId withdrawalId, TransactionId transactionId
             if (toAddress == null || toAddress.isBlank()) {
                 throw new IllegalArgumentException("toAddress cannot be null or empty");
             }
-            if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+            if (amount == null || !amount.isPositive()) {
                 throw new IllegalArgumentException("amount must be greater than zero");
             }
             if (status == null) {
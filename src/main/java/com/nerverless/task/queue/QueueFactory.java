@@ -0,0 +1,30 @@
+package com.nerverless.task.queue;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Transport of the messages between the pipeline stages, chosen at startup. The
+ * queues created are all selectable by a {@link QueueSelector}.
+ */
+public final class QueueFactory {
+
+    private final WaitStrategy waitStrategy;
+
+    private QueueFactory(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    // Node per message, lock per put and take
+    public static QueueFactory linked() {
+        return new QueueFactory(null);
+    }
+
+    // Preallocated ring buffers, lock free, single consumer
+    public static QueueFactory ring(WaitStrategy waitStrategy) {
+        return new QueueFactory(waitStrategy);
+    }
+
+    public <E> BlockingQueue<E> create(int capacity) {
+        return waitStrategy == null ? new SelectableQueue<>(capacity) : new RingBufferQueue<>(capacity, waitStrategy);
+    }
+}
@@ -0,0 +1,76 @@
+package com.nerverless.task.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Selector-style multiplexer over the queues a single consumer thread reads from.
+ * {@link #select(long, TimeUnit)} parks the consumer until one of the registered
+ * queues has an element, {@link SelectableQueue}s and {@link RingBufferQueue}s wake it up as soon as an element
+ * is inserted. Plain queues are supported too, they are re-checked every millisecond.
+ */
+public class QueueSelector {
+
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final List<BlockingQueue<?>> queues = new ArrayList<>();
+    private boolean polling;
+
+    // The consumer parked in select, null when it is not waiting
+    private volatile Thread waiter;
+
+    public QueueSelector register(BlockingQueue<?> queue) {
+        queues.add(queue);
+        if (queue instanceof Selectable selectable) {
+            selectable.attach(this);
+        } else {
+            polling = true;
+        }
+        return this;
+    }
+
+    // Called by the registered queues after every insert
+    public void wakeup() {
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    // Block until one of the registered queues is not empty, returns false when the timeout expired first
+    public boolean select(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        waiter = Thread.currentThread();
+        try {
+            while (true) {
+                // the waiter is published before the queues are checked, an insert racing with the
+                // check either is seen here or unparks this thread
+                if (ready()) {
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, polling ? Math.min(remaining, POLL_NANOS) : remaining);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waiter = null;
+        }
+    }
+
+    private boolean ready() {
+        for (BlockingQueue<?> queue : queues) {
+            if (!queue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,233 @@
+package com.nerverless.task.queue;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated, lock free, multi-producer single-consumer ring buffer.
+ * <p>
+ * Producers claim a sequence by CAS on the claim cursor, fill the slot and publish
+ * it by writing the sequence in the availability array of the slot. The consumer
+ * reads the slots in sequence order while they are published and moves its cursor
+ * once per drain; the producers cannot claim past the consumer cursor by more than
+ * the capacity. Blocking operations wait with the {@link WaitStrategy} of the queue.
+ * <p>
+ * Only one thread may take elements out of the queue.
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> implements BlockingQueue<E>, Selectable {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final Object[] entries;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+
+    // next sequence to claim, shared by the producers
+    private final AtomicLong claimCursor = new AtomicLong();
+    // next sequence to read, written by the consumer only
+    private final AtomicLong consumeCursor = new AtomicLong();
+
+    private volatile QueueSelector selector;
+
+    // Capacity is rounded up to a power of two
+    public RingBufferQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("capacity must be between 1 and " + MAX_CAPACITY);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.entries = new Object[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            published.set(i, -1);
+        }
+        this.mask = size - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    public void attach(QueueSelector selector) {
+        this.selector = selector;
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long sequence;
+        do {
+            sequence = claimCursor.get();
+            if (sequence - consumeCursor.get() >= entries.length) {
+                return false;
+            }
+        } while (!claimCursor.compareAndSet(sequence, sequence + 1));
+        int index = (int) sequence & mask;
+        entries[index] = e;
+        published.set(index, sequence);
+        wakeup();
+        return true;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        int attempt = 0;
+        while (!offer(e)) {
+            idle(attempt++, Long.MAX_VALUE);
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        while (!offer(e)) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            idle(attempt++, remaining);
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long sequence = consumeCursor.get();
+        int index = (int) sequence & mask;
+        if (published.get(index) != sequence) {
+            return null;
+        }
+        E e = (E) entries[index];
+        entries[index] = null;
+        consumeCursor.lazySet(sequence + 1);
+        return e;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        int attempt = 0;
+        E e;
+        while ((e = poll()) == null) {
+            idle(attempt++, Long.MAX_VALUE);
+        }
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int attempt = 0;
+        E e;
+        while ((e = poll()) == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            idle(attempt++, remaining);
+        }
+        return e;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        long sequence = consumeCursor.get();
+        int index = (int) sequence & mask;
+        return published.get(index) == sequence ? (E) entries[index] : null;
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    // Batch drain: takes the run of published slots and moves the consumer cursor once
+    @Override
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        long first = consumeCursor.get();
+        long sequence = first;
+        while (sequence - first < maxElements) {
+            int index = (int) sequence & mask;
+            if (published.get(index) != sequence) {
+                break;
+            }
+            c.add((E) entries[index]);
+            entries[index] = null;
+            sequence++;
+        }
+        if (sequence != first) {
+            consumeCursor.lazySet(sequence);
+        }
+        return (int) (sequence - first);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        long sequence = consumeCursor.get();
+        return published.get((int) sequence & mask) != sequence;
+    }
+
+    // Claimed slots, including the ones being published
+    @Override
+    public int size() {
+        long size = claimCursor.get() - consumeCursor.get();
+        return (int) Math.max(0, Math.min(entries.length, size));
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return entries.length - size();
+    }
+
+    // Snapshot of the published elements, removal is not supported
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long end = claimCursor.get();
+        for (long sequence = consumeCursor.get(); sequence < end; sequence++) {
+            int index = (int) sequence & mask;
+            Object e = entries[index];
+            if (published.get(index) != sequence || e == null) {
+                break;
+            }
+            snapshot.add((E) e);
+        }
+        return Collections.unmodifiableList(snapshot).iterator();
+    }
+
+    private void idle(int attempt, long remainingNanos) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        waitStrategy.idle(attempt, remainingNanos);
+    }
+
+    private void wakeup() {
+        QueueSelector current = selector;
+        if (current != null) {
+            current.wakeup();
+        }
+    }
+}
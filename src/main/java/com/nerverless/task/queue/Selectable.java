@@ -0,0 +1,10 @@
+package com.nerverless.task.queue;
+
+/**
+ * Queue able to wake up the {@link QueueSelector} of its consumer whenever an
+ * element is inserted.
+ */
+interface Selectable {
+
+    void attach(QueueSelector selector);
+}
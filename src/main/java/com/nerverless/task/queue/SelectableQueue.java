@@ -0,0 +1,59 @@
+package com.nerverless.task.queue;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LinkedBlockingQueue} that wakes up the {@link QueueSelector} of its
+ * consumer whenever an element is inserted.
+ */
+public class SelectableQueue<E> extends LinkedBlockingQueue<E> implements Selectable {
+
+    private static final long serialVersionUID = 1L;
+
+    private transient volatile QueueSelector selector;
+
+    public SelectableQueue() {
+        super();
+    }
+
+    public SelectableQueue(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    public void attach(QueueSelector selector) {
+        this.selector = selector;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        boolean inserted = super.offer(e);
+        if (inserted) {
+            wakeup();
+        }
+        return inserted;
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        boolean inserted = super.offer(e, timeout, unit);
+        if (inserted) {
+            wakeup();
+        }
+        return inserted;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        super.put(e);
+        wakeup();
+    }
+
+    private void wakeup() {
+        QueueSelector current = selector;
+        if (current != null) {
+            current.wakeup();
+        }
+    }
+}
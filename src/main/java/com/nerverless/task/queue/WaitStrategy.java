@@ -0,0 +1,59 @@
+package com.nerverless.task.queue;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits on a {@link RingBufferQueue} for an element or for a free
+ * slot. {@link #idle(int, long)} is called after every unsuccessful check, the
+ * caller then checks again.
+ */
+public interface WaitStrategy {
+
+    int SPIN_TRIES = 100;
+    int YIELD_TRIES = 200;
+    long PARK_NANOS = 50_000;
+
+    /**
+     * @param attempt        number of unsuccessful checks so far
+     * @param remainingNanos time left before the caller gives up
+     */
+    void idle(int attempt, long remainingNanos);
+
+    // Lowest latency, burns a core per waiting thread
+    static WaitStrategy busySpin() {
+        return (attempt, remainingNanos) -> Thread.onSpinWait();
+    }
+
+    // Spins a little then gives the core away to other threads
+    static WaitStrategy yielding() {
+        return (attempt, remainingNanos) -> {
+            if (attempt < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        };
+    }
+
+    // Spins, yields, then parks for short periods, no signalling needed from the other side
+    static WaitStrategy parking() {
+        return (attempt, remainingNanos) -> {
+            if (attempt < SPIN_TRIES) {
+                Thread.onSpinWait();
+            } else if (attempt < YIELD_TRIES) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(Math.min(remainingNanos, PARK_NANOS));
+            }
+        };
+    }
+
+    static WaitStrategy named(String name) {
+        return switch (name) {
+            case "busy-spin" -> busySpin();
+            case "yield" -> yielding();
+            case "park" -> parking();
+            default -> throw new IllegalArgumentException("Unknown wait strategy: " + name);
+        };
+    }
+}
@@ -0,0 +1,214 @@
+package com.nerverless.task.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+import com.nerverless.task.dao.IdempotencyKeyChange;
+import com.nerverless.task.dao.IdempotencyKeyRepository;
+
+/**
+ * Transactions bound to the {@code Idempotency-Key} of the request that created
+ * them, per user, so a retried request gets the original transaction back.
+ * <p>
+ * The recent keys are kept in a concurrent map, lookups of a retry never lock nor
+ * touch the database. The map is bounded in size and in age: the entries are
+ * evicted in creation order, which is also their expiry order, from a lock free
+ * queue. Every new key is stored in the database too, it still answers the
+ * retries of keys evicted from the map or bound before a restart.
+ * <p>
+ * A key is claimed pending before its transaction is admitted, and confirmed once
+ * the transaction is submitted or released if it is not: a retry arriving
+ * meanwhile is told the key is pending, never given the id of a transaction that
+ * may not exist.
+ * <p>
+ * A key missing from the map is looked up on the reader connections. The confirmed
+ * keys are written behind, by {@link #run()}, in batches of one transaction on the
+ * writer connection, so a request never waits on the writer; when MAX_PENDING keys
+ * are waiting, the requests wait for the writer to catch up. A key is only written
+ * once confirmed in the map, which answers its retries until it is on disk, unless
+ * it is evicted within that time.
+ */
+public class IdempotencyKeys implements Runnable {
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private static final int MAX_PENDING = 10_000;
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private record Key(String userId, String idempotencyKey) {}
+
+    private record Entry(Key key, UUID transactionId, long createdAt, boolean pending) {}
+
+    /**
+     * The transaction a key is bound to, pending while the request that claimed the key
+     * is being accepted.
+     */
+    public record Binding(UUID transactionId, boolean pending) {}
+
+    private final IdempotencyKeyRepository repository;
+    private final IdempotencyKeyRepository lookups;
+    private final int maximumSize;
+    private final long timeToLiveMillis;
+    private final LongSupplier clock;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> creationOrder = new ConcurrentLinkedQueue<>();
+    private final BlockingQueue<IdempotencyKeyChange> changes = new ArrayBlockingQueue<>(MAX_PENDING);
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    // The changes are written with the repository, the missing keys are looked up with lookups
+    public IdempotencyKeys(IdempotencyKeyRepository repository, IdempotencyKeyRepository lookups, int maximumSize, long timeToLive, TimeUnit unit) {
+        this(repository, lookups, maximumSize, timeToLive, unit, System::currentTimeMillis);
+    }
+
+    /*
+     * For testing purposes this constructor with the clock is added
+     */
+    IdempotencyKeys(IdempotencyKeyRepository repository, IdempotencyKeyRepository lookups, int maximumSize, long timeToLive, TimeUnit unit,
+            LongSupplier clock) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be greater than zero");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("timeToLive must be greater than zero");
+        }
+        this.repository = repository;
+        this.lookups = lookups;
+        this.maximumSize = maximumSize;
+        this.timeToLiveMillis = unit.toMillis(timeToLive);
+        this.clock = clock;
+    }
+
+    /*
+     * Bind the key to the transaction, pending until it is confirmed or released. Returns the
+     * binding the key already has, if any; a pending one is still being accepted, its
+     * transaction may never exist.
+     */
+    public Optional<Binding> claim(String userId, String idempotencyKey, UUID transactionId) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key must have between 1 and " + MAX_KEY_LENGTH + " characters");
+        }
+        long now = clock.getAsLong();
+        Key key = new Key(userId, idempotencyKey);
+        Entry claimed = new Entry(key, transactionId, now, true);
+        Entry existing;
+        while ((existing = entries.putIfAbsent(key, claimed)) != null) {
+            if (now - existing.createdAt() < timeToLiveMillis) {
+                return Optional.of(new Binding(existing.transactionId(), existing.pending()));
+            }
+            if (entries.replace(key, existing, claimed)) {
+                break;
+            }
+        }
+        creationOrder.add(claimed);
+        evict(now);
+
+        Optional<UUID> stored = lookups.find(userId, idempotencyKey, now - timeToLiveMillis);
+        if (stored.isPresent()) {
+            Entry restored = new Entry(key, stored.get(), now, false);
+            if (entries.replace(key, claimed, restored)) {
+                creationOrder.add(restored);
+            }
+            return Optional.of(new Binding(stored.get(), false));
+        }
+        return Optional.empty();
+    }
+
+    // The transaction of a pending claim was submitted, its retries get it from now on
+    public void confirm(String userId, String idempotencyKey, UUID transactionId) {
+        Key key = new Key(userId, idempotencyKey);
+        long createdAt = clock.getAsLong();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.transactionId().equals(transactionId) && entry.pending()) {
+            createdAt = entry.createdAt();
+            Entry confirmed = new Entry(key, transactionId, createdAt, false);
+            if (entries.replace(key, entry, confirmed)) {
+                creationOrder.add(confirmed);
+            }
+        }
+        // the transaction is in the pipeline, its key is written even when the caller is interrupted
+        IdempotencyKeyChange change = new IdempotencyKeyChange(userId, idempotencyKey, transactionId, createdAt);
+        boolean interrupted = false;
+        while (true) {
+            try {
+                changes.put(change);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Unbind the key from a transaction that was rejected, so a retry is processed; only a pending claim is released
+    public void release(String userId, String idempotencyKey, UUID transactionId) {
+        Key key = new Key(userId, idempotencyKey);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.transactionId().equals(transactionId) && entry.pending()) {
+            entries.remove(key, entry);
+        }
+    }
+
+    // Drop the keys of the database older than the time to live, returns their number
+    public int purgeExpired() {
+        return repository.deleteCreatedBefore(clock.getAsLong() - timeToLiveMillis);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int pending() {
+        return changes.size();
+    }
+
+    // Write the changes until stopped and every change queued is written
+    @Override
+    public void run() {
+        while (running.get() || !changes.isEmpty()) {
+            try {
+                IdempotencyKeyChange first = changes.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<IdempotencyKeyChange> batch = new ArrayList<>(MAX_BATCH_SIZE);
+                batch.add(first);
+                changes.drainTo(batch, MAX_BATCH_SIZE - 1);
+                repository.saveAll(batch, timeToLiveMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    public void stop() {
+        running.set(false);
+    }
+
+    private void evict(long now) {
+        Entry oldest;
+        while ((oldest = creationOrder.peek()) != null
+                && (entries.size() > maximumSize || now - oldest.createdAt() >= timeToLiveMillis)) {
+            // a concurrent eviction may have taken it, the next oldest goes instead
+            Entry evicted = creationOrder.poll();
+            if (evicted != null) {
+                // a no-op for an entry already replaced or released
+                entries.remove(evicted.key(), evicted);
+            }
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.nerverless.task.service;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nerverless.task.model.Report;
+import com.nerverless.task.timer.TimerWheel;
+
+/**
+ * Fan-out of the emitted reports to the live subscribers. Every subscriber has its
+ * own bounded buffer, drained to its sink by a task of the executor scheduled when
+ * reports are buffered, so a slow sink never delays the publisher nor the other
+ * subscribers, and publishing never blocks. A subscriber whose buffer is full is
+ * evicted, and notified from its own drain task, never concurrently with a report.
+ * <p>
+ * A drain task hands over at most {@link #DRAIN_BATCH} reports before it yields its
+ * thread to the other subscribers. With the watchdog started, a sink call blocked
+ * longer than the write timeout, on a client that stopped reading, is interrupted
+ * and its subscriber evicted, so it cannot hold a thread of the executor.
+ * <p>
+ * Reports lost before they reach the broadcaster are announced with
+ * {@link #publishMissed(long)}; every subscriber is told, from its drain task, how
+ * many reports it may have missed, as they may have matched its filter.
+ */
+public class ReportBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportBroadcaster.class);
+
+    private static final int DRAIN_BATCH = 64;
+
+    public record Stats(int subscribers, long published, long missed, long evictions) {}
+
+    public final class Subscription {
+
+        private final Predicate<Report> filter;
+        private final Consumer<Report> sink;
+        private final LongConsumer onMissed;
+        private final Runnable onEvicted;
+        private final BlockingQueue<Report> buffer;
+        // reports lost upstream since the last notice
+        private final AtomicLong missed = new AtomicLong();
+        // set while a drain task of the subscription is submitted or running
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+        // set by the publisher or the watchdog, the drain task sends the notice once
+        private final AtomicBoolean evicted = new AtomicBoolean();
+        private boolean noticeSent;
+
+        // thread calling the sink and since when, guarded by this
+        private Thread writer;
+        private long writingSince;
+        private boolean stalled;
+
+        private Subscription(Predicate<Report> filter, Consumer<Report> sink, LongConsumer onMissed, Runnable onEvicted) {
+            this.filter = filter;
+            this.sink = sink;
+            this.onMissed = onMissed;
+            this.onEvicted = onEvicted;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        public void close() {
+            if (!closed) {
+                closed = true;
+                subscriptions.remove(this);
+                buffer.clear();
+                if (!evicted.get()) {
+                    watched.remove(this);
+                }
+            }
+        }
+
+        private void offer(Report report) {
+            if (closed || !filter.test(report)) {
+                return;
+            }
+            if (!buffer.offer(report)) {
+                evict("its " + bufferSize + " buffered reports were not consumed");
+                return;
+            }
+            schedule();
+        }
+
+        private void miss(long count) {
+            if (closed) {
+                return;
+            }
+            missed.addAndGet(count);
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int delivered = 0;
+            do {
+                notifyMissed();
+                Report report;
+                while (!closed && delivered < DRAIN_BATCH && (report = buffer.poll()) != null) {
+                    delivered++;
+                    try {
+                        startWrite();
+                        try {
+                            sink.accept(report);
+                        } finally {
+                            endWrite();
+                        }
+                    } catch (RuntimeException e) {
+                        // the subscriber went away
+                        logger.debug("Closing report subscription", e);
+                        close();
+                    }
+                }
+                if (evicted.get() && !noticeSent) {
+                    noticeSent = true;
+                    try {
+                        startWrite();
+                        try {
+                            onEvicted.run();
+                        } finally {
+                            endWrite();
+                        }
+                    } catch (RuntimeException e) {
+                        logger.debug("Failed to notify an evicted report subscriber", e);
+                    }
+                    watched.remove(this);
+                }
+                scheduled.set(false);
+                if (delivered >= DRAIN_BATCH) {
+                    // the other subscribers get the thread, the rest is drained by a new task
+                    if (hasWork()) {
+                        schedule();
+                    }
+                    return;
+                }
+                // a report buffered or an eviction after the last check, its publisher saw the task still scheduled
+            } while (hasWork() && scheduled.compareAndSet(false, true));
+        }
+
+        private boolean hasWork() {
+            return evicted.get() ? !noticeSent : !closed && (!buffer.isEmpty() || missed.get() > 0);
+        }
+
+        private void notifyMissed() {
+            long count;
+            if (closed || (count = missed.getAndSet(0)) == 0) {
+                return;
+            }
+            try {
+                startWrite();
+                try {
+                    onMissed.accept(count);
+                } finally {
+                    endWrite();
+                }
+            } catch (RuntimeException e) {
+                logger.debug("Closing report subscription", e);
+                close();
+            }
+        }
+
+        // The sink calls are under the watch of the watchdog until they return
+        private synchronized void startWrite() {
+            writer = Thread.currentThread();
+            writingSince = nanoClock.getAsLong();
+        }
+
+        // An interrupt raised by the watchdog is cleared here, it never leaks to the next task of the thread
+        private void endWrite() {
+            boolean timedOut;
+            synchronized (this) {
+                writer = null;
+                timedOut = stalled;
+                stalled = false;
+                Thread.interrupted();
+            }
+            if (timedOut) {
+                evict("a write to it did not complete within the write timeout");
+            }
+        }
+
+        // Interrupt a sink call blocked since before the deadline, returns true if one was
+        private synchronized boolean interruptIfStalled(long deadline) {
+            if (writer == null || stalled || writingSince - deadline > 0) {
+                return false;
+            }
+            stalled = true;
+            writer.interrupt();
+            return true;
+        }
+
+        private void evict(String reason) {
+            if (!evicted.compareAndSet(false, true)) {
+                return;
+            }
+            evictions.increment();
+            close();
+            logger.warn("Evicted a report subscriber, {}", reason);
+            schedule();
+        }
+    }
+
+    private final Executor executor;
+    private final int bufferSize;
+    private final LongSupplier nanoClock;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    // the subscriptions whose sink may still be called, the evicted ones until they are notified
+    private final List<Subscription> watched = new CopyOnWriteArrayList<>();
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder missedReports = new LongAdder();
+
+    public ReportBroadcaster(Executor executor, int bufferSize) {
+        this(executor, bufferSize, System::nanoTime);
+    }
+
+    /*
+     * For testing purposes this constructor with the clock is added
+     */
+    ReportBroadcaster(Executor executor, int bufferSize, LongSupplier nanoClock) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be greater than zero");
+        }
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+        this.nanoClock = nanoClock;
+    }
+
+    // Reports matching the filter are handed to the sink in order; onEvicted runs if the sink falls behind
+    public Subscription subscribe(Predicate<Report> filter, Consumer<Report> sink, Runnable onEvicted) {
+        return subscribe(filter, sink, missed -> { }, onEvicted);
+    }
+
+    // onMissed is handed the number of reports lost upstream since its last call, between two reports
+    public Subscription subscribe(Predicate<Report> filter, Consumer<Report> sink, LongConsumer onMissed, Runnable onEvicted) {
+        Subscription subscription = new Subscription(filter, sink, onMissed, onEvicted);
+        watched.add(subscription);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public void publish(Report report) {
+        published.increment();
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(report);
+        }
+    }
+
+    // Reports lost before they were published, never blocks either
+    public void publishMissed(long count) {
+        if (count <= 0) {
+            return;
+        }
+        missedReports.add(count);
+        for (Subscription subscription : subscriptions) {
+            subscription.miss(count);
+        }
+    }
+
+    // Check the sink calls every half write timeout, on the timer wheel, until the wheel stops
+    public void startWatchdog(TimerWheel timer, long writeTimeout, TimeUnit unit) {
+        long timeoutNanos = unit.toNanos(writeTimeout);
+        if (timeoutNanos <= 0) {
+            throw new IllegalArgumentException("writeTimeout must be greater than zero");
+        }
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                interruptStalled(timeoutNanos);
+                timer.schedule(this, timeoutNanos / 2, TimeUnit.NANOSECONDS);
+            }
+        }, timeoutNanos / 2, TimeUnit.NANOSECONDS);
+    }
+
+    // Interrupt the sink calls running for longer than the timeout, their subscribers are evicted
+    int interruptStalled(long timeoutNanos) {
+        long deadline = nanoClock.getAsLong() - timeoutNanos;
+        int interrupted = 0;
+        for (Subscription subscription : watched) {
+            if (subscription.interruptIfStalled(deadline)) {
+                interrupted++;
+            }
+        }
+        return interrupted;
+    }
+
+    public Stats stats() {
+        return new Stats(subscriptions.size(), published.sum(), missedReports.sum(), evictions.sum());
+    }
+}
@@ -0,0 +1,198 @@
+package com.nerverless.task.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nerverless.task.metrics.MetricRegistry;
+import com.nerverless.task.model.Report;
+
+/**
+ * Fan-out of the report queue of the transaction workers to the subscribers of
+ * the application. A dispatcher thread takes the reports from the queue and
+ * buffers them for every subscriber; each subscriber has its own bounded buffer
+ * and delivery thread, and is handed the reports in batches, in the order they
+ * were emitted. When a buffer is full, a BLOCK subscriber holds the dispatcher
+ * until it catches up, as the pipeline needs every report, while a DROP
+ * subscriber loses the report, so it never holds the workers back. A DROP
+ * subscriber is told, from its delivery thread after the batch in which they went
+ * missing, how many reports it lost.
+ */
+public class ReportBus implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportBus.class);
+
+    private static final int DISPATCH_BATCH = 256;
+
+    public enum Overflow {
+        BLOCK,
+        DROP
+    }
+
+    @FunctionalInterface
+    public interface Subscriber {
+        void onReports(List<Report> reports);
+    }
+
+    public record Stats(String name, Overflow overflow, int buffered, long delivered, long dropped) {}
+
+    private final class Subscription implements Runnable {
+
+        private final String name;
+        private final int maxBatchSize;
+        private final Overflow overflow;
+        private final Subscriber subscriber;
+        private final LongConsumer onDropped;
+        private final BlockingQueue<Report> buffer;
+        private final LongAdder delivered = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        // dropped reports the subscriber was told about, read and written by the delivery thread only
+        private long droppedNotified;
+
+        private Subscription(String name, int bufferSize, int maxBatchSize, Overflow overflow, Subscriber subscriber, LongConsumer onDropped) {
+            this.name = name;
+            this.maxBatchSize = maxBatchSize;
+            this.overflow = overflow;
+            this.subscriber = subscriber;
+            this.onDropped = onDropped;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        private void offer(Report report) throws InterruptedException {
+            if (overflow == Overflow.BLOCK) {
+                buffer.put(report);
+            } else if (!buffer.offer(report)) {
+                dropped.increment();
+            }
+        }
+
+        // Deliver until stopped and every buffered report is handed over
+        @Override
+        public void run() {
+            List<Report> batch = new ArrayList<>(maxBatchSize);
+            while (running.get() || !buffer.isEmpty()) {
+                try {
+                    Report first = buffer.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    buffer.drainTo(batch, maxBatchSize - 1);
+                    try {
+                        subscriber.onReports(batch);
+                    } catch (RuntimeException e) {
+                        logger.error("Report subscriber {} failed on {} reports", name, batch.size(), e);
+                    }
+                    delivered.add(batch.size());
+                    batch.clear();
+                    notifyDropped();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        private void notifyDropped() {
+            long lost = dropped.sum() - droppedNotified;
+            if (lost <= 0) {
+                return;
+            }
+            droppedNotified += lost;
+            try {
+                onDropped.accept(lost);
+            } catch (RuntimeException e) {
+                logger.error("Report subscriber {} failed on {} dropped reports", name, lost, e);
+            }
+        }
+
+        private Stats stats() {
+            return new Stats(name, overflow, buffer.size(), delivered.sum(), dropped.sum());
+        }
+    }
+
+    private final BlockingQueue<Report> reportQueue;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    public ReportBus(BlockingQueue<Report> reportQueue) {
+        this.reportQueue = reportQueue;
+    }
+
+    // Subscribers are added before the bus starts, each is called from its own thread only
+    public void subscribe(String name, int bufferSize, int maxBatchSize, Overflow overflow, Subscriber subscriber) {
+        subscribe(name, bufferSize, maxBatchSize, overflow, subscriber, dropped -> { });
+    }
+
+    // onDropped is called with the number of reports a DROP subscriber lost, from its thread as well
+    public void subscribe(String name, int bufferSize, int maxBatchSize, Overflow overflow, Subscriber subscriber, LongConsumer onDropped) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be greater than zero");
+        }
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be greater than zero");
+        }
+        if (overflow == null) {
+            throw new IllegalArgumentException("overflow cannot be null");
+        }
+        subscriptions.add(new Subscription(name, bufferSize, maxBatchSize, overflow, subscriber, onDropped));
+    }
+
+    public void start(ExecutorService executorService) {
+        subscriptions.forEach(executorService::execute);
+        executorService.execute(this);
+    }
+
+    @Override
+    public void run() {
+        List<Report> reports = new ArrayList<>(DISPATCH_BATCH);
+        while (running.get()) {
+            try {
+                Report first = reportQueue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                reports.add(first);
+                reportQueue.drainTo(reports, DISPATCH_BATCH - 1);
+                for (Report report : reports) {
+                    for (Subscription subscription : subscriptions) {
+                        subscription.offer(report);
+                    }
+                }
+                reports.clear();
+            } catch (InterruptedException e) {
+                logger.error("Error dispatching transaction reports", e);
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    // The subscribers are still handed the reports already buffered
+    public void stop() {
+        running.set(false);
+    }
+
+    public List<Stats> stats() {
+        return subscriptions.stream().map(Subscription::stats).toList();
+    }
+
+    // Buffered and dropped reports of each subscriber, read when the metrics are scraped
+    public void registerMetrics(MetricRegistry registry) {
+        for (Subscription subscription : subscriptions) {
+            registry.gauge("queue_depth", "Messages waiting in a queue", subscription.buffer::size, "queue", "reports-" + subscription.name);
+            registry.gauge("report_subscriber_dropped", "Reports dropped by a subscriber whose buffer was full, since the start",
+                    subscription.dropped::sum, "subscriber", subscription.name);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.nerverless.task.service;
+
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import com.nerverless.task.model.Report;
+
+/**
+ * Latest report of the recent transactions, bounded in size and in age. Reads and
+ * writes of different transactions never wait on each other. Once the cache is
+ * full, the entries are evicted in insertion order with a second chance: an entry
+ * read since the last pass is kept for one more round. Entries older than the time
+ * to live are dropped when they are read.
+ * <p>
+ * A transaction admitted but not reported yet is cached as pending, so polling its
+ * status before the first report does not read the database either.
+ */
+public class ReportCache {
+
+    public record Stats(long hits, long misses, long evictions, int size) {}
+
+    // The report of an entry, null while pending, is replaced in place so the eviction order holds
+    private static final class Entry {
+
+        private final UUID transactionId;
+        private volatile Report report;
+        private volatile long writtenAt;
+        private volatile boolean referenced;
+
+        private Entry(UUID transactionId, Report report, long writtenAt) {
+            this.transactionId = transactionId;
+            this.report = report;
+            this.writtenAt = writtenAt;
+        }
+    }
+
+    /**
+     * A cached transaction, with its latest report or pending when none was emitted yet.
+     */
+    public record Cached(Optional<Report> report) {}
+
+    private final int maximumSize;
+    private final long timeToLiveNanos;
+    private final LongSupplier nanoClock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final ConcurrentHashMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+    // Entries in insertion order, the stale ones are skipped when they come up
+    private final Queue<Entry> evictionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public ReportCache(int maximumSize, long timeToLive, TimeUnit unit) {
+        this(maximumSize, timeToLive, unit, System::nanoTime);
+    }
+
+    /*
+     * For testing purposes this constructor with the clock is added
+     */
+    ReportCache(int maximumSize, long timeToLive, TimeUnit unit, LongSupplier nanoClock) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be greater than zero");
+        }
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("timeToLive must be greater than zero");
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.nanoClock = nanoClock;
+    }
+
+    public Optional<Cached> get(UUID transactionId) {
+        Entry entry = entries.get(transactionId);
+        if (entry != null && nanoClock.getAsLong() - entry.writtenAt > timeToLiveNanos) {
+            if (entries.remove(transactionId, entry)) {
+                evictions.increment();
+            }
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        entry.referenced = true;
+        hits.increment();
+        return Optional.of(new Cached(Optional.ofNullable(entry.report)));
+    }
+
+    // Write-through of a report just emitted, it is the latest of its transaction
+    public void put(Report report) {
+        write(report.transactionId().id(), report, true);
+    }
+
+    // Report loaded from the database, a newer report cached in the meantime is kept
+    public void putIfAbsent(Report report) {
+        write(report.transactionId().id(), report, false);
+    }
+
+    // Transaction just admitted, its first report replaces the pending entry
+    public void putPending(UUID transactionId) {
+        write(transactionId, null, false);
+    }
+
+    private void write(UUID transactionId, Report report, boolean replace) {
+        long now = nanoClock.getAsLong();
+        Entry[] added = new Entry[1];
+        entries.compute(transactionId, (id, entry) -> {
+            if (entry == null) {
+                added[0] = new Entry(id, report, now);
+                return added[0];
+            }
+            if (report != null && (replace || entry.report == null)) {
+                entry.report = report;
+                entry.writtenAt = now;
+            }
+            return entry;
+        });
+        if (added[0] != null) {
+            evictionOrder.add(added[0]);
+            queued.incrementAndGet();
+            evict();
+        }
+    }
+
+    // Each entry is passed over at most once before it is evicted, so this ends
+    private void evict() {
+        while (entries.size() > maximumSize) {
+            Entry entry = evictionOrder.poll();
+            if (entry == null) {
+                return;
+            }
+            queued.decrementAndGet();
+            if (isStale(entry)) {
+                continue;
+            }
+            if (entry.referenced) {
+                entry.referenced = false;
+                evictionOrder.add(entry);
+                queued.incrementAndGet();
+            } else if (entries.remove(entry.transactionId, entry)) {
+                evictions.increment();
+            }
+        }
+        // the entries expired while the cache is not full are only left in the queue
+        if (queued.get() > 2 * maximumSize) {
+            evictionOrder.removeIf(this::isStale);
+            queued.set(evictionOrder.size());
+        }
+    }
+
+    private boolean isStale(Entry entry) {
+        return entries.get(entry.transactionId) != entry;
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), entries.size());
+    }
+}
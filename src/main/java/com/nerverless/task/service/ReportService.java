@@ -3,26 +3,57 @@ package com.nerverless.task.service;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 
 import javax.sql.DataSource;
 
 import com.nerverless.task.dao.ReportTransactionRepository;
 import com.nerverless.task.model.Report;
+import com.nerverless.task.model.ReportPage;
 
 /**
  * Report service implementation to retrieve reports on transactions and
  * withdrawals for a given user or a given transaction ID.
+ * <p>
+ * The latest report of a transaction is served from a {@link ReportCache} fed
+ * with the reports emitted by the transaction workers and the transactions
+ * admitted, the database is only read on a miss.
  */
 public class ReportService {
 
+    private static final int STREAM_PAGE_SIZE = 500;
+
     private final ReportTransactionRepository reportTransactionRepository;
+    private final ReportCache cache;
+
+    public ReportService(DataSource dataSource, ReportCache cache) {
+        this(new ReportTransactionRepository(dataSource), cache);
+    }
 
-    public ReportService(DataSource dataSource) {
-        this.reportTransactionRepository = new ReportTransactionRepository(dataSource);
+    /*
+     * For testing purposes this constructor with the repository is added
+     */
+    public ReportService(ReportTransactionRepository reportTransactionRepository, ReportCache cache) {
+        this.reportTransactionRepository = reportTransactionRepository;
+        this.cache = cache;
     }
 
-    public List<Report> getReportsByUser(String userId) {
-        return reportTransactionRepository.findByUserId(userId);
+    // Page of the reports of a user older than the cursor, null for the newest ones
+    public ReportPage getReportsByUser(String userId, Long cursor, int limit) {
+        return reportTransactionRepository.findByUserId(userId, cursor == null ? Long.MAX_VALUE : cursor, limit);
+    }
+
+    /*
+     * Every report of a user, newest first, read in keyset pages: the reader connection is
+     * released before a page is handed to the consumer, so a slow client never holds it.
+     */
+    public void streamReportsByUser(String userId, Consumer<Report> consumer) {
+        Long cursor = null;
+        do {
+            ReportPage page = getReportsByUser(userId, cursor, STREAM_PAGE_SIZE);
+            page.reports().forEach(consumer);
+            cursor = page.next();
+        } while (cursor != null);
     }
 
     public List<Report> getReportsByTransaction(UUID transactionId) {
@@ -30,6 +61,27 @@ public class ReportService {
     }
 
     public Optional<Report> getLatestReportByTransaction(UUID transactionId) {
-        return reportTransactionRepository.findLatestByTransactionId(transactionId);
+        Optional<ReportCache.Cached> cached = cache.get(transactionId);
+        if (cached.isPresent()) {
+            // pending, in flight and not reported yet
+            return cached.get().report();
+        }
+        Optional<Report> report = reportTransactionRepository.findLatestByTransactionId(transactionId);
+        report.ifPresent(cache::putIfAbsent);
+        return report;
+    }
+
+    // Called with every transaction admitted, before it is submitted
+    public void onAdmitted(UUID transactionId) {
+        cache.putPending(transactionId);
+    }
+
+    // Called with every report emitted by the transaction workers
+    public void onReport(Report report) {
+        cache.put(report);
+    }
+
+    public ReportCache.Stats cacheStats() {
+        return cache.stats();
     }
 }
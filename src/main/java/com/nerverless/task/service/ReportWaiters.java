@@ -0,0 +1,74 @@
+package com.nerverless.task.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.TransactionStatus;
+import com.nerverless.task.timer.TimerWheel;
+
+/**
+ * Callers waiting for the final report of a transaction. A waiter is a future
+ * completed by the first {@code COMPLETED} or {@code FAILED} report of its
+ * transaction, or with an empty result by a {@link TimerWheel} timeout; no thread
+ * is held while waiting.
+ */
+public class ReportWaiters {
+
+    private final TimerWheel timer;
+    private final Map<UUID, List<CompletableFuture<Optional<Report>>>> waiters = new ConcurrentHashMap<>();
+
+    public ReportWaiters(TimerWheel timer) {
+        this.timer = timer;
+    }
+
+    public static boolean isFinal(Report report) {
+        return report.status() == TransactionStatus.COMPLETED || report.status() == TransactionStatus.FAILED;
+    }
+
+    // Completes with the final report, or empty once the timeout expires
+    public CompletableFuture<Optional<Report>> await(UUID transactionId, long timeout, TimeUnit unit) {
+        CompletableFuture<Optional<Report>> waiter = new CompletableFuture<>();
+        waiters.compute(transactionId, (id, list) -> {
+            List<CompletableFuture<Optional<Report>>> current = list == null ? new ArrayList<>(1) : list;
+            current.add(waiter);
+            return current;
+        });
+        TimerWheel.Timeout expiry = timer.schedule(() -> {
+            remove(transactionId, waiter);
+            waiter.complete(Optional.empty());
+        }, timeout, unit);
+        waiter.whenComplete((report, e) -> expiry.cancel());
+        return waiter;
+    }
+
+    // Called with every report emitted, and with the latest known report of a new waiter
+    public void onReport(Report report) {
+        if (!isFinal(report)) {
+            return;
+        }
+        List<CompletableFuture<Optional<Report>>> list = waiters.remove(report.transactionId().id());
+        if (list != null) {
+            // a removed list is no longer modified, new waiters get a new one
+            list.forEach(waiter -> waiter.complete(Optional.of(report)));
+        }
+    }
+
+    // Transactions with at least one waiter
+    public int size() {
+        return waiters.size();
+    }
+
+    private void remove(UUID transactionId, CompletableFuture<Optional<Report>> waiter) {
+        waiters.computeIfPresent(transactionId, (id, list) -> {
+            list.remove(waiter);
+            return list.isEmpty() ? null : list;
+        });
+    }
+}
@@ -1,17 +1,92 @@
 package com.nerverless.task.service;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 public interface WithdrawalService {
     void requestWithdrawal(WithdrawalId id, Address address, BigDecimal amount);
     WithdrawalState getRequestState(WithdrawalId id);
 
+    /*
+     * Bulk and asynchronous variants. The defaults call the single item methods one after
+     * the other, and the asynchronous ones complete in the calling thread; providers with
+     * a bulk or non-blocking API override them.
+     */
+
+    // Returns the reason of each request rejected, the others are accepted
+    default Map<WithdrawalId, String> requestWithdrawals(List<Request> requests) {
+        Map<WithdrawalId, String> rejected = new HashMap<>();
+        for (Request request : requests) {
+            try {
+                requestWithdrawal(request.id(), request.address(), request.amount());
+            } catch (RuntimeException e) {
+                rejected.put(request.id(), String.valueOf(e.getMessage()));
+            }
+        }
+        return rejected;
+    }
+
+    // States of the known requests, the unknown ones are left out
+    default Map<WithdrawalId, WithdrawalState> getRequestStates(Collection<WithdrawalId> ids) {
+        Map<WithdrawalId, WithdrawalState> states = new HashMap<>();
+        for (WithdrawalId id : ids) {
+            try {
+                states.put(id, getRequestState(id));
+            } catch (IllegalArgumentException e) {
+                // unknown request
+            }
+        }
+        return states;
+    }
+
+    default CompletableFuture<Void> requestWithdrawalAsync(WithdrawalId id, Address address, BigDecimal amount) {
+        return complete(() -> {
+            requestWithdrawal(id, address, amount);
+            return null;
+        });
+    }
+
+    default CompletableFuture<WithdrawalState> getRequestStateAsync(WithdrawalId id) {
+        return complete(() -> getRequestState(id));
+    }
+
+    default CompletableFuture<Map<WithdrawalId, String>> requestWithdrawalsAsync(List<Request> requests) {
+        return complete(() -> requestWithdrawals(requests));
+    }
+
+    default CompletableFuture<Map<WithdrawalId, WithdrawalState>> getRequestStatesAsync(Collection<WithdrawalId> ids) {
+        return complete(() -> getRequestStates(ids));
+    }
+
+    // Register a listener of the requests reaching a final state, returns false if the provider does not push them
+    default boolean subscribe(CompletionListener listener) {
+        return false;
+    }
+
+    private static <T> CompletableFuture<T> complete(Supplier<T> call) {
+        try {
+            return CompletableFuture.completedFuture(call.get());
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     enum WithdrawalState {
         PROCESSING, COMPLETED, FAILED
     }
 
     record WithdrawalId(UUID value) {}
     record Address(String value) {}
-}
+    record Request(WithdrawalId id, Address address, BigDecimal amount) {}
 
+    @FunctionalInterface
+    interface CompletionListener {
+        void completed(WithdrawalId id, WithdrawalState state);
+    }
+}
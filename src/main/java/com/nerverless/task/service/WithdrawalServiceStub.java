@@ -1,10 +1,18 @@
 package com.nerverless.task.service;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import static com.nerverless.task.service.WithdrawalService.WithdrawalState.COMPLETED;
 import static com.nerverless.task.service.WithdrawalService.WithdrawalState.FAILED;
@@ -12,13 +20,61 @@ import static com.nerverless.task.service.WithdrawalService.WithdrawalState.PROC
 
 public class WithdrawalServiceStub implements WithdrawalService {
     private final ConcurrentMap<WithdrawalId, Withdrawal> requests = new ConcurrentHashMap<>();
+    private final List<CompletionListener> listeners = new CopyOnWriteArrayList<>();
+    // pushes the final states to the listeners at finaliseAt
+    private final ScheduledExecutorService callbacks = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "withdrawal-stub-callbacks");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long minDelayMillis;
+    private final long maxDelayMillis;
+
+    public WithdrawalServiceStub() {
+        this(1000, 10000);
+    }
+
+    /*
+     * For testing purposes this constructor with the processing delays is added
+     */
+    WithdrawalServiceStub(long minDelayMillis, long maxDelayMillis) {
+        this.minDelayMillis = minDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
 
     @Override
     public void requestWithdrawal(WithdrawalId id, Address address, BigDecimal amount) {
-        var existing = requests.putIfAbsent(id, new Withdrawal(finalState(), finaliseAt(), address, amount));
+        String reason = register(id, address, amount);
+        if (reason != null) {
+            throw new IllegalStateException(reason);
+        }
+    }
+
+    // One pass over the requests, a conflicting one is rejected without failing the others
+    @Override
+    public Map<WithdrawalId, String> requestWithdrawals(List<Request> batch) {
+        Map<WithdrawalId, String> rejected = new HashMap<>();
+        for (Request request : batch) {
+            String reason = register(request.id(), request.address(), request.amount());
+            if (reason != null) {
+                rejected.put(request.id(), reason);
+            }
+        }
+        return rejected;
+    }
+
+    // Returns the reason of a rejection, null if the request is accepted or repeated
+    private String register(WithdrawalId id, Address address, BigDecimal amount) {
+        var withdrawal = new Withdrawal(finalState(), finaliseAt(), address, amount);
+        var existing = requests.putIfAbsent(id, withdrawal);
         if (existing != null && (!Objects.equals(existing.address, address) || !Objects.equals(existing.amount, amount))) {
-            throw new IllegalStateException("Withdrawal request with id[%s] is already present".formatted(id));
+            return "Withdrawal request with id[%s] is already present".formatted(id);
+        }
+        if (existing == null) {
+            long delay = withdrawal.finaliseAt() - System.currentTimeMillis();
+            callbacks.schedule(() -> listeners.forEach(listener -> listener.completed(id, withdrawal.state())), delay, TimeUnit.MILLISECONDS);
         }
+        return null;
     }
 
     private WithdrawalState finalState() {
@@ -26,7 +82,7 @@ public class WithdrawalServiceStub implements WithdrawalService {
     }
 
     private long finaliseAt() {
-        return System.currentTimeMillis() + ThreadLocalRandom.current().nextLong(1000, 10000);
+        return System.currentTimeMillis() + ThreadLocalRandom.current().nextLong(minDelayMillis, maxDelayMillis);
     }
 
     @Override
@@ -38,10 +94,27 @@ public class WithdrawalServiceStub implements WithdrawalService {
         return request.finalState();
     }
 
+    @Override
+    public Map<WithdrawalId, WithdrawalState> getRequestStates(Collection<WithdrawalId> ids) {
+        Map<WithdrawalId, WithdrawalState> states = new HashMap<>();
+        for (WithdrawalId id : ids) {
+            var request = requests.get(id);
+            if (request != null) {
+                states.put(id, request.finalState());
+            }
+        }
+        return states;
+    }
+
+    @Override
+    public boolean subscribe(CompletionListener listener) {
+        listeners.add(listener);
+        return true;
+    }
+
     record Withdrawal(WithdrawalState state, long finaliseAt, Address address, BigDecimal amount) {
         public WithdrawalState finalState() {
             return finaliseAt <= System.currentTimeMillis() ? state : PROCESSING;
         }
     }
 }
-
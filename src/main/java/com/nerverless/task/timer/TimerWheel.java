@@ -0,0 +1,240 @@
+package com.nerverless.task.timer;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timer wheel for large numbers of coarse timeouts. A timeout is hashed in
+ * the bucket of its deadline tick with the number of turns of the wheel left, so
+ * scheduling and cancelling are constant time whatever the number of pending
+ * timeouts, and a tick only walks its own bucket.
+ * <p>
+ * Timeouts are scheduled and cancelled from any thread through lock free queues,
+ * the buckets are only touched by the thread running {@link #run()}, which also
+ * runs the expired tasks: they must be short and must not block. Timeouts fire up
+ * to one tick late.
+ */
+public class TimerWheel implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+    public final class Timeout {
+
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        // owned by the wheel thread
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        // Returns false if the task already ran or was cancelled
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            cancelled.add(this);
+            return true;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        private boolean expire() {
+            if (!state.compareAndSet(PENDING, EXPIRED)) {
+                return false;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("Timer task failed", e);
+            }
+            return true;
+        }
+    }
+
+    // Doubly linked list of the timeouts of a tick, for constant time removal
+    private static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+
+        Timeout remove(Timeout timeout) {
+            Timeout next = timeout.next;
+            if (timeout.previous != null) {
+                timeout.previous.next = next;
+            } else {
+                head = next;
+            }
+            if (next != null) {
+                next.previous = timeout.previous;
+            } else {
+                tail = timeout.previous;
+            }
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.bucket = null;
+            return next;
+        }
+    }
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final LongSupplier nanoClock;
+    private final long startTime;
+
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    // next tick to process, owned by the wheel thread
+    private long tick;
+
+    // The number of ticks per wheel is rounded up to a power of two
+    public TimerWheel(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        this(tickDuration, unit, ticksPerWheel, System::nanoTime);
+    }
+
+    /*
+     * For testing purposes this constructor with the clock is added
+     */
+    TimerWheel(long tickDuration, TimeUnit unit, int ticksPerWheel, LongSupplier nanoClock) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than zero");
+        }
+        if (ticksPerWheel < 1 || ticksPerWheel > 1 << 20) {
+            throw new IllegalArgumentException("ticksPerWheel must be between 1 and " + (1 << 20));
+        }
+        int size = Integer.highestOneBit(ticksPerWheel);
+        if (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.nanoClock = nanoClock;
+        this.startTime = nanoClock.getAsLong();
+    }
+
+    // Run the task once the delay has elapsed, on the wheel thread
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, nanoClock.getAsLong() + Math.max(0, unit.toNanos(delay)));
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    // Timeouts scheduled and neither expired nor cancelled yet
+    public int pending() {
+        return pending.get();
+    }
+
+    @Override
+    public void run() {
+        while (running.get()) {
+            try {
+                long sleepNanos = startTime + (tick + 1) * tickNanos - nanoClock.getAsLong();
+                if (sleepNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                }
+                advance();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    public void stop() {
+        running.set(false);
+    }
+
+    // Process every tick elapsed since the last call
+    void advance() {
+        long now = nanoClock.getAsLong();
+        while (startTime + (tick + 1) * tickNanos <= now) {
+            removeCancelled();
+            transferScheduled();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferScheduled() {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            // a deadline already passed goes in the current tick
+            long deadlineTick = Math.max(tick, (timeout.deadline - startTime) / tickNanos);
+            timeout.remainingRounds = (deadlineTick - tick) / wheel.length;
+            wheel[(int) (deadlineTick & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            pending.decrementAndGet();
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                timeout = timeout.next;
+            } else {
+                Timeout next = bucket.remove(timeout);
+                // a cancelled timeout is counted down when its cancellation is processed
+                if (timeout.expire()) {
+                    pending.decrementAndGet();
+                }
+                timeout = next;
+            }
+        }
+    }
+}
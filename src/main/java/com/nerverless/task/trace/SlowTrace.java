@@ -0,0 +1,12 @@
+package com.nerverless.task.trace;
+
+import java.util.Map;
+import java.util.UUID;
+
+import com.nerverless.task.model.TransactionStatus;
+
+/*
+ * Transaction slower than the threshold: its total time and the time spent before each
+ * stage it reached since the previous one, in microseconds.
+ */
+public record SlowTrace(UUID transactionId, String type, TransactionStatus status, long totalMicros, Map<String, Long> stageMicros) {}
@@ -0,0 +1,39 @@
+package com.nerverless.task.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ring buffer of the latest slow traces, a new trace overwrites the oldest one
+ * once the buffer is full.
+ */
+class SlowTraceBuffer {
+
+    private final AtomicReferenceArray<SlowTrace> traces;
+    private final AtomicLong next = new AtomicLong();
+
+    SlowTraceBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be greater than zero");
+        }
+        this.traces = new AtomicReferenceArray<>(capacity);
+    }
+
+    void add(SlowTrace trace) {
+        traces.set((int) (next.getAndIncrement() % traces.length()), trace);
+    }
+
+    List<SlowTrace> newestFirst() {
+        long end = next.get();
+        List<SlowTrace> newest = new ArrayList<>();
+        for (long i = end - 1; i >= Math.max(0, end - traces.length()); i--) {
+            SlowTrace trace = traces.get((int) (i % traces.length()));
+            if (trace != null) {
+                newest.add(trace);
+            }
+        }
+        return newest;
+    }
+}
@@ -0,0 +1,27 @@
+package com.nerverless.task.trace;
+
+/**
+ * Stages of a transaction through the pipeline, in the order they are reached.
+ * The withdrawal stages are only reached by withdrawals.
+ */
+public enum Stage {
+    // admitted by the HTTP handler
+    ACCEPTED,
+    // journaled and handed to the worker queue
+    SUBMITTED,
+    // taken from the queue by a transaction worker
+    DEQUEUED,
+    // balance and report written, outcome handed to the next stage
+    COMMITTED,
+    // requested to the withdrawal provider
+    PROVIDER_SENT,
+    // final state returned or pushed by the withdrawal provider
+    PROVIDER_RETURNED,
+    // final report drained from the report queue
+    REPORTED;
+
+    // Label of the metrics and of the slow traces
+    public String label() {
+        return name().toLowerCase();
+    }
+}
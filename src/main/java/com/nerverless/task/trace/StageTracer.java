@@ -0,0 +1,225 @@
+package com.nerverless.task.trace;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.nerverless.task.metrics.Counter;
+import com.nerverless.task.metrics.Histogram;
+import com.nerverless.task.metrics.MetricRegistry;
+import com.nerverless.task.model.TransactionStatus;
+import com.nerverless.task.timer.TimerWheel;
+
+/**
+ * Monotonic timestamps of the stages of the transactions in flight, keyed by
+ * transaction id like the other per-transaction state of the pipeline. Each stage
+ * keeps the first time it is reached, from whichever thread reaches it; the queues
+ * between the stages order the stamps. When the final report is drained, the time
+ * spent before each stage is recorded in the per-stage histograms, the traces
+ * slower than the threshold are kept in a ring buffer, and a flight recorder event
+ * is committed when enabled.
+ * <p>
+ * A transaction dropped on its way never completes its trace, so with the expiry
+ * started the traces older than the maximum age are dropped on the timer wheel.
+ * The traces not started because too many are in flight and the expired ones are
+ * counted in {@code transaction_traces_dropped_total}.
+ */
+public class StageTracer {
+
+    // Traces started while this many are in flight are dropped
+    private static final int MAX_IN_FLIGHT = 65_536;
+    private static final Stage[] STAGES = Stage.values();
+
+    public static final StageTracer DISABLED = new StageTracer();
+
+    private record Trace(String type, AtomicLongArray stamps) {}
+
+    private final boolean enabled;
+    private final long slowNanos;
+    private final boolean flightRecorder;
+    private final SlowTraceBuffer slowTraces;
+    private final MetricRegistry registry;
+    private final int maxInFlight;
+    private final Counter droppedStarts;
+    private final Counter expired;
+    private final ConcurrentMap<UUID, Trace> inFlight = new ConcurrentHashMap<>();
+    // by stage ordinal, none for ACCEPTED
+    private final Histogram[] stageTimes = new Histogram[STAGES.length];
+    private final ConcurrentMap<String, Histogram> totalTimes = new ConcurrentHashMap<>();
+
+    private StageTracer() {
+        this.enabled = false;
+        this.slowNanos = Long.MAX_VALUE;
+        this.flightRecorder = false;
+        this.slowTraces = new SlowTraceBuffer(1);
+        this.registry = null;
+        this.maxInFlight = 0;
+        this.droppedStarts = null;
+        this.expired = null;
+    }
+
+    public StageTracer(MetricRegistry registry, long slowThresholdMillis, int slowTraceCapacity, boolean flightRecorder) {
+        this(registry, slowThresholdMillis, slowTraceCapacity, flightRecorder, MAX_IN_FLIGHT);
+    }
+
+    /*
+     * For testing purposes this constructor with the limit of traces in flight is added
+     */
+    StageTracer(MetricRegistry registry, long slowThresholdMillis, int slowTraceCapacity, boolean flightRecorder, int maxInFlight) {
+        if (slowThresholdMillis < 0) {
+            throw new IllegalArgumentException("slowThresholdMillis cannot be negative");
+        }
+        this.enabled = true;
+        this.slowNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        this.flightRecorder = flightRecorder;
+        this.slowTraces = new SlowTraceBuffer(slowTraceCapacity);
+        this.registry = registry;
+        this.maxInFlight = maxInFlight;
+        this.droppedStarts = registry.counter("transaction_traces_dropped_total", "Transaction traces dropped before their final report",
+                "reason", "in_flight_limit");
+        this.expired = registry.counter("transaction_traces_dropped_total", "Transaction traces dropped before their final report",
+                "reason", "expired");
+        for (int i = 1; i < STAGES.length; i++) {
+            stageTimes[i] = registry.histogram("transaction_stage_duration_seconds", "Time spent by a transaction before a stage since the previous one",
+                    "stage", STAGES[i].label());
+        }
+    }
+
+    // Start the trace of an admitted transaction, stamped ACCEPTED at a System.nanoTime() reading
+    public void start(UUID transactionId, String type, long acceptedNanos) {
+        if (!enabled) {
+            return;
+        }
+        if (inFlight.size() >= maxInFlight) {
+            droppedStarts.increment();
+            return;
+        }
+        AtomicLongArray stamps = new AtomicLongArray(STAGES.length);
+        stamps.set(Stage.ACCEPTED.ordinal(), acceptedNanos);
+        inFlight.put(transactionId, new Trace(type, stamps));
+    }
+
+    // A no-op for the transactions not traced and for the stages already reached
+    public void stamp(UUID transactionId, Stage stage) {
+        if (!enabled) {
+            return;
+        }
+        Trace trace = inFlight.get(transactionId);
+        if (trace != null) {
+            trace.stamps().compareAndSet(stage.ordinal(), 0, System.nanoTime());
+        }
+    }
+
+    // Drop the trace of a transaction that will not be reported
+    public void discard(UUID transactionId) {
+        if (enabled) {
+            inFlight.remove(transactionId);
+        }
+    }
+
+    // Final report of a transaction drained
+    public void complete(UUID transactionId, TransactionStatus status) {
+        if (!enabled) {
+            return;
+        }
+        Trace trace = inFlight.remove(transactionId);
+        if (trace == null) {
+            return;
+        }
+        AtomicLongArray stamps = trace.stamps();
+        stamps.compareAndSet(Stage.REPORTED.ordinal(), 0, System.nanoTime());
+        long accepted = stamps.get(Stage.ACCEPTED.ordinal());
+        long total = Math.max(0, stamps.get(Stage.REPORTED.ordinal()) - accepted);
+
+        // time before each stage reached since the previous one reached, zero for the others
+        long[] durations = new long[STAGES.length];
+        long previous = accepted;
+        for (int i = 1; i < STAGES.length; i++) {
+            long at = stamps.get(i);
+            if (at != 0) {
+                durations[i] = Math.max(0, at - previous);
+                stageTimes[i].record(durations[i]);
+                previous = Math.max(previous, at);
+            }
+        }
+        totalTimes.computeIfAbsent(trace.type(), type -> registry.histogram("transaction_trace_duration_seconds",
+                "Time from the acceptance of a transaction to its final report", "type", type)).record(total);
+
+        if (total >= slowNanos) {
+            Map<String, Long> stageMicros = new LinkedHashMap<>();
+            for (int i = 1; i < STAGES.length; i++) {
+                if (stamps.get(i) != 0) {
+                    stageMicros.put(STAGES[i].label(), TimeUnit.NANOSECONDS.toMicros(durations[i]));
+                }
+            }
+            slowTraces.add(new SlowTrace(transactionId, trace.type(), status, TimeUnit.NANOSECONDS.toMicros(total), stageMicros));
+        }
+        if (flightRecorder) {
+            commitEvent(transactionId, trace.type(), status, durations, total);
+        }
+    }
+
+    private static void commitEvent(UUID transactionId, String type, TransactionStatus status, long[] durations, long total) {
+        TransactionTraceEvent event = new TransactionTraceEvent();
+        if (!event.isEnabled()) {
+            return;
+        }
+        event.transactionId = transactionId.toString();
+        event.type = type;
+        event.status = status.name();
+        event.submitted = durations[Stage.SUBMITTED.ordinal()];
+        event.dequeued = durations[Stage.DEQUEUED.ordinal()];
+        event.committed = durations[Stage.COMMITTED.ordinal()];
+        event.providerSent = durations[Stage.PROVIDER_SENT.ordinal()];
+        event.providerReturned = durations[Stage.PROVIDER_RETURNED.ordinal()];
+        event.reported = durations[Stage.REPORTED.ordinal()];
+        event.total = total;
+        event.commit();
+    }
+
+    // Drop the traces older than the maximum age every half maximum age, on the timer wheel, until the wheel stops
+    public void startExpiry(TimerWheel timer, long maxAge, TimeUnit unit) {
+        long maxAgeNanos = unit.toNanos(maxAge);
+        if (maxAgeNanos <= 0) {
+            throw new IllegalArgumentException("maxAge must be greater than zero");
+        }
+        if (!enabled) {
+            return;
+        }
+        timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                expire(maxAgeNanos);
+                timer.schedule(this, maxAgeNanos / 2, TimeUnit.NANOSECONDS);
+            }
+        }, maxAgeNanos / 2, TimeUnit.NANOSECONDS);
+    }
+
+    // Drop the traces accepted longer than the maximum age ago, returns their number
+    int expire(long maxAgeNanos) {
+        long now = System.nanoTime();
+        int dropped = 0;
+        for (Map.Entry<UUID, Trace> entry : inFlight.entrySet()) {
+            // a trace completed meanwhile is not counted
+            if (now - entry.getValue().stamps().get(Stage.ACCEPTED.ordinal()) > maxAgeNanos && inFlight.remove(entry.getKey(), entry.getValue())) {
+                dropped++;
+            }
+        }
+        expired.add(dropped);
+        return dropped;
+    }
+
+    // Latest traces slower than the threshold, newest first
+    public List<SlowTrace> slowTraces() {
+        return slowTraces.newestFirst();
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,57 @@
+package com.nerverless.task.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/*
+ * Flight recorder event of a completed transaction, with the time spent before each stage,
+ * zero for the stages it did not reach. Only committed while a recording enables it.
+ */
+@Name("com.nerverless.task.TransactionTrace")
+@Label("Transaction Trace")
+@Category("Nerverless")
+@Description("Stage breakdown of a transaction from its acceptance to its final report")
+@StackTrace(false)
+class TransactionTraceEvent extends jdk.jfr.Event {
+
+    @Label("Transaction Id")
+    String transactionId;
+
+    @Label("Type")
+    String type;
+
+    @Label("Status")
+    String status;
+
+    @Label("Submitted")
+    @Timespan(Timespan.NANOSECONDS)
+    long submitted;
+
+    @Label("Dequeued")
+    @Timespan(Timespan.NANOSECONDS)
+    long dequeued;
+
+    @Label("Committed")
+    @Timespan(Timespan.NANOSECONDS)
+    long committed;
+
+    @Label("Provider Sent")
+    @Timespan(Timespan.NANOSECONDS)
+    long providerSent;
+
+    @Label("Provider Returned")
+    @Timespan(Timespan.NANOSECONDS)
+    long providerReturned;
+
+    @Label("Reported")
+    @Timespan(Timespan.NANOSECONDS)
+    long reported;
+
+    @Label("Total")
+    @Timespan(Timespan.NANOSECONDS)
+    long total;
+}
@@ -0,0 +1,104 @@
+package com.nerverless.task.workers;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import com.nerverless.task.dao.UserAccountRepository;
+import com.nerverless.task.model.UserAccount;
+
+/**
+ * In-memory authoritative copy of the accounts owned by a transaction worker.
+ * The worker is the only writer of its accounts, so once loaded with
+ * {@link UserAccountRepository#findAll()} balances are read and validated here
+ * and the database is only written to, behind the worker, by {@link WriteBehindWriter}.
+ * <p>
+ * Every account name is resolved once to an int slot, the accounts themselves
+ * live in a flat array indexed by that slot. Names not found in the database are
+ * remembered for a few seconds, a burst of transfers to an unknown user only looks
+ * it up once. Not thread safe, owned by one worker.
+ */
+class AccountLedger {
+
+    private static final int MAX_MISSING = 10_000;
+    private static final long MISSING_TTL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final UserAccountRepository userAccountRepository;
+    private final LongSupplier nanoClock;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private UserAccount[] accounts = new UserAccount[16];
+    // time each unknown name was looked up, the oldest are dropped first
+    private final Map<String, Long> missing = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_MISSING;
+        }
+    };
+
+    AccountLedger(UserAccountRepository userAccountRepository) {
+        this(userAccountRepository, System::nanoTime);
+    }
+
+    /*
+     * For testing purposes this constructor with the clock is added
+     */
+    AccountLedger(UserAccountRepository userAccountRepository, LongSupplier nanoClock) {
+        this.userAccountRepository = userAccountRepository;
+        this.nanoClock = nanoClock;
+    }
+
+    static AccountLedger load(UserAccountRepository userAccountRepository, Predicate<String> owned) {
+        AccountLedger ledger = new AccountLedger(userAccountRepository);
+        List<UserAccount> all = userAccountRepository.findAll();
+        all.stream().filter(account -> owned.test(account.name())).forEach(ledger::put);
+        return ledger;
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    Optional<UserAccount> findByName(String name) {
+        Integer slot = slots.get(name);
+        if (slot != null) {
+            return Optional.of(accounts[slot]);
+        }
+        long now = nanoClock.getAsLong();
+        Long missedAt = missing.get(name);
+        if (missedAt != null && now - missedAt < MISSING_TTL_NANOS) {
+            return Optional.empty();
+        }
+        // accounts created after the ledger was loaded
+        Optional<UserAccount> account = userAccountRepository.findByName(name);
+        missing.remove(name);
+        if (account.isPresent()) {
+            put(account.get());
+        } else {
+            missing.put(name, now);
+        }
+        return account;
+    }
+
+    void saveAll(Collection<UserAccount> changed) {
+        changed.forEach(this::put);
+    }
+
+    private void put(UserAccount account) {
+        Integer slot = slots.get(account.name());
+        if (slot == null) {
+            slot = slots.size();
+            slots.put(account.name(), slot);
+            if (slot == accounts.length) {
+                accounts = Arrays.copyOf(accounts, accounts.length * 2);
+            }
+        }
+        accounts[slot] = account;
+    }
+}
@@ -0,0 +1,181 @@
+package com.nerverless.task.workers;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nerverless.task.dao.ReportTransactionRepository;
+import com.nerverless.task.model.Report;
+
+/**
+ * Inserts the reports of the transaction workers behind them, off the path of the
+ * balance updates. Reports are appended with a sequence number and written by a
+ * single thread in the order they were appended, one JDBC batch and transaction per
+ * batch of up to maxBatchSize reports, as soon as the batch is full or lingerMicros
+ * after its first report. The reports of a transaction are appended in the order
+ * they are emitted, so they are written in that order too. At most capacity reports
+ * wait to be written, appending more blocks the worker until the writer catches up.
+ * <p>
+ * Like {@link WriteBehindWriter}, a transaction is durable once none of its reports
+ * is waiting to be written. A stopped writer still writes what was appended before.
+ */
+public class ReportWriter implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportWriter.class);
+
+    private static final long RETRY_MILLIS = 1000;
+
+    private final DataSource dataSource;
+    private final ReportTransactionRepository reportTransactionRepository;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+
+    private final BlockingQueue<Entry> entries;
+    private final Object written = new Object();
+    private long sequence;
+    private volatile long writtenSequence;
+    private volatile Consumer<Report> durableListener = report -> { };
+
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    private record Entry(long sequence, Report report) {}
+
+    public ReportWriter(DataSource dataSource, ReportTransactionRepository reportTransactionRepository, int maxBatchSize, long lingerMicros,
+            int capacity) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be greater than zero");
+        }
+        if (lingerMicros < 0) {
+            throw new IllegalArgumentException("lingerMicros cannot be negative");
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be greater than zero");
+        }
+        this.dataSource = dataSource;
+        this.reportTransactionRepository = reportTransactionRepository;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+        this.entries = new LinkedBlockingQueue<>(capacity);
+    }
+
+    // Queue a report to insert, waits while the writer is capacity reports behind
+    public synchronized long append(Report report) throws InterruptedException {
+        long entrySequence = sequence + 1;
+        entries.put(new Entry(entrySequence, report));
+        sequence = entrySequence;
+        return entrySequence;
+    }
+
+    // Notified, from the writer thread, of every report once it is on disk
+    public void setDurableListener(Consumer<Report> durableListener) {
+        this.durableListener = durableListener;
+    }
+
+    public int pending() {
+        return entries.size();
+    }
+
+    // Wait until every report appended so far is on disk, returns false on timeout
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long appended;
+        synchronized (this) {
+            appended = sequence;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (written) {
+            while (writtenSequence < appended) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(written, remaining);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        // keep writing what was appended before the stop
+        while (running.get() || !entries.isEmpty()) {
+            try {
+                Entry first = entries.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Entry> batch = new ArrayList<>(maxBatchSize);
+                batch.add(first);
+                fill(batch);
+                while (!write(batch)) {
+                    if (!running.get()) {
+                        logger.error("Giving up writing {} reports on shutdown", batch.size());
+                        break;
+                    }
+                    Thread.sleep(RETRY_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    public void stop() {
+        running.set(false);
+    }
+
+    // Top up the batch until it is full or the linger since its first report is over, no lingering once stopped
+    private void fill(List<Entry> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + lingerNanos;
+        while (batch.size() < maxBatchSize) {
+            entries.drainTo(batch, maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() == maxBatchSize || remaining <= 0 || !running.get()) {
+                return;
+            }
+            Entry next = entries.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private boolean write(List<Entry> batch) {
+        List<Report> reports = new ArrayList<>(batch.size());
+        batch.forEach(entry -> reports.add(entry.report()));
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                reportTransactionRepository.insertAll(connection, reports);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to write {} reports", batch.size(), e);
+            return false;
+        }
+
+        synchronized (written) {
+            writtenSequence = batch.get(batch.size() - 1).sequence();
+            written.notifyAll();
+        }
+        reports.forEach(durableListener);
+        return true;
+    }
+}
@@ -0,0 +1,64 @@
+package com.nerverless.task.workers;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+
+import com.nerverless.task.model.Transaction;
+import com.nerverless.task.model.Transaction.Transfer;
+import com.nerverless.task.model.Transaction.TransferCredit;
+import com.nerverless.task.model.Transaction.TransferRefund;
+import com.nerverless.task.model.Transaction.WithdrawalRequest;
+import com.nerverless.task.model.Withdrawal;
+
+/**
+ * Hash partitioning of account names over the transaction worker shards.
+ * Every message is routed to the shard owning the account it mutates, so a
+ * shard is the single writer of its accounts.
+ */
+public class ShardRouter {
+
+    private final List<BlockingQueue<Transaction>> shardQueues;
+
+    public ShardRouter(List<BlockingQueue<Transaction>> shardQueues) {
+        if (shardQueues == null || shardQueues.isEmpty()) {
+            throw new IllegalArgumentException("shardQueues cannot be null or empty");
+        }
+        this.shardQueues = List.copyOf(shardQueues);
+    }
+
+    public int shards() {
+        return shardQueues.size();
+    }
+
+    public int shardOf(String accountName) {
+        return Math.floorMod(accountName.hashCode(), shardQueues.size());
+    }
+
+    public boolean owns(int shard, String accountName) {
+        return shardOf(accountName) == shard;
+    }
+
+    // The account a message mutates first decides which shard processes it
+    public String ownerAccount(Transaction transaction) {
+        if (transaction instanceof Transfer transfer) {
+            return transfer.fromAccountName();
+        } else if (transaction instanceof TransferCredit credit) {
+            return credit.toAccountName();
+        } else if (transaction instanceof TransferRefund refund) {
+            return refund.fromAccountName();
+        } else if (transaction instanceof WithdrawalRequest withdrawal) {
+            return withdrawal.accountName();
+        } else if (transaction instanceof Withdrawal withdrawal) {
+            return withdrawal.accountName();
+        }
+        throw new IllegalArgumentException("Unsupported transaction type: " + transaction);
+    }
+
+    public BlockingQueue<Transaction> queueOf(Transaction transaction) {
+        return shardQueues.get(shardOf(ownerAccount(transaction)));
+    }
+
+    public void route(Transaction transaction) throws InterruptedException {
+        queueOf(transaction).put(transaction);
+    }
+}
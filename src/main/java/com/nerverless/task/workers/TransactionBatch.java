@@ -0,0 +1,195 @@
+package com.nerverless.task.workers;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+import com.nerverless.task.dao.AccountBalances;
+import com.nerverless.task.dao.BalanceUpdate;
+import com.nerverless.task.dao.ReportTransactionRepository;
+import com.nerverless.task.dao.TransactionLeg;
+import com.nerverless.task.dao.UserAccountRepository;
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.UserAccount;
+
+/**
+ * Unit of work of a group commit: the messages of a batch are applied in order
+ * against an in-batch view of the accounts, the changed accounts, the legs of the
+ * transactions and the reports are then written in a single JDBC transaction. Hand-offs to other stages are
+ * held back until the batch is committed.
+ * <p>
+ * The balance operations check their guards against the in-batch view, in the
+ * same order as the guarded updates of {@link UserAccountRepository}.
+ */
+class TransactionBatch implements AccountBalances {
+
+    private final Function<String, Optional<UserAccount>> accountLoader;
+
+    private final Map<String, Optional<UserAccount>> accounts = new HashMap<>();
+    private final Map<String, UserAccount> changedAccounts = new LinkedHashMap<>();
+    private final List<TransactionLeg> legs = new ArrayList<>();
+    private final List<Report> reports = new ArrayList<>();
+    private final List<Runnable> afterCommit = new ArrayList<>();
+
+    TransactionBatch(Function<String, Optional<UserAccount>> accountLoader) {
+        this.accountLoader = accountLoader;
+    }
+
+    Optional<UserAccount> findByName(String name) {
+        return accounts.computeIfAbsent(name, accountLoader);
+    }
+
+    void save(UserAccount account) {
+        accounts.put(account.name(), Optional.of(account));
+        changedAccounts.put(account.name(), account);
+    }
+
+    void insert(Report report) {
+        reports.add(report);
+    }
+
+    @Override
+    public BalanceUpdate transfer(UUID transactionId, String fromAccountName, String toAccountName, Money amount) {
+        var fromAccount = findByName(fromAccountName);
+        if (fromAccount.isEmpty()) {
+            return BalanceUpdate.ACCOUNT_NOT_FOUND;
+        }
+        var toAccount = findByName(toAccountName);
+        if (toAccount.isEmpty()) {
+            return BalanceUpdate.TO_ACCOUNT_NOT_FOUND;
+        }
+        if (fromAccount.get().balance().isLessThan(amount)) {
+            return BalanceUpdate.INSUFFICIENT_FUNDS;
+        }
+        save(fromAccount.get().withBalance(fromAccount.get().balance().minus(amount)));
+        save(toAccount.get().withBalance(toAccount.get().balance().plus(amount)));
+        return applied(transactionId, TransactionLeg.Leg.TRANSFER);
+    }
+
+    @Override
+    public BalanceUpdate debit(UUID transactionId, String accountName, Money amount) {
+        var account = findByName(accountName);
+        if (account.isEmpty()) {
+            return BalanceUpdate.ACCOUNT_NOT_FOUND;
+        }
+        if (account.get().balance().isLessThan(amount)) {
+            return BalanceUpdate.INSUFFICIENT_FUNDS;
+        }
+        save(account.get().withBalance(account.get().balance().minus(amount)));
+        return applied(transactionId, TransactionLeg.Leg.DEBIT);
+    }
+
+    @Override
+    public BalanceUpdate credit(UUID transactionId, String accountName, Money amount) {
+        return credit(transactionId, TransactionLeg.Leg.CREDIT, accountName, amount);
+    }
+
+    @Override
+    public BalanceUpdate refund(UUID transactionId, String accountName, Money amount) {
+        return credit(transactionId, TransactionLeg.Leg.REFUND, accountName, amount);
+    }
+
+    private BalanceUpdate credit(UUID transactionId, TransactionLeg.Leg leg, String accountName, Money amount) {
+        var account = findByName(accountName);
+        if (account.isEmpty()) {
+            return BalanceUpdate.ACCOUNT_NOT_FOUND;
+        }
+        save(account.get().withBalance(account.get().balance().plus(amount)));
+        return applied(transactionId, leg);
+    }
+
+    @Override
+    public BalanceUpdate reserve(UUID transactionId, String accountName, Money amount) {
+        var account = findByName(accountName);
+        if (account.isEmpty()) {
+            return BalanceUpdate.ACCOUNT_NOT_FOUND;
+        }
+        if (account.get().balance().isLessThan(amount)) {
+            return BalanceUpdate.INSUFFICIENT_FUNDS;
+        }
+        save(new UserAccount(accountName, account.get().balance().minus(amount), account.get().reserve().plus(amount)));
+        return applied(transactionId, TransactionLeg.Leg.RESERVE);
+    }
+
+    @Override
+    public BalanceUpdate settle(String accountName, Money amount) {
+        var account = findByName(accountName);
+        if (account.isEmpty()) {
+            return BalanceUpdate.ACCOUNT_NOT_FOUND;
+        }
+        if (account.get().reserve().isLessThan(amount)) {
+            return BalanceUpdate.INSUFFICIENT_FUNDS;
+        }
+        save(account.get().withReserve(account.get().reserve().minus(amount)));
+        return BalanceUpdate.UPDATED;
+    }
+
+    @Override
+    public BalanceUpdate release(String accountName, Money amount) {
+        var account = findByName(accountName);
+        if (account.isEmpty()) {
+            return BalanceUpdate.ACCOUNT_NOT_FOUND;
+        }
+        if (account.get().reserve().isLessThan(amount)) {
+            return BalanceUpdate.INSUFFICIENT_FUNDS;
+        }
+        save(new UserAccount(accountName, account.get().balance().plus(amount), account.get().reserve().minus(amount)));
+        return BalanceUpdate.UPDATED;
+    }
+
+    private BalanceUpdate applied(UUID transactionId, TransactionLeg.Leg leg) {
+        if (transactionId != null) {
+            legs.add(new TransactionLeg(transactionId, leg));
+        }
+        return BalanceUpdate.UPDATED;
+    }
+
+    void afterCommit(Runnable action) {
+        afterCommit.add(action);
+    }
+
+    List<UserAccount> changedAccounts() {
+        return List.copyOf(changedAccounts.values());
+    }
+
+    List<TransactionLeg> legs() {
+        return List.copyOf(legs);
+    }
+
+    List<Report> reports() {
+        return List.copyOf(reports);
+    }
+
+    void commit(DataSource dataSource, UserAccountRepository userAccountRepository, ReportTransactionRepository reportTransactionRepository) throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                userAccountRepository.saveAll(connection, changedAccounts.values());
+                userAccountRepository.insertLegs(connection, legs);
+                reportTransactionRepository.insertAll(connection, reports);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        release();
+    }
+
+    // Run the hand-offs held back while the batch was applied
+    void release() {
+        afterCommit.forEach(Runnable::run);
+    }
+}
@@ -1,5 +1,9 @@
 package com.nerverless.task.workers;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -9,23 +13,44 @@ import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.nerverless.task.dao.AccountBalances;
+import com.nerverless.task.dao.BalanceUpdate;
 import com.nerverless.task.dao.ReportTransactionRepository;
 import com.nerverless.task.dao.UserAccountRepository;
+import com.nerverless.task.metrics.Histogram;
+import com.nerverless.task.metrics.MetricRegistry;
 import com.nerverless.task.model.Report;
 import com.nerverless.task.model.Result;
 import com.nerverless.task.model.Transaction;
 import com.nerverless.task.model.Transaction.Transfer;
+import com.nerverless.task.model.Transaction.TransferCredit;
+import com.nerverless.task.model.Transaction.TransferRefund;
 import com.nerverless.task.model.Transaction.WithdrawalRequest;
 import com.nerverless.task.model.TransactionStatus;
+import com.nerverless.task.model.UserAccount;
 import static com.nerverless.task.model.TransactionStatus.COMPLETED;
 import static com.nerverless.task.model.TransactionStatus.FAILED;
 import static com.nerverless.task.model.TransactionStatus.PROCESSING;
 import com.nerverless.task.model.Withdrawal;
+import com.nerverless.task.queue.QueueSelector;
+import com.nerverless.task.trace.Stage;
+import com.nerverless.task.trace.StageTracer;
 
 public class TransactionWorker implements Runnable {
 
     private final Logger logger = LoggerFactory.getLogger(TransactionWorker.class);
 
+    // Processing time of each message type, shared by the shards
+    private static final Histogram TRANSFER_TIME = messageTime("Transfer");
+    private static final Histogram TRANSFER_CREDIT_TIME = messageTime("TransferCredit");
+    private static final Histogram TRANSFER_REFUND_TIME = messageTime("TransferRefund");
+    private static final Histogram WITHDRAWAL_REQUEST_TIME = messageTime("WithdrawalRequest");
+    private static final Histogram WITHDRAWAL_TIME = messageTime("Withdrawal");
+    // In batching mode the writes of the messages are only timed here
+    private static final Histogram BATCH_COMMIT_TIME = MetricRegistry.defaultRegistry().histogram(
+            "transaction_worker_batch_commit_duration_seconds", "Duration of the group commits of the transaction workers");
+
+    private final DataSource dataSource;
     private final UserAccountRepository userAccountRepository;
     private final ReportTransactionRepository reportTransactionRepository;
 
@@ -33,6 +58,27 @@ public class TransactionWorker implements Runnable {
     private final BlockingQueue<Report> transactionReportQueue;
     private final BlockingQueue<Transaction> withdrawalQueue;
     private final BlockingQueue<Withdrawal> withdrawalReportQueue;
+    // Wakes the worker as soon as either of its inbound queues has work
+    private final QueueSelector selector;
+
+    // Set when the worker is one shard of a TransactionWorkerPool, null when it owns every account
+    private final ShardRouter router;
+    private final int shard;
+
+    private final TransactionWorkerConfig config;
+
+    // Unit of work of the group commit in progress, null when messages are applied one by one
+    private TransactionBatch batch;
+
+    // In-memory accounts persisted behind the worker, null when the accounts are read from the database
+    private final WriteBehindWriter writeBehind;
+    private AccountLedger ledger;
+
+    // Inserts the reports behind the worker, null when the worker inserts them itself
+    private final ReportWriter reportWriter;
+
+    // Stage timestamps of the transactions, set before the worker starts
+    private StageTracer tracer = StageTracer.DISABLED;
 
     private final AtomicBoolean running = new AtomicBoolean(true);
 
@@ -60,7 +106,43 @@ public class TransactionWorker implements Runnable {
             BlockingQueue<Report> transactionReportQueue,
             BlockingQueue<Transaction> withdrawalQueue,
             BlockingQueue<Withdrawal> withdrawalReportQueue) {
+        this(dataSource, userAccountRepository, reportTransactionRepository,
+                transactionQueue, transactionReportQueue, withdrawalQueue, withdrawalReportQueue, null, 0, TransactionWorkerConfig.defaults(), null);
+    }
 
+    /*
+     * Shard worker: only the accounts the router maps to this shard are read or written here,
+     * the credit leg of a transfer to another shard is forwarded to the owning shard.
+     */
+    public TransactionWorker(DataSource dataSource,
+            UserAccountRepository userAccountRepository,
+            ReportTransactionRepository reportTransactionRepository,
+            BlockingQueue<Transaction> transactionQueue,
+            BlockingQueue<Report> transactionReportQueue,
+            BlockingQueue<Transaction> withdrawalQueue,
+            BlockingQueue<Withdrawal> withdrawalReportQueue,
+            ShardRouter router,
+            int shard,
+            TransactionWorkerConfig config,
+            WriteBehindWriter writeBehind) {
+        this(dataSource, userAccountRepository, reportTransactionRepository, transactionQueue, transactionReportQueue, withdrawalQueue, withdrawalReportQueue,
+                router, shard, config, writeBehind, null);
+    }
+
+    public TransactionWorker(DataSource dataSource,
+            UserAccountRepository userAccountRepository,
+            ReportTransactionRepository reportTransactionRepository,
+            BlockingQueue<Transaction> transactionQueue,
+            BlockingQueue<Report> transactionReportQueue,
+            BlockingQueue<Transaction> withdrawalQueue,
+            BlockingQueue<Withdrawal> withdrawalReportQueue,
+            ShardRouter router,
+            int shard,
+            TransactionWorkerConfig config,
+            WriteBehindWriter writeBehind,
+            ReportWriter reportWriter) {
+
+        this.dataSource = dataSource;
         this.userAccountRepository = userAccountRepository;
         this.reportTransactionRepository = reportTransactionRepository;
 
@@ -68,28 +150,34 @@ public class TransactionWorker implements Runnable {
         this.transactionReportQueue = transactionReportQueue;
         this.withdrawalQueue = withdrawalQueue;
         this.withdrawalReportQueue = withdrawalReportQueue;
+        this.selector = new QueueSelector().register(transactionQueue).register(withdrawalReportQueue);
+
+        this.router = router;
+        this.shard = shard;
+        this.config = config;
+        this.writeBehind = writeBehind;
+        this.reportWriter = reportWriter;
     }
 
     @Override
     public void run() {
+        if (writeBehind != null) {
+            ledger = AccountLedger.load(userAccountRepository, this::isLocal);
+            logger.info("Loaded {} accounts in the ledger of shard {}", ledger.size(), shard);
+        }
         while (running.get()) {
             try {
-                Transaction message = transactionQueue.poll(1, TimeUnit.SECONDS);
-                if (message != null) {
-                    if (message instanceof Transfer transfer) {
-                        logger.info("Processing transfer: {}", transfer);
-                        process(transfer);
-                    } else if (message instanceof WithdrawalRequest withdrawal) {
-                        logger.info("Processing withdrawal request: {}", withdrawal);
-                        process(withdrawal);
-                    } else {
-                        logger.error("Unsupported transaction type: {}", message);
-                    }
-                }
-                Withdrawal withdrawal = withdrawalReportQueue.poll(1, TimeUnit.SECONDS);                
-                if (withdrawal != null) {
-                    logger.info("Processing withdrawal: {}", withdrawal);
-                    process(withdrawal);
+                List<Transaction> messages = new ArrayList<>(config.roundSize());
+                collect(messages, config.roundSize());
+                if (messages.isEmpty()) {
+                    // park until either queue has work, the timeout only bounds how long a stop takes
+                    selector.select(1, TimeUnit.SECONDS);
+                } else if (ledger != null) {
+                    processInMemory(messages);
+                } else if (config.batching()) {
+                    processBatch(messages);
+                } else {
+                    messages.forEach(this::dispatch);
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -102,12 +190,160 @@ public class TransactionWorker implements Runnable {
         running.set(false);
     }
 
+    public void setTracer(StageTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    private static Histogram messageTime(String type) {
+        return MetricRegistry.defaultRegistry().histogram("worker_message_duration_seconds", "Processing time of a message by a worker",
+                "worker", "transaction", "type", type);
+    }
+
+    private void dispatch(Transaction message) {
+        long start = System.nanoTime();
+        tracer.stamp(message.transactionId().id(), Stage.DEQUEUED);
+        Histogram processingTime = apply(message);
+        if (processingTime != null) {
+            processingTime.recordSince(start);
+        }
+    }
+
+    // Apply a message already dispatched, returns the processing time histogram of its type, null if unsupported
+    private Histogram apply(Transaction message) {
+        if (message instanceof Transfer transfer) {
+            logger.info("Processing transfer: {}", transfer);
+            process(transfer);
+            return TRANSFER_TIME;
+        } else if (message instanceof TransferCredit credit) {
+            logger.info("Processing transfer credit: {}", credit);
+            process(credit);
+            return TRANSFER_CREDIT_TIME;
+        } else if (message instanceof TransferRefund refund) {
+            logger.info("Processing transfer refund: {}", refund);
+            process(refund);
+            return TRANSFER_REFUND_TIME;
+        } else if (message instanceof WithdrawalRequest withdrawal) {
+            logger.info("Processing withdrawal request: {}", withdrawal);
+            process(withdrawal);
+            return WITHDRAWAL_REQUEST_TIME;
+        } else if (message instanceof Withdrawal withdrawal) {
+            logger.info("Processing withdrawal: {}", withdrawal);
+            process(withdrawal);
+            return WITHDRAWAL_TIME;
+        }
+        logger.error("Unsupported transaction type: {}", message);
+        return null;
+    }
+
+    /*
+     * Weighted round robin over both queues: up to transactionWeight new transactions, then up to
+     * completionWeight withdrawal completions, until max messages are taken or both queues are empty.
+     * Neither source can starve the other and each keeps its own order.
+     */
+    private void collect(List<Transaction> messages, int max) {
+        while (messages.size() < max) {
+            int before = messages.size();
+            transactionQueue.drainTo(messages, Math.min(config.transactionWeight(), max - messages.size()));
+            withdrawalReportQueue.drainTo(messages, Math.min(config.completionWeight(), max - messages.size()));
+            if (messages.size() == before) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * Group commit: top up the round to batchSize messages, waiting at most batchLingerMicros for the
+     * queues to fill up, apply them in order and commit all the account and report writes at once.
+     * Reports and hand-offs to other stages are only released once the batch is on disk.
+     */
+    private void processBatch(List<Transaction> messages) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(config.batchLingerMicros());
+        while (messages.size() < config.batchSize()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !selector.select(remaining, TimeUnit.NANOSECONDS)) {
+                break;
+            }
+            collect(messages, config.batchSize());
+        }
+
+        TransactionBatch current = new TransactionBatch(userAccountRepository::findByName);
+        batch = current;
+        try {
+            messages.forEach(this::dispatch);
+        } finally {
+            batch = null;
+        }
+        long start = System.nanoTime();
+        try {
+            current.commit(dataSource, userAccountRepository, reportTransactionRepository);
+            BATCH_COMMIT_TIME.recordSince(start);
+        } catch (SQLException e) {
+            // nothing of the batch is on disk, fall back to applying its messages one by one, already timed and stamped
+            logger.error("Failed to commit batch of {} messages", messages.size(), e);
+            messages.forEach(this::apply);
+        }
+    }
+
+    /*
+     * Ledger mode: the messages are validated and applied against the in-memory accounts, the
+     * changes are handed to the write-behind writer in order, no database access on the way.
+     */
+    private void processInMemory(List<Transaction> messages) throws InterruptedException {
+        TransactionBatch current = new TransactionBatch(ledger::findByName);
+        batch = current;
+        try {
+            messages.forEach(this::dispatch);
+        } finally {
+            batch = null;
+        }
+        List<UserAccount> changed = current.changedAccounts();
+        // waits while the writer is too far behind, the ledger runs ahead of the disk by a bounded amount
+        writeBehind.append(changed, current.legs(), current.reports());
+        ledger.saveAll(changed);
+        current.release();
+    }
+
     private void process(Transfer transfer) {
+        if (!isLocal(transfer.toAccountName())) {
+            processCrossShard(transfer);
+            return;
+        }
         var result = updateUserAccount(transfer);
         var report = report(transfer, result.value(), result.message());
         send(report);
     }
 
+    /*
+     * Cross-shard transfers never hold both accounts: the source shard debits and forwards the
+     * credit leg, the destination shard credits and reports, or sends a refund back when it cannot.
+     * Each leg is applied once by the single owner of its account, so no shard ever waits on another.
+     */
+    private void processCrossShard(Transfer transfer) {
+        var result = debit(transfer);
+        if (result.value() == PROCESSING) {
+            forward(new TransferCredit(transfer.transactionId(), transfer.fromAccountName(), transfer.toAccountName(), transfer.amount()));
+            return;
+        }
+        var report = report(transfer, result.value(), result.message());
+        send(report);
+    }
+
+    private void process(TransferCredit credit) {
+        var result = updateUserAccount(credit);
+        if (result.value() == FAILED) {
+            forward(new TransferRefund(credit.transactionId(), credit.fromAccountName(), credit.toAccountName(), credit.amount(), result.message()));
+            return;
+        }
+        var report = report(credit, result.value(), result.message());
+        send(report);
+    }
+
+    private void process(TransferRefund refund) {
+        var result = updateUserAccount(refund);
+        var report = report(refund, result.value(), result.message());
+        send(report);
+    }
+
     private void process(WithdrawalRequest withdrawal) {
         var result = updateUserAccount(withdrawal);
         if (result.value() == PROCESSING) {
@@ -127,82 +363,113 @@ public class TransactionWorker implements Runnable {
     }
 
     private Result<TransactionStatus> updateUserAccount(Transfer message) {
-        // Get user accounts
-        var fromAccount = userAccountRepository.findByName(message.fromAccountName());
-        if (fromAccount.isEmpty()) {
-            return new Result<>(FAILED, "Account not found: " + message.fromAccountName());
-        }
-        var toAccount = userAccountRepository.findByName(message.toAccountName());
-        if (toAccount.isEmpty()) {
-            return new Result<>(FAILED, "Account not found: " + message.toAccountName());
-        }
+        return switch (accounts().transfer(leg(message), message.fromAccountName(), message.toAccountName(), message.amount())) {
+            case UPDATED -> new Result<>(COMPLETED, "Transaction completed successfully");
+            case INSUFFICIENT_FUNDS -> new Result<>(FAILED, "Insufficient funds");
+            case ACCOUNT_NOT_FOUND -> new Result<>(FAILED, "Account not found: " + message.fromAccountName());
+            case TO_ACCOUNT_NOT_FOUND -> new Result<>(FAILED, "Account not found: " + message.toAccountName());
+            case FAILED -> new Result<>(FAILED, "Transaction failed");
+        };
+    }
 
-        // Validate and process transaction
-        if (fromAccount.get().balance().compareTo(message.amount()) >= 0) {
-            var fromAcct = fromAccount.get().withBalance(fromAccount.get().balance().subtract(message.amount()));
-            var toAcct = toAccount.get().withBalance(toAccount.get().balance().add(message.amount()));
-            userAccountRepository.save(fromAcct);
-            userAccountRepository.save(toAcct);
+    private Result<TransactionStatus> debit(Transfer message) {
+        return switch (accounts().debit(leg(message), message.fromAccountName(), message.amount())) {
+            case UPDATED -> new Result<>(PROCESSING, "Transfer debited");
+            case INSUFFICIENT_FUNDS -> new Result<>(FAILED, "Insufficient funds");
+            case ACCOUNT_NOT_FOUND, TO_ACCOUNT_NOT_FOUND -> new Result<>(FAILED, "Account not found: " + message.fromAccountName());
+            case FAILED -> new Result<>(FAILED, "Transaction failed");
+        };
+    }
 
-            return new Result<>(COMPLETED, "Transaction completed successfully");
-        } else {
+    private Result<TransactionStatus> updateUserAccount(TransferCredit credit) {
+        return switch (accounts().credit(leg(credit), credit.toAccountName(), credit.amount())) {
+            case UPDATED -> new Result<>(COMPLETED, "Transaction completed successfully");
+            case FAILED -> new Result<>(FAILED, "Transaction failed");
+            default -> new Result<>(FAILED, "Account not found: " + credit.toAccountName());
+        };
+    }
 
-            return new Result<>(FAILED, "Insufficient funds");
+    private Result<TransactionStatus> updateUserAccount(TransferRefund refund) {
+        var update = accounts().refund(leg(refund), refund.fromAccountName(), refund.amount());
+        if (update != BalanceUpdate.UPDATED) {
+            logger.error("Cannot refund transfer, {}: {}", update, refund);
         }
+        return new Result<>(FAILED, refund.reason());
     }
 
     private Result<TransactionStatus> updateUserAccount(WithdrawalRequest withdrawal) {
-        // Get user accounts
-        var fromAccount = userAccountRepository.findByName(withdrawal.accountName());
-        if (fromAccount.isEmpty()) {
-            return new Result<>(FAILED, "Account not found: " + withdrawal.accountName());
-        }
-
-        // Validate and process withdrawal
-        if (fromAccount.get().balance().compareTo(withdrawal.amount()) >= 0) {
-            var fromAcct = fromAccount.get().withBalance(fromAccount.get().balance().subtract(withdrawal.amount()));
-            fromAcct = fromAcct.withReserve(fromAcct.reserve().add(withdrawal.amount()));
-            userAccountRepository.save(fromAcct);
-
-            return new Result<>(PROCESSING, "Withdrawal initiated");
-        } else {
-            return new Result<>(FAILED, "Insufficient funds");
-        }
+        return switch (accounts().reserve(leg(withdrawal), withdrawal.accountName(), withdrawal.amount())) {
+            case UPDATED -> new Result<>(PROCESSING, "Withdrawal initiated");
+            case INSUFFICIENT_FUNDS -> new Result<>(FAILED, "Insufficient funds");
+            case ACCOUNT_NOT_FOUND, TO_ACCOUNT_NOT_FOUND -> new Result<>(FAILED, "Account not found: " + withdrawal.accountName());
+            case FAILED -> new Result<>(FAILED, "Withdrawal failed");
+        };
     }
 
     private Result<TransactionStatus> updateUserAccount(Withdrawal withdrawal) {
-        // Get user accounts
-        var fromAccount = userAccountRepository.findByName(withdrawal.accountName());
-        if (fromAccount.isEmpty()) {
-            return new Result<>(FAILED, "Account not found: " + withdrawal.accountName());
-        }
-
-        // Validate and process withdrawal
-        switch (withdrawal.status()) {
-            case COMPLETED -> {
-                var fromAcct = fromAccount.get().withReserve(fromAccount.get().reserve().subtract(withdrawal.amount()));
-                userAccountRepository.save(fromAcct);
-                return new Result<>(COMPLETED, "Withdrawal completed");
-            }
-            case FAILED -> {
-                var fromAcct = fromAccount.get().withBalance(fromAccount.get().balance().add(withdrawal.amount()));
-                fromAcct = fromAcct.withReserve(fromAcct.reserve().subtract(withdrawal.amount()));
-                userAccountRepository.save(fromAcct);
-                return new Result<>(FAILED, "Withdrawal failed");
-            }
-            default -> {
-                return new Result<>(PROCESSING, "Withdrawal in progress");
-            }
+        // Settle or release the reserved amount
+        BalanceUpdate update = switch (withdrawal.status()) {
+            case COMPLETED -> accounts().settle(withdrawal.accountName(), withdrawal.amount());
+            case FAILED -> accounts().release(withdrawal.accountName(), withdrawal.amount());
+            default -> null;
+        };
+        if (update == null) {
+            return new Result<>(PROCESSING, "Withdrawal in progress");
         }
+        return switch (update) {
+            case UPDATED -> withdrawal.status() == COMPLETED
+                    ? new Result<>(COMPLETED, "Withdrawal completed")
+                    : new Result<>(FAILED, "Withdrawal failed");
+            case INSUFFICIENT_FUNDS -> new Result<>(FAILED, "Insufficient reserve");
+            case ACCOUNT_NOT_FOUND, TO_ACCOUNT_NOT_FOUND -> new Result<>(FAILED, "Account not found: " + withdrawal.accountName());
+            case FAILED -> new Result<>(FAILED, "Withdrawal failed");
+        };
+    }
+
+    // Transaction id under which the balance change of a message is recorded, null when the legs are not recorded
+    private UUID leg(Transaction message) {
+        return config.recordLegs() ? message.transactionId().id() : null;
+    }
+
+    // Balance updates go to the batch or ledger view of the round in progress, to the database otherwise
+    private AccountBalances accounts() {
+        return batch != null ? batch : userAccountRepository;
     }
 
     private Report report(Transaction transaction, TransactionStatus status, String message) {
         var report = new Report(transaction.transactionId(), transaction.amount(), status, message);
-        reportTransactionRepository.insert(report);
+        if (batch != null) {
+            batch.insert(report);
+        } else if (reportWriter != null) {
+            appendReport(report);
+        } else {
+            reportTransactionRepository.insert(report);
+        }
         return report;
     }
 
+    // Queued behind the reports already appended, even when interrupted, so the writer keeps their order and the durable listener sees it
+    private void appendReport(Report report) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                reportWriter.append(report);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void send(Report report) {
+        if (batch != null) {
+            batch.afterCommit(() -> send(report));
+            return;
+        }
+        tracer.stamp(report.transactionId().id(), Stage.COMMITTED);
         try {
             transactionReportQueue.put(report);
         } catch (InterruptedException ex) {
@@ -210,7 +477,29 @@ public class TransactionWorker implements Runnable {
         }
     }
 
+    private boolean isLocal(String accountName) {
+        return router == null || router.owns(shard, accountName);
+    }
+
+    private void forward(Transaction transaction) {
+        if (batch != null) {
+            batch.afterCommit(() -> forward(transaction));
+            return;
+        }
+        tracer.stamp(transaction.transactionId().id(), Stage.COMMITTED);
+        try {
+            router.route(transaction);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void requestWithdrawal(Transaction.WithdrawalRequest withdrawal) {
+        if (batch != null) {
+            batch.afterCommit(() -> requestWithdrawal(withdrawal));
+            return;
+        }
+        tracer.stamp(withdrawal.transactionId().id(), Stage.COMMITTED);
         try {
             withdrawalQueue.put(withdrawal);
         } catch (InterruptedException ex) {
@@ -0,0 +1,102 @@
+package com.nerverless.task.workers;
+
+import com.nerverless.task.queue.QueueFactory;
+
+/**
+ * Tuning of a {@link TransactionWorker}.
+ *
+ * @param batchSize         maximum number of messages applied and committed in one
+ *                          JDBC transaction, 1 disables group commit
+ * @param batchLingerMicros how long a batch waits for more messages once the first one
+ *                          has arrived
+ * @param transactionWeight number of new transactions taken from the transaction queue
+ *                          per round
+ * @param completionWeight  number of withdrawal completions taken from the withdrawal
+ *                          report queue per round
+ * @param ledger            keep the accounts in memory and persist the changes behind
+ *                          the worker instead of reading and writing them in the database
+ * @param queueCapacity     capacity of the transaction queue of each worker
+ * @param queueFactory      transport of the queues created by the worker pool
+ * @param reportBatchSize   maximum number of reports inserted in one JDBC batch by the
+ *                          {@link ReportWriter} behind the workers, 0 inserts each report
+ *                          from the worker; not used with the ledger or group commit
+ * @param reportLingerMicros how long a report batch waits for more reports once the first
+ *                          one has arrived
+ * @param recordLegs        record the legs of the transactions with their balance changes,
+ *                          for the replay of the journal
+ */
+public record TransactionWorkerConfig(int batchSize, long batchLingerMicros, int transactionWeight, int completionWeight, boolean ledger, int queueCapacity, QueueFactory queueFactory,
+        int reportBatchSize, long reportLingerMicros, boolean recordLegs) {
+    public TransactionWorkerConfig {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be greater than zero");
+        }
+        if (batchLingerMicros < 0) {
+            throw new IllegalArgumentException("batchLingerMicros cannot be negative");
+        }
+        if (transactionWeight < 1) {
+            throw new IllegalArgumentException("transactionWeight must be greater than zero");
+        }
+        if (completionWeight < 1) {
+            throw new IllegalArgumentException("completionWeight must be greater than zero");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be greater than zero");
+        }
+        if (queueFactory == null) {
+            throw new IllegalArgumentException("queueFactory cannot be null");
+        }
+        if (reportBatchSize < 0) {
+            throw new IllegalArgumentException("reportBatchSize cannot be negative");
+        }
+        if (reportLingerMicros < 0) {
+            throw new IllegalArgumentException("reportLingerMicros cannot be negative");
+        }
+    }
+
+    public static TransactionWorkerConfig defaults() {
+        return new TransactionWorkerConfig(1, 0, 1, 1, false, Integer.MAX_VALUE, QueueFactory.linked(), 0, 0, false);
+    }
+
+    public boolean batching() {
+        return batchSize > 1;
+    }
+
+    // Reports written behind the workers, the ledger and the group commits write their reports with the accounts instead
+    public boolean asyncReports() {
+        return reportBatchSize > 0 && !ledger && !batching();
+    }
+
+    // Messages taken from both queues in one round of the worker loop
+    public int roundSize() {
+        return batching() ? batchSize : transactionWeight + completionWeight;
+    }
+
+    public TransactionWorkerConfig withBatch(int batchSize, long batchLingerMicros) {
+        return new TransactionWorkerConfig(batchSize, batchLingerMicros, transactionWeight, completionWeight, ledger, queueCapacity, queueFactory, reportBatchSize, reportLingerMicros, recordLegs);
+    }
+
+    public TransactionWorkerConfig withWeights(int transactionWeight, int completionWeight) {
+        return new TransactionWorkerConfig(batchSize, batchLingerMicros, transactionWeight, completionWeight, ledger, queueCapacity, queueFactory, reportBatchSize, reportLingerMicros, recordLegs);
+    }
+
+    public TransactionWorkerConfig withLedger(boolean ledger) {
+        return new TransactionWorkerConfig(batchSize, batchLingerMicros, transactionWeight, completionWeight, ledger, queueCapacity, queueFactory, reportBatchSize, reportLingerMicros, recordLegs);
+    }
+
+    public TransactionWorkerConfig withQueueCapacity(int queueCapacity) {
+        return new TransactionWorkerConfig(batchSize, batchLingerMicros, transactionWeight, completionWeight, ledger, queueCapacity, queueFactory, reportBatchSize, reportLingerMicros, recordLegs);
+    }
+
+    public TransactionWorkerConfig withQueueFactory(QueueFactory queueFactory) {
+        return new TransactionWorkerConfig(batchSize, batchLingerMicros, transactionWeight, completionWeight, ledger, queueCapacity, queueFactory, reportBatchSize, reportLingerMicros, recordLegs);
+    }
+
+    public TransactionWorkerConfig withReportWriter(int reportBatchSize, long reportLingerMicros) {
+        return new TransactionWorkerConfig(batchSize, batchLingerMicros, transactionWeight, completionWeight, ledger, queueCapacity, queueFactory, reportBatchSize, reportLingerMicros, recordLegs);
+    }
+
+    public TransactionWorkerConfig withLegs(boolean recordLegs) {
+        return new TransactionWorkerConfig(batchSize, batchLingerMicros, transactionWeight, completionWeight, ledger, queueCapacity, queueFactory, reportBatchSize, reportLingerMicros, recordLegs);
+    }
+}
@@ -0,0 +1,185 @@
+package com.nerverless.task.workers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nerverless.task.dao.ReportTransactionRepository;
+import com.nerverless.task.dao.UserAccountRepository;
+import com.nerverless.task.metrics.MetricRegistry;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.Transaction;
+import com.nerverless.task.model.Withdrawal;
+import com.nerverless.task.trace.StageTracer;
+
+/**
+ * Pool of transaction workers, each one owning a hash partition of the account
+ * names and its own inbound queues. Messages are routed with {@link ShardRouter};
+ * withdrawal completions coming back from the withdrawal worker are dispatched
+ * to the shard owning the withdrawn account.
+ */
+public class TransactionWorkerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionWorkerPool.class);
+
+    private static final int WRITE_BEHIND_BATCH_SIZE = 256;
+
+    private final List<TransactionWorker> workers = new ArrayList<>();
+    private final List<BlockingQueue<Transaction>> transactionQueues = new ArrayList<>();
+    private final List<BlockingQueue<Withdrawal>> shardWithdrawalReportQueues = new ArrayList<>();
+    private final BlockingQueue<Withdrawal> withdrawalReportQueue;
+    private final ShardRouter router;
+    // Persists the in-memory ledgers of the shards, null when the ledger is disabled
+    private final WriteBehindWriter writeBehind;
+    // Inserts the reports of the shards behind them, null when the workers insert them or the ledger is enabled
+    private final ReportWriter reportWriter;
+
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    public TransactionWorkerPool(DataSource dataSource, int shards, TransactionWorkerConfig config,
+            BlockingQueue<Report> transactionReportQueue,
+            BlockingQueue<Transaction> withdrawalQueue,
+            BlockingQueue<Withdrawal> withdrawalReportQueue) {
+        this(dataSource, new UserAccountRepository(dataSource), new ReportTransactionRepository(dataSource), shards, config,
+                transactionReportQueue, withdrawalQueue, withdrawalReportQueue);
+    }
+
+    /*
+     * For testing purposes this constructor with the repositories is added
+     */
+    public TransactionWorkerPool(DataSource dataSource,
+            UserAccountRepository userAccountRepository,
+            ReportTransactionRepository reportTransactionRepository,
+            int shards,
+            TransactionWorkerConfig config,
+            BlockingQueue<Report> transactionReportQueue,
+            BlockingQueue<Transaction> withdrawalQueue,
+            BlockingQueue<Withdrawal> withdrawalReportQueue) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be greater than zero");
+        }
+        this.withdrawalReportQueue = withdrawalReportQueue;
+
+        for (int shard = 0; shard < shards; shard++) {
+            transactionQueues.add(config.queueFactory().create(config.queueCapacity()));
+            // a single shard consumes the withdrawal reports directly, no dispatch needed
+            shardWithdrawalReportQueues.add(shards == 1 ? withdrawalReportQueue : config.queueFactory().create(config.queueCapacity()));
+        }
+        this.router = new ShardRouter(transactionQueues);
+        this.writeBehind = config.ledger()
+                ? new WriteBehindWriter(dataSource, userAccountRepository, reportTransactionRepository, WRITE_BEHIND_BATCH_SIZE, config.queueCapacity())
+                : null;
+        this.reportWriter = config.asyncReports()
+                ? new ReportWriter(dataSource, reportTransactionRepository, config.reportBatchSize(), config.reportLingerMicros(), config.queueCapacity())
+                : null;
+
+        for (int shard = 0; shard < shards; shard++) {
+            workers.add(new TransactionWorker(dataSource, userAccountRepository, reportTransactionRepository,
+                    transactionQueues.get(shard), transactionReportQueue, withdrawalQueue, shardWithdrawalReportQueues.get(shard),
+                    shards == 1 ? null : router, shard, config, writeBehind, reportWriter));
+        }
+    }
+
+    public int shards() {
+        return workers.size();
+    }
+
+    // Route a new transaction to the shard owning its account
+    public void submit(Transaction transaction) throws InterruptedException {
+        router.route(transaction);
+    }
+
+    // True when reports reach the database behind the workers, after they were sent
+    public boolean writesBehind() {
+        return writeBehind != null || reportWriter != null;
+    }
+
+    // Notified of every report once it is on disk, only needed when the pool writes behind
+    public void onDurable(Consumer<Report> listener) {
+        if (writeBehind != null) {
+            writeBehind.setDurableListener(listener);
+        } else if (reportWriter != null) {
+            reportWriter.setDurableListener(listener);
+        } else {
+            throw new IllegalStateException("reports are durable when sent, the pool does not write behind");
+        }
+    }
+
+    // Wait until the reports already emitted are on disk, returns false on timeout
+    public boolean flushReports(long timeout, TimeUnit unit) throws InterruptedException {
+        if (writeBehind != null) {
+            return writeBehind.flush(timeout, unit);
+        }
+        return reportWriter == null || reportWriter.flush(timeout, unit);
+    }
+
+    // Stage timestamps of the transactions, set before the pool starts
+    public void setTracer(StageTracer tracer) {
+        workers.forEach(worker -> worker.setTracer(tracer));
+    }
+
+    // Depth of the queues of the shards, read when the metrics are scraped
+    public void registerMetrics(MetricRegistry registry) {
+        if (writeBehind != null) {
+            registry.gauge("queue_depth", "Messages waiting in a queue", writeBehind::pending, "queue", "write-behind");
+        }
+        if (reportWriter != null) {
+            registry.gauge("queue_depth", "Messages waiting in a queue", reportWriter::pending, "queue", "report-writer");
+        }
+        for (int shard = 0; shard < transactionQueues.size(); shard++) {
+            registry.gauge("queue_depth", "Messages waiting in a queue", transactionQueues.get(shard)::size, "queue", "transaction-" + shard);
+            if (workers.size() > 1) {
+                registry.gauge("queue_depth", "Messages waiting in a queue", shardWithdrawalReportQueues.get(shard)::size, "queue", "withdrawal-report-" + shard);
+            }
+        }
+    }
+
+    public void start(ExecutorService executorService) {
+        if (writeBehind != null) {
+            executorService.execute(writeBehind);
+        }
+        if (reportWriter != null) {
+            executorService.execute(reportWriter);
+        }
+        workers.forEach(executorService::execute);
+        if (workers.size() > 1) {
+            executorService.execute(this::dispatchWithdrawalReports);
+        }
+    }
+
+    public void stop() {
+        running.set(false);
+        workers.forEach(TransactionWorker::stop);
+        if (writeBehind != null) {
+            // drains what the workers already appended before it exits
+            writeBehind.stop();
+        }
+        if (reportWriter != null) {
+            reportWriter.stop();
+        }
+    }
+
+    private void dispatchWithdrawalReports() {
+        while (running.get()) {
+            try {
+                Withdrawal withdrawal = withdrawalReportQueue.poll(1, TimeUnit.SECONDS);
+                if (withdrawal != null) {
+                    shardWithdrawalReportQueues.get(router.shardOf(withdrawal.accountName())).put(withdrawal);
+                }
+            } catch (InterruptedException e) {
+                logger.error("Error dispatching withdrawal reports", e);
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+}
@@ -1,8 +1,23 @@
 package com.nerverless.task.workers;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.sql.DataSource;
 
@@ -10,50 +25,122 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.nerverless.task.dao.WithdrawalRepository;
-import com.nerverless.task.model.Result;
+import com.nerverless.task.metrics.Histogram;
+import com.nerverless.task.metrics.MetricRegistry;
 import com.nerverless.task.model.Transaction;
 import com.nerverless.task.model.Transaction.WithdrawalRequest;
 import com.nerverless.task.model.TransactionStatus;
 import com.nerverless.task.model.Withdrawal;
+import com.nerverless.task.queue.QueueSelector;
+import com.nerverless.task.queue.SelectableQueue;
 import com.nerverless.task.service.WithdrawalService;
+import com.nerverless.task.service.WithdrawalService.WithdrawalId;
+import com.nerverless.task.service.WithdrawalService.WithdrawalState;
+import com.nerverless.task.timer.TimerWheel;
+import com.nerverless.task.trace.Stage;
+import com.nerverless.task.trace.StageTracer;
 
+/**
+ * Requests the withdrawals to the provider and follows their state until they are
+ * completed or failed. Every withdrawal in progress has a status check scheduled
+ * on a {@link TimerWheel}, with an exponential backoff between the checks; the
+ * wheel hands the due checks back to this worker, so a poll only costs the due
+ * withdrawals whatever the backlog. The checks are rebuilt from the withdrawals
+ * still processing in the database when the worker starts.
+ * <p>
+ * The requests and the due checks drained together go to the provider as one bulk
+ * call each, through its asynchronous API. The calls run on a bounded pool of
+ * threads, up to the configured number at a time, and are given up after the call
+ * timeout, so a slow call does not hold the other withdrawals. A provider pushing
+ * the final states completes the withdrawals as soon as they are known, the checks
+ * are then only a fallback for a missed push. The outcomes come back to the worker
+ * thread, which alone saves the withdrawals and sends them to the report queue, in
+ * order for each one.
+ */
 public class WithdrawalWorker implements Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger(WithdrawalWorker.class);
 
+    private static final int DRAIN_BATCH = 64;
+
+    // Processing time of the requests and of the final states on the worker thread
+    private static final Histogram WITHDRAWAL_REQUEST_TIME = MetricRegistry.defaultRegistry().histogram("worker_message_duration_seconds",
+            "Processing time of a message by a worker", "worker", "withdrawal", "type", "WithdrawalRequest");
+    private static final Histogram WITHDRAWAL_TIME = MetricRegistry.defaultRegistry().histogram("worker_message_duration_seconds",
+            "Processing time of a message by a worker", "worker", "withdrawal", "type", "Withdrawal");
+    // Duration of the bulk provider calls, until they end even when given up
+    private static final Histogram REQUEST_CALL_TIME = providerCallTime("request");
+    private static final Histogram CHECK_CALL_TIME = providerCallTime("check");
+
+    // A withdrawal in progress and the number of checks it already had
+    private record Check(Withdrawal withdrawal, int attempt) {}
+
     private final BlockingQueue<Transaction> withdrawalQueue;
     private final BlockingQueue<Withdrawal> withdrawalReportQueue;
     private final WithdrawalService withdrawalService;
     private final WithdrawalRepository withdrawalRepository;
+    private final TimerWheel timer;
+    private final WithdrawalWorkerConfig config;
+    // filled by the timer thread with the checks that are due
+    private final BlockingQueue<Check> dueChecks = new SelectableQueue<>();
+    // outcomes of the provider calls and pushes, run on the worker thread
+    private final BlockingQueue<Runnable> completions = new SelectableQueue<>();
+    // latest check of every withdrawal in progress, owned by the worker thread
+    private final Map<WithdrawalId, Check> inProgress = new HashMap<>();
+    // withdrawals whose request call has not ended, the provider may not know them yet, owned by the worker thread
+    private final Set<WithdrawalId> requesting = new HashSet<>();
+    private final QueueSelector selector;
+    private final ExecutorService providerExecutor;
+    private final Semaphore providerCalls;
+    // Stage timestamps of the withdrawals, set before the worker starts
+    private StageTracer tracer = StageTracer.DISABLED;
     private final AtomicBoolean running = new AtomicBoolean(true);
 
     public WithdrawalWorker(DataSource dataSource,
                             WithdrawalService withdrawalService,                            
                             BlockingQueue<Transaction> withdrawalQueue, 
-                            BlockingQueue<Withdrawal> withdrawalReportQueue) {
+                            BlockingQueue<Withdrawal> withdrawalReportQueue,
+                            TimerWheel timer, WithdrawalWorkerConfig config) {
         this.withdrawalQueue = withdrawalQueue;
         this.withdrawalReportQueue = withdrawalReportQueue;
         this.withdrawalService = withdrawalService;
         this.withdrawalRepository = new WithdrawalRepository(dataSource);
+        this.timer = timer;
+        this.config = config;
+        this.selector = new QueueSelector().register(withdrawalQueue).register(dueChecks).register(completions);
+        this.providerExecutor = Executors.newFixedThreadPool(config.maxInFlight());
+        this.providerCalls = new Semaphore(config.maxInFlight());
     }
 
     @Override
     public void run() {
-        while (running.get()) {
-            try {
-                Transaction message = withdrawalQueue.poll(1, TimeUnit.SECONDS);
-                logger.trace("Processing message: {}", message);
-                if (message == null) {
-                    checkProcessingWithdrwals();
-                } else if (message instanceof WithdrawalRequest withdrawal) {
-                    request(withdrawal);
-                } else {
-                    logger.error("Unsupported transaction type: {}", message);
+        if (withdrawalService.subscribe((id, state) -> completions.offer(() -> finish(id, state)))) {
+            logger.info("The withdrawal provider pushes the final states");
+        }
+        List<Withdrawal> processing = withdrawalRepository.findWithStatus(TransactionStatus.PROCESSING);
+        processing.forEach(withdrawal -> track(new Check(withdrawal, 0)));
+        logger.info("Scheduled the status checks of {} withdrawals in progress", processing.size());
+
+        List<Transaction> messages = new ArrayList<>(DRAIN_BATCH);
+        List<Check> checks = new ArrayList<>(DRAIN_BATCH);
+        try {
+            while (running.get()) {
+                if (!selector.select(1, TimeUnit.SECONDS)) {
+                    continue;
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
+                complete();
+                withdrawalQueue.drainTo(messages, DRAIN_BATCH);
+                request(messages);
+                messages.clear();
+                // requests and checks alternate, neither starves the other
+                dueChecks.drainTo(checks, DRAIN_BATCH);
+                check(checks);
+                checks.clear();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            providerExecutor.shutdownNow();
         }
     }
 
@@ -61,23 +148,185 @@ public class WithdrawalWorker implements Runnable {
         running.set(false);
     }
 
-    private void request(WithdrawalRequest request) {
-        WithdrawalService.WithdrawalId id = new WithdrawalService.WithdrawalId(request.transactionId().id());
-        WithdrawalService.Address address = new WithdrawalService.Address(request.toAddress());
-        withdrawalService.requestWithdrawal(id, address, request.amount());
-        Withdrawal withdrawal = new Withdrawal(id, request.transactionId(), request.accountName(), request.toAddress(), request.amount(), TransactionStatus.PROCESSING);
-        saveAndSend(withdrawal);
+    public void setTracer(StageTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    private static Histogram providerCallTime(String call) {
+        return MetricRegistry.defaultRegistry().histogram("withdrawal_provider_call_duration_seconds", "Duration of the withdrawal provider calls",
+                "call", call);
+    }
+
+    private void request(List<Transaction> messages) throws InterruptedException {
+        List<Withdrawal> withdrawals = new ArrayList<>(messages.size());
+        List<WithdrawalService.Request> requests = new ArrayList<>(messages.size());
+        for (Transaction message : messages) {
+            logger.trace("Processing message: {}", message);
+            if (message instanceof WithdrawalRequest request) {
+                WithdrawalId id = new WithdrawalId(request.transactionId().id());
+                withdrawals.add(new Withdrawal(id, request.transactionId(), request.accountName(), request.toAddress(), request.amount(), TransactionStatus.PROCESSING));
+                requests.add(new WithdrawalService.Request(id, new WithdrawalService.Address(request.toAddress()), request.amount().toBigDecimal()));
+            } else {
+                logger.error("Unsupported transaction type: {}", message);
+            }
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+        withdrawals.forEach(withdrawal -> {
+            tracer.stamp(withdrawal.transactionId().id(), Stage.PROVIDER_SENT);
+            requesting.add(withdrawal.withdrawalId());
+        });
+        call(REQUEST_CALL_TIME, () -> withdrawalService.requestWithdrawalsAsync(requests),
+                rejected -> requested(withdrawals, rejected),
+                // a failed or timed out request may have reached the provider, its state is checked
+                () -> requested(withdrawals, Map.of()),
+                () -> withdrawals.forEach(withdrawal -> requesting.remove(withdrawal.withdrawalId())));
     }
 
-    private void checkProcessingWithdrwals() {        
-        withdrawalRepository.findWithStatus(TransactionStatus.PROCESSING).forEach( withdrawal -> {
-            var result = checkWithdrawal(withdrawal);
-            logger.trace("Checking withdrawal: withdrawalId={} - {}", withdrawal.withdrawalId(), result);
-            if (result.value() != TransactionStatus.PROCESSING) {
-                withdrawal = new Withdrawal(withdrawal.withdrawalId(), withdrawal.transactionId(), withdrawal.accountName(), withdrawal.toAddress(), withdrawal.amount(), result.value());
+    private void requested(List<Withdrawal> withdrawals, Map<WithdrawalId, String> rejected) {
+        for (Withdrawal withdrawal : withdrawals) {
+            long start = System.nanoTime();
+            String reason = rejected == null ? null : rejected.get(withdrawal.withdrawalId());
+            if (reason != null) {
+                logger.error("Withdrawal request rejected: transactionId={}, withdrawalId={}, reason={}", withdrawal.transactionId(), withdrawal.withdrawalId(), reason);
+                saveAndSend(withStatus(withdrawal, TransactionStatus.FAILED));
+            } else {
                 saveAndSend(withdrawal);
+                track(new Check(withdrawal, 0));
+            }
+            WITHDRAWAL_REQUEST_TIME.recordSince(start);
+        }
+    }
+
+    private void check(List<Check> due) throws InterruptedException {
+        Map<WithdrawalId, Check> checks = new HashMap<>();
+        for (Check check : due) {
+            // dropped when the withdrawal is already final
+            if (isLatest(check)) {
+                checks.put(check.withdrawal().withdrawalId(), check);
+            }
+        }
+        if (checks.isEmpty()) {
+            return;
+        }
+        call(CHECK_CALL_TIME, () -> withdrawalService.getRequestStatesAsync(new ArrayList<>(checks.keySet())),
+                states -> checked(checks.values(), states),
+                () -> checks.values().forEach(this::retry),
+                () -> { });
+    }
+
+    private void checked(Collection<Check> checks, Map<WithdrawalId, WithdrawalState> states) {
+        for (Check check : checks) {
+            WithdrawalId id = check.withdrawal().withdrawalId();
+            if (!isLatest(check)) {
+                // pushed final meanwhile
+                continue;
+            }
+            WithdrawalState state = states == null ? null : states.get(id);
+            if ((states == null || !states.containsKey(id)) && requesting.contains(id)) {
+                // its timed out request may still reach the provider, it is only unknown once the request ended
+                retry(check);
+            } else if (states == null || !states.containsKey(id)) {
+                logger.error("Withdrawal request not found: transactionId={}, withdrawalId={}", check.withdrawal().transactionId(), id);
+                finish(id, WithdrawalState.FAILED);
+            } else if (state == null || state == WithdrawalState.PROCESSING) {
+                retry(check);
+            } else {
+                finish(id, state);
             }
+        }
+    }
+
+    // Save and send the final state of a withdrawal in progress, a no-op once it is final
+    private void finish(WithdrawalId id, WithdrawalState state) {
+        if (state == WithdrawalState.PROCESSING) {
+            return;
+        }
+        long start = System.nanoTime();
+        Check check = inProgress.remove(id);
+        if (check != null) {
+            tracer.stamp(check.withdrawal().transactionId().id(), Stage.PROVIDER_RETURNED);
+            saveAndSend(withStatus(check.withdrawal(), state == WithdrawalState.COMPLETED ? TransactionStatus.COMPLETED : TransactionStatus.FAILED));
+            WITHDRAWAL_TIME.recordSince(start);
+        }
+    }
+
+    private boolean isLatest(Check check) {
+        return check.equals(inProgress.get(check.withdrawal().withdrawalId()));
+    }
+
+    // Run a provider call on the provider threads, its outcome and then its end, even once timed out, come back to the worker thread
+    private <T> void call(Histogram callTime, Supplier<CompletableFuture<T>> providerCall, Consumer<T> onResult, Runnable onFailure,
+            Runnable onEnded) throws InterruptedException {
+        // at the limit, the outcomes of the running calls are handled while waiting for one to end
+        while (!providerCalls.tryAcquire(1, TimeUnit.MILLISECONDS)) {
+            complete();
+        }
+        CompletableFuture<T> outcome = new CompletableFuture<>();
+        TimerWheel.Timeout timeout = timer.schedule(() -> outcome.completeExceptionally(new TimeoutException()), config.callTimeoutMillis(), TimeUnit.MILLISECONDS);
+        outcome.whenComplete((result, e) -> {
+            timeout.cancel();
+            if (e instanceof TimeoutException) {
+                logger.warn("Withdrawal provider call timed out after {} ms", config.callTimeoutMillis());
+            } else if (e != null) {
+                logger.error("Withdrawal provider call failed", e);
+            }
+            completions.offer(e == null ? () -> onResult.accept(result) : onFailure);
         });
+        try {
+            providerExecutor.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    providerCall.get().whenComplete((result, e) -> {
+                        callTime.recordSince(start);
+                        ended(outcome, result, e, onEnded);
+                    });
+                } catch (RuntimeException e) {
+                    callTime.recordSince(start);
+                    ended(outcome, null, e, onEnded);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            ended(outcome, null, e, onEnded);
+        }
+    }
+
+    // Released once the call really ends, a timed out call still holds its permit
+    private <T> void ended(CompletableFuture<T> outcome, T result, Throwable failure, Runnable onEnded) {
+        providerCalls.release();
+        // before the outcome, so a call answered in time has ended when its outcome runs
+        completions.offer(onEnded);
+        if (failure == null) {
+            outcome.complete(result);
+        } else {
+            outcome.completeExceptionally(failure);
+        }
+    }
+
+    private void complete() {
+        Runnable completion;
+        while ((completion = completions.poll()) != null) {
+            completion.run();
+        }
+    }
+
+    private static Withdrawal withStatus(Withdrawal withdrawal, TransactionStatus status) {
+        return new Withdrawal(withdrawal.withdrawalId(), withdrawal.transactionId(), withdrawal.accountName(), withdrawal.toAddress(), withdrawal.amount(), status);
+    }
+
+    // Check again later, unless the withdrawal was finished or tracked anew meanwhile
+    private void retry(Check check) {
+        if (isLatest(check)) {
+            track(new Check(check.withdrawal(), check.attempt() + 1));
+        }
+    }
+
+    // Initial delay doubled at every check, up to the maximum delay
+    private void track(Check check) {
+        inProgress.put(check.withdrawal().withdrawalId(), check);
+        long delay = config.initialCheckDelayMillis() << Math.min(check.attempt(), 30);
+        timer.schedule(() -> dueChecks.offer(check), Math.min(delay, config.maxCheckDelayMillis()), TimeUnit.MILLISECONDS);
     }
 
     private void saveAndSend(Withdrawal withdrawal) {
@@ -92,21 +341,4 @@ public class WithdrawalWorker implements Runnable {
             Thread.currentThread().interrupt();
         }
     }
-
-    private Result<TransactionStatus> checkWithdrawal(Withdrawal withdrwal) {
-        try {             
-            WithdrawalService.WithdrawalState state = withdrawalService.getRequestState(withdrwal.withdrawalId());
-            if (null == state) {
-                return new Result<>(TransactionStatus.PROCESSING, "Withdrawal in progress");
-            } else return switch (state) {
-                case COMPLETED -> new Result<>(TransactionStatus.COMPLETED, "Withdrawal completed");
-                case FAILED -> new Result<>(TransactionStatus.FAILED, "Withdrawal failed");
-                default -> new Result<>(TransactionStatus.PROCESSING, "Withdrawal in progress");
-            };
-        } catch (IllegalArgumentException e) {
-            logger.error("Failed to request withdrawal state: transactionId={}, withdrawalId={}", withdrwal.transactionId(), withdrwal.withdrawalId(), e);
-            var message = "Withdrawal failed: " + e.getMessage();
-            return new Result<>(TransactionStatus.FAILED, message);
-        }
-    }
 }
@@ -0,0 +1,41 @@
+package com.nerverless.task.workers;
+
+/**
+ * Tuning of a {@link WithdrawalWorker}.
+ *
+ * @param initialCheckDelayMillis delay before the first status check of a withdrawal,
+ *                                doubled after every check still in progress
+ * @param maxCheckDelayMillis     upper bound of the delay between two status checks
+ * @param maxInFlight             provider calls running at the same time, also the
+ *                                number of threads making them
+ * @param callTimeoutMillis       time after which a provider call is given up; a
+ *                                request is then checked, a check is retried
+ */
+public record WithdrawalWorkerConfig(long initialCheckDelayMillis, long maxCheckDelayMillis, int maxInFlight, long callTimeoutMillis) {
+    public WithdrawalWorkerConfig {
+        if (initialCheckDelayMillis < 1) {
+            throw new IllegalArgumentException("initialCheckDelayMillis must be greater than zero");
+        }
+        if (maxCheckDelayMillis < initialCheckDelayMillis) {
+            throw new IllegalArgumentException("maxCheckDelayMillis cannot be lower than initialCheckDelayMillis");
+        }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be greater than zero");
+        }
+        if (callTimeoutMillis < 1) {
+            throw new IllegalArgumentException("callTimeoutMillis must be greater than zero");
+        }
+    }
+
+    public static WithdrawalWorkerConfig defaults() {
+        return new WithdrawalWorkerConfig(500, 30_000, 16, 5_000);
+    }
+
+    public WithdrawalWorkerConfig withCheckDelays(long initialCheckDelayMillis, long maxCheckDelayMillis) {
+        return new WithdrawalWorkerConfig(initialCheckDelayMillis, maxCheckDelayMillis, maxInFlight, callTimeoutMillis);
+    }
+
+    public WithdrawalWorkerConfig withProviderCalls(int maxInFlight, long callTimeoutMillis) {
+        return new WithdrawalWorkerConfig(initialCheckDelayMillis, maxCheckDelayMillis, maxInFlight, callTimeoutMillis);
+    }
+}
@@ -0,0 +1,180 @@
+package com.nerverless.task.workers;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.nerverless.task.dao.ReportTransactionRepository;
+import com.nerverless.task.dao.TransactionLeg;
+import com.nerverless.task.dao.UserAccountRepository;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.UserAccount;
+
+/**
+ * Persists the changes applied in memory by {@link AccountLedger} workers. Changes
+ * are appended in order with a sequence number and written in batches, one JDBC
+ * transaction per batch, in the order they were appended. At most capacity changes
+ * wait to be written, appending more blocks the worker until the writer catches up.
+ * <p>
+ * The durability watermark is the sequence of the last change on disk.
+ */
+public class WriteBehindWriter implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindWriter.class);
+
+    private static final long RETRY_MILLIS = 1000;
+
+    private final DataSource dataSource;
+    private final UserAccountRepository userAccountRepository;
+    private final ReportTransactionRepository reportTransactionRepository;
+    private final int maxBatchSize;
+
+    private final BlockingQueue<Entry> entries;
+    private final Object durable = new Object();
+    private long sequence;
+    private volatile long durableSequence;
+    private volatile Consumer<Report> durableListener = report -> { };
+
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    record Entry(long sequence, List<UserAccount> accounts, List<TransactionLeg> legs, List<Report> reports) {}
+
+    public WriteBehindWriter(DataSource dataSource,
+            UserAccountRepository userAccountRepository,
+            ReportTransactionRepository reportTransactionRepository,
+            int maxBatchSize,
+            int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be greater than zero");
+        }
+        this.dataSource = dataSource;
+        this.userAccountRepository = userAccountRepository;
+        this.reportTransactionRepository = reportTransactionRepository;
+        this.maxBatchSize = maxBatchSize;
+        this.entries = new LinkedBlockingQueue<>(capacity);
+    }
+
+    // Queue changes applied in memory, waits while the writer is capacity changes behind
+    public synchronized long append(List<UserAccount> accounts, List<TransactionLeg> legs, List<Report> reports) throws InterruptedException {
+        long entrySequence = sequence + 1;
+        entries.put(new Entry(entrySequence, accounts, legs, reports));
+        sequence = entrySequence;
+        return entrySequence;
+    }
+
+    // Notified, from the writer thread, of every report once it is on disk
+    public void setDurableListener(Consumer<Report> durableListener) {
+        this.durableListener = durableListener;
+    }
+
+    public long durableSequence() {
+        return durableSequence;
+    }
+
+    public int pending() {
+        return entries.size();
+    }
+
+    // Wait until the change with the given sequence is on disk, returns false on timeout
+    public boolean awaitDurable(long entrySequence, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (durable) {
+            while (durableSequence < entrySequence) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(durable, remaining);
+            }
+        }
+        return true;
+    }
+
+    // Wait until every change appended so far is on disk, returns false on timeout
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long appended;
+        synchronized (this) {
+            appended = sequence;
+        }
+        return awaitDurable(appended, timeout, unit);
+    }
+
+    @Override
+    public void run() {
+        // keep writing what was appended before the stop
+        while (running.get() || !entries.isEmpty()) {
+            try {
+                Entry first = entries.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Entry> batch = new ArrayList<>(maxBatchSize);
+                batch.add(first);
+                entries.drainTo(batch, maxBatchSize - 1);
+                while (!write(batch)) {
+                    if (!running.get()) {
+                        logger.error("Giving up writing {} ledger changes on shutdown", batch.size());
+                        break;
+                    }
+                    Thread.sleep(RETRY_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    public void stop() {
+        running.set(false);
+    }
+
+    private boolean write(List<Entry> batch) {
+        // the last change of an account in the batch wins, legs and reports are all kept in order
+        Map<String, UserAccount> accounts = new LinkedHashMap<>();
+        List<TransactionLeg> legs = new ArrayList<>();
+        List<Report> reports = new ArrayList<>();
+        for (Entry entry : batch) {
+            entry.accounts().forEach(account -> accounts.put(account.name(), account));
+            legs.addAll(entry.legs());
+            reports.addAll(entry.reports());
+        }
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                userAccountRepository.saveAll(connection, accounts.values());
+                userAccountRepository.insertLegs(connection, legs);
+                reportTransactionRepository.insertAll(connection, reports);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            logger.error("Failed to write {} ledger changes", batch.size(), e);
+            return false;
+        }
+
+        synchronized (durable) {
+            durableSequence = batch.get(batch.size() - 1).sequence();
+            durable.notifyAll();
+        }
+        reports.forEach(durableListener);
+        return true;
+    }
+}
@@ -0,0 +1,9 @@
+CREATE TABLE idempotency_key (
+    user_id varchar(255) NOT NULL,
+    idempotency_key varchar(255) NOT NULL,
+    transaction_id uuid NOT NULL,
+    created_at integer NOT NULL,
+    PRIMARY KEY (user_id, idempotency_key)
+);
+
+CREATE INDEX idempotency_key_created_at_idx ON idempotency_key (created_at);
@@ -0,0 +1,8 @@
+CREATE TABLE transaction_leg (
+    transaction_id uuid NOT NULL,
+    leg varchar(20) NOT NULL,
+    created_at integer NOT NULL,
+    PRIMARY KEY (transaction_id, leg)
+);
+
+CREATE INDEX transaction_leg_created_at_idx ON transaction_leg (created_at);
@@ -0,0 +1,99 @@
+package com.nerverless.task.admission;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.nerverless.task.admission.AdmissionController.Decision;
+
+public class AdmissionControllerTest {
+
+    @Test
+    void tryAdmit_AtConcurrencyLimit_Throttles() {
+        AdmissionController admission = new AdmissionController(2, 2, List.of());
+        UUID first = UUID.randomUUID();
+
+        assertEquals(Decision.ADMITTED, admission.tryAdmit(first));
+        assertEquals(Decision.ADMITTED, admission.tryAdmit(UUID.randomUUID()));
+        assertEquals(Decision.THROTTLED, admission.tryAdmit(UUID.randomUUID()));
+        assertTrue(admission.retryAfterSeconds() >= 1);
+
+        admission.complete(first);
+        assertEquals(Decision.ADMITTED, admission.tryAdmit(UUID.randomUUID()));
+    }
+
+    @Test
+    void tryAdmit_WithDownstreamQueueWithoutRoomForInFlight_IsSaturated() throws InterruptedException {
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>(3);
+        AdmissionController admission = new AdmissionController(10, 10, List.of(queue));
+        queue.put("waiting");
+
+        assertEquals(Decision.ADMITTED, admission.tryAdmit(UUID.randomUUID()));
+        assertEquals(Decision.ADMITTED, admission.tryAdmit(UUID.randomUUID()));
+        // the two in flight may still need the last two slots
+        assertEquals(Decision.SATURATED, admission.tryAdmit(UUID.randomUUID()));
+    }
+
+    @Test
+    void admit_AtConcurrencyLimit_WaitsForCompletion() throws Exception {
+        AdmissionController admission = new AdmissionController(1, 1, List.of());
+        UUID first = UUID.randomUUID();
+        admission.tryAdmit(first);
+
+        assertEquals(Decision.THROTTLED, admission.admit(UUID.randomUUID(), 20, TimeUnit.MILLISECONDS));
+
+        Thread completer = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            admission.complete(first);
+        });
+        completer.start();
+        assertEquals(Decision.ADMITTED, admission.admit(UUID.randomUUID(), 5, TimeUnit.SECONDS));
+        completer.join();
+    }
+
+    @Test
+    void complete_WithSteadyLatency_GrowsLimitUpToMax() {
+        long[] now = {0};
+        AdmissionController admission = new AdmissionController(4, 8, List.of(), () -> now[0]);
+        for (int round = 0; round < 100; round++) {
+            fillAndComplete(admission, now, 1_000);
+        }
+        assertEquals(8, admission.limit());
+    }
+
+    @Test
+    void complete_WithLatencyAboveTolerance_BacksOff() {
+        long[] now = {0};
+        AdmissionController admission = new AdmissionController(4, 8, List.of(), () -> now[0]);
+        for (int round = 0; round < 100; round++) {
+            fillAndComplete(admission, now, 1_000);
+        }
+        fillAndComplete(admission, now, 5_000);
+
+        assertTrue(admission.limit() < 8);
+        assertTrue(admission.limit() >= 4);
+    }
+
+    // Admit up to the limit, then complete all the admitted transactions after latencyNanos
+    private void fillAndComplete(AdmissionController admission, long[] now, long latencyNanos) {
+        List<UUID> admitted = new ArrayList<>();
+        UUID transactionId = UUID.randomUUID();
+        while (admission.tryAdmit(transactionId) == Decision.ADMITTED) {
+            admitted.add(transactionId);
+            transactionId = UUID.randomUUID();
+        }
+        now[0] += latencyNanos;
+        admitted.forEach(admission::complete);
+    }
+}
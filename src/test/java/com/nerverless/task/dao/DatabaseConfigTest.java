@@ -0,0 +1,74 @@
+package com.nerverless.task.dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class DatabaseConfigTest {
+
+    private static final String DB_URL = "jdbc:sqlite:build/tmp/database-config-test-db.db";
+
+    private DataSource writer;
+    private DataSource reader;
+
+    @BeforeEach
+    void setUp() {
+        writer = DatabaseConfig.createWriterDataSource(DB_URL, SqliteProfile.FAST);
+        Flyway flyway = Flyway.configure().dataSource(writer)
+                .cleanDisabled(false)
+                .load();
+        flyway.clean();
+        flyway.migrate();
+        reader = DatabaseConfig.createReaderDataSource(DB_URL, 2, SqliteProfile.FAST);
+    }
+
+    @Test
+    void writer_WithFastProfile_AppliesPragmas() throws SQLException {
+        try (Connection connection = writer.getConnection(); Statement statement = connection.createStatement()) {
+            assertEquals("wal", pragma(statement, "journal_mode"));
+            // NORMAL
+            assertEquals("1", pragma(statement, "synchronous"));
+            // MEMORY
+            assertEquals("2", pragma(statement, "temp_store"));
+            assertEquals(String.valueOf(-64 * 1024), pragma(statement, "cache_size"));
+        }
+    }
+
+    @Test
+    void reader_DuringWriteTransaction_ReadsLastCommitWithoutBlocking() throws SQLException {
+        try (Connection connection = writer.getConnection(); Statement write = connection.createStatement()) {
+            write.executeUpdate("INSERT INTO user_account (name, balance, reserve) VALUES ('Reader1', 10, 0)");
+            connection.setAutoCommit(false);
+            write.executeUpdate("UPDATE user_account SET balance = 20 WHERE name = 'Reader1'");
+
+            try (Connection readConnection = reader.getConnection(); Statement read = readConnection.createStatement()) {
+                long start = System.nanoTime();
+                try (ResultSet resultSet = read.executeQuery("SELECT balance FROM user_account WHERE name = 'Reader1'")) {
+                    resultSet.next();
+                    assertEquals(10, resultSet.getInt(1));
+                }
+                // well below the busy timeout
+                assertEquals(true, System.nanoTime() - start < 1_000_000_000L);
+                assertThrows(SQLException.class, () -> read.executeUpdate("UPDATE user_account SET balance = 30 WHERE name = 'Reader1'"));
+            }
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private String pragma(Statement statement, String name) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery("PRAGMA " + name)) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.nerverless.task.dao;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class IdempotencyKeyRepositoryTest {
+
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+    private static final String DB_URL = "jdbc:sqlite:build/tmp/idempotency-test-db.db";
+
+    @BeforeEach
+    void setUp() {
+        DataSource dataSource = DatabaseConfig.createDataSource(DB_URL, 2);
+        Flyway flyway = Flyway.configure().dataSource(dataSource)
+                .cleanDisabled(false)
+                .load();
+        flyway.clean();
+        flyway.migrate();
+
+        idempotencyKeyRepository = new IdempotencyKeyRepository(dataSource);
+    }
+
+    @Test
+    void claim_WithKeyAlreadyBound_ReturnsOriginalTransaction() {
+        UUID original = UUID.randomUUID();
+
+        assertTrue(idempotencyKeyRepository.claim("User1", "key-1", original, 1_000, 0).isEmpty());
+        assertEquals(Optional.of(original), idempotencyKeyRepository.claim("User1", "key-1", UUID.randomUUID(), 2_000, 0));
+        // keys are per user
+        assertTrue(idempotencyKeyRepository.claim("User2", "key-1", UUID.randomUUID(), 2_000, 0).isEmpty());
+    }
+
+    @Test
+    void claim_WithExpiredOrReleasedKey_BindsNewTransaction() {
+        UUID original = UUID.randomUUID();
+        idempotencyKeyRepository.claim("User1", "key-1", original, 1_000, 0);
+
+        UUID retry = UUID.randomUUID();
+        assertTrue(idempotencyKeyRepository.claim("User1", "key-1", retry, 5_000, 2_000).isEmpty());
+        assertEquals(Optional.of(retry), idempotencyKeyRepository.claim("User1", "key-1", UUID.randomUUID(), 5_000, 2_000));
+
+        idempotencyKeyRepository.release("User1", "key-1", retry);
+        assertTrue(idempotencyKeyRepository.claim("User1", "key-1", UUID.randomUUID(), 5_000, 2_000).isEmpty());
+        assertEquals(1, idempotencyKeyRepository.deleteCreatedBefore(6_000));
+    }
+
+    @Test
+    void saveAll_WithKeyBoundTwice_KeepsTheUnexpiredBinding() {
+        UUID original = UUID.randomUUID();
+
+        idempotencyKeyRepository.saveAll(List.of(
+                new IdempotencyKeyChange("User1", "key-1", original, 1_000),
+                new IdempotencyKeyChange("User1", "key-1", UUID.randomUUID(), 1_000)), 60_000);
+
+        assertEquals(Optional.of(original), idempotencyKeyRepository.find("User1", "key-1", 0));
+        // expired
+        assertTrue(idempotencyKeyRepository.find("User1", "key-1", 2_000).isEmpty());
+    }
+}
@@ -1,7 +1,6 @@
 package com.nerverless.task.dao;
 
 import static java.lang.String.format;
-import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
@@ -13,12 +12,15 @@ import javax.sql.DataSource;
 import org.flywaydb.core.Flyway;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 
+import com.nerverless.task.model.Money;
 import com.nerverless.task.model.Report;
+import com.nerverless.task.model.ReportPage;
 import com.nerverless.task.model.TransactionId;
 import com.nerverless.task.model.TransactionStatus;
 
@@ -66,7 +68,7 @@ public class ReportTransactionRepositoryTest {
 
         assertEquals(transactionId1, report.transactionId().id());
         assertEquals(TransactionStatus.COMPLETED, report.status());
-        assertEquals(0, new BigDecimal("1000.00").compareTo(report.amount()));
+        assertEquals(0, Money.parse("1000.00").compareTo(report.amount()));
         assertEquals("Report 1", report.message());
     }
 
@@ -88,9 +90,28 @@ public class ReportTransactionRepositoryTest {
     void insert_WithValidReportTransaction_DoesNotThrowException() throws SQLException {
         // Arrange
         TransactionId transactionId = new TransactionId(UUID.randomUUID(), "User1");
-        Report reportTransaction = new Report(transactionId, new BigDecimal("1000.00"), TransactionStatus.COMPLETED, "Report 4");
+        Report reportTransaction = new Report(transactionId, Money.parse("1000.00"), TransactionStatus.COMPLETED, "Report 4");
 
         // Act & Assert
         assertDoesNotThrow(() -> reportTransactionRepository.insert(reportTransaction));
     }
+
+    @Test
+    void findByUserId_WithCursor_PagesNewestFirst() throws SQLException {
+        // Arrange
+        for (int i = 1; i <= 5; i++) {
+            reportTransactionRepository.insert(new Report(new TransactionId(UUID.randomUUID(), "Pager"), Money.parse("1.00"), TransactionStatus.COMPLETED, "Page " + i));
+        }
+
+        // Act
+        ReportPage first = reportTransactionRepository.findByUserId("Pager", Long.MAX_VALUE, 2);
+        ReportPage second = reportTransactionRepository.findByUserId("Pager", first.next(), 2);
+        ReportPage last = reportTransactionRepository.findByUserId("Pager", second.next(), 2);
+
+        // Assert
+        assertEquals(List.of("Page 5", "Page 4"), first.reports().stream().map(Report::message).toList());
+        assertEquals(List.of("Page 3", "Page 2"), second.reports().stream().map(Report::message).toList());
+        assertEquals(List.of("Page 1"), last.reports().stream().map(Report::message).toList());
+        assertNull(last.next());
+    }
 }
@@ -1,9 +1,10 @@
 package com.nerverless.task.dao;
 
-import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 
 import javax.sql.DataSource;
 
@@ -15,6 +16,7 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 
+import com.nerverless.task.model.Money;
 import com.nerverless.task.model.UserAccount;
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
@@ -50,8 +52,8 @@ class UserAccountRepositoryTest {
         Optional<UserAccount> user = userAccountRepository.findByName("User1");
         assertFalse(user.isEmpty());
         assertEquals("User1", user.get().name());
-        assertEquals(0, new BigDecimal("1000.00").compareTo(user.get().balance()));
-        assertEquals(0, new BigDecimal("0.00").compareTo(user.get().reserve()));
+        assertEquals(0, Money.parse("1000.00").compareTo(user.get().balance()));
+        assertEquals(0, Money.parse("0.00").compareTo(user.get().reserve()));
     }
 
     @Test
@@ -62,13 +64,68 @@ class UserAccountRepositoryTest {
     @Test
     void testUpdate() throws SQLException {
         Optional<UserAccount> user = userAccountRepository.findByName("User1");
-        var update = user.get().withBalance(new BigDecimal("900.00"));
-        update = update.withReserve(new BigDecimal("100.00"));
+        var update = user.get().withBalance(Money.parse("900.00"));
+        update = update.withReserve(Money.parse("100.00"));
         userAccountRepository.save(update);
 
         Optional<UserAccount> updatedUser = userAccountRepository.findByName("User1");
         assertFalse(updatedUser.isEmpty());
-        assertEquals(0, new BigDecimal("900.00").compareTo(updatedUser.get().balance()));
-        assertEquals(0, new BigDecimal("100.00").compareTo(updatedUser.get().reserve()));
+        assertEquals(0, Money.parse("900.00").compareTo(updatedUser.get().balance()));
+        assertEquals(0, Money.parse("100.00").compareTo(updatedUser.get().reserve()));
+    }
+
+    @Test
+    void testTransfer() {
+        userAccountRepository.save(new UserAccount("Transfer1", Money.parse("100.00")));
+        userAccountRepository.save(new UserAccount("Transfer2", Money.parse("100.00")));
+
+        assertEquals(BalanceUpdate.UPDATED, userAccountRepository.transfer(null, "Transfer1", "Transfer2", Money.parse("60.10")));
+        assertEquals(0, Money.parse("39.90").compareTo(userAccountRepository.findByName("Transfer1").get().balance()));
+        assertEquals(0, Money.parse("160.10").compareTo(userAccountRepository.findByName("Transfer2").get().balance()));
+    }
+
+    @Test
+    void testTransfer_InsufficientFundsOrAccountNotFound_NothingChanged() {
+        userAccountRepository.save(new UserAccount("Transfer3", Money.parse("100.00")));
+        userAccountRepository.save(new UserAccount("Transfer4", Money.parse("100.00")));
+
+        assertEquals(BalanceUpdate.INSUFFICIENT_FUNDS, userAccountRepository.transfer(null, "Transfer3", "Transfer4", Money.parse("100.01")));
+        assertEquals(BalanceUpdate.ACCOUNT_NOT_FOUND, userAccountRepository.transfer(null, "NonExistentUser", "Transfer4", Money.parse("1.00")));
+        // the debit is rolled back when the credited account does not exist
+        assertEquals(BalanceUpdate.TO_ACCOUNT_NOT_FOUND, userAccountRepository.transfer(null, "Transfer3", "NonExistentUser", Money.parse("1.00")));
+
+        assertEquals(0, Money.parse("100.00").compareTo(userAccountRepository.findByName("Transfer3").get().balance()));
+        assertEquals(0, Money.parse("100.00").compareTo(userAccountRepository.findByName("Transfer4").get().balance()));
+    }
+
+    @Test
+    void testReserveSettleRelease() {
+        userAccountRepository.save(new UserAccount("Withdrawal1", Money.parse("100.00")));
+
+        assertEquals(BalanceUpdate.UPDATED, userAccountRepository.reserve(null, "Withdrawal1", Money.parse("70.00")));
+        assertEquals(BalanceUpdate.INSUFFICIENT_FUNDS, userAccountRepository.reserve(null, "Withdrawal1", Money.parse("30.01")));
+        assertEquals(BalanceUpdate.UPDATED, userAccountRepository.settle("Withdrawal1", Money.parse("20.00")));
+        assertEquals(BalanceUpdate.UPDATED, userAccountRepository.release("Withdrawal1", Money.parse("50.00")));
+        assertEquals(BalanceUpdate.INSUFFICIENT_FUNDS, userAccountRepository.settle("Withdrawal1", Money.parse("0.01")));
+        assertEquals(BalanceUpdate.ACCOUNT_NOT_FOUND, userAccountRepository.release("NonExistentUser", Money.parse("1.00")));
+
+        UserAccount account = userAccountRepository.findByName("Withdrawal1").get();
+        assertEquals(0, Money.parse("80.00").compareTo(account.balance()));
+        assertEquals(0, Money.ZERO.compareTo(account.reserve()));
+    }
+
+    @Test
+    void testTransfer_WithTransactionId_RecordsLegOnlyWhenUpdated() {
+        userAccountRepository.save(new UserAccount("Leg1", Money.parse("100.00")));
+        userAccountRepository.save(new UserAccount("Leg2", Money.parse("100.00")));
+        UUID applied = UUID.randomUUID();
+        UUID rejected = UUID.randomUUID();
+
+        assertEquals(BalanceUpdate.UPDATED, userAccountRepository.transfer(applied, "Leg1", "Leg2", Money.parse("10.00")));
+        assertEquals(BalanceUpdate.INSUFFICIENT_FUNDS, userAccountRepository.debit(rejected, "Leg1", Money.parse("1000.00")));
+
+        assertEquals(Set.of(TransactionLeg.Leg.TRANSFER), userAccountRepository.findLegs(applied));
+        assertTrue(userAccountRepository.findLegs(rejected).isEmpty());
+        assertEquals(0, userAccountRepository.deleteLegsCreatedBefore(0));
     }
 }
@@ -1,6 +1,5 @@
 package com.nerverless.task.dao;
 
-import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
@@ -17,6 +16,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 
+import com.nerverless.task.model.Money;
 import com.nerverless.task.model.TransactionId;
 import com.nerverless.task.model.TransactionStatus;
 import com.nerverless.task.model.Withdrawal;
@@ -62,7 +62,7 @@ public class WithdrawalRepositoryTest {
         assertFalse(actualWithdrawal.isEmpty());
         assertEquals("User1", actualWithdrawal.get().transactionId().userId());
         assertEquals(TransactionStatus.COMPLETED, actualWithdrawal.get().status());
-        assertEquals(0, new BigDecimal("1000.00").compareTo(actualWithdrawal.get().amount()));
+        assertEquals(0, Money.parse("1000.00").compareTo(actualWithdrawal.get().amount()));
     }
 
     @Test
@@ -84,7 +84,7 @@ public class WithdrawalRepositoryTest {
         assertEquals(1, actualWithdrawals.size());
         assertEquals("User2", actualWithdrawals.get(0).transactionId().userId());
         assertEquals(TransactionStatus.PROCESSING, actualWithdrawals.get(0).status());
-        assertEquals(0, new BigDecimal("1000.00").compareTo(actualWithdrawals.get(0).amount()));
+        assertEquals(0, Money.parse("1000.00").compareTo(actualWithdrawals.get(0).amount()));
     }
 
     @Test
@@ -93,7 +93,7 @@ public class WithdrawalRepositoryTest {
         WithdrawalId withdrawalId = new WithdrawalId(UUID.randomUUID());
         TransactionId transactionId = new TransactionId(UUID.randomUUID(), "User1");
 
-        Withdrawal withdrawal = new Withdrawal(withdrawalId, transactionId, "UserAcct1", "Address", new BigDecimal("1000.00"), TransactionStatus.PROCESSING);
+        Withdrawal withdrawal = new Withdrawal(withdrawalId, transactionId, "UserAcct1", "Address", Money.parse("1000.00"), TransactionStatus.PROCESSING);
 
         // Act & Assert
         withdrawalRepository.save(withdrawal);
@@ -102,17 +102,17 @@ public class WithdrawalRepositoryTest {
         assertFalse(actualWithdrawal.isEmpty());
         assertEquals("User1", actualWithdrawal.get().transactionId().userId());
         assertEquals(TransactionStatus.PROCESSING, actualWithdrawal.get().status());
-        assertEquals(0, new BigDecimal("1000.00").compareTo(actualWithdrawal.get().amount()));
+        assertEquals(0, Money.parse("1000.00").compareTo(actualWithdrawal.get().amount()));
         assertEquals("Address", actualWithdrawal.get().toAddress());
 
-        withdrawal = new Withdrawal(withdrawalId, transactionId, "UserAcct1", "Address", new BigDecimal("1000.00"), TransactionStatus.COMPLETED);
+        withdrawal = new Withdrawal(withdrawalId, transactionId, "UserAcct1", "Address", Money.parse("1000.00"), TransactionStatus.COMPLETED);
         withdrawalRepository.save(withdrawal);
 
         actualWithdrawal = withdrawalRepository.findByTransactionId(transactionId);
         assertFalse(actualWithdrawal.isEmpty());
         assertEquals("User1", actualWithdrawal.get().transactionId().userId());
         assertEquals(TransactionStatus.COMPLETED, actualWithdrawal.get().status());
-        assertEquals(0, new BigDecimal("1000.00").compareTo(actualWithdrawal.get().amount()));
+        assertEquals(0, Money.parse("1000.00").compareTo(actualWithdrawal.get().amount()));
         assertEquals("Address", actualWithdrawal.get().toAddress());
     }
 }
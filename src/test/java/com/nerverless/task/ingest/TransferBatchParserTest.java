@@ -0,0 +1,74 @@
+package com.nerverless.task.ingest;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.nerverless.task.model.Money;
+
+public class TransferBatchParserTest {
+
+    @Test
+    void next_WithNdjson_ParsesValidRowsAndReportsInvalidOnes() throws IOException {
+        String body = """
+                {"fromUser":"Alice","toUser":"Bob","amount":10.10}
+                {"fromUser":"Alice","toUser":"Alice","amount":"1.00"}
+
+                {"fromUser":"Bob","toUser":"Charlie","amount":"2.005"}
+                not json
+                {"toUser":"Charlie","amount":"3.00","note":{"ref":1}}
+                """;
+        TransferBatchParser parser = new TransferBatchParser(new StringReader(body), TransferBatchParser.Format.NDJSON);
+
+        TransferBatchParser.Row first = parser.next();
+        assertEquals(1, first.line());
+        assertEquals("Alice", first.transfer().fromAccountName());
+        assertEquals("Bob", first.transfer().toAccountName());
+        assertEquals(Money.parse("10.10"), first.transfer().amount());
+
+        assertTrue(parser.next().error().contains("cannot be the same"));
+        // blank lines are skipped but counted
+        TransferBatchParser.Row tooPrecise = parser.next();
+        assertEquals(4, tooPrecise.line());
+        assertNull(tooPrecise.transfer());
+        assertTrue(parser.next().error().startsWith("malformed JSON"));
+        assertTrue(parser.next().error().contains("userId"));
+        assertNull(parser.next());
+    }
+
+    @Test
+    void next_WithTruncatedOrTrailingJson_RejectsRow() throws IOException {
+        String body = """
+                {"fromUser":"Alice","toUser":"Bob","amount":1
+                {"fromUser":"Alice","toUser":"Bob","amount":1} x
+                {"fromUser":"Alice","toUser":"Bob","amount":1} {"amount":2}
+                {"fromUser":"Alice","toUser":"Bob","amount":1}\t
+                """;
+        TransferBatchParser parser = new TransferBatchParser(new StringReader(body), TransferBatchParser.Format.NDJSON);
+
+        assertNull(parser.next().transfer());
+        assertNull(parser.next().transfer());
+        assertEquals("unexpected content after the JSON object", parser.next().error());
+        // trailing whitespace is fine
+        assertEquals(Money.parse("1.00"), parser.next().transfer().amount());
+        assertNull(parser.next());
+    }
+
+    @Test
+    void next_WithCsv_SkipsHeaderAndChecksColumns() throws IOException {
+        String body = "fromUser,toUser,amount\nAlice, Bob ,5\nAlice,Bob\nBob,Charlie,abc\n";
+        TransferBatchParser parser = new TransferBatchParser(new StringReader(body), TransferBatchParser.Format.CSV);
+
+        TransferBatchParser.Row first = parser.next();
+        assertEquals(2, first.line());
+        assertEquals("Bob", first.transfer().toAccountName());
+        assertEquals(Money.parse("5.00"), first.transfer().amount());
+        assertEquals("expected fromUser,toUser,amount", parser.next().error());
+        assertEquals("amount is not a number: abc", parser.next().error());
+        assertNull(parser.next());
+    }
+}
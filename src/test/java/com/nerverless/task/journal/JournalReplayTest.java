@@ -0,0 +1,92 @@
+package com.nerverless.task.journal;
+
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.nerverless.task.dao.ReportTransactionRepository;
+import com.nerverless.task.dao.TransactionLeg.Leg;
+import com.nerverless.task.dao.UserAccountRepository;
+import com.nerverless.task.dao.WithdrawalRepository;
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.Transaction.Transfer;
+import com.nerverless.task.model.Transaction.TransferCredit;
+import com.nerverless.task.model.Transaction.WithdrawalRequest;
+import com.nerverless.task.model.TransactionId;
+import com.nerverless.task.model.TransactionStatus;
+
+public class JournalReplayTest {
+
+    private final UserAccountRepository userAccountRepository = mock(UserAccountRepository.class);
+    private final ReportTransactionRepository reportTransactionRepository = mock(ReportTransactionRepository.class);
+    private final WithdrawalRepository withdrawalRepository = mock(WithdrawalRepository.class);
+    private final JournalReplay replay = new JournalReplay(userAccountRepository, reportTransactionRepository, withdrawalRepository);
+
+    @Test
+    void resume_WithoutLegs_SubmitsTransfer() {
+        Transfer transfer = transfer();
+        when(reportTransactionRepository.findLatestByTransactionId(transfer.transactionId().id())).thenReturn(Optional.empty());
+        when(userAccountRepository.findLegs(transfer.transactionId().id())).thenReturn(EnumSet.noneOf(Leg.class));
+
+        JournalReplay.Resumed resumed = replay.resume(transfer);
+
+        assertEquals(new JournalReplay.Resumed(JournalReplay.Action.SUBMIT, transfer), resumed);
+        verify(reportTransactionRepository, never()).insert(any());
+    }
+
+    @Test
+    void resume_WithTransferLegButNoReport_WritesReportAndSkips() {
+        Transfer transfer = transfer();
+        when(reportTransactionRepository.findLatestByTransactionId(transfer.transactionId().id())).thenReturn(Optional.empty());
+        when(userAccountRepository.findLegs(transfer.transactionId().id())).thenReturn(Set.of(Leg.TRANSFER));
+
+        JournalReplay.Resumed resumed = replay.resume(transfer);
+
+        assertEquals(JournalReplay.Action.SKIP, resumed.action());
+        verify(reportTransactionRepository).insert(new Report(transfer.transactionId(), transfer.amount(), TransactionStatus.COMPLETED,
+                "Transaction completed successfully"));
+    }
+
+    @Test
+    void resume_WithDebitLegOnly_SubmitsCreditLeg() {
+        Transfer transfer = transfer();
+        when(reportTransactionRepository.findLatestByTransactionId(transfer.transactionId().id())).thenReturn(Optional.empty());
+        when(userAccountRepository.findLegs(transfer.transactionId().id())).thenReturn(Set.of(Leg.DEBIT));
+
+        JournalReplay.Resumed resumed = replay.resume(transfer);
+
+        assertEquals(JournalReplay.Action.SUBMIT, resumed.action());
+        TransferCredit credit = assertInstanceOf(TransferCredit.class, resumed.transaction());
+        assertEquals(transfer.transactionId(), credit.transactionId());
+        assertEquals(transfer.toAccountName(), credit.toAccountName());
+    }
+
+    @Test
+    void resume_WithReservedWithdrawalNotRequested_RequestsWithdrawal() {
+        WithdrawalRequest withdrawal = new WithdrawalRequest(new TransactionId(UUID.randomUUID(), "User1"), "User1", "address", Money.parse("5.00"));
+        when(reportTransactionRepository.findLatestByTransactionId(withdrawal.transactionId().id())).thenReturn(Optional.empty());
+        when(userAccountRepository.findLegs(withdrawal.transactionId().id())).thenReturn(Set.of(Leg.RESERVE));
+        when(withdrawalRepository.findByTransactionId(withdrawal.transactionId())).thenReturn(Optional.empty());
+
+        JournalReplay.Resumed resumed = replay.resume(withdrawal);
+
+        assertEquals(JournalReplay.Action.REQUEST_WITHDRAWAL, resumed.action());
+        verify(reportTransactionRepository).insert(new Report(withdrawal.transactionId(), withdrawal.amount(), TransactionStatus.PROCESSING,
+                "Withdrawal initiated"));
+    }
+
+    private static Transfer transfer() {
+        return new Transfer(new TransactionId(UUID.randomUUID(), "User1"), "User1", "User2", Money.parse("10.00"));
+    }
+}
@@ -0,0 +1,122 @@
+package com.nerverless.task.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Transaction;
+import com.nerverless.task.model.Transaction.Transfer;
+import com.nerverless.task.model.Transaction.WithdrawalRequest;
+import com.nerverless.task.model.TransactionId;
+
+public class TransactionJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replay_AfterRestart_ReturnsUncommittedEntriesInOrder() throws IOException {
+        Transfer first = transfer("10.50");
+        WithdrawalRequest second = new WithdrawalRequest(new TransactionId(UUID.randomUUID(), "user1"), "user1", "address", Money.parse("5.25"));
+        Transfer third = transfer("1.00");
+
+        TransactionJournal journal = TransactionJournal.open(directory, 4096, 1000);
+        journal.append(first);
+        journal.append(second);
+        journal.append(third);
+        journal.commit(first.transactionId().id());
+        journal.commit(third.transactionId().id());
+        journal.close();
+
+        TransactionJournal reopened = TransactionJournal.open(directory, 4096, 1000);
+        List<Transaction> replayed = reopened.replay();
+
+        // the checkpoint stops below the oldest entry in flight
+        assertEquals(List.of(second, third), replayed);
+        assertEquals(1, reopened.committedSequence());
+        reopened.close();
+    }
+
+    @Test
+    void append_BeyondSegmentSize_RollsAndDeletesCommittedSegments() throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, 1024, 1000);
+        Transfer last = null;
+        for (int i = 0; i < 50; i++) {
+            last = transfer("1.00");
+            journal.append(last);
+            if (i < 49) {
+                journal.commit(last.transactionId().id());
+            }
+        }
+        journal.flush();
+        assertEquals(49, journal.committedSequence());
+        assertEquals(50, journal.flushedSequence());
+        journal.close();
+
+        TransactionJournal reopened = TransactionJournal.open(directory, 1024, 1000);
+        assertEquals(List.of(last), reopened.replay());
+        reopened.close();
+        assertTrue(segmentCount() < 5);
+    }
+
+    @Test
+    void replay_WithTornTail_StopsAtLastValidEntry() throws IOException {
+        Transfer first = transfer("2.00");
+        TransactionJournal journal = TransactionJournal.open(directory, 4096, 1000);
+        journal.append(first);
+        journal.append(transfer("3.00"));
+        journal.close();
+
+        // corrupt the payload of the second entry, its length stays in place
+        Path segment = JournalSegment.fileName(directory, 1);
+        byte[] content = Files.readAllBytes(segment);
+        int second = JournalSegment.HEADER_BYTES + ((content[0] & 0xff) << 24 | (content[1] & 0xff) << 16 | (content[2] & 0xff) << 8 | (content[3] & 0xff));
+        content[second + JournalSegment.HEADER_BYTES + 1] ^= 0x7f;
+        Files.write(segment, content);
+
+        TransactionJournal reopened = TransactionJournal.open(directory, 4096, 1000);
+        assertEquals(List.of(first), reopened.replay());
+        // the next append overwrites the torn entry
+        Transfer next = transfer("4.00");
+        assertEquals(2, reopened.append(next));
+        reopened.close();
+    }
+
+    private Transfer transfer(String amount) {
+        return new Transfer(new TransactionId(UUID.randomUUID(), "user1"), "user1", "user2", Money.parse(amount));
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("journal-")).count();
+        }
+    }
+
+    @Test
+    void abort_OfUnsubmittedEntry_NeitherReplaysItNorHoldsCheckpoint() throws IOException {
+        Transfer unsubmitted = transfer("10.00");
+        Transfer submitted = transfer("1.00");
+
+        TransactionJournal journal = TransactionJournal.open(directory, 4096, 1000);
+        journal.append(unsubmitted);
+        long last = journal.append(submitted);
+        journal.abort(unsubmitted.transactionId().id());
+        journal.commit(submitted.transactionId().id());
+        journal.flush();
+        assertEquals(last, journal.committedSequence());
+        journal.close();
+
+        TransactionJournal reopened = TransactionJournal.open(directory, 4096, 1000);
+        assertEquals(List.of(), reopened.replay());
+        reopened.close();
+    }
+}
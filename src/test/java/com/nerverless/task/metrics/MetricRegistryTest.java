@@ -0,0 +1,70 @@
+package com.nerverless.task.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class MetricRegistryTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    @Test
+    void counter_WithSameNameAndLabels_ReturnsSameSeries() {
+        Counter completed = registry.counter("reports_total", "Reports", "status", "COMPLETED");
+        Counter failed = registry.counter("reports_total", "Reports", "status", "FAILED");
+        completed.increment();
+        registry.counter("reports_total", "Reports", "status", "COMPLETED").add(2);
+        failed.increment();
+
+        assertSame(completed, registry.counter("reports_total", "Reports", "status", "COMPLETED"));
+        assertEquals("""
+                # HELP reports_total Reports
+                # TYPE reports_total counter
+                reports_total{status="COMPLETED"} 3
+                reports_total{status="FAILED"} 1
+                """, registry.scrape());
+    }
+
+    @Test
+    void histogram_WithDurations_WritesCumulativeBuckets() {
+        Histogram histogram = registry.histogram("call_duration_seconds", "Calls", new double[] {0.001, 0.01}, "method", "find");
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(500));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+        histogram.record(TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals(4, histogram.count());
+        assertEquals("""
+                # HELP call_duration_seconds Calls
+                # TYPE call_duration_seconds histogram
+                call_duration_seconds_bucket{method="find",le="0.001"} 2
+                call_duration_seconds_bucket{method="find",le="0.01"} 3
+                call_duration_seconds_bucket{method="find",le="+Inf"} 4
+                call_duration_seconds_sum{method="find"} 1.0065
+                call_duration_seconds_count{method="find"} 4
+                """, registry.scrape());
+    }
+
+    @Test
+    void gauge_WithEscapedLabel_IsReadWhenScraped() {
+        int[] depth = {1};
+        registry.gauge("queue_depth", "Depth", () -> depth[0], "queue", "a \"b\"\\c");
+        depth[0] = 7;
+
+        assertTrue(registry.scrape().contains("queue_depth{queue=\"a \\\"b\\\"\\\\c\"} 7\n"));
+    }
+
+    @Test
+    void register_WithInvalidDefinition_ThrowsException() {
+        registry.counter("reports_total", "Reports");
+
+        assertThrows(IllegalArgumentException.class, () -> registry.histogram("reports_total", "Reports"));
+        assertThrows(IllegalArgumentException.class, () -> registry.counter("reports-total", "Reports"));
+        assertThrows(IllegalArgumentException.class, () -> registry.counter("calls_total", "Calls", "method"));
+        assertThrows(IllegalArgumentException.class, () -> registry.histogram("calls", "Calls", new double[] {1, 0.5}));
+    }
+}
@@ -0,0 +1,37 @@
+package com.nerverless.task.model;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class MoneyTest {
+
+    @Test
+    void of_WithDecimalAmount_KeepsMinorUnits() {
+        assertEquals(1050, Money.parse("10.5").minorUnits());
+        assertEquals(new BigDecimal("10.50"), Money.parse("10.50").toBigDecimal());
+        assertEquals("0.07", Money.parse("0.07").toString());
+    }
+
+    @Test
+    void of_WithMoreDecimalsThanScale_IsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> Money.parse("10.005"));
+        assertThrows(IllegalArgumentException.class, () -> Money.parse("1e30"));
+        // values read from the database are rounded instead
+        assertEquals(Money.parse("10.01"), Money.round(new BigDecimal("10.005")));
+    }
+
+    @Test
+    void arithmetic_IsExactAndOverflowChecked() {
+        Money balance = Money.parse("100.10");
+
+        assertEquals(Money.parse("39.90"), balance.minus(Money.parse("60.20")));
+        assertEquals(Money.parse("100.11"), balance.plus(Money.parse("0.01")));
+        assertTrue(balance.isLessThan(Money.parse("100.11")));
+        assertTrue(balance.minus(Money.parse("100.11")).isNegative());
+        assertThrows(ArithmeticException.class, () -> new Money(Long.MAX_VALUE).plus(new Money(1)));
+    }
+}
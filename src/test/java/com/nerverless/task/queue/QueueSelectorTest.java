@@ -0,0 +1,64 @@
+package com.nerverless.task.queue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class QueueSelectorTest {
+
+    @Test
+    void select_WithElementAlreadyQueued_ReturnsImmediately() throws InterruptedException {
+        BlockingQueue<String> queue = new SelectableQueue<>();
+        QueueSelector selector = new QueueSelector().register(new SelectableQueue<Integer>()).register(queue);
+        queue.put("message");
+
+        assertTrue(selector.select(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void select_WithEmptyQueues_TimesOut() throws InterruptedException {
+        QueueSelector selector = new QueueSelector().register(new SelectableQueue<String>()).register(new SelectableQueue<Integer>());
+
+        long start = System.nanoTime();
+        assertFalse(selector.select(50, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    void select_WithPutFromAnotherThread_WakesUpBeforeTimeout() throws InterruptedException {
+        BlockingQueue<String> first = new SelectableQueue<>();
+        BlockingQueue<Integer> second = new SelectableQueue<>();
+        QueueSelector selector = new QueueSelector().register(first).register(second);
+
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+                second.put(42);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+
+        long start = System.nanoTime();
+        assertTrue(selector.select(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        producer.join();
+    }
+
+    @Test
+    void select_WithPlainQueue_PicksUpElementByPolling() throws InterruptedException {
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        QueueSelector selector = new QueueSelector().register(queue);
+
+        Thread producer = new Thread(() -> queue.add("message"));
+        producer.start();
+
+        assertTrue(selector.select(10, TimeUnit.SECONDS));
+        producer.join();
+    }
+}
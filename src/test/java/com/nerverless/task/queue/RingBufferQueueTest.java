@@ -0,0 +1,93 @@
+package com.nerverless.task.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class RingBufferQueueTest {
+
+    @Test
+    void offer_WhenFull_ReturnsFalseUntilConsumed() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(3, WaitStrategy.parking());
+
+        // capacity is rounded up to a power of two
+        assertEquals(4, queue.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(i));
+        }
+        assertFalse(queue.offer(4));
+        assertEquals(0, queue.remainingCapacity());
+
+        assertEquals(0, queue.poll());
+        assertTrue(queue.offer(4));
+    }
+
+    @Test
+    void drainTo_AcrossWrapAround_KeepsOrderAndHonoursMax() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(8, WaitStrategy.busySpin());
+        List<Integer> drained = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            assertTrue(queue.offer(i));
+            if (i % 3 == 2) {
+                assertEquals(2, queue.drainTo(drained, 2));
+            }
+        }
+        queue.drainTo(drained);
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11), drained);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    void put_FromSeveralProducers_DeliversEveryElementInProducerOrder() throws InterruptedException {
+        RingBufferQueue<int[]> queue = new RingBufferQueue<>(64, WaitStrategy.yielding());
+        int producers = 4;
+        int perProducer = 10_000;
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; i < perProducer; i++) {
+                        queue.put(new int[] {producer, i});
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        int[] next = new int[producers];
+        for (int i = 0; i < producers * perProducer; i++) {
+            int[] element = queue.poll(10, TimeUnit.SECONDS);
+            assertEquals(next[element[0]]++, element[1]);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void select_WithRingBuffer_WakesUpOnPut() throws InterruptedException {
+        RingBufferQueue<String> queue = new RingBufferQueue<>(8, WaitStrategy.parking());
+        QueueSelector selector = new QueueSelector().register(queue);
+
+        Thread producer = new Thread(() -> queue.offer("message"));
+        producer.start();
+
+        long start = System.nanoTime();
+        assertTrue(selector.select(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        producer.join();
+    }
+}
@@ -0,0 +1,106 @@
+package com.nerverless.task.service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.nerverless.task.dao.IdempotencyKeyChange;
+import com.nerverless.task.dao.IdempotencyKeyRepository;
+
+public class IdempotencyKeysTest {
+
+    private final IdempotencyKeyRepository repository = mock(IdempotencyKeyRepository.class);
+    private final IdempotencyKeyRepository lookups = mock(IdempotencyKeyRepository.class);
+    private long now = 1_000;
+    private final IdempotencyKeys idempotencyKeys = new IdempotencyKeys(repository, lookups, 2, 1, TimeUnit.MINUTES, () -> now);
+
+    @Test
+    void claim_WithRecentKey_AnswersFromMemory() {
+        when(lookups.find(anyString(), anyString(), anyLong())).thenReturn(Optional.empty());
+        UUID original = UUID.randomUUID();
+
+        assertTrue(idempotencyKeys.claim("User1", "key-1", original).isEmpty());
+        idempotencyKeys.confirm("User1", "key-1", original);
+        assertEquals(Optional.of(new IdempotencyKeys.Binding(original, false)), idempotencyKeys.claim("User1", "key-1", UUID.randomUUID()));
+
+        verify(lookups, times(1)).find(anyString(), anyString(), anyLong());
+        // written behind, never from the request
+        verify(repository, never()).saveAll(any(), anyLong());
+        assertEquals(1, idempotencyKeys.pending());
+    }
+
+    @Test
+    void claim_WhileFirstClaimIsPending_NeverReplaysItsTransaction() {
+        when(lookups.find(anyString(), anyString(), anyLong())).thenReturn(Optional.empty());
+        UUID rejected = UUID.randomUUID();
+        idempotencyKeys.claim("User1", "key-1", rejected);
+
+        assertEquals(Optional.of(new IdempotencyKeys.Binding(rejected, true)), idempotencyKeys.claim("User1", "key-1", UUID.randomUUID()));
+
+        // the first request is rejected, the next retry is processed and nothing was written
+        idempotencyKeys.release("User1", "key-1", rejected);
+        assertTrue(idempotencyKeys.claim("User1", "key-1", UUID.randomUUID()).isEmpty());
+        assertEquals(0, idempotencyKeys.pending());
+    }
+
+    @Test
+    void claim_WithKeyEvictedFromMemory_AnswersFromDatabase() {
+        UUID original = UUID.randomUUID();
+        when(lookups.find(anyString(), anyString(), anyLong())).thenReturn(Optional.empty());
+        idempotencyKeys.claim("User1", "key-1", original);
+        idempotencyKeys.confirm("User1", "key-1", original);
+        idempotencyKeys.claim("User1", "key-2", UUID.randomUUID());
+        // evicts key-1, the oldest
+        idempotencyKeys.claim("User1", "key-3", UUID.randomUUID());
+        assertEquals(2, idempotencyKeys.size());
+
+        when(lookups.find("User1", "key-1", now - TimeUnit.MINUTES.toMillis(1))).thenReturn(Optional.of(original));
+        assertEquals(Optional.of(new IdempotencyKeys.Binding(original, false)), idempotencyKeys.claim("User1", "key-1", UUID.randomUUID()));
+        // the key found is not written again
+        assertEquals(1, idempotencyKeys.pending());
+    }
+
+    @Test
+    void release_OfConfirmedKey_KeepsIt() {
+        when(lookups.find(anyString(), anyString(), anyLong())).thenReturn(Optional.empty());
+        UUID original = UUID.randomUUID();
+        idempotencyKeys.claim("User1", "key-1", original);
+        idempotencyKeys.confirm("User1", "key-1", original);
+
+        idempotencyKeys.release("User1", "key-1", original);
+
+        assertEquals(Optional.of(new IdempotencyKeys.Binding(original, false)), idempotencyKeys.claim("User1", "key-1", UUID.randomUUID()));
+    }
+
+    @Test
+    void run_AfterStop_WritesConfirmedKeysInOrder() {
+        when(lookups.find(anyString(), anyString(), anyLong())).thenReturn(Optional.empty());
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        idempotencyKeys.claim("User1", "key-1", first);
+        idempotencyKeys.claim("User1", "key-2", second);
+        idempotencyKeys.confirm("User1", "key-1", first);
+        idempotencyKeys.confirm("User1", "key-2", second);
+
+        idempotencyKeys.stop();
+        idempotencyKeys.run();
+
+        verify(repository).saveAll(List.of(
+                new IdempotencyKeyChange("User1", "key-1", first, now),
+                new IdempotencyKeyChange("User1", "key-2", second, now)), TimeUnit.MINUTES.toMillis(1));
+        assertEquals(0, idempotencyKeys.pending());
+    }
+}
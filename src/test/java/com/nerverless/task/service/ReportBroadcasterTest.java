@@ -0,0 +1,148 @@
+package com.nerverless.task.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.TransactionId;
+import com.nerverless.task.model.TransactionStatus;
+
+public class ReportBroadcasterTest {
+
+    // drain tasks run when the test decides, like a sink stuck on a slow client
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    @Test
+    void publish_WithFilter_DeliversMatchingReportsInOrder() {
+        ReportBroadcaster broadcaster = new ReportBroadcaster(tasks::add, 4);
+        List<String> received = new ArrayList<>();
+        broadcaster.subscribe(report -> report.transactionId().userId().equals("User1"), report -> received.add(report.message()), () -> {});
+
+        broadcaster.publish(report("User1", "first"));
+        broadcaster.publish(report("User2", "other"));
+        broadcaster.publish(report("User1", "second"));
+        runTasks();
+
+        assertEquals(List.of("first", "second"), received);
+        assertEquals(new ReportBroadcaster.Stats(1, 3, 0, 0), broadcaster.stats());
+    }
+
+    @Test
+    void publish_WithFullBuffer_EvictsSlowSubscriberOnly() {
+        ReportBroadcaster broadcaster = new ReportBroadcaster(tasks::add, 2);
+        boolean[] evicted = {false};
+        List<String> slow = new ArrayList<>();
+        ReportBroadcaster.Subscription slowSubscription = broadcaster.subscribe(report -> true, report -> slow.add(report.message()), () -> evicted[0] = true);
+
+        broadcaster.publish(report("User1", "first"));
+        broadcaster.publish(report("User1", "second"));
+        List<String> fast = new ArrayList<>();
+        broadcaster.subscribe(report -> true, report -> fast.add(report.message()), () -> {});
+        broadcaster.publish(report("User1", "third"));
+        // the notice is sent by the drain task of the subscriber, not by the publisher
+        assertFalse(evicted[0]);
+        runTasks();
+
+        assertTrue(evicted[0]);
+        assertTrue(slowSubscription.isClosed());
+        assertTrue(slow.isEmpty());
+        assertEquals(List.of("third"), fast);
+        assertEquals(new ReportBroadcaster.Stats(1, 3, 0, 1), broadcaster.stats());
+    }
+
+    @Test
+    void publish_WhenSinkFails_ClosesSubscription() {
+        ReportBroadcaster broadcaster = new ReportBroadcaster(Runnable::run, 2);
+        ReportBroadcaster.Subscription subscription = broadcaster.subscribe(report -> true, report -> {
+            throw new IllegalStateException("client gone");
+        }, () -> {});
+
+        broadcaster.publish(report("User1", "first"));
+
+        assertTrue(subscription.isClosed());
+        assertFalse(broadcaster.stats().subscribers() > 0);
+    }
+
+    @Test
+    void interruptStalled_WithBlockedSink_EvictsAndFreesTheThread() throws InterruptedException {
+        long[] now = {0};
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ReportBroadcaster broadcaster = new ReportBroadcaster(executor, 4, () -> now[0]);
+            CountDownLatch writing = new CountDownLatch(1);
+            CountDownLatch evicted = new CountDownLatch(1);
+            ReportBroadcaster.Subscription stalled = broadcaster.subscribe(report -> true, report -> {
+                writing.countDown();
+                try {
+                    // a client that stopped reading
+                    new CountDownLatch(1).await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException("write interrupted");
+                }
+            }, evicted::countDown);
+
+            broadcaster.publish(report("User1", "first"));
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+            assertEquals(0, broadcaster.interruptStalled(TimeUnit.SECONDS.toNanos(5)));
+            now[0] = TimeUnit.SECONDS.toNanos(6);
+            assertEquals(1, broadcaster.interruptStalled(TimeUnit.SECONDS.toNanos(5)));
+
+            assertTrue(evicted.await(5, TimeUnit.SECONDS));
+            assertTrue(stalled.isClosed());
+            assertEquals(new ReportBroadcaster.Stats(0, 1, 0, 1), broadcaster.stats());
+            // the thread is free for the other subscribers
+            List<String> received = new ArrayList<>();
+            CountDownLatch delivered = new CountDownLatch(1);
+            broadcaster.subscribe(report -> true, report -> {
+                received.add(report.message());
+                delivered.countDown();
+            }, () -> {});
+            broadcaster.publish(report("User1", "second"));
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("second"), received);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void publishMissed_WithSubscribers_NotifiesEachFromItsDrainTask() {
+        ReportBroadcaster broadcaster = new ReportBroadcaster(tasks::add, 4);
+        List<Long> missed = new ArrayList<>();
+        List<String> received = new ArrayList<>();
+        broadcaster.subscribe(report -> report.transactionId().userId().equals("User1"), report -> received.add(report.message()), missed::add, () -> {});
+
+        broadcaster.publish(report("User1", "first"));
+        broadcaster.publishMissed(2);
+        broadcaster.publishMissed(3);
+        assertTrue(missed.isEmpty());
+        runTasks();
+        broadcaster.publishMissed(1);
+        runTasks();
+
+        assertEquals(List.of(5L, 1L), missed);
+        assertEquals(List.of("first"), received);
+        assertEquals(new ReportBroadcaster.Stats(1, 1, 6, 0), broadcaster.stats());
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    private static Report report(String userId, String message) {
+        return new Report(new TransactionId(UUID.randomUUID(), userId), Money.parse("1.00"), TransactionStatus.COMPLETED, message);
+    }
+}
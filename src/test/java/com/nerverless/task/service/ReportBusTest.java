@@ -0,0 +1,113 @@
+package com.nerverless.task.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.TransactionId;
+import com.nerverless.task.model.TransactionStatus;
+
+public class ReportBusTest {
+
+    private final BlockingQueue<Report> reportQueue = new LinkedBlockingQueue<>();
+    private final ExecutorService executorService = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void run_WithStuckDropSubscriber_DeliversEveryReportToBlockSubscriber() throws InterruptedException {
+        ReportBus bus = new ReportBus(reportQueue);
+        List<String> pipeline = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicLong notified = new AtomicLong();
+        bus.subscribe("pipeline", 4, 3, ReportBus.Overflow.BLOCK, reports -> reports.forEach(report -> pipeline.add(report.message())));
+        bus.subscribe("slow", 2, 1, ReportBus.Overflow.DROP, reports -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, notified::addAndGet);
+        bus.start(executorService);
+
+        List<String> sent = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            sent.add("report-" + i);
+            reportQueue.add(report(sent.get(i)));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pipeline.size() < sent.size() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(sent, pipeline);
+
+        release.countDown();
+        bus.stop();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+
+        ReportBus.Stats pipelineStats = bus.stats().get(0);
+        ReportBus.Stats slowStats = bus.stats().get(1);
+        assertEquals(new ReportBus.Stats("pipeline", ReportBus.Overflow.BLOCK, 0, 10, 0), pipelineStats);
+        assertTrue(slowStats.dropped() >= 7);
+        assertEquals(10, slowStats.delivered() + slowStats.dropped());
+        // told about every report it lost
+        assertEquals(slowStats.dropped(), notified.get());
+    }
+
+    @Test
+    void run_WhenSubscriberFails_KeepsDelivering() throws InterruptedException {
+        ReportBus bus = new ReportBus(reportQueue);
+        List<String> received = Collections.synchronizedList(new ArrayList<>());
+        bus.subscribe("failing", 8, 1, ReportBus.Overflow.BLOCK, reports -> {
+            if (reports.get(0).message().equals("first")) {
+                throw new IllegalStateException("subscriber failure");
+            }
+            received.add(reports.get(0).message());
+        });
+        reportQueue.add(report("first"));
+        reportQueue.add(report("second"));
+        bus.start(executorService);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (received.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        bus.stop();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(List.of("second"), received);
+        assertEquals(2, bus.stats().get(0).delivered());
+    }
+
+    @Test
+    void subscribe_WithEmptyBuffer_ThrowsException() {
+        ReportBus bus = new ReportBus(reportQueue);
+
+        assertThrows(IllegalArgumentException.class, () -> bus.subscribe("log", 0, 1, ReportBus.Overflow.DROP, reports -> {}));
+    }
+
+    private static Report report(String message) {
+        return new Report(new TransactionId(UUID.randomUUID(), "User1"), Money.parse("1.00"), TransactionStatus.COMPLETED, message);
+    }
+}
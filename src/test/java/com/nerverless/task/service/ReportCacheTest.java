@@ -0,0 +1,92 @@
+package com.nerverless.task.service;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.TransactionId;
+import com.nerverless.task.model.TransactionStatus;
+
+public class ReportCacheTest {
+
+    @Test
+    void put_BeyondMaximumSize_EvictsLeastRecentlyUsed() {
+        ReportCache cache = new ReportCache(2, 1, TimeUnit.MINUTES);
+        Report first = report();
+        Report second = report();
+        cache.put(first);
+        cache.put(second);
+        // first becomes the most recently used
+        cache.get(first.transactionId().id());
+
+        cache.put(report());
+
+        assertTrue(cache.get(first.transactionId().id()).isPresent());
+        assertTrue(cache.get(second.transactionId().id()).isEmpty());
+        assertEquals(new ReportCache.Stats(2, 1, 1, 2), cache.stats());
+    }
+
+    @Test
+    void get_AfterTimeToLive_MissesAndEvicts() {
+        long[] now = {0};
+        ReportCache cache = new ReportCache(10, 1, TimeUnit.SECONDS, () -> now[0]);
+        Report report = report();
+        cache.put(report);
+
+        now[0] = TimeUnit.MILLISECONDS.toNanos(900);
+        assertTrue(cache.get(report.transactionId().id()).isPresent());
+        now[0] = TimeUnit.MILLISECONDS.toNanos(1100);
+        assertTrue(cache.get(report.transactionId().id()).isEmpty());
+
+        assertEquals(new ReportCache.Stats(1, 1, 1, 0), cache.stats());
+    }
+
+    @Test
+    void putPending_UntilFirstReport_HitsWithoutReport() {
+        ReportCache cache = new ReportCache(10, 1, TimeUnit.MINUTES);
+        Report report = report();
+        cache.putPending(report.transactionId().id());
+
+        assertEquals(Optional.of(new ReportCache.Cached(Optional.empty())), cache.get(report.transactionId().id()));
+        cache.put(report);
+        // a pending entry never replaces a report
+        cache.putPending(report.transactionId().id());
+        assertEquals(Optional.of(new ReportCache.Cached(Optional.of(report))), cache.get(report.transactionId().id()));
+
+        assertEquals(new ReportCache.Stats(2, 0, 0, 1), cache.stats());
+    }
+
+    @Test
+    void get_FromManyThreads_StaysWithinMaximumSize() throws InterruptedException {
+        ReportCache cache = new ReportCache(100, 1, TimeUnit.MINUTES);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    Report report = report();
+                    cache.put(report);
+                    cache.get(report.transactionId().id());
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        ReportCache.Stats stats = cache.stats();
+        assertTrue(stats.size() <= 100);
+        assertEquals(40_000, stats.hits() + stats.misses());
+        assertEquals(40_000 - stats.size(), stats.evictions());
+    }
+
+    private Report report() {
+        return new Report(new TransactionId(UUID.randomUUID(), "User1"), Money.parse("10.00"), TransactionStatus.COMPLETED, "Transaction completed successfully");
+    }
+}
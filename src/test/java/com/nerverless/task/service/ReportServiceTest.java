@@ -0,0 +1,98 @@
+package com.nerverless.task.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.nerverless.task.dao.ReportTransactionRepository;
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.ReportPage;
+import com.nerverless.task.model.TransactionId;
+import com.nerverless.task.model.TransactionStatus;
+
+@ExtendWith(MockitoExtension.class)
+public class ReportServiceTest {
+
+    @Mock
+    private ReportTransactionRepository reportTransactionRepository;
+
+    private ReportService reportService;
+
+    @BeforeEach
+    void setUp() {
+        reportService = new ReportService(reportTransactionRepository, new ReportCache(100, 1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    void getLatestReportByTransaction_AfterEmittedReports_NeverReadsDatabase() {
+        var transactionId = new TransactionId(UUID.randomUUID(), "User1");
+        reportService.onReport(new Report(transactionId, Money.parse("10.00"), TransactionStatus.PROCESSING, "Withdrawal initiated"));
+        Report completed = new Report(transactionId, Money.parse("10.00"), TransactionStatus.COMPLETED, "Withdrawal completed");
+        reportService.onReport(completed);
+
+        // status polling right after the submission
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(Optional.of(completed), reportService.getLatestReportByTransaction(transactionId.id()));
+        }
+
+        verify(reportTransactionRepository, never()).findLatestByTransactionId(any());
+        assertEquals(new ReportCache.Stats(1000, 0, 0, 1), reportService.cacheStats());
+    }
+
+    @Test
+    void getLatestReportByTransaction_OnMiss_ReadsDatabaseOnce() {
+        var transactionId = new TransactionId(UUID.randomUUID(), "User1");
+        Report report = new Report(transactionId, Money.parse("10.00"), TransactionStatus.COMPLETED, "Transaction completed successfully");
+        when(reportTransactionRepository.findLatestByTransactionId(transactionId.id())).thenReturn(Optional.of(report));
+
+        assertEquals(Optional.of(report), reportService.getLatestReportByTransaction(transactionId.id()));
+        assertEquals(Optional.of(report), reportService.getLatestReportByTransaction(transactionId.id()));
+
+        verify(reportTransactionRepository, times(1)).findLatestByTransactionId(transactionId.id());
+        assertEquals(new ReportCache.Stats(1, 1, 0, 1), reportService.cacheStats());
+    }
+
+    @Test
+    void getLatestReportByTransaction_WhenAdmittedButNotReported_NeverReadsDatabase() {
+        UUID transactionId = UUID.randomUUID();
+        reportService.onAdmitted(transactionId);
+
+        assertEquals(Optional.empty(), reportService.getLatestReportByTransaction(transactionId));
+
+        verify(reportTransactionRepository, never()).findLatestByTransactionId(any());
+    }
+
+    @Test
+    void streamReportsByUser_AcrossPages_HandsEveryReportInOrder() {
+        Report newest = new Report(new TransactionId(UUID.randomUUID(), "User1"), Money.parse("2.00"), TransactionStatus.COMPLETED, "newest");
+        Report oldest = new Report(new TransactionId(UUID.randomUUID(), "User1"), Money.parse("1.00"), TransactionStatus.COMPLETED, "oldest");
+        when(reportTransactionRepository.findByUserId(eq("User1"), eq(Long.MAX_VALUE), any(Integer.class))).thenReturn(new ReportPage(List.of(newest), 7L));
+        when(reportTransactionRepository.findByUserId(eq("User1"), eq(7L), any(Integer.class))).thenReturn(new ReportPage(List.of(oldest), null));
+
+        List<Report> streamed = new ArrayList<>();
+        reportService.streamReportsByUser("User1", streamed::add);
+
+        assertEquals(List.of(newest, oldest), streamed);
+        InOrder pages = inOrder(reportTransactionRepository);
+        pages.verify(reportTransactionRepository).findByUserId(eq("User1"), eq(Long.MAX_VALUE), any(Integer.class));
+        pages.verify(reportTransactionRepository).findByUserId(eq("User1"), eq(7L), any(Integer.class));
+    }
+}
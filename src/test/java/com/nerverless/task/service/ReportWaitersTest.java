@@ -0,0 +1,60 @@
+package com.nerverless.task.service;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.TransactionId;
+import com.nerverless.task.model.TransactionStatus;
+import com.nerverless.task.timer.TimerWheel;
+
+public class ReportWaitersTest {
+
+    // not running, the waiters only complete from the reports
+    private final TimerWheel timer = new TimerWheel(1, TimeUnit.SECONDS, 8);
+    private final ReportWaiters waiters = new ReportWaiters(timer);
+
+    @Test
+    void onReport_WithFinalStatus_CompletesWaiters() throws Exception {
+        UUID transactionId = UUID.randomUUID();
+        CompletableFuture<Optional<Report>> waiter = waiters.await(transactionId, 30, TimeUnit.SECONDS);
+
+        waiters.onReport(report(transactionId, TransactionStatus.PROCESSING));
+        assertFalse(waiter.isDone());
+
+        Report completed = report(transactionId, TransactionStatus.COMPLETED);
+        waiters.onReport(completed);
+
+        assertEquals(Optional.of(completed), waiter.get());
+        assertEquals(0, waiters.size());
+    }
+
+    @Test
+    void await_WhenTimeoutExpires_CompletesEmpty() throws Exception {
+        TimerWheel runningTimer = new TimerWheel(1, TimeUnit.MILLISECONDS, 8);
+        ReportWaiters timed = new ReportWaiters(runningTimer);
+        Thread wheel = new Thread(runningTimer);
+        wheel.start();
+        try {
+            CompletableFuture<Optional<Report>> waiter = timed.await(UUID.randomUUID(), 5, TimeUnit.MILLISECONDS);
+
+            assertTrue(waiter.get(5, TimeUnit.SECONDS).isEmpty());
+            assertEquals(0, timed.size());
+        } finally {
+            runningTimer.stop();
+            wheel.join();
+        }
+    }
+
+    private static Report report(UUID transactionId, TransactionStatus status) {
+        return new Report(new TransactionId(transactionId, "User1"), Money.parse("1.00"), status, "Report");
+    }
+}
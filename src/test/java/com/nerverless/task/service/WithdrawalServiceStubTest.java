@@ -0,0 +1,73 @@
+package com.nerverless.task.service;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.nerverless.task.service.WithdrawalService.Address;
+import com.nerverless.task.service.WithdrawalService.Request;
+import com.nerverless.task.service.WithdrawalService.WithdrawalId;
+import com.nerverless.task.service.WithdrawalService.WithdrawalState;
+
+public class WithdrawalServiceStubTest {
+
+    private final WithdrawalServiceStub withdrawalService = new WithdrawalServiceStub(50, 100);
+
+    @Test
+    void requestWithdrawals_WithConflictingRequest_RejectsOnlyIt() {
+        WithdrawalId first = new WithdrawalId(UUID.randomUUID());
+        WithdrawalId second = new WithdrawalId(UUID.randomUUID());
+        WithdrawalId unknown = new WithdrawalId(UUID.randomUUID());
+        withdrawalService.requestWithdrawal(second, new Address("Address2"), BigDecimal.ONE);
+
+        Map<WithdrawalId, String> rejected = withdrawalService.requestWithdrawals(List.of(
+                new Request(first, new Address("Address1"), BigDecimal.TEN),
+                new Request(second, new Address("Address2"), BigDecimal.TEN)));
+
+        assertEquals(List.of(second), List.copyOf(rejected.keySet()));
+        Map<WithdrawalId, WithdrawalState> states = withdrawalService.getRequestStates(List.of(first, second, unknown));
+        assertEquals(WithdrawalState.PROCESSING, states.get(first));
+        assertEquals(WithdrawalState.PROCESSING, states.get(second));
+        assertFalse(states.containsKey(unknown));
+    }
+
+    @Test
+    void subscribe_WithRequest_PushesFinalStateAtFinaliseAt() throws Exception {
+        CompletableFuture<WithdrawalState> pushed = new CompletableFuture<>();
+        WithdrawalId id = new WithdrawalId(UUID.randomUUID());
+        assertTrue(withdrawalService.subscribe((completed, state) -> {
+            if (completed.equals(id)) {
+                pushed.complete(state);
+            }
+        }));
+
+        withdrawalService.requestWithdrawalAsync(id, new Address("Address1"), BigDecimal.TEN).get(1, TimeUnit.SECONDS);
+
+        WithdrawalState state = pushed.get(5, TimeUnit.SECONDS);
+        assertTrue(state != WithdrawalState.PROCESSING);
+        assertEquals(state, withdrawalService.getRequestStateAsync(id).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void requestWithdrawals_WithRepeatedRequest_AcceptsAndPushesItOnce() throws Exception {
+        WithdrawalId id = new WithdrawalId(UUID.randomUUID());
+        List<WithdrawalId> pushed = new CopyOnWriteArrayList<>();
+        withdrawalService.subscribe((completed, state) -> pushed.add(completed));
+        Request request = new Request(id, new Address("Address1"), BigDecimal.TEN);
+
+        Map<WithdrawalId, String> rejected = withdrawalService.requestWithdrawals(List.of(request, request));
+
+        assertTrue(rejected.isEmpty());
+        Thread.sleep(300);
+        assertEquals(List.of(id), pushed);
+    }
+}
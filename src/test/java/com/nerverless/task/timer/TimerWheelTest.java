@@ -0,0 +1,55 @@
+package com.nerverless.task.timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class TimerWheelTest {
+
+    private long now;
+    private final TimerWheel timer = new TimerWheel(10, TimeUnit.MILLISECONDS, 4, () -> now);
+
+    @Test
+    void advance_PastDeadlines_RunsTasksInDeadlineOrder() {
+        List<String> fired = new ArrayList<>();
+        // beyond one turn of the wheel
+        timer.schedule(() -> fired.add("late"), 95, TimeUnit.MILLISECONDS);
+        timer.schedule(() -> fired.add("early"), 25, TimeUnit.MILLISECONDS);
+
+        advanceTo(30);
+        assertEquals(List.of("early"), fired);
+
+        advanceTo(90);
+        assertEquals(List.of("early"), fired);
+        assertEquals(1, timer.pending());
+
+        advanceTo(100);
+        assertEquals(List.of("early", "late"), fired);
+        assertEquals(0, timer.pending());
+    }
+
+    @Test
+    void cancel_BeforeDeadline_NeverRunsTask() {
+        boolean[] fired = {false};
+        TimerWheel.Timeout timeout = timer.schedule(() -> fired[0] = true, 15, TimeUnit.MILLISECONDS);
+        advanceTo(10);
+
+        assertTrue(timeout.cancel());
+        advanceTo(50);
+
+        assertFalse(fired[0]);
+        assertFalse(timeout.isExpired());
+        assertFalse(timeout.cancel());
+        assertEquals(0, timer.pending());
+    }
+
+    private void advanceTo(long millis) {
+        now = TimeUnit.MILLISECONDS.toNanos(millis);
+        timer.advance();
+    }
+}
@@ -0,0 +1,100 @@
+package com.nerverless.task.trace;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import com.nerverless.task.metrics.MetricRegistry;
+import com.nerverless.task.model.TransactionStatus;
+
+public class StageTracerTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    @Test
+    void complete_WithSlowTransaction_KeepsStageBreakdown() {
+        StageTracer tracer = new StageTracer(registry, 100, 4, false);
+        UUID transactionId = UUID.randomUUID();
+
+        tracer.start(transactionId, "Transfer", System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(200));
+        tracer.stamp(transactionId, Stage.SUBMITTED);
+        tracer.stamp(transactionId, Stage.DEQUEUED);
+        tracer.stamp(transactionId, Stage.COMMITTED);
+        tracer.complete(transactionId, TransactionStatus.COMPLETED);
+
+        List<SlowTrace> traces = tracer.slowTraces();
+        assertEquals(1, traces.size());
+        SlowTrace trace = traces.get(0);
+        assertEquals(transactionId, trace.transactionId());
+        assertEquals(TransactionStatus.COMPLETED, trace.status());
+        assertEquals(List.of("submitted", "dequeued", "committed", "reported"), List.copyOf(trace.stageMicros().keySet()));
+        assertTrue(trace.stageMicros().get("submitted") >= TimeUnit.MILLISECONDS.toMicros(200));
+        assertTrue(trace.totalMicros() >= TimeUnit.MILLISECONDS.toMicros(200));
+        assertEquals(0, tracer.inFlight());
+        String metrics = registry.scrape();
+        assertTrue(metrics.contains("transaction_stage_duration_seconds_count{stage=\"committed\"} 1\n"));
+        assertTrue(metrics.contains("transaction_stage_duration_seconds_count{stage=\"provider_sent\"} 0\n"));
+        assertTrue(metrics.contains("transaction_trace_duration_seconds_count{type=\"Transfer\"} 1\n"));
+    }
+
+    @Test
+    void complete_WithFastOrUntracedTransactions_KeepsNoSlowTrace() {
+        StageTracer tracer = new StageTracer(registry, 1000, 4, false);
+        UUID fast = UUID.randomUUID();
+        UUID discarded = UUID.randomUUID();
+        tracer.start(fast, "Transfer", System.nanoTime());
+        tracer.start(discarded, "Transfer", System.nanoTime() - TimeUnit.SECONDS.toNanos(5));
+        tracer.discard(discarded);
+
+        tracer.complete(fast, TransactionStatus.FAILED);
+        tracer.complete(discarded, TransactionStatus.COMPLETED);
+        tracer.complete(UUID.randomUUID(), TransactionStatus.COMPLETED);
+
+        assertTrue(tracer.slowTraces().isEmpty());
+        assertTrue(registry.scrape().contains("transaction_trace_duration_seconds_count{type=\"Transfer\"} 1\n"));
+    }
+
+    @Test
+    void slowTraces_WhenBufferIsFull_KeepsNewest() {
+        StageTracer tracer = new StageTracer(registry, 0, 2, false);
+        UUID[] transactionIds = {UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()};
+        for (UUID transactionId : transactionIds) {
+            tracer.start(transactionId, "WithdrawalRequest", System.nanoTime());
+            tracer.complete(transactionId, TransactionStatus.COMPLETED);
+        }
+
+        List<SlowTrace> traces = tracer.slowTraces();
+        assertEquals(List.of(transactionIds[2], transactionIds[1]), traces.stream().map(SlowTrace::transactionId).toList());
+    }
+
+    @Test
+    void start_WithTooManyInFlight_CountsDroppedTrace() {
+        StageTracer tracer = new StageTracer(registry, 1000, 4, false, 1);
+
+        tracer.start(UUID.randomUUID(), "Transfer", System.nanoTime());
+        tracer.start(UUID.randomUUID(), "Transfer", System.nanoTime());
+
+        assertEquals(1, tracer.inFlight());
+        assertTrue(registry.scrape().contains("transaction_traces_dropped_total{reason=\"in_flight_limit\"} 1\n"));
+    }
+
+    @Test
+    void expire_WithLostTransaction_DropsOnlyOldTraces() {
+        StageTracer tracer = new StageTracer(registry, 1000, 4, false);
+        UUID lost = UUID.randomUUID();
+        UUID recent = UUID.randomUUID();
+        tracer.start(lost, "Transfer", System.nanoTime() - TimeUnit.MINUTES.toNanos(20));
+        tracer.start(recent, "Transfer", System.nanoTime());
+
+        assertEquals(1, tracer.expire(TimeUnit.MINUTES.toNanos(10)));
+
+        assertEquals(1, tracer.inFlight());
+        tracer.complete(recent, TransactionStatus.COMPLETED);
+        assertEquals(0, tracer.inFlight());
+        assertTrue(registry.scrape().contains("transaction_traces_dropped_total{reason=\"expired\"} 1\n"));
+    }
+}
@@ -0,0 +1,37 @@
+package com.nerverless.task.workers;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.nerverless.task.dao.UserAccountRepository;
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.UserAccount;
+
+public class AccountLedgerTest {
+
+    @Test
+    void findByName_WithUnknownAccount_LooksItUpAgainOnlyOnceExpired() {
+        UserAccountRepository userAccountRepository = mock(UserAccountRepository.class);
+        when(userAccountRepository.findByName("Nobody")).thenReturn(Optional.empty())
+                .thenReturn(Optional.of(new UserAccount("Nobody", Money.parse("10.00"), Money.ZERO)));
+        long[] now = {0};
+        AccountLedger ledger = new AccountLedger(userAccountRepository, () -> now[0]);
+
+        assertTrue(ledger.findByName("Nobody").isEmpty());
+        assertTrue(ledger.findByName("Nobody").isEmpty());
+        verify(userAccountRepository, times(1)).findByName("Nobody");
+
+        // created since, found once the miss expired and then served from memory
+        now[0] = TimeUnit.SECONDS.toNanos(6);
+        assertTrue(ledger.findByName("Nobody").isPresent());
+        assertTrue(ledger.findByName("Nobody").isPresent());
+        verify(userAccountRepository, times(2)).findByName("Nobody");
+    }
+}
@@ -0,0 +1,156 @@
+package com.nerverless.task.workers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.nerverless.task.dao.BalanceUpdate;
+import com.nerverless.task.dao.DatabaseConfig;
+import com.nerverless.task.dao.ReportTransactionRepository;
+import com.nerverless.task.dao.UserAccountRepository;
+import com.nerverless.task.journal.TransactionJournal;
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Report;
+import com.nerverless.task.model.Transaction;
+import com.nerverless.task.model.TransactionId;
+import com.nerverless.task.model.TransactionStatus;
+import com.nerverless.task.model.Withdrawal;
+
+public class TransactionWorkerPoolTest {
+    private static final int SHARDS = 4;
+
+    private TransactionWorkerPool transactionWorkerPool;
+    private UserAccountRepository userAccountRepository;
+    private ReportTransactionRepository reportTransactionRepository;
+    private BlockingQueue<Report> reportQueue;
+    private ExecutorService executorService;
+
+    // Two account names owned by different shards
+    private String fromUser;
+    private String toUser;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        userAccountRepository = mock(UserAccountRepository.class);
+        reportTransactionRepository = mock(ReportTransactionRepository.class);
+        DataSource dataSource = mock(DataSource.class);
+
+        reportQueue = new LinkedBlockingQueue<>();
+        BlockingQueue<Transaction> withdrawalQueue = new LinkedBlockingQueue<>();
+        BlockingQueue<Withdrawal> withdrawalReportQueue = new LinkedBlockingQueue<>();
+        transactionWorkerPool = new TransactionWorkerPool(dataSource, userAccountRepository, reportTransactionRepository, SHARDS, TransactionWorkerConfig.defaults(), reportQueue, withdrawalQueue, withdrawalReportQueue);
+
+        ShardRouter router = new ShardRouter(List.of(new LinkedBlockingQueue<>(), new LinkedBlockingQueue<>(), new LinkedBlockingQueue<>(), new LinkedBlockingQueue<>()));
+        fromUser = "User1";
+        int i = 2;
+        while (router.shardOf("User" + i) == router.shardOf(fromUser)) {
+            i++;
+        }
+        toUser = "User" + i;
+        assertNotEquals(router.shardOf(fromUser), router.shardOf(toUser));
+
+        executorService = Executors.newCachedThreadPool();
+        transactionWorkerPool.start(executorService);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        transactionWorkerPool.stop();
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testCrossShardTransferSuccess() throws InterruptedException {
+        when(userAccountRepository.debit(null, fromUser, Money.parse("100.00"))).thenReturn(BalanceUpdate.UPDATED);
+        when(userAccountRepository.credit(null, toUser, Money.parse("100.00"))).thenReturn(BalanceUpdate.UPDATED);
+
+        Transaction transfer = new Transaction.Transfer(new TransactionId(UUID.randomUUID(), fromUser), fromUser, toUser, Money.parse("100.00"));
+        transactionWorkerPool.submit(transfer);
+
+        Report report = reportQueue.take();
+
+        assertEquals(transfer.transactionId(), report.transactionId());
+        assertEquals(TransactionStatus.COMPLETED, report.status());
+        assertEquals("Transaction completed successfully", report.message());
+
+        // each leg applied once, by the shard owning its account
+        verify(userAccountRepository, times(1)).debit(null, fromUser, Money.parse("100.00"));
+        verify(userAccountRepository, times(1)).credit(null, toUser, Money.parse("100.00"));
+        verify(reportTransactionRepository, times(1)).insert(report);
+    }
+
+    @Test
+    public void testCrossShardTransferRefundedWhenCreditAccountNotFound() throws InterruptedException {
+        when(userAccountRepository.debit(null, fromUser, Money.parse("100.00"))).thenReturn(BalanceUpdate.UPDATED);
+        when(userAccountRepository.credit(null, toUser, Money.parse("100.00"))).thenReturn(BalanceUpdate.ACCOUNT_NOT_FOUND);
+        when(userAccountRepository.refund(null, fromUser, Money.parse("100.00"))).thenReturn(BalanceUpdate.UPDATED);
+
+        Transaction transfer = new Transaction.Transfer(new TransactionId(UUID.randomUUID(), fromUser), fromUser, toUser, Money.parse("100.00"));
+        transactionWorkerPool.submit(transfer);
+
+        Report report = reportQueue.take();
+
+        assertEquals(transfer.transactionId(), report.transactionId());
+        assertEquals(TransactionStatus.FAILED, report.status());
+        assertEquals("Account not found: " + toUser, report.message());
+
+        // debit on the source shard, then refund of the same amount
+        verify(userAccountRepository, times(1)).debit(null, fromUser, Money.parse("100.00"));
+        verify(userAccountRepository, times(1)).refund(null, fromUser, Money.parse("100.00"));
+    }
+
+    @Test
+    public void testGroupCommitWithJournalAdvancesCheckpoint(@TempDir Path journalDirectory) throws InterruptedException, IOException {
+        DataSource dataSource = DatabaseConfig.createDataSource("jdbc:sqlite:build/tmp/transaction-worker-pool-test-db.db", 2);
+        Flyway flyway = Flyway.configure().dataSource(dataSource).cleanDisabled(false).load();
+        flyway.clean();
+        flyway.migrate();
+        // the report writer is on by default, group commit writes the reports with the balances instead
+        TransactionWorkerConfig config = TransactionWorkerConfig.defaults().withBatch(4, 1000).withReportWriter(256, 1000).withLegs(true);
+        TransactionWorkerPool pool = new TransactionWorkerPool(dataSource, 1, config, reportQueue, new LinkedBlockingQueue<>(), new LinkedBlockingQueue<>());
+        assertFalse(pool.writesBehind());
+        TransactionJournal journal = TransactionJournal.open(journalDirectory, 1024 * 1024, 1000);
+        pool.start(executorService);
+
+        long appended = 0;
+        for (int i = 0; i < 8; i++) {
+            Transaction transfer = new Transaction.Transfer(new TransactionId(UUID.randomUUID(), "Alice"), "Alice", "Bob", Money.parse("1.00"));
+            appended = journal.append(transfer);
+            pool.submit(transfer);
+        }
+        // committed as the pipeline does once the reports are sent, they are on disk already
+        for (int i = 0; i < 8; i++) {
+            Report report = reportQueue.poll(5, TimeUnit.SECONDS);
+            assertEquals(TransactionStatus.COMPLETED, report.status());
+            journal.commit(report.transactionId().id());
+        }
+        journal.flush();
+
+        assertEquals(appended, journal.committedSequence());
+        assertEquals(List.of(), journal.replay());
+        pool.stop();
+        journal.close();
+    }
+}
@@ -1,28 +1,40 @@
 package com.nerverless.task.workers;
 
-import java.math.BigDecimal;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.nerverless.task.dao.BalanceUpdate;
 import com.nerverless.task.dao.ReportTransactionRepository;
 import com.nerverless.task.dao.UserAccountRepository;
+import com.nerverless.task.metrics.Histogram;
+import com.nerverless.task.metrics.MetricRegistry;
+import com.nerverless.task.model.Money;
 import com.nerverless.task.model.Report;
 import com.nerverless.task.model.Transaction;
 import com.nerverless.task.model.TransactionId;
@@ -54,13 +66,9 @@ public class TransactionWorkerTest {
 
     @Test
     public void testTransactionSuccess() throws InterruptedException {
-        Optional<UserAccount> user1 = Optional.of(new UserAccount("User1", new BigDecimal("1000.00"), BigDecimal.ZERO));
-        Optional<UserAccount> user2 = Optional.of(new UserAccount("User2", new BigDecimal("1000.00"), BigDecimal.ZERO));
-                
-        when(userAccountRepository.findByName("User1")).thenReturn(user1);
-        when(userAccountRepository.findByName("User2")).thenReturn(user2);
+        when(userAccountRepository.transfer(null, "User1", "User2", Money.parse("100.00"))).thenReturn(BalanceUpdate.UPDATED);
 
-        Transaction transactionMessage = new Transaction.Transfer(new TransactionId(UUID.randomUUID(), "User1"), "User1", "User2", new BigDecimal("100.00"));
+        Transaction transactionMessage = new Transaction.Transfer(new TransactionId(UUID.randomUUID(), "User1"), "User1", "User2", Money.parse("100.00"));
         transactionQueue.put(transactionMessage);
 
         Thread workerThread = new Thread(transactionWorker);
@@ -73,7 +81,10 @@ public class TransactionWorkerTest {
         assertTrue(report.status().equals(TransactionStatus.COMPLETED));
         assertEquals("Transaction completed successfully", report.message());
 
-        verify(userAccountRepository, times(2)).save(any(UserAccount.class));
+        // one guarded debit and credit, no read-modify-write of the accounts
+        verify(userAccountRepository, times(1)).transfer(null, "User1", "User2", Money.parse("100.00"));
+        verify(userAccountRepository, never()).findByName(anyString());
+        verify(userAccountRepository, never()).save(any(UserAccount.class));
         ArgumentCaptor<Report> argument = ArgumentCaptor.forClass(Report.class);
         verify(reportTransactionRepository, times(1)).insert(argument.capture());
         assertEquals(transactionMessage.transactionId(), argument.getValue().transactionId());
@@ -85,13 +96,9 @@ public class TransactionWorkerTest {
 
     @Test
     void testProcessTransactionInsufficientFunds() throws InterruptedException {
-        Optional<UserAccount> user1 = Optional.of(new UserAccount("User1", new BigDecimal("50.00"), BigDecimal.ZERO));
-        Optional<UserAccount> user2 = Optional.of(new UserAccount("User2", new BigDecimal("1000.00"), BigDecimal.ZERO));
-        
-        when(userAccountRepository.findByName("User1")).thenReturn(user1);
-        when(userAccountRepository.findByName("User2")).thenReturn(user2);
+        when(userAccountRepository.transfer(null, "User1", "User2", Money.parse("100.00"))).thenReturn(BalanceUpdate.INSUFFICIENT_FUNDS);
 
-        Transaction transactionMessage = new Transaction.Transfer(new TransactionId(UUID.randomUUID(), "User1"), "User1", "User2", new BigDecimal("100.00"));
+        Transaction transactionMessage = new Transaction.Transfer(new TransactionId(UUID.randomUUID(), "User1"), "User1", "User2", Money.parse("100.00"));
         transactionQueue.put(transactionMessage);
 
         Thread workerThread = new Thread(transactionWorker);
@@ -115,9 +122,9 @@ public class TransactionWorkerTest {
 
     @Test
     void testProcessTransactionUserAccountNotFound() throws InterruptedException {
-        when(userAccountRepository.findByName(anyString())).thenReturn(Optional.empty());
+        when(userAccountRepository.transfer(any(), anyString(), anyString(), any(Money.class))).thenReturn(BalanceUpdate.ACCOUNT_NOT_FOUND);
 
-        Transaction transactionMessage = new Transaction.Transfer(new TransactionId(UUID.randomUUID(), "User1"), "User1", "User2", new BigDecimal("100.00"));
+        Transaction transactionMessage = new Transaction.Transfer(new TransactionId(UUID.randomUUID(), "User1"), "User1", "User2", Money.parse("100.00"));
         transactionQueue.put(transactionMessage);
 
         Thread workerThread = new Thread(transactionWorker);
@@ -133,5 +140,161 @@ public class TransactionWorkerTest {
         transactionWorker.stop();
         workerThread.interrupt();
     }
-}
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchCommitsTransfersInOneTransaction() throws InterruptedException, SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(userAccountRepository.findByName("User1")).thenReturn(Optional.of(new UserAccount("User1", Money.parse("1000.00"), Money.ZERO)));
+        when(userAccountRepository.findByName("User2")).thenReturn(Optional.of(new UserAccount("User2", Money.parse("1000.00"), Money.ZERO)));
+
+        TransactionWorker batchWorker = new TransactionWorker(dataSource, userAccountRepository, reportTransactionRepository,
+                transactionQueue, reportQueue, withdrawalQueue, withdrawalReportQueue, null, 0, TransactionWorkerConfig.defaults().withBatch(8, 10_000), null);
+
+        for (int i = 0; i < 3; i++) {
+            transactionQueue.put(new Transaction.Transfer(new TransactionId(UUID.randomUUID(), "User1"), "User1", "User2", Money.parse("100.00")));
+        }
+
+        Thread workerThread = new Thread(batchWorker);
+        workerThread.start();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(TransactionStatus.COMPLETED, reportQueue.take().status());
+        }
+
+        // every message of the batch is applied against the in-batch view and committed once
+        ArgumentCaptor<Collection<UserAccount>> accounts = ArgumentCaptor.forClass(Collection.class);
+        verify(userAccountRepository, times(1)).saveAll(any(Connection.class), accounts.capture());
+        List<UserAccount> saved = List.copyOf(accounts.getValue());
+        assertEquals(2, saved.size());
+        assertEquals(0, Money.parse("700.00").compareTo(saved.get(0).balance()));
+        assertEquals(0, Money.parse("1300.00").compareTo(saved.get(1).balance()));
+
+        ArgumentCaptor<List<Report>> reports = ArgumentCaptor.forClass(List.class);
+        verify(reportTransactionRepository, times(1)).insertAll(any(Connection.class), reports.capture());
+        assertEquals(3, reports.getValue().size());
+        verify(connection, times(1)).commit();
+        verify(userAccountRepository, never()).save(any(UserAccount.class));
+
+        batchWorker.stop();
+        workerThread.interrupt();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testLedgerTransferMakesNoDatabaseReads() throws InterruptedException, SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(userAccountRepository.findAll()).thenReturn(List.of(
+                new UserAccount("User1", Money.parse("1000.00"), Money.ZERO),
+                new UserAccount("User2", Money.parse("1000.00"), Money.ZERO)));
+
+        WriteBehindWriter writeBehind = new WriteBehindWriter(dataSource, userAccountRepository, reportTransactionRepository, 16, 1024);
+        TransactionWorker ledgerWorker = new TransactionWorker(dataSource, userAccountRepository, reportTransactionRepository,
+                transactionQueue, reportQueue, withdrawalQueue, withdrawalReportQueue, null, 0, TransactionWorkerConfig.defaults().withLedger(true), writeBehind);
+
+        Transaction transactionMessage = new Transaction.Transfer(new TransactionId(UUID.randomUUID(), "User1"), "User1", "User2", Money.parse("100.00"));
+        transactionQueue.put(transactionMessage);
+
+        Thread workerThread = new Thread(ledgerWorker);
+        workerThread.start();
+
+        Report report = reportQueue.take();
+        assertEquals(TransactionStatus.COMPLETED, report.status());
+        verify(userAccountRepository, never()).findByName(anyString());
+
+        // persisted behind the worker
+        Thread writerThread = new Thread(writeBehind);
+        writerThread.start();
+        assertTrue(writeBehind.awaitDurable(1, 10, TimeUnit.SECONDS));
+        assertTrue(writeBehind.flush(0, TimeUnit.SECONDS));
+        assertEquals(0, writeBehind.pending());
+
+        ArgumentCaptor<Collection<UserAccount>> accounts = ArgumentCaptor.forClass(Collection.class);
+        verify(userAccountRepository, times(1)).saveAll(any(Connection.class), accounts.capture());
+        List<UserAccount> saved = List.copyOf(accounts.getValue());
+        assertEquals(0, Money.parse("900.00").compareTo(saved.get(0).balance()));
+        assertEquals(0, Money.parse("1100.00").compareTo(saved.get(1).balance()));
+        verify(reportTransactionRepository, times(1)).insertAll(any(Connection.class), eq(List.of(report)));
+
+        ledgerWorker.stop();
+        writeBehind.stop();
+        workerThread.interrupt();
+        writerThread.interrupt();
+    }
+
+    @Test
+    void testFailedBatchIsAppliedOneByOneAndTimedOnce() throws InterruptedException, SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        doThrow(new SQLException("disk I/O error")).when(connection).commit();
+        when(userAccountRepository.findByName("User1")).thenReturn(Optional.of(new UserAccount("User1", Money.parse("1000.00"), Money.ZERO)));
+        when(userAccountRepository.findByName("User2")).thenReturn(Optional.of(new UserAccount("User2", Money.parse("1000.00"), Money.ZERO)));
+        when(userAccountRepository.transfer(any(), anyString(), anyString(), any(Money.class))).thenReturn(BalanceUpdate.UPDATED);
+        Histogram transferTime = MetricRegistry.defaultRegistry().histogram("worker_message_duration_seconds", "Processing time of a message by a worker",
+                "worker", "transaction", "type", "Transfer");
+        long timed = transferTime.count();
+
+        TransactionWorker batchWorker = new TransactionWorker(dataSource, userAccountRepository, reportTransactionRepository,
+                transactionQueue, reportQueue, withdrawalQueue, withdrawalReportQueue, null, 0, TransactionWorkerConfig.defaults().withBatch(8, 10_000), null);
+        for (int i = 0; i < 3; i++) {
+            transactionQueue.put(new Transaction.Transfer(new TransactionId(UUID.randomUUID(), "User1"), "User1", "User2", Money.parse("100.00")));
+        }
+
+        Thread workerThread = new Thread(batchWorker);
+        workerThread.start();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(TransactionStatus.COMPLETED, reportQueue.take().status());
+        }
+
+        // applied again one by one, but each message is timed once
+        verify(userAccountRepository, times(3)).transfer(any(), anyString(), anyString(), any(Money.class));
+        assertEquals(timed + 3, transferTime.count());
+
+        batchWorker.stop();
+        workerThread.interrupt();
+    }
+
+    @Test
+    void testAsyncReportsAreWrittenInOneBatchBehindTheWorker() throws InterruptedException, SQLException {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(userAccountRepository.transfer(any(), anyString(), anyString(), any(Money.class))).thenReturn(BalanceUpdate.UPDATED);
+
+        ReportWriter reportWriter = new ReportWriter(dataSource, reportTransactionRepository, 16, 10_000, 16);
+        List<Report> durable = new ArrayList<>();
+        reportWriter.setDurableListener(durable::add);
+        TransactionWorker asyncWorker = new TransactionWorker(dataSource, userAccountRepository, reportTransactionRepository,
+                transactionQueue, reportQueue, withdrawalQueue, withdrawalReportQueue, null, 0, TransactionWorkerConfig.defaults().withReportWriter(16, 10_000), null, reportWriter);
+
+        Transaction first = new Transaction.Transfer(new TransactionId(UUID.randomUUID(), "User1"), "User1", "User2", Money.parse("100.00"));
+        Transaction second = new Transaction.Transfer(new TransactionId(UUID.randomUUID(), "User2"), "User2", "User1", Money.parse("50.00"));
+        transactionQueue.put(first);
+        transactionQueue.put(second);
+
+        Thread workerThread = new Thread(asyncWorker);
+        workerThread.start();
+
+        // sent before they are written
+        Report firstReport = reportQueue.take();
+        Report secondReport = reportQueue.take();
+        verify(reportTransactionRepository, never()).insert(any(Report.class));
+        assertFalse(reportWriter.flush(0, TimeUnit.SECONDS));
+
+        // a stopped writer still writes what was appended, in order
+        reportWriter.stop();
+        reportWriter.run();
+        assertTrue(reportWriter.flush(0, TimeUnit.SECONDS));
+        assertEquals(List.of(firstReport, secondReport), durable);
+        verify(reportTransactionRepository, times(1)).insertAll(any(Connection.class), eq(List.of(firstReport, secondReport)));
+        verify(connection, times(1)).commit();
+
+        asyncWorker.stop();
+        workerThread.interrupt();
+    }
+}
@@ -0,0 +1,222 @@
+package com.nerverless.task.workers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.flywaydb.core.Flyway;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import com.nerverless.task.dao.DatabaseConfig;
+import com.nerverless.task.dao.WithdrawalRepository;
+import com.nerverless.task.model.Money;
+import com.nerverless.task.model.Transaction;
+import com.nerverless.task.model.Transaction.WithdrawalRequest;
+import com.nerverless.task.model.TransactionId;
+import com.nerverless.task.model.TransactionStatus;
+import com.nerverless.task.model.Withdrawal;
+import com.nerverless.task.service.WithdrawalService;
+import com.nerverless.task.service.WithdrawalService.WithdrawalId;
+import com.nerverless.task.service.WithdrawalService.WithdrawalState;
+import com.nerverless.task.timer.TimerWheel;
+
+public class WithdrawalWorkerTest {
+
+    private static final String DB_URL = "jdbc:sqlite:build/tmp/withdrawal-worker-test-db.db";
+
+    // the bulk and asynchronous defaults run over the mocked single item methods
+    private final WithdrawalService withdrawalService = mock(WithdrawalService.class, withSettings().defaultAnswer(CALLS_REAL_METHODS));
+    private final BlockingQueue<Transaction> withdrawalQueue = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Withdrawal> withdrawalReportQueue = new LinkedBlockingQueue<>();
+    private final TimerWheel timer = new TimerWheel(1, TimeUnit.MILLISECONDS, 64);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private DataSource dataSource;
+    private WithdrawalWorker withdrawalWorker;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = DatabaseConfig.createDataSource(DB_URL, 2);
+        Flyway flyway = Flyway.configure().dataSource(dataSource)
+                .cleanDisabled(false)
+                .load();
+        flyway.clean();
+        flyway.migrate();
+
+        withdrawalWorker = new WithdrawalWorker(dataSource, withdrawalService, withdrawalQueue, withdrawalReportQueue, timer, WithdrawalWorkerConfig.defaults().withCheckDelays(1, 4).withProviderCalls(4, 500));
+        executor.execute(timer);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        withdrawalWorker.stop();
+        timer.stop();
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void run_WithRequest_ChecksWithBackoffUntilFinal() throws InterruptedException {
+        when(withdrawalService.getRequestState(any())).thenReturn(WithdrawalState.PROCESSING, WithdrawalState.PROCESSING, WithdrawalState.COMPLETED);
+        TransactionId transactionId = new TransactionId(UUID.randomUUID(), "User1");
+        executor.execute(withdrawalWorker);
+
+        withdrawalQueue.put(new WithdrawalRequest(transactionId, "User1", "Address1", Money.parse("10.00")));
+
+        assertEquals(TransactionStatus.PROCESSING, withdrawalReportQueue.poll(5, TimeUnit.SECONDS).status());
+        Withdrawal completed = withdrawalReportQueue.poll(5, TimeUnit.SECONDS);
+        assertEquals(TransactionStatus.COMPLETED, completed.status());
+        assertEquals(transactionId, completed.transactionId());
+        verify(withdrawalService, times(3)).getRequestState(new WithdrawalId(transactionId.id()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void run_WithSlowProvider_ChecksWithdrawalsConcurrently() throws InterruptedException {
+        doAnswer(invocation -> {
+            Thread.sleep(300);
+            return ((Collection<WithdrawalId>) invocation.getArgument(0)).stream()
+                    .collect(Collectors.toMap(Function.identity(), id -> WithdrawalState.COMPLETED));
+        }).when(withdrawalService).getRequestStates(any());
+        executor.execute(withdrawalWorker);
+        for (int i = 0; i < 4; i++) {
+            withdrawalQueue.put(new WithdrawalRequest(new TransactionId(UUID.randomUUID(), "User1"), "User1", "Address1", Money.parse("10.00")));
+        }
+
+        long start = System.nanoTime();
+        int completed = 0;
+        while (completed < 4) {
+            if (withdrawalReportQueue.poll(5, TimeUnit.SECONDS).status() == TransactionStatus.COMPLETED) {
+                completed++;
+            }
+        }
+
+        // one after the other, the checks of each withdrawal would take 1.2 seconds
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000);
+    }
+
+    @Test
+    void run_WithRequestTimingOut_ChecksItsState() throws InterruptedException {
+        doAnswer(invocation -> {
+            Thread.sleep(1_000);
+            return null;
+        }).when(withdrawalService).requestWithdrawal(any(), any(), any());
+        when(withdrawalService.getRequestState(any())).thenReturn(WithdrawalState.COMPLETED);
+        executor.execute(withdrawalWorker);
+
+        withdrawalQueue.put(new WithdrawalRequest(new TransactionId(UUID.randomUUID(), "User1"), "User1", "Address1", Money.parse("10.00")));
+
+        assertEquals(TransactionStatus.PROCESSING, withdrawalReportQueue.poll(900, TimeUnit.MILLISECONDS).status());
+        assertEquals(TransactionStatus.COMPLETED, withdrawalReportQueue.poll(5, TimeUnit.SECONDS).status());
+    }
+
+    @Test
+    void run_WithProviderRegisteringRequestAfterTimeout_WaitsForItBeforeFailing() throws InterruptedException {
+        AtomicBoolean registered = new AtomicBoolean();
+        doAnswer(invocation -> {
+            // the provider knows the withdrawal only once the call ends, well after the call timeout and the first checks
+            Thread.sleep(1_000);
+            registered.set(true);
+            return null;
+        }).when(withdrawalService).requestWithdrawal(any(), any(), any());
+        doAnswer(invocation -> {
+            if (!registered.get()) {
+                throw new IllegalArgumentException("Request is not found");
+            }
+            return WithdrawalState.COMPLETED;
+        }).when(withdrawalService).getRequestState(any());
+        executor.execute(withdrawalWorker);
+
+        withdrawalQueue.put(new WithdrawalRequest(new TransactionId(UUID.randomUUID(), "User1"), "User1", "Address1", Money.parse("10.00")));
+
+        assertEquals(TransactionStatus.PROCESSING, withdrawalReportQueue.poll(900, TimeUnit.MILLISECONDS).status());
+        assertEquals(TransactionStatus.COMPLETED, withdrawalReportQueue.poll(5, TimeUnit.SECONDS).status());
+    }
+
+    @Test
+    void run_WithWithdrawalsInProgress_RebuildsTheirChecks() throws InterruptedException {
+        when(withdrawalService.getRequestState(any())).thenReturn(WithdrawalState.FAILED);
+        TransactionId transactionId = new TransactionId(UUID.randomUUID(), "User1");
+        new WithdrawalRepository(dataSource).save(new Withdrawal(new WithdrawalId(UUID.randomUUID()), transactionId, "User1", "Address1", Money.parse("10.00"), TransactionStatus.PROCESSING));
+
+        executor.execute(withdrawalWorker);
+
+        Withdrawal failed = withdrawalReportQueue.poll(5, TimeUnit.SECONDS);
+        assertEquals(TransactionStatus.FAILED, failed.status());
+        assertEquals(transactionId, failed.transactionId());
+    }
+
+    @Test
+    void run_WithProviderPushingStates_CompletesWithoutPolling() throws InterruptedException {
+        AtomicReference<WithdrawalService.CompletionListener> listener = new AtomicReference<>();
+        doAnswer(invocation -> {
+            listener.set(invocation.getArgument(0));
+            return true;
+        }).when(withdrawalService).subscribe(any());
+        when(withdrawalService.getRequestState(any())).thenReturn(WithdrawalState.PROCESSING);
+        TransactionId transactionId = new TransactionId(UUID.randomUUID(), "User1");
+        executor.execute(withdrawalWorker);
+
+        withdrawalQueue.put(new WithdrawalRequest(transactionId, "User1", "Address1", Money.parse("10.00")));
+        assertEquals(TransactionStatus.PROCESSING, withdrawalReportQueue.poll(5, TimeUnit.SECONDS).status());
+        WithdrawalId id = new WithdrawalId(transactionId.id());
+        listener.get().completed(id, WithdrawalState.COMPLETED);
+        listener.get().completed(id, WithdrawalState.COMPLETED);
+
+        assertEquals(TransactionStatus.COMPLETED, withdrawalReportQueue.poll(5, TimeUnit.SECONDS).status());
+        // the repeated push and the checks still running are ignored
+        assertNull(withdrawalReportQueue.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void run_WithRequestsQueuedTogether_RequestsThemInOneBulkCall() throws InterruptedException {
+        TransactionId accepted = new TransactionId(UUID.randomUUID(), "User1");
+        TransactionId rejected = new TransactionId(UUID.randomUUID(), "User2");
+        doAnswer(invocation -> Map.of(new WithdrawalId(rejected.id()), "conflicting request")).when(withdrawalService).requestWithdrawals(anyList());
+        when(withdrawalService.getRequestState(any())).thenReturn(WithdrawalState.COMPLETED);
+        withdrawalQueue.put(new WithdrawalRequest(accepted, "User1", "Address1", Money.parse("10.00")));
+        withdrawalQueue.put(new WithdrawalRequest(rejected, "User2", "Address2", Money.parse("5.00")));
+
+        executor.execute(withdrawalWorker);
+
+        Map<TransactionId, List<TransactionStatus>> statuses = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            Withdrawal withdrawal = withdrawalReportQueue.poll(5, TimeUnit.SECONDS);
+            statuses.computeIfAbsent(withdrawal.transactionId(), id -> new ArrayList<>()).add(withdrawal.status());
+        }
+        assertEquals(List.of(TransactionStatus.PROCESSING, TransactionStatus.COMPLETED), statuses.get(accepted));
+        assertEquals(List.of(TransactionStatus.FAILED), statuses.get(rejected));
+        verify(withdrawalService, times(1)).requestWithdrawals(anyList());
+        verify(withdrawalService, never()).requestWithdrawal(any(), any(), any());
+        // the rejected withdrawal is never checked
+        verify(withdrawalService, never()).getRequestState(new WithdrawalId(rejected.id()));
+    }
+}